@@ -0,0 +1,273 @@
+package io;
+
+import model.FsNode;
+import model.NodeType;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Formatul binar al structurii, alternativa compacta la structura.txt.
+ * <p>
+ * Fisierul incepe cu {@link #MAGIC} si un byte de versiune, urmat de numarul de copii ai
+ * radacinii invizibile si de nodurile in preordine. Fiecare nod este scris ca:
+ * <ul>
+ *     <li>un byte de tip ({@link #FOLDER}, {@link #FILE} sau {@link #DRIVE});</li>
+ *     <li>referinta la nume: 0 pentru un nume nou, urmat de lungimea in bytes si de bytes-ii
+ *     UTF-8, sau {@code 1 + index} pentru un nume deja aparut in fisier;</li>
+ *     <li>pentru fisiere dimensiunea, pentru celelalte numarul de copii, urmat de copii.</li>
+ * </ul>
+ * Toate numerele sunt varint (7 biti pe byte, bitul cel mai semnificativ indica continuarea).
+ * Tabela de nume se construieste pe masura ce numele apar, astfel incat atat scrierea cat si
+ * citirea merg intr-o singura trecere, fara a tine fisierul in memorie. Fisierul se termina
+ * cu {@link #END}, ca un fisier trunchiat sa fie detectat.
+ */
+final class BinaryTreeFormat {
+
+    /**
+     * Semnatura de la inceputul fisierului.
+     */
+    static final byte[] MAGIC = {'F', 'S', 'T', 'B'};
+
+    /**
+     * Versiunea curenta a formatului.
+     */
+    static final int VERSION = 1;
+
+    static final int FOLDER = 0;
+    static final int FILE = 1;
+    static final int DRIVE = 2;
+
+    /**
+     * Marcajul de sfarsit de fisier.
+     */
+    static final int END = 0xFF;
+
+    private static final int BUFFER = 1 << 16;
+
+    private BinaryTreeFormat() {
+    }
+
+    /**
+     * Scrie arborele in format binar.
+     */
+    static final class Writer {
+
+        private final OutputStream out;
+        private final byte[] buf = new byte[BUFFER];
+        private int len;
+        private final Map<String, Integer> table = new HashMap<>();
+
+        Writer(OutputStream out) {
+            this.out = out;
+        }
+
+        /**
+         * Scrie antetul, copiii radacinii si marcajul de sfarsit, apoi goleste bufferul.
+         *
+         * @param root radacina invizibila
+         */
+        void write(FsNode root) throws IOException {
+            for (byte b : MAGIC) put(b);
+            put(VERSION);
+            writeChildren(root);
+            put(END);
+            out.write(buf, 0, len);
+            len = 0;
+            out.flush();
+        }
+
+        /**
+         * Scrie subarborele de sub {@code root} in preordine, cu o stiva explicita de noduri
+         * (copiii sunt pusi in ordine inversa, ca sa fie scosi in ordinea lor), astfel incat
+         * adancimea arborelui nu este limitata de stiva firului.
+         */
+        private void writeChildren(FsNode root) throws IOException {
+            ArrayDeque<FsNode> stack = new ArrayDeque<>();
+            List<FsNode> top = root.getChildren();
+            varint(top.size());
+            for (int i = top.size() - 1; i >= 0; i--) stack.push(top.get(i));
+            while (!stack.isEmpty()) {
+                FsNode ch = stack.pop();
+                NodeType t = ch.getType();
+                put(t == NodeType.FILE ? FILE : t == NodeType.DRIVE ? DRIVE : FOLDER);
+                name(ch.getName());
+                if (t == NodeType.FILE) {
+                    varint(ch.getSizeBytes());
+                    continue;
+                }
+                List<FsNode> children = ch.getChildren();
+                varint(children.size());
+                for (int i = children.size() - 1; i >= 0; i--) stack.push(children.get(i));
+            }
+        }
+
+        private void name(String name) throws IOException {
+            Integer idx = table.putIfAbsent(name, table.size());
+            if (idx != null) {
+                varint(idx + 1L);
+                return;
+            }
+            put(0);
+            int n = name.length();
+            boolean ascii = true;
+            for (int i = 0; i < n && ascii; i++) ascii = name.charAt(i) < 0x80;
+            if (ascii) {
+                // cazul obisnuit: caracterele sunt chiar bytes-ii UTF-8
+                varint(n);
+                for (int i = 0; i < n; i++) put(name.charAt(i));
+                return;
+            }
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            varint(bytes.length);
+            for (byte b : bytes) put(b);
+        }
+
+        private void varint(long v) throws IOException {
+            while ((v & ~0x7FL) != 0) {
+                put((int) (v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            put((int) v);
+        }
+
+        private void put(int b) throws IOException {
+            if (len == buf.length) {
+                out.write(buf, 0, len);
+                len = 0;
+            }
+            buf[len++] = (byte) b;
+        }
+    }
+
+    /**
+     * Citeste un arbore scris de {@link Writer}.
+     */
+    static final class Reader {
+
+        private final InputStream in;
+        private final NameDictionary names;
+        private final byte[] buf = new byte[BUFFER];
+        private int pos;
+        private int len;
+        private final List<String> table = new ArrayList<>();
+        private byte[] scratch = new byte[256];
+
+        /**
+         * @param in    fluxul de citit
+         * @param names dictionarul prin care trec numele noi din tabela
+         */
+        Reader(InputStream in, NameDictionary names) {
+            this.in = in;
+            this.names = names;
+        }
+
+        /**
+         * Citeste antetul si ataseaza nodurile sub {@code root}.
+         *
+         * @param root radacina invizibila
+         * @throws IOException daca fisierul nu este in format binar, are alta versiune sau este corupt
+         */
+        void read(FsNode root) throws IOException {
+            for (byte b : MAGIC) {
+                if (get() != (b & 0xFF)) throw new IOException("Not a binary structure file");
+            }
+            int version = get();
+            if (version != VERSION) throw new IOException("Unsupported binary structure version " + version);
+            readChildren(root);
+            if (get() != END) throw new IOException("Corrupt binary structure file: missing end marker");
+        }
+
+        /**
+         * Citeste nodurile de sub {@code root}, cu o stiva explicita de foldere deschise, ca in
+         * {@link StructureParser}. Fiecare folder retine cati copii mai are de citit; un nod este
+         * atasat parintelui cand este complet, deci totalurile urca o singura data pe nivel.
+         */
+        private void readChildren(FsNode root) throws IOException {
+            FsNode[] open = new FsNode[64];
+            long[] left = new long[64];
+            long count = varint();
+            if (count == 0) return;
+            open[0] = root;
+            left[0] = count;
+            int depth = 1;
+            while (depth > 0) {
+                int t = get();
+                String name = name();
+                FsNode node;
+                if (t == FILE) {
+                    node = new FsNode(name, NodeType.FILE, varint());
+                } else if (t == FOLDER || t == DRIVE) {
+                    node = new FsNode(name, t == DRIVE ? NodeType.DRIVE : NodeType.FOLDER);
+                    long children = varint();
+                    if (children > 0) {
+                        if (depth == open.length) {
+                            open = Arrays.copyOf(open, depth * 2);
+                            left = Arrays.copyOf(left, depth * 2);
+                        }
+                        open[depth] = node;
+                        left[depth++] = children;
+                        continue;
+                    }
+                } else {
+                    throw new IOException("Corrupt binary structure file: node type " + t);
+                }
+                // nodul este complet: il atasam si inchidem folderele care si-au citit toti copiii
+                while (true) {
+                    open[depth - 1].addChild(node);
+                    if (--left[depth - 1] > 0) break;
+                    node = open[--depth];
+                    open[depth] = null;
+                    if (depth == 0) break;
+                }
+            }
+        }
+
+        private String name() throws IOException {
+            long ref = varint();
+            if (ref > 0) {
+                if (ref > table.size()) throw new IOException("Corrupt binary structure file: name " + ref);
+                return table.get((int) (ref - 1));
+            }
+            long n = varint();
+            if (n > Integer.MAX_VALUE) throw new IOException("Corrupt binary structure file: name length " + n);
+            int length = (int) n;
+            if (scratch.length < length) scratch = new byte[Math.max(length, scratch.length * 2)];
+            for (int i = 0; i < length; i++) scratch[i] = (byte) get();
+            String name = names.intern(scratch, 0, length);
+            table.add(name);
+            return name;
+        }
+
+        private long varint() throws IOException {
+            long v = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = get();
+                v |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return v;
+            }
+            throw new IOException("Corrupt binary structure file: varint too long");
+        }
+
+        private int get() throws IOException {
+            if (pos == len) {
+                len = in.read(buf, 0, buf.length);
+                pos = 0;
+                if (len <= 0) {
+                    len = 0;
+                    throw new EOFException("Unexpected end of binary structure file");
+                }
+            }
+            return buf[pos++] & 0xFF;
+        }
+    }
+}
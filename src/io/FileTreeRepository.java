@@ -3,148 +3,629 @@ package io;
 import model.*;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /**
  * Clasa responsabila cu incarcare si salvarea structurii logice
- * a sistemului de fisiere din/spre un fisier text (structura.txt).
+ * a sistemului de fisiere din/spre un fisier text (structura.txt)
+ * sau in formatul binar compact ({@link BinaryTreeFormat}).
  * Formatul fiecarui nod:
  *  - nume folder/drive
  *  - pentru fisiere: nume//dimensiune
  */
 public class FileTreeRepository {
 
+    /**
+     * Dictionarul de nume folosit la incarcare; este pastrat intre incarcari,
+     * astfel incat numele comune sa fie partajate si intre arbori diferiti.
+     */
+    private final NameDictionary names = new NameDictionary();
+
+    /**
+     * Returneaza dictionarul de nume, cu contoarele ultimei incarcari
+     * (rata de deduplicare a numelor).
+     *
+     * @return dictionarul de nume
+     */
+    public NameDictionary getNameDictionary() {
+        return names;
+    }
+
+    /**
+     * Fisierul text caruia ii corespund pozitiile retinute in noduri
+     * ({@link FsNode#getTextOffset()}), impreuna cu arborele si amprenta fisierului
+     * (lungime si data modificarii) de la ultima incarcare sau salvare.
+     */
+    private File layoutFile;
+    private FsNode layoutRoot;
+    private long layoutLength;
+    private long layoutModified;
+
+    /**
+     * Incarcatorul la cerere al ultimului arbore deschis cu {@link #loadLazy(File)}, sau null.
+     */
+    private LazyStructureLoader lazy;
+
+    /**
+     * Capacitatea bufferului de scriere.
+     */
+    private static final int WRITE_BUFFER = 1 << 16;
+
+    /**
+     * Sub aceasta dimensiune {@link #loadFromTextParallel(File)} citeste secvential.
+     */
+    static final long PARALLEL_MIN_BYTES = 8L << 20;
+
+    /**
+     * Dimensiunea minima a unei bucati citite de un singur fir.
+     */
+    private static final long MIN_CHUNK = 1L << 20;
+
     /**
      * Incarca arborele din fisierul dat.
      * Fiecare nivel este indentat cu 3 spatii.
      * Pentru fisiere formatul este nume//dimensiune.
+     * Numele sunt deduplicate prin {@link NameDictionary}; contoarele dictionarului
+     * sunt resetate la inceputul fiecarei incarcari.
+     * <p>
+     * Fisierul este mapat in memorie si parsat direct pe bytes de {@link StructureParser}.
+     * Pentru fiecare nod se retine pozitia textului subarborelui in fisier, folosita de
+     * {@link #saveIncremental(FsNode, File)}. Daca indentarea face ca un nod sa fie atasat
+     * unui parinte deja inchis (fisier malformat), pozitiile nu mai sunt contigue si
+     * urmatoarea salvare va fi completa.
      *
      * @param file fisierul text de intrare
      * @return radacina invizibila ce contine toti driverii
      */
     public FsNode loadFromText(File file) throws IOException {
         FsNode root = new FsNode("(root)", NodeType.FOLDER);
-        Map<Integer, FsNode> levelMap = new HashMap<>();
-        levelMap.put(0, root);
-
-
-
-        try (BufferedReader br = new BufferedReader(
-                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+        names.resetCounters();
+        closeLazy();
+        boolean contiguous;
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = ch.size();
+            contiguous = new StructureParser(ch, names).parse(root, 0, 0, size);
+            if (contiguous) root.setTextRange(0, size);
+        }
+        remember(contiguous ? root : null, file);
+        return root;
+    }
 
-            String line;
-            while ((line = br.readLine()) != null) {
-                if (line.trim().isEmpty()) continue;
+    /**
+     * Incarca arborele din fisierul dat pe mai multe fire, cu acelasi rezultat ca
+     * {@link #loadFromText(File)} (nume, tipuri, dimensiuni, ordinea copiilor si pozitiile
+     * din fisier); doar id-urile nodurilor nu mai urmeaza ordinea liniilor.
+     * <p>
+     * O pre-scanare gaseste granitele subarborilor de pe primul nivel: liniile drive-urilor
+     * sau, daca exista un singur drive, liniile de pe nivelul 1. Subarborii consecutivi sunt
+     * grupati in bucati de dimensiuni apropiate, citite in paralel in {@link ForkJoinPool#commonPool()}
+     * ca subarbori detasati, apoi atasati in ordinea din fisier sub radacina (sau sub drive).
+     * Fiecare fir are un dictionar de nume local, legat de cel comun.
+     * <p>
+     * Fisierele mici, cele fara cel putin doi subarbori de impartit si cele malformate
+     * (indentare care sare peste un nivel) sunt citite secvential.
+     *
+     * @param file fisierul text de intrare
+     * @return radacina invizibila ce contine toti driverii
+     */
+    public FsNode loadFromTextParallel(File file) throws IOException {
+        FsNode root = new FsNode("(root)", NodeType.FOLDER);
+        names.resetCounters();
+        closeLazy();
+        boolean contiguous;
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = ch.size();
+            int parallelism = ForkJoinPool.getCommonPoolParallelism();
+            StructureParser.Split split = size >= PARALLEL_MIN_BYTES && parallelism > 1
+                    ? new StructureParser(ch, names).split(size) : null;
+            if (split == null || split.starts.length < 2) {
+                contiguous = new StructureParser(ch, names).parse(root, 0, 0, size);
+            } else {
+                contiguous = loadChunks(ch, root, split, size, parallelism);
+            }
+            if (contiguous) root.setTextRange(0, size);
+        }
+        remember(contiguous ? root : null, file);
+        return root;
+    }
 
-                int leading = countLeadingSpaces(line);
-                int level = leading / 3;
+    /**
+     * Citeste in paralel subarborii dati de {@code split} si ii ataseaza in ordine.
+     *
+     * @return true daca pozitiile din fisier sunt valide
+     */
+    private boolean loadChunks(FileChannel ch, FsNode root, StructureParser.Split split,
+                               long size, int parallelism) throws IOException {
+        long[] starts = split.starts;
+        boolean contiguous = true;
+        FsNode parent = root;
+        if (split.level == 1) {
+            // linia drive-ului (si liniile goale dinaintea ei) se citesc secvential
+            contiguous = new StructureParser(ch, names).parse(root, 0, 0, starts[0]);
+            parent = root.getChildren().get(0);
+        }
 
+        // subarbori consecutivi grupati in bucati de aproximativ aceeasi dimensiune
+        long target = Math.max(MIN_CHUNK, (size - starts[0]) / (parallelism * 4L));
+        List<long[]> ranges = new ArrayList<>();
+        long from = starts[0];
+        for (int i = 1; i <= starts.length; i++) {
+            long to = i < starts.length ? starts[i] : size;
+            if (to - from >= target || i == starts.length) {
+                ranges.add(new long[]{from, to});
+                from = to;
+            }
+        }
 
-                String content = line.substring(leading);
+        FsNode base = parent;
+        List<Callable<List<FsNode>>> tasks = new ArrayList<>(ranges.size());
+        boolean[] ok = new boolean[ranges.size()];
+        NameDictionary[] dicts = new NameDictionary[ranges.size()];
+        for (int k = 0; k < ranges.size(); k++) {
+            int idx = k;
+            long[] r = ranges.get(k);
+            dicts[k] = new NameDictionary(names);
+            tasks.add(() -> {
+                List<FsNode> tops = new ArrayList<>();
+                ok[idx] = new StructureParser(ch, dicts[idx])
+                        .parse(base, split.level, split.parentStart, r[0], r[1], tops);
+                return tops;
+            });
+        }
 
-                String name;
-                long size = 0L;
+        List<Future<List<FsNode>>> results = ForkJoinPool.commonPool().invokeAll(tasks);
+        for (int k = 0; k < results.size(); k++) {
+            List<FsNode> tops = join(results.get(k));
+            contiguous &= ok[k];
+            names.addCounters(dicts[k]);
+            for (FsNode top : tops) {
+                // addChild sterge pozitia nodului; este restaurata dupa atasare
+                long offset = top.getTextOffset(), length = top.getTextLength();
+                parent.addChild(top);
+                if (contiguous) top.setTextRange(offset, length);
+            }
+        }
+        if (contiguous && parent != root) {
+            parent.setTextRange(parent.getTextOffset(), size - split.parentStart);
+        }
+        return contiguous;
+    }
 
+    /**
+     * Asteapta rezultatul unei bucati, propagand exceptiile ei neschimbate.
+     */
+    private static <T> T join(Future<T> f) throws IOException {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Loading interrupted");
+        } catch (ExecutionException e) {
+            Throwable c = e.getCause();
+            if (c instanceof IOException) throw (IOException) c;
+            if (c instanceof RuntimeException) throw (RuntimeException) c;
+            if (c instanceof Error) throw (Error) c;
+            throw new IOException(c);
+        }
+    }
 
-                int sep = content.lastIndexOf("//");
-                if (sep != -1) {
-                    name = content.substring(0, sep).trim();
-                    String sizeStr = content.substring(sep + 2).trim();
-                    if (!sizeStr.isEmpty()) {
-                        try {
-                            size = Long.parseLong(sizeStr);
-                        } catch (NumberFormatException e) {
-                            size = 0L;
-                        }
-                    }
-                } else {
+    /**
+     * Deschide arborele in mod lenes: la pornire sunt citite doar drive-urile si copiii lor
+     * directi, iar copiii oricarui alt folder sunt cititi la primul acces
+     * ({@link FsNode#getChildren()}, {@link FsNode#childByName(String)}, deci si cautarea
+     * dupa cale sau expandarea in JTree). Totalurile subarborilor (statisticile) sunt corecte
+     * de la inceput, fiind luate din indexul lateral {@code <fisier>.idx}
+     * ({@link StructureIndex}), citit daca exista si corespunde fisierului, altfel construit
+     * intr-o singura trecere.
+     * <p>
+     * Salvarea incrementala copiaza subarborii necititi direct din fisier. Folderele citite si
+     * nemodificate pot fi eliberate din nou cand memoria este putina
+     * ({@link model.ChildLoader#shouldEvict()}, {@link FsNode#unloadChildren()}).
+     * Daca fisierul este schimbat din afara aplicatiei, citirea unui folder nou esueaza cu
+     * {@link java.io.UncheckedIOException}. Numele duplicate dintr-un folder sunt raportate
+     * abia cand folderul este citit.
+     * <p>
+     * Fisierele malformate (vezi {@link #loadFromTextParallel(File)}) sunt incarcate complet.
+     *
+     * @param file fisierul text de intrare
+     * @return radacina invizibila ce contine toti driverii
+     */
+    public FsNode loadLazy(File file) throws IOException {
+        File indexFile = new File(file.getPath() + ".idx");
+        StructureIndex index = StructureIndex.open(indexFile, file);
+        if (index == null) index = StructureIndex.build(file, indexFile, names);
+        if (index == null) return loadFromTextParallel(file);
 
-                    name = content.trim();
-                }
+        names.resetCounters();
+        closeLazy();
+        LazyStructureLoader loader = new LazyStructureLoader(this, file, indexFile, index, names);
+        FsNode root = loader.createRoot();
+        root.setTextRange(0, file.length());
+        remember(root, file);
+        lazy = loader;
+        for (FsNode drive : root.getChildren()) drive.getChildren();
+        return root;
+    }
 
-                NodeType type = guessType(name);
+    /**
+     * Indica daca pozitiile din nodurile arborelui corespund fisierului dat, asa cum este
+     * acum pe disc (acelasi arbore si aceeasi lungime si data a fisierului ca la ultima
+     * incarcare sau salvare).
+     */
+    boolean isLayoutOf(FsNode root, File file) {
+        return root == layoutRoot
+                && file.getAbsoluteFile().equals(layoutFile)
+                && file.length() == layoutLength
+                && file.lastModified() == layoutModified;
+    }
 
-                FsNode node;
-                if (type == NodeType.FILE) {
-                    node = new FsNode(name, type, size);
-                } else {
-                    node = new FsNode(name, type);
-                }
+    /**
+     * Renunta la incarcatorul lenes anterior, inchizandu-i fisierul.
+     */
+    private void closeLazy() throws IOException {
+        if (lazy != null) lazy.closeChannel();
+        lazy = null;
+    }
 
-                FsNode parent = levelMap.getOrDefault(level, root);
-                parent.addChild(node);
-                levelMap.put(level + 1, node);
-            }
-        }
-        return root;
+    /**
+     * Retine arborele si amprenta fisierului carora le corespund pozitiile din noduri.
+     *
+     * @param root arborele sau null daca pozitiile nu sunt valide
+     * @param file fisierul
+     */
+    private void remember(FsNode root, File file) {
+        layoutRoot = root;
+        layoutFile = root == null ? null : file.getAbsoluteFile();
+        layoutLength = file.length();
+        layoutModified = file.lastModified();
     }
 
     /**
      * Salveaza structura arborelui in fisierul dat.
      * Foloseste indentare cu 3 spatii pentru niveluri.
      * Pentru fisiere scrie formatul nume//dimensiune.
+     * Scrierea se face intr-un fisier temporar, mutat apoi atomic peste cel vechi.
      *
      * @param root radacina logica
      * @param file fisierul de iesire
      */
     public void saveToText(FsNode root, File file) throws IOException {
-        try (BufferedWriter bw = new BufferedWriter(
-                new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
-            for (FsNode d : root.getChildren()) {
-                writeRec(d, 0, bw);
+        write(root, file, false);
+    }
+
+    /**
+     * Scrie un snapshot al arborelui in format text, direct in fisierul dat, si il forteaza pe
+     * disc. Este folosit de compactarea jurnalului; pozitiile retinute in noduri si fisierul
+     * din care a fost incarcat arborele nu sunt afectate.
+     *
+     * @param root radacina snapshot-ului
+     * @param file fisierul de iesire
+     */
+    public void writeSnapshot(SnapshotNode root, File file) throws IOException {
+        try (FileOutputStream fos = new FileOutputStream(file);
+             BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(fos, StandardCharsets.UTF_8), 1 << 16)) {
+            for (SnapshotNode ch : root.getChildren()) {
+                writeRec(ch, 0, bw);
             }
+            bw.flush();
+            fos.getChannel().force(false);
         }
     }
 
     /**
-     * Scrie recursiv nodurile cu indentarea corespunzatoare.
+     * Salveaza structura arborelui refolosind textul nemodificat din fisierul existent.
+     * <p>
+     * Daca fisierul este cel din care arborele a fost incarcat (sau in care a fost salvat
+     * ultima data) si nu a fost schimbat din afara, subarborii curati
+     * ({@link FsNode#isTextDirty()}) sunt copiati byte cu byte din fisierul vechi, iar
+     * intervalele alaturate sunt copiate dintr-o singura bucata. Doar liniile nodurilor
+     * de pe drumurile catre modificari, subarborii noi si cei mutati sunt serializati din nou,
+     * deci costul depinde de marimea modificarilor (plus copierea secventiala a restului).
+     * Daca arborele nu are modificari, fisierul nu este atins. In orice alt caz salvarea
+     * este completa, ca {@link #saveToText(FsNode, File)}.
+     * <p>
+     * Noul continut este scris intr-un fisier temporar si mutat atomic peste cel vechi.
      *
-     * @param n   nodul curent
-     * @param lvl nivelul de indentare
-     * @param bw  writer
+     * @param root radacina logica
+     * @param file fisierul de iesire
+     * @return true daca salvarea a fost incrementala (sau nu a fost nevoie de scriere)
      */
-    private void writeRec(FsNode n, int lvl, BufferedWriter bw) throws IOException {
-        // indent
-        bw.write("   ".repeat(lvl));
-        // numele
-        bw.write(n.getName());
+    public boolean saveIncremental(FsNode root, File file) throws IOException {
+        boolean reusable = isLayoutOf(root, file);
+        if (reusable && !root.isTextDirty()) return true;
+        write(root, file, reusable);
+        return reusable;
+    }
 
-        // daca este fisier, scriem // + dimensiune
-        if (n.getType() == NodeType.FILE) {
-            bw.write("//");
-            bw.write(Long.toString(n.getSizeBytes()));
+    /**
+     * Scrie arborele intr-un fisier temporar langa {@code file} si il muta atomic peste el.
+     *
+     * @param root  radacina logica
+     * @param file  fisierul de iesire
+     * @param reuse true daca subarborii curati pot fi copiati din {@code file}
+     */
+    private void write(FsNode root, File file, boolean reuse) throws IOException {
+        Path target = file.getAbsoluteFile().toPath();
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+             FileChannel old = reuse ? FileChannel.open(target, StandardOpenOption.READ) : null) {
+            RangeWriter w = new RangeWriter(out, old);
+            writeChildren(root, 0, reuse ? 0 : -1, 0, w);
+            w.flush();
+            root.setTextRange(0, w.position());
+            out.force(false);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
         }
+        // fisierul citit la cerere este inlocuit; incarcatorul il redeschide la nevoie
+        if (lazy != null) lazy.closeChannel();
+        replace(tmp, target);
+        remember(root, file);
+    }
 
-        bw.newLine();
+    /**
+     * Muta fisierul temporar peste cel final, atomic daca sistemul de fisiere permite.
+     */
+    static void replace(Path tmp, Path target) throws IOException {
+        try {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
 
+    /**
+     * Salveaza arborele in formatul binar ({@link BinaryTreeFormat}): tip pe un byte,
+     * numar de copii si dimensiuni ca varint, nume deduplicate intr-o tabela.
+     * Scrierea este intr-o singura trecere, printr-un buffer, intr-un fisier temporar
+     * mutat apoi atomic peste cel vechi. Pozitiile retinute pentru fisierul text nu sunt afectate.
+     *
+     * @param root radacina logica
+     * @param file fisierul de iesire
+     */
+    public void saveToBinary(FsNode root, File file) throws IOException {
+        Path target = file.getAbsoluteFile().toPath();
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            new BinaryTreeFormat.Writer(Channels.newOutputStream(out)).write(root);
+            out.force(false);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        replace(tmp, target);
+    }
+
+    /**
+     * Incarca un arbore salvat cu {@link #saveToBinary(FsNode, File)}.
+     * Fisierul este citit secvential, o singura data; numele noi din tabela trec prin
+     * {@link NameDictionary}, ale carui contoare sunt resetate. Arborele nu are pozitii
+     * in fisierul text, deci urmatoarea salvare text va fi completa.
+     *
+     * @param file fisierul binar
+     * @return radacina invizibila ce contine toti driverii
+     * @throws IOException daca fisierul nu este in format binar, are alta versiune sau este corupt
+     */
+    public FsNode loadFromBinary(File file) throws IOException {
+        FsNode root = new FsNode("(root)", NodeType.FOLDER);
+        names.resetCounters();
+        closeLazy();
+        try (InputStream in = new FileInputStream(file)) {
+            new BinaryTreeFormat.Reader(in, names).read(root);
+        }
+        remember(null, file);
+        return root;
+    }
+
+    /**
+     * Converteste un fisier structura.txt in formatul binar.
+     *
+     * @param text   fisierul text de intrare
+     * @param binary fisierul binar de iesire
+     */
+    public static void convertTextToBinary(File text, File binary) throws IOException {
+        FileTreeRepository repo = new FileTreeRepository();
+        repo.saveToBinary(repo.loadFromTextParallel(text), binary);
+    }
+
+    /**
+     * Converteste un fisier binar in formatul text structura.txt.
+     *
+     * @param binary fisierul binar de intrare
+     * @param text   fisierul text de iesire
+     */
+    public static void convertBinaryToText(File binary, File text) throws IOException {
+        FileTreeRepository repo = new FileTreeRepository();
+        repo.saveToText(repo.loadFromBinary(binary), text);
+    }
+
+    /**
+     * Scrie copiii unui nod: subarborii curati cu pozitie cunoscuta sunt copiati din
+     * fisierul vechi, ceilalti sunt serializati (recursiv, cu aceeasi regula).
+     * Actualizeaza pozitiile nodurilor scrise fata de noul fisier.
+     *
+     * @param n        nodul parinte
+     * @param lvl      nivelul de indentare al copiilor
+     * @param oldStart pozitia liniei lui {@code n} in fisierul vechi, sau -1 daca nu se cunoaste
+     * @param newStart pozitia liniei lui {@code n} in fisierul nou
+     * @param w        destinatia
+     */
+    private void writeChildren(FsNode n, int lvl, long oldStart, long newStart, RangeWriter w) throws IOException {
         for (FsNode ch : n.getChildren()) {
-            writeRec(ch, lvl + 1, bw);
+            long start = w.position();
+            long oldChild = oldStart >= 0 && ch.getTextOffset() >= 0 ? oldStart + ch.getTextOffset() : -1;
+            if (oldChild >= 0 && !ch.isTextDirty()) {
+                if (w.copy(oldChild, ch.getTextLength())) terminateLastLine(ch);
+            } else {
+                w.line(lvl, ch);
+                writeChildren(ch, lvl + 1, oldChild, start, w);
+            }
+            ch.setTextRange(start - newStart, w.position() - start);
         }
     }
 
     /**
-     * Numarul de spatii de la inceputul liniei.
+     * Dupa ce intervalul copiat al unui nod a fost completat cu separatorul de linie, lungimile
+     * retinute ale descendentilor incarcati care se terminau odata cu el (ultimul copil, ultimul
+     * copil al acestuia etc.) cresc si ele, ca o copiere ulterioara a lor sa includa separatorul.
      *
-     * @param s linia curenta
-     * @return numarul de spatii
+     * @param n nodul copiat; lungimea lui este actualizata de apelant
      */
-    private int countLeadingSpaces(String s) {
-        int i = 0;
-        while (i < s.length() && s.charAt(i) == ' ') i++;
-        return i;
+    private static void terminateLastLine(FsNode n) {
+        for (List<FsNode> kids = n.getLoadedChildren(); !kids.isEmpty(); ) {
+            FsNode last = kids.get(kids.size() - 1);
+            last.setTextRange(last.getTextOffset(), last.getTextLength() + RangeWriter.SEPARATOR.length);
+            kids = last.getLoadedChildren();
+        }
     }
 
     /**
-     * Deduce tipul nodului dupa nume.
+     * Destinatia unei salvari: linii noi, codificate UTF-8 intr-un buffer, si intervale
+     * copiate din fisierul vechi prin {@link FileChannel#transferTo}. Intervalele alaturate
+     * din fisierul vechi sunt comasate intr-o singura copiere.
+     * <p>
+     * Daca fisierul vechi nu se termina cu un separator de linie, intervalul care ajunge la
+     * sfarsitul lui este completat cu separatorul, ca linia urmatoare sa nu fie lipita de el.
+     */
+    private static final class RangeWriter {
+
+        private static final byte[] SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+        private final FileChannel out;
+        private final FileChannel old;
+        private final ByteBuffer buf = ByteBuffer.allocate(WRITE_BUFFER);
+        private final StringBuilder sb = new StringBuilder();
+        private long position;
+        private long copyFrom = -1;
+        private long copyLength;
+
+        /**
+         * Lungimea fisierului vechi, daca ultima lui linie nu are separator; altfel -1.
+         */
+        private final long unterminatedEnd;
+
+        RangeWriter(FileChannel out, FileChannel old) throws IOException {
+            this.out = out;
+            this.old = old;
+            this.unterminatedEnd = old != null && !endsWithNewline(old) ? old.size() : -1;
+        }
+
+        private static boolean endsWithNewline(FileChannel ch) throws IOException {
+            long size = ch.size();
+            if (size == 0) return true;
+            ByteBuffer last = ByteBuffer.allocate(1);
+            while (last.hasRemaining()) {
+                if (ch.read(last, size - 1) < 0) throw new IOException("Unexpected end of previous structure file");
+            }
+            return last.get(0) == '\n';
+        }
+
+        long position() {
+            return position;
+        }
+
+        /**
+         * Scrie linia unui nod: indentare, nume si, pentru fisiere, //dimensiune.
+         */
+        void line(int lvl, FsNode n) throws IOException {
+            sb.setLength(0);
+            sb.append("   ".repeat(lvl)).append(n.getName());
+            if (n.getType() == NodeType.FILE) sb.append("//").append(n.getSizeBytes());
+            byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+            put(bytes);
+            put(SEPARATOR);
+        }
+
+        /**
+         * Copiaza un interval din fisierul vechi (amanat, pentru comasarea cu urmatorul).
+         *
+         * @return true daca intervalul ajungea la sfarsitul fisierului vechi fara separator
+         *         si separatorul a fost adaugat
+         */
+        boolean copy(long from, long length) throws IOException {
+            if (copyFrom >= 0 && copyFrom + copyLength == from) {
+                copyLength += length;
+            } else {
+                flushCopy();
+                copyFrom = from;
+                copyLength = length;
+            }
+            position += length;
+            if (from + length != unterminatedEnd) return false;
+            put(SEPARATOR);
+            return true;
+        }
+
+        void flush() throws IOException {
+            flushCopy();
+            flushBuffer();
+        }
+
+        private void put(byte[] bytes) throws IOException {
+            flushCopy();
+            int off = 0;
+            while (off < bytes.length) {
+                if (!buf.hasRemaining()) flushBuffer();
+                int k = Math.min(buf.remaining(), bytes.length - off);
+                buf.put(bytes, off, k);
+                off += k;
+            }
+            position += bytes.length;
+        }
+
+        private void flushBuffer() throws IOException {
+            buf.flip();
+            while (buf.hasRemaining()) out.write(buf);
+            buf.clear();
+        }
+
+        private void flushCopy() throws IOException {
+            if (copyFrom < 0) return;
+            flushBuffer();
+            long done = 0;
+            while (done < copyLength) {
+                long k = old.transferTo(copyFrom + done, copyLength - done, out);
+                if (k <= 0) throw new IOException("Unexpected end of previous structure file");
+                done += k;
+            }
+            copyFrom = -1;
+        }
+    }
+
+    /**
+     * Scrie recursiv nodurile unui snapshot cu indentarea corespunzatoare.
      *
-     * @param name numele nodului
-     * @return tipul nodului
+     * @param n   nodul curent
+     * @param lvl nivelul de indentare
+     * @param bw  writer
      */
-    private NodeType guessType(String name) {
-        if (name.endsWith(":")) return NodeType.DRIVE;
-        if (name.contains(".")) return NodeType.FILE;
-        return NodeType.FOLDER;
+    private void writeRec(SnapshotNode n, int lvl, BufferedWriter bw) throws IOException {
+        bw.write("   ".repeat(lvl));
+        bw.write(n.getName());
+        if (n.getType() == NodeType.FILE) {
+            bw.write("//");
+            bw.write(Long.toString(n.getSizeBytes()));
+        }
+        bw.newLine();
+        for (SnapshotNode ch : n.getChildren()) {
+            writeRec(ch, lvl + 1, bw);
+        }
     }
 
 }
@@ -0,0 +1,197 @@
+package io;
+
+import model.ChildLoader;
+import model.FsNode;
+import model.NodeType;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Incarcatorul la cerere al unui fisier structura.txt: citeste copiii directi ai unui folder
+ * din fisierul mapat in memorie, sarind peste subarborii copiilor cu ajutorul
+ * {@link StructureIndex}. Folderele citite sunt la randul lor legate de acest incarcator,
+ * cu totalurile din index.
+ * <p>
+ * Citirea este permisa doar cat timp fisierul corespunde arborelui (aceeasi amprenta ca la
+ * ultima incarcare sau salvare prin {@link FileTreeRepository}); dupa o salvare indexul este
+ * reconstruit la prima citire. Fiecare fir are parserul lui si un dictionar de nume local,
+ * legat de cel al repository-ului.
+ */
+final class LazyStructureLoader extends ChildLoader {
+
+    /**
+     * Fractiunea din heap-ul maxim peste care {@link #shouldEvict()} cere eliberarea copiilor.
+     */
+    static final double EVICT_RATIO = 0.75;
+
+    private final FileTreeRepository repository;
+    private final File file;
+    private final File indexFile;
+    private final NameDictionary names;
+    private FsNode root;
+
+    private StructureIndex index;
+    private FileChannel channel;
+
+    /**
+     * Creste la fiecare redeschidere a fisierului; parserele firelor sunt recreate.
+     */
+    private int generation;
+
+    private final ThreadLocal<Reader> readers = new ThreadLocal<>();
+
+    private static final class Reader {
+        final int generation;
+        final StructureParser parser;
+
+        Reader(int generation, StructureParser parser) {
+            this.generation = generation;
+            this.parser = parser;
+        }
+    }
+
+    LazyStructureLoader(FileTreeRepository repository, File file, File indexFile,
+                        StructureIndex index, NameDictionary names) {
+        this.repository = repository;
+        this.file = file.getAbsoluteFile();
+        this.indexFile = indexFile;
+        this.index = index;
+        this.names = names;
+    }
+
+    /**
+     * Creeaza radacina invizibila, legata de acest incarcator, cu totalurile din index.
+     */
+    FsNode createRoot() {
+        root = new FsNode("(root)", NodeType.FOLDER);
+        root.setChildLoader(this, index.rootSize(), index.rootFiles(), index.rootFolders(),
+                index.rootNodes(), index.rootHeight());
+        return root;
+    }
+
+    @Override
+    protected List<FsNode> read(FsNode folder, long start) {
+        try {
+            return readChildren(folder, start);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private List<FsNode> readChildren(FsNode folder, long start) throws IOException {
+        StructureIndex idx;
+        StructureParser p;
+        synchronized (this) {
+            ensureCurrent();
+            idx = index;
+            p = parser();
+        }
+        long size = root.getTextLength() >= 0 ? root.getTextLength() : file.length();
+        long from, to, parentStart;
+        int level;
+        if (folder == root) {
+            from = 0;
+            to = size;
+            parentStart = 0;
+            level = 0;
+        } else {
+            long r = start < 0 ? -1 : idx.find(start);
+            if (r < 0) throw new IOException("No index entry for folder " + folder.getName());
+            from = p.readLineAt(start, size);
+            level = p.lineLevel() + 1;
+            to = start + idx.length(r);
+            parentStart = start;
+        }
+
+        List<FsNode> kids = new ArrayList<>();
+        FsNode last = null;
+        long lastStart = 0;
+        long pos = from;
+        while (pos < to) {
+            long lineStart = pos;
+            pos = p.readLineAt(pos, to);
+            if (p.lineBlank()) continue;
+            if (p.lineLevel() != level) throw new IOException("Structure file does not match its index: " + file);
+            if (last != null) last.setTextRange(lastStart - parentStart, lineStart - lastStart);
+            String name = p.lineName();
+            NodeType type = p.lineType();
+            FsNode node;
+            if (type == NodeType.FILE) {
+                node = new FsNode(name, type, p.lineSize());
+                last = node;
+                lastStart = lineStart;
+            } else {
+                long r = idx.find(lineStart);
+                if (r < 0) throw new IOException("Structure file does not match its index: " + file);
+                node = new FsNode(name, type);
+                node.setChildLoader(this, idx.size(r), idx.files(r), idx.folders(r), idx.nodes(r), idx.height(r));
+                node.setTextRange(lineStart - parentStart, idx.length(r));
+                pos = lineStart + idx.length(r);
+                last = null;
+            }
+            kids.add(node);
+        }
+        if (last != null) last.setTextRange(lastStart - parentStart, to - lastStart);
+        return kids;
+    }
+
+    /**
+     * Verifica faptul ca fisierul corespunde arborelui si reconstruieste indexul daca fisierul
+     * a fost rescris de o salvare. Apelata sub lock-ul incarcatorului.
+     */
+    private void ensureCurrent() throws IOException {
+        if (!repository.isLayoutOf(root, file)) {
+            throw new IOException("Structure file changed on disk: " + file);
+        }
+        if (!index.matches(file)) {
+            StructureIndex rebuilt = StructureIndex.build(file, indexFile, new NameDictionary(names));
+            if (rebuilt == null) throw new IOException("Structure file is no longer well formed: " + file);
+            index = rebuilt;
+            fileRewritten();
+            closeChannel();
+        }
+        if (channel == null) {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            generation++;
+        }
+    }
+
+    /**
+     * Parserul firului curent, recreat dupa redeschiderea fisierului.
+     */
+    private StructureParser parser() {
+        Reader r = readers.get();
+        if (r == null || r.generation != generation) {
+            r = new Reader(generation, new StructureParser(channel, new NameDictionary(names)));
+            readers.set(r);
+        }
+        return r.parser;
+    }
+
+    /**
+     * Inchide fisierul (ex: inainte ca o salvare sa il inlocuiasca); este redeschis la nevoie.
+     */
+    synchronized void closeChannel() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * Memoria este considerata putina cand heap-ul folosit depaseste {@link #EVICT_RATIO}
+     * din cel maxim; eliberarea are sens doar cat timp copiii pot fi recititi din fisier.
+     */
+    @Override
+    public boolean shouldEvict() {
+        Runtime rt = Runtime.getRuntime();
+        long used = rt.totalMemory() - rt.freeMemory();
+        return used > rt.maxMemory() * EVICT_RATIO && repository.isLayoutOf(root, file);
+    }
+}
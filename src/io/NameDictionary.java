@@ -0,0 +1,264 @@
+package io;
+
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Dictionar de nume folosit la incarcarea arborelui, pentru a nu pastra
+ * in memorie cate un {@link String} separat pentru fiecare aparitie a
+ * aceluiasi nume (ex: "index.html", "thumbs.db", "node_modules").
+ * <p>
+ * Tabela foloseste adresare deschisa cu referinte slabe: un nume care nu mai
+ * este folosit de niciun nod poate fi colectat de GC, iar slotul lui este refolosit.
+ * Tabela este limitata la {@code maxCapacity} sloturi; cand o zona este plina,
+ * intrarea de pe pozitia de baza este inlocuita (dictionarul este un cache, nu o garantie).
+ * <p>
+ * Dictionarul numara aparitiile gasite deja (hits) si numele noi (misses),
+ * pentru a putea raporta rata de deduplicare a unei incarcari.
+ * Clasa nu este thread-safe; firele care incarca in paralel folosesc fiecare un dictionar
+ * local creat cu {@link #NameDictionary(NameDictionary)}, care trimite numele noi in
+ * dictionarul comun.
+ */
+public class NameDictionary {
+
+    /**
+     * Numarul maxim de sloturi verificate la o cautare.
+     */
+    private static final int MAX_PROBE = 8;
+
+    /**
+     * Limita superioara a numarului de sloturi din tabela.
+     */
+    private final int maxCapacity;
+
+    /**
+     * Dictionarul comun in care sunt cautate numele lipsa, sau null.
+     */
+    private final NameDictionary shared;
+
+    /**
+     * Tabela de nume canonice.
+     */
+    private WeakReference<String>[] table;
+
+    /**
+     * Hash-ul numelui din fiecare slot; o cautare dereferentiaza doar sloturile cu hash egal.
+     */
+    private int[] hashes;
+
+    /**
+     * Numarul de sloturi ocupate (inclusiv referinte deja colectate de GC).
+     */
+    private int used;
+
+    /**
+     * Numarul de nume gasite deja in dictionar.
+     */
+    private long hits;
+
+    /**
+     * Numarul de nume noi adaugate in dictionar.
+     */
+    private long misses;
+
+    /**
+     * Creeaza un dictionar cu limita implicita de 1M sloturi.
+     */
+    public NameDictionary() {
+        this(1 << 20);
+    }
+
+    /**
+     * Creeaza un dictionar cu o limita data de sloturi.
+     *
+     * @param maxCapacity numarul maxim de sloturi (rotunjit la o putere a lui 2)
+     */
+    public NameDictionary(int maxCapacity) {
+        this(maxCapacity, null);
+    }
+
+    /**
+     * Creeaza un dictionar local pentru un fir de incarcare. Numele lipsa sunt cautate in
+     * {@code shared} (sub lock-ul lui), astfel incat instantele returnate sunt cele comune,
+     * iar dictionarul comun este accesat doar o data pentru fiecare nume distinct din bucata.
+     * Contoarele locale se aduna apoi in cel comun cu {@link #addCounters(NameDictionary)}.
+     *
+     * @param shared dictionarul comun
+     */
+    NameDictionary(NameDictionary shared) {
+        this(1 << 16, shared);
+    }
+
+    private NameDictionary(int maxCapacity, NameDictionary shared) {
+        this.maxCapacity = Integer.highestOneBit(Math.max(64, maxCapacity));
+        this.table = newTable(Math.min(1024, this.maxCapacity));
+        this.hashes = new int[table.length];
+        this.shared = shared;
+    }
+
+    /**
+     * Returneaza instanta canonica pentru un nume.
+     *
+     * @param name numele citit din fisier
+     * @return instanta deja existenta in dictionar, sau {@code name} daca este nou
+     */
+    public String intern(String name) {
+        return lookup(name.hashCode(), name, null, 0, 0);
+    }
+
+    /**
+     * Returneaza instanta canonica pentru un nume dat ca bytes UTF-8, fara a construi
+     * un {@link String} daca numele este deja in dictionar. Pentru numele ASCII hash-ul
+     * si comparatia se fac direct pe bytes; celelalte sunt decodate si trec prin
+     * {@link #intern(String)}.
+     *
+     * @param buf bytes-ii numelui
+     * @param off pozitia de inceput
+     * @param len numarul de bytes
+     * @return instanta canonica
+     */
+    public String intern(byte[] buf, int off, int len) {
+        int h = 0;
+        for (int i = 0; i < len; i++) {
+            byte b = buf[off + i];
+            if (b < 0) return intern(new String(buf, off, len, StandardCharsets.UTF_8));
+            h = 31 * h + b;
+        }
+        return lookup(h, null, buf, off, len);
+    }
+
+    /**
+     * Cauta numele dat fie ca {@code name}, fie ca bytes ASCII (cand {@code name} este null),
+     * si il adauga daca lipseste.
+     */
+    private String lookup(int h, String name, byte[] buf, int off, int len) {
+        int mask = table.length - 1;
+        int home = spread(h) & mask;
+        int free = -1;
+        for (int p = 0; p < MAX_PROBE; p++) {
+            int i = (home + p) & mask;
+            WeakReference<String> ref = table[i];
+            if (ref == null) {
+                if (free < 0) free = i;
+                break;
+            }
+            if (hashes[i] != h) continue;
+            String s = ref.get();
+            if (s == null) {
+                if (free < 0) free = i;
+            } else if (name != null ? s.equals(name) : sameAscii(s, buf, off, len)) {
+                hits++;
+                return s;
+            }
+        }
+        if (name == null) name = new String(buf, off, len, StandardCharsets.ISO_8859_1);
+        if (shared != null) {
+            synchronized (shared) {
+                name = shared.intern(name);
+            }
+        }
+        misses++;
+        if (free < 0) {
+            free = home;
+        } else if (table[free] == null) {
+            used++;
+        }
+        table[free] = new WeakReference<>(name);
+        hashes[free] = h;
+        if (used * 2 > table.length && table.length < maxCapacity) rehash();
+        return name;
+    }
+
+    private static boolean sameAscii(String s, byte[] buf, int off, int len) {
+        if (s.length() != len) return false;
+        for (int i = 0; i < len; i++) {
+            if (s.charAt(i) != buf[off + i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return numarul de nume gasite deja in dictionar
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return numarul de nume noi
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Rata de deduplicare: ce procent din nume au fost gasite deja in dictionar.
+     *
+     * @return valoare intre 0 si 1
+     */
+    public double hitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * Aduna in acest dictionar numele gasite local de un dictionar de fir; numele trimise
+     * mai departe au fost deja numarate aici.
+     *
+     * @param local dictionarul local, creat cu acest dictionar ca dictionar comun
+     */
+    void addCounters(NameDictionary local) {
+        hits += local.hits;
+    }
+
+    /**
+     * Reseteaza contoarele, fara a goli dictionarul.
+     */
+    public void resetCounters() {
+        hits = 0;
+        misses = 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("names: %d lookups, %d deduplicated (%.1f%%)",
+                hits + misses, hits, hitRate() * 100);
+    }
+
+    /**
+     * Dubleaza tabela, pastrand doar referintele inca valide.
+     */
+    private void rehash() {
+        WeakReference<String>[] old = table;
+        int[] oldHashes = hashes;
+        table = newTable(old.length * 2);
+        hashes = new int[table.length];
+        used = 0;
+        int mask = table.length - 1;
+        for (int k = 0; k < old.length; k++) {
+            WeakReference<String> ref = old[k];
+            if (ref == null || ref.refersTo(null)) continue;
+            int h = oldHashes[k];
+            int home = spread(h) & mask;
+            for (int p = 0; p < MAX_PROBE; p++) {
+                int i = (home + p) & mask;
+                if (table[i] == null) {
+                    table[i] = ref;
+                    hashes[i] = h;
+                    used++;
+                    break;
+                }
+            }
+        }
+    }
+
+    private static int spread(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static WeakReference<String>[] newTable(int size) {
+        return (WeakReference<String>[]) new WeakReference[size];
+    }
+}
@@ -0,0 +1,307 @@
+package io;
+
+import model.NodeType;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Indexul lateral al unui fisier structura.txt ({@code structura.txt.idx}), folosit de
+ * incarcarea la cerere ({@link FileTreeRepository#loadLazy(File)}).
+ * <p>
+ * Contine cate o inregistrare pentru fiecare folder si drive, in ordinea liniilor:
+ * pozitia liniei, lungimea textului subarborelui si totalurile lui (dimensiune, fisiere,
+ * foldere, noduri, inaltime), plus totalurile radacinii invizibile in antet. Cu el, copiii
+ * unui folder pot fi cititi sarind direct peste subarborii copiilor, iar totalurile sunt
+ * corecte fara a incarca subarborii.
+ * <p>
+ * Antetul retine lungimea si data modificarii fisierului text; un index care nu mai
+ * corespunde este reconstruit. Inregistrarile au dimensiune fixa si sunt sortate dupa pozitie,
+ * deci cautarea este binara, direct in fisierul mapat in memorie (pe ferestre).
+ */
+final class StructureIndex {
+
+    private static final int MAGIC = 0x46535449; // "FSTI"
+    private static final int VERSION = 1;
+
+    /**
+     * magic, versiune, lungimea si data textului, numarul de inregistrari, totalurile radacinii.
+     */
+    private static final int HEADER = 4 + 4 + 8 + 8 + 8 + 8 + 4 * 4;
+
+    /**
+     * pozitie, lungime, dimensiune, fisiere, foldere, noduri, inaltime.
+     */
+    private static final int RECORD = 8 + 8 + 8 + 4 * 4;
+
+    /**
+     * Numarul de inregistrari dintr-o fereastra mapata.
+     */
+    private static final int WINDOW_RECORDS = 1 << 24;
+
+    private final long textLength;
+    private final long textModified;
+    private final long count;
+    private final long rootSize;
+    private final int rootFiles, rootFolders, rootNodes, rootHeight;
+    private final MappedByteBuffer[] windows;
+
+    private StructureIndex(ByteBuffer header, MappedByteBuffer[] windows) {
+        this.textLength = header.getLong(8);
+        this.textModified = header.getLong(16);
+        this.count = header.getLong(24);
+        this.rootSize = header.getLong(32);
+        this.rootFiles = header.getInt(40);
+        this.rootFolders = header.getInt(44);
+        this.rootNodes = header.getInt(48);
+        this.rootHeight = header.getInt(52);
+        this.windows = windows;
+    }
+
+    /**
+     * Deschide indexul existent, daca acesta corespunde fisierului text.
+     *
+     * @param indexFile fisierul indexului
+     * @param text      fisierul text
+     * @return indexul sau null daca lipseste, are alt format sau este depasit
+     */
+    static StructureIndex open(File indexFile, File text) throws IOException {
+        if (!indexFile.isFile()) return null;
+        try (FileChannel ch = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+            if (ch.size() < HEADER) return null;
+            ByteBuffer h = ByteBuffer.allocate(HEADER);
+            while (h.hasRemaining() && ch.read(h, h.position()) > 0) { }
+            if (h.getInt(0) != MAGIC || h.getInt(4) != VERSION) return null;
+            if (h.getLong(8) != text.length() || h.getLong(16) != text.lastModified()) return null;
+            long count = h.getLong(24);
+            if (ch.size() != HEADER + count * RECORD) return null;
+            MappedByteBuffer[] windows = new MappedByteBuffer[(int) ((count + WINDOW_RECORDS - 1) / WINDOW_RECORDS)];
+            for (int w = 0; w < windows.length; w++) {
+                long first = (long) w * WINDOW_RECORDS;
+                long n = Math.min(WINDOW_RECORDS, count - first);
+                windows[w] = ch.map(FileChannel.MapMode.READ_ONLY, HEADER + first * RECORD, n * RECORD);
+            }
+            return new StructureIndex(h, windows);
+        }
+    }
+
+    /**
+     * Construieste indexul pentru fisierul text, intr-o singura trecere, si il scrie in
+     * {@code indexFile} (printr-un fisier temporar mutat atomic).
+     * <p>
+     * Indexul se construieste doar pentru fisierele bine formate (prima linie pe nivelul 0,
+     * fiecare linie coboara cel mult un nivel, fisierele nu au copii); pentru celelalte
+     * incarcarea la cerere nu ar da acelasi arbore ca {@link FileTreeRepository#loadFromText(File)}.
+     *
+     * @param text      fisierul text
+     * @param indexFile fisierul indexului
+     * @param names     dictionarul de nume folosit de parser
+     * @return indexul sau null daca fisierul nu este bine format
+     */
+    static StructureIndex build(File text, File indexFile, NameDictionary names) throws IOException {
+        long length = text.length(), modified = text.lastModified();
+        Builder b = new Builder();
+        try (FileChannel ch = FileChannel.open(text.toPath(), StandardOpenOption.READ)) {
+            long size = ch.size();
+            StructureParser p = new StructureParser(ch, names);
+            int prev = -1;
+            long pos = 0;
+            while (pos < size) {
+                long start = pos;
+                pos = p.readLineAt(pos, size);
+                if (p.lineBlank()) continue;
+                int level = p.lineLevel();
+                if (level > prev + 1) return null;
+                b.closeTo(level, start);
+                // linia anterioara, de pe nivelul parintelui, era un fisier
+                if (b.depth < level) return null;
+                if (p.lineType() == NodeType.FILE) b.file(p.lineSize());
+                else b.open(start, p.lineType());
+                prev = level;
+            }
+            b.closeTo(0, size);
+        }
+
+        Path target = indexFile.getAbsoluteFile().toPath();
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+            buf.putInt(MAGIC).putInt(VERSION).putLong(length).putLong(modified).putLong(b.count)
+                    .putLong(b.rootSize).putInt(b.rootFiles).putInt(b.rootFolders + 1)
+                    .putInt(b.rootNodes + 1).putInt(b.rootHeight);
+            for (int i = 0; i < b.count; i++) {
+                if (buf.remaining() < RECORD) {
+                    buf.flip();
+                    while (buf.hasRemaining()) out.write(buf);
+                    buf.clear();
+                }
+                buf.putLong(b.offset[i]).putLong(b.length[i]).putLong(b.size[i])
+                        .putInt(b.files[i]).putInt(b.folders[i]).putInt(b.nodes[i]).putInt(b.height[i]);
+            }
+            buf.flip();
+            while (buf.hasRemaining()) out.write(buf);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        FileTreeRepository.replace(tmp, target);
+        return open(indexFile, text);
+    }
+
+    /**
+     * Acumulatorii construirii: inregistrarile in ordinea liniilor si stiva folderelor deschise.
+     */
+    private static final class Builder {
+        int count;
+        long[] offset = new long[1024], length = new long[1024], size = new long[1024];
+        int[] files = new int[1024], folders = new int[1024], nodes = new int[1024], height = new int[1024];
+
+        int[] stack = new int[64];
+        int depth;
+
+        long rootSize;
+        int rootFiles, rootFolders, rootNodes, rootHeight;
+
+        void open(long start, NodeType type) {
+            if (count == offset.length) {
+                int n = count * 2;
+                offset = Arrays.copyOf(offset, n);
+                length = Arrays.copyOf(length, n);
+                size = Arrays.copyOf(size, n);
+                files = Arrays.copyOf(files, n);
+                folders = Arrays.copyOf(folders, n);
+                nodes = Arrays.copyOf(nodes, n);
+                height = Arrays.copyOf(height, n);
+            }
+            offset[count] = start;
+            folders[count] = type == NodeType.FOLDER ? 1 : 0;
+            nodes[count] = 1;
+            if (depth == stack.length) stack = Arrays.copyOf(stack, depth * 2);
+            stack[depth++] = count++;
+        }
+
+        void file(long fileSize) {
+            add(fileSize, 1, 0, 1, 0);
+        }
+
+        /**
+         * Inchide folderele deschise de pe nivelurile >= level; textul lor se termina la end.
+         */
+        void closeTo(int level, long end) {
+            while (depth > level) {
+                int r = stack[--depth];
+                length[r] = end - offset[r];
+                add(size[r], files[r], folders[r], nodes[r], height[r]);
+            }
+        }
+
+        /**
+         * Aduna totalurile unui copil in folderul deschis din varful stivei (sau in radacina).
+         */
+        private void add(long s, int f, int d, int n, int h) {
+            if (depth == 0) {
+                rootSize += s;
+                rootFiles += f;
+                rootFolders += d;
+                rootNodes += n;
+                rootHeight = Math.max(rootHeight, h + 1);
+            } else {
+                int p = stack[depth - 1];
+                size[p] += s;
+                files[p] += f;
+                folders[p] += d;
+                nodes[p] += n;
+                height[p] = Math.max(height[p], h + 1);
+            }
+        }
+    }
+
+    /**
+     * @return true daca indexul corespunde starii curente a fisierului text
+     */
+    boolean matches(File text) {
+        return text.length() == textLength && text.lastModified() == textModified;
+    }
+
+    /**
+     * Cauta inregistrarea folderului de pe o linie data.
+     *
+     * @param lineStart pozitia liniei
+     * @return numarul inregistrarii sau -1
+     */
+    long find(long lineStart) {
+        long lo = 0, hi = count - 1;
+        while (lo <= hi) {
+            long mid = (lo + hi) >>> 1;
+            long off = offset(mid);
+            if (off < lineStart) lo = mid + 1;
+            else if (off > lineStart) hi = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    long offset(long r) {
+        return window(r).getLong(pos(r));
+    }
+
+    long length(long r) {
+        return window(r).getLong(pos(r) + 8);
+    }
+
+    long size(long r) {
+        return window(r).getLong(pos(r) + 16);
+    }
+
+    int files(long r) {
+        return window(r).getInt(pos(r) + 24);
+    }
+
+    int folders(long r) {
+        return window(r).getInt(pos(r) + 28);
+    }
+
+    int nodes(long r) {
+        return window(r).getInt(pos(r) + 32);
+    }
+
+    int height(long r) {
+        return window(r).getInt(pos(r) + 36);
+    }
+
+    long rootSize() {
+        return rootSize;
+    }
+
+    int rootFiles() {
+        return rootFiles;
+    }
+
+    int rootFolders() {
+        return rootFolders;
+    }
+
+    int rootNodes() {
+        return rootNodes;
+    }
+
+    int rootHeight() {
+        return rootHeight;
+    }
+
+    private MappedByteBuffer window(long r) {
+        return windows[(int) (r / WINDOW_RECORDS)];
+    }
+
+    private static int pos(long r) {
+        return (int) (r % WINDOW_RECORDS) * RECORD;
+    }
+}
@@ -0,0 +1,428 @@
+package io;
+
+import model.FsNode;
+import model.NodeType;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Parser pentru formatul text al structurii, care lucreaza direct pe bytes-ii UTF-8 ai
+ * fisierului mapat in memorie ({@link FileChannel#map}).
+ * <p>
+ * Indentarea, separatorul {@code //} si cifrele dimensiunii sunt gasite prin scanarea
+ * bytes-ilor, fara linii temporare, {@code substring} sau {@code trim}: singurul obiect
+ * creat pe linie este nodul, iar numele trece prin {@link NameDictionary#intern(byte[], int, int)},
+ * care nu construieste un {@link String} pentru numele deja cunoscute. Parintele curent
+ * pe fiecare nivel este tinut intr-un vector simplu, nu intr-o tabela cu chei boxed.
+ * <p>
+ * Rezultatul este identic cu cel al vechiului parser bazat pe {@code readLine}: liniile
+ * goale sunt sarite, terminatorii sunt {@code \n} sau {@code \r\n}, numele si
+ * dimensiunea sunt taiate de caracterele de control si spatii, iar o dimensiune invalida
+ * devine 0. Fisierul este mapat pe ferestre de cel mult {@link #WINDOW} bytes, deci nu
+ * exista limita de 2 GB.
+ * <p>
+ * Parserul retine si pozitiile subarborilor in fisier ({@link FsNode#setTextRange}),
+ * folosite de salvarea incrementala. Clasa nu este thread-safe; fiecare fir are instanta lui.
+ * Pentru incarcarea paralela, {@link #split(long)} gaseste granitele subarborilor de pe primul
+ * nivel, iar fiecare bucata este citita de un parser separat, cu nodurile de varf detasate.
+ */
+final class StructureParser {
+
+    /**
+     * Dimensiunea maxima a unei ferestre mapate.
+     */
+    static final long WINDOW = 1L << 28;
+
+    private final FileChannel channel;
+    private final NameDictionary names;
+
+    private MappedByteBuffer buf;
+    private long bufStart;
+    private long bufEnd;
+
+    /**
+     * Inceputul liniei curente; o fereastra noua incepe de aici, ca toata linia sa fie in ea.
+     */
+    private long lineAnchor;
+
+    private byte[] scratch = new byte[256];
+
+    /**
+     * Nodul curent de pe fiecare nivel (parintele liniilor de pe nivelul urmator).
+     */
+    private FsNode[] levels = new FsNode[64];
+
+    /**
+     * Lantul nodurilor deschise, cu pozitiile liniilor lor.
+     */
+    private FsNode[] open = new FsNode[64];
+    private long[] openStart = new long[64];
+    private int depth;
+    private boolean contiguous;
+
+    /**
+     * Daca nu este null, copiii directi ai radacinii sunt adunati aici in loc sa fie atasati.
+     */
+    private List<FsNode> detached;
+
+    private long lines;
+
+    /**
+     * Campurile ultimei linii citite de {@link #readFields}; numele este in {@link #scratch}.
+     */
+    private boolean lineBlank;
+    private int lineLevel;
+    private NodeType lineType;
+    private long lineSize;
+    private int nameLength;
+
+    /**
+     * @param channel fisierul de citit
+     * @param names   dictionarul de nume
+     */
+    StructureParser(FileChannel channel, NameDictionary names) {
+        this.channel = channel;
+        this.names = names;
+    }
+
+    /**
+     * Citeste liniile din intervalul [from, to) si ataseaza nodurile sub {@code root}.
+     * Liniile de pe nivelul {@code rootLevel} devin copii directi ai lui {@code root}.
+     * Intervalul trebuie sa inceapa la inceput de linie; la final, subarborii sunt inchisi
+     * la pozitia {@code to}, iar pozitia lui {@code root} este considerata {@code from}.
+     *
+     * @param root      parintele liniilor de pe nivelul de baza
+     * @param rootLevel nivelul de indentare al copiilor directi ai lui root
+     * @param from      pozitia de inceput
+     * @param to        pozitia de sfarsit (exclusiv)
+     * @return true daca pozitiile retinute sunt valide (subarborii sunt contigui)
+     */
+    boolean parse(FsNode root, int rootLevel, long from, long to) throws IOException {
+        return parse(root, rootLevel, from, from, to, null);
+    }
+
+    /**
+     * Ca {@link #parse(FsNode, int, long, long)}, dar pozitia liniei lui {@code root} este data
+     * separat ({@code rootStart}), iar daca {@code detached} nu este null, copiii directi ai lui
+     * root nu sunt atasati, ci adaugati in lista, in ordinea din fisier. Pozitiile lor sunt
+     * calculate fata de {@code rootStart}; {@link FsNode#addChild} le sterge, deci apelantul
+     * trebuie sa le restaureze dupa atasare. Root este folosit atunci doar ca reper si nu este
+     * modificat.
+     *
+     * @param root      parintele liniilor de pe nivelul de baza
+     * @param rootLevel nivelul de indentare al copiilor directi ai lui root
+     * @param rootStart pozitia liniei lui root (0 pentru radacina invizibila)
+     * @param from      pozitia de inceput
+     * @param to        pozitia de sfarsit (exclusiv)
+     * @param detached  lista copiilor directi detasati, sau null
+     * @return true daca pozitiile retinute sunt valide (subarborii sunt contigui)
+     */
+    boolean parse(FsNode root, int rootLevel, long rootStart, long from, long to,
+                  List<FsNode> detached) throws IOException {
+        Arrays.fill(levels, null);
+        ensureLevel(rootLevel);
+        levels[rootLevel] = root;
+        open[0] = root;
+        openStart[0] = rootStart;
+        depth = 1;
+        contiguous = true;
+        lines = 0;
+        this.detached = detached;
+
+        long pos = from;
+        while (pos < to) {
+            long lineStart = pos;
+            long end = lineEnd(lineStart, to);
+            pos = end < to ? end + 1 : end;
+            if (end > lineStart && byteAt(end - 1) == '\r') end--;
+            parseLine(root, lineStart, end);
+        }
+        if (contiguous) {
+            while (depth > 1) close(--depth, to);
+            open[0] = null;
+        }
+        this.detached = null;
+        return contiguous;
+    }
+
+    /**
+     * Granitele de impartire a unui fisier pentru incarcarea paralela.
+     */
+    static final class Split {
+
+        /**
+         * Nivelul liniilor de la care incep bucatile (0 sau 1).
+         */
+        final int level;
+
+        /**
+         * Pozitia liniei parintelui lor: 0 pentru drive-uri, pozitia drive-ului pentru nivelul 1.
+         */
+        final long parentStart;
+
+        /**
+         * Pozitiile liniilor de pe nivelul {@link #level}, in ordine.
+         */
+        final long[] starts;
+
+        Split(int level, long parentStart, long[] starts) {
+            this.level = level;
+            this.parentStart = parentStart;
+            this.starts = starts;
+        }
+    }
+
+    /**
+     * Pre-scanare rapida a fisierului: gaseste liniile de pe nivelul 0 (drive-urile) sau, daca
+     * exista o singura astfel de linie, liniile de pe nivelul 1. Pentru fiecare linie se citesc
+     * doar indentarea si terminatorul.
+     * <p>
+     * Impartirea este facuta doar pentru fisierele bine formate, in care prima linie este pe
+     * nivelul 0 si fiecare linie coboara cel mult un nivel fata de precedenta; numai acolo
+     * fiecare bucata poate fi citita independent cu acelasi rezultat ca citirea secventiala.
+     *
+     * @param to lungimea fisierului
+     * @return granitele, sau null daca fisierul nu este bine format
+     */
+    Split split(long to) throws IOException {
+        long[] top = new long[16];
+        long[] second = new long[16];
+        int tops = 0, seconds = 0;
+        int prev = -1;
+        long pos = 0;
+        while (pos < to) {
+            long lineStart = pos;
+            long end = lineEnd(lineStart, to);
+            pos = end < to ? end + 1 : end;
+            long content = lineStart;
+            while (content < end && byteAt(content) == ' ') content++;
+            long first = content;
+            while (first < end && (byteAt(first) & 0xFF) <= ' ') first++;
+            if (first == end) continue;
+
+            long level = (content - lineStart) / 3;
+            if (level > prev + 1) return null;
+            prev = (int) level;
+            if (level == 0) {
+                if (tops == top.length) top = Arrays.copyOf(top, tops * 2);
+                top[tops++] = lineStart;
+            } else if (level == 1 && tops == 1) {
+                if (seconds == second.length) second = Arrays.copyOf(second, seconds * 2);
+                second[seconds++] = lineStart;
+            }
+        }
+        if (tops == 1) return new Split(1, top[0], Arrays.copyOf(second, seconds));
+        return new Split(0, 0, Arrays.copyOf(top, tops));
+    }
+
+    /**
+     * Pozitia primului {@code \n} din [from, to), sau {@code to}; cauta direct in fereastra mapata.
+     */
+    private long lineEnd(long from, long to) throws IOException {
+        lineAnchor = from;
+        long end = from;
+        while (end < to) {
+            if (end < bufStart || end >= bufEnd) map(end);
+            int i = (int) (end - bufStart);
+            int lim = (int) (Math.min(to, bufEnd) - bufStart);
+            while (i < lim && buf.get(i) != '\n') i++;
+            end = bufStart + i;
+            if (i < lim) break;
+        }
+        return end;
+    }
+
+    /**
+     * @return numarul de noduri citite de ultimul apel {@link #parse}
+     */
+    long nodeCount() {
+        return lines;
+    }
+
+    private void parseLine(FsNode root, long start, long end) throws IOException {
+        if (!readFields(start, end)) return;
+        int level = lineLevel;
+        NodeType type = lineType;
+        long size = lineSize;
+        String name = lineName();
+
+        FsNode node = type == NodeType.FILE ? new FsNode(name, type, size) : new FsNode(name, type);
+        FsNode parent = level < levels.length && levels[level] != null ? levels[level] : root;
+        if (parent == root && detached != null) detached.add(node);
+        else parent.addChild(node);
+        ensureLevel(level + 1);
+        levels[level + 1] = node;
+        lines++;
+
+        if (contiguous) {
+            while (depth > 1 && open[depth - 1] != parent) close(--depth, start);
+            if (open[depth - 1] != parent) {
+                contiguous = false;
+            } else {
+                if (depth == open.length) {
+                    open = Arrays.copyOf(open, depth * 2);
+                    openStart = Arrays.copyOf(openStart, depth * 2);
+                }
+                open[depth] = node;
+                openStart[depth++] = start;
+            }
+        }
+    }
+
+    /**
+     * Citeste linia care incepe la {@code pos}: campurile ei sunt apoi disponibile prin
+     * {@link #lineBlank()}, {@link #lineLevel()}, {@link #lineType()}, {@link #lineSize()}
+     * si {@link #lineName()}. Folosita de index si de incarcarea la cerere.
+     *
+     * @param pos inceputul liniei
+     * @param to  sfarsitul zonei citite
+     * @return inceputul liniei urmatoare
+     */
+    long readLineAt(long pos, long to) throws IOException {
+        long end = lineEnd(pos, to);
+        long next = end < to ? end + 1 : end;
+        if (end > pos && byteAt(end - 1) == '\r') end--;
+        lineBlank = !readFields(pos, end);
+        return next;
+    }
+
+    boolean lineBlank() {
+        return lineBlank;
+    }
+
+    int lineLevel() {
+        return lineLevel;
+    }
+
+    NodeType lineType() {
+        return lineType;
+    }
+
+    long lineSize() {
+        return lineSize;
+    }
+
+    /**
+     * @return numele ultimei linii citite, trecut prin dictionarul de nume
+     */
+    String lineName() {
+        return names.intern(scratch, 0, nameLength);
+    }
+
+    /**
+     * Extrage nivelul, tipul, dimensiunea si numele (in {@link #scratch}) liniei [start, end).
+     *
+     * @return false daca linia este goala
+     */
+    private boolean readFields(long start, long end) throws IOException {
+        // linie goala: doar caractere de control si spatii
+        long first = start;
+        while (first < end && (byteAt(first) & 0xFF) <= ' ') first++;
+        if (first == end) return false;
+
+        long content = start;
+        while (content < end && byteAt(content) == ' ') content++;
+        int level = (int) Math.min(Integer.MAX_VALUE, (content - start) / 3);
+
+        long sep = -1;
+        for (long i = end - 2; i >= content; i--) {
+            if (byteAt(i) == '/' && byteAt(i + 1) == '/') {
+                sep = i;
+                break;
+            }
+        }
+        long nameEnd = sep >= 0 ? sep : end;
+        long size = sep >= 0 ? parseSize(sep + 2, end) : 0L;
+
+        // numele fara caracterele de control si spatiile de la capete
+        long ns = content, ne = nameEnd;
+        while (ns < ne && (byteAt(ns) & 0xFF) <= ' ') ns++;
+        while (ne > ns && (byteAt(ne - 1) & 0xFF) <= ' ') ne--;
+        int len = (int) (ne - ns);
+        if (scratch.length < len) scratch = new byte[Math.max(len, scratch.length * 2)];
+        if (ns >= bufStart && ne <= bufEnd) {
+            buf.get((int) (ns - bufStart), scratch, 0, len);
+        } else {
+            for (int i = 0; i < len; i++) scratch[i] = byteAt(ns + i);
+        }
+        boolean dot = false;
+        for (int i = 0; i < len && !dot; i++) dot = scratch[i] == '.';
+        lineType = len > 0 && scratch[len - 1] == ':' ? NodeType.DRIVE
+                : dot ? NodeType.FILE : NodeType.FOLDER;
+        lineLevel = level;
+        lineSize = size;
+        nameLength = len;
+        return true;
+    }
+
+    /**
+     * Citeste dimensiunea dintre separator si sfarsitul liniei, cu aceleasi reguli ca
+     * {@link Long#parseLong(String)} aplicat textului taiat; orice eroare da 0.
+     */
+    private long parseSize(long from, long to) throws IOException {
+        while (from < to && (byteAt(from) & 0xFF) <= ' ') from++;
+        while (to > from && (byteAt(to - 1) & 0xFF) <= ' ') to--;
+        if (from == to) return 0L;
+        for (long i = from; i < to; i++) {
+            if (byteAt(i) < 0) {
+                // cifre non-ASCII: acelasi rezultat ca parserul vechi
+                byte[] raw = new byte[(int) (to - from)];
+                for (int k = 0; k < raw.length; k++) raw[k] = byteAt(from + k);
+                try {
+                    return Long.parseLong(new String(raw, StandardCharsets.UTF_8));
+                } catch (NumberFormatException e) {
+                    return 0L;
+                }
+            }
+        }
+        boolean negative = false;
+        long i = from;
+        byte c = byteAt(i);
+        if (c == '-' || c == '+') {
+            negative = c == '-';
+            if (++i == to) return 0L;
+        }
+        // acumulare pe negativ, ca Long.MIN_VALUE sa fie reprezentabil
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long multmin = limit / 10;
+        long r = 0;
+        for (; i < to; i++) {
+            int d = byteAt(i) - '0';
+            if (d < 0 || d > 9) return 0L;
+            if (r < multmin) return 0L;
+            r *= 10;
+            if (r < limit + d) return 0L;
+            r -= d;
+        }
+        return negative ? r : -r;
+    }
+
+    private void close(int i, long end) {
+        open[i].setTextRange(openStart[i] - openStart[i - 1], end - openStart[i]);
+        open[i] = null;
+    }
+
+    private void ensureLevel(int level) {
+        if (level >= levels.length) levels = Arrays.copyOf(levels, Math.max(level + 1, levels.length * 2));
+    }
+
+    /**
+     * Byte-ul de la o pozitie absoluta din fisier; remapeaza fereastra la nevoie.
+     */
+    private byte byteAt(long pos) throws IOException {
+        if (pos < bufStart || pos >= bufEnd) map(pos);
+        return buf.get((int) (pos - bufStart));
+    }
+
+    private void map(long pos) throws IOException {
+        long size = channel.size();
+        bufStart = pos >= lineAnchor && pos - lineAnchor < WINDOW ? lineAnchor : pos;
+        bufEnd = Math.min(size, pos + WINDOW);
+        buf = channel.map(FileChannel.MapMode.READ_ONLY, bufStart, bufEnd - bufStart);
+    }
+}
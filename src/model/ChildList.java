@@ -0,0 +1,224 @@
+package model;
+
+import java.util.*;
+
+/**
+ * Containerul de copii al unui {@link FsNode}.
+ * <p>
+ * Pentru foldere inguste copiii sunt tinuti doar intr-un vector mic, iar cautarea
+ * dupa nume se face liniar. Cand numarul de copii depaseste {@link #INDEX_THRESHOLD},
+ * se construieste si un index hash dupa numele normalizat ({@link FsNode#foldName(String)}),
+ * astfel incat {@link #byName(String)} devine O(1) si pentru foldere foarte late.
+ * <p>
+ * Stergerea nu muta elementele: locul copilului devine gol (null) si vectorul este
+ * compactat doar cand golurile ajung sa fie majoritare, deci costul amortizat este O(1).
+ * Citirile nu modifica niciodata structura interna.
+ */
+final class ChildList extends AbstractList<FsNode> implements RandomAccess {
+
+    /**
+     * Numarul de copii peste care se construieste indexul hash.
+     */
+    static final int INDEX_THRESHOLD = 16;
+
+    /**
+     * Numarul minim de goluri dupa care se ia in calcul compactarea.
+     */
+    private static final int MIN_COMPACT_GAPS = 8;
+
+    /**
+     * Sloturile copiilor, in ordinea de inserare; pot contine goluri (null).
+     */
+    private FsNode[] slots = new FsNode[4];
+
+    /**
+     * Numarul de sloturi folosite (inclusiv golurile).
+     */
+    private int end;
+
+    /**
+     * Numarul de copii reali.
+     */
+    private int live;
+
+    /**
+     * Index nume normalizat -> copil; este null cat timp folderul este ingust.
+     */
+    private Map<String, FsNode> index;
+
+    /**
+     * Cauta un copil dupa nume, ignorand literele mari/mici.
+     *
+     * @param name numele cautat
+     * @return copilul gasit sau null
+     */
+    FsNode byName(String name) {
+        if (name == null) return null;
+        if (index != null) return index.get(FsNode.foldName(name));
+        for (int i = 0; i < end; i++) {
+            FsNode c = slots[i];
+            if (c != null && c.getName().equalsIgnoreCase(name)) return c;
+        }
+        return null;
+    }
+
+    /**
+     * Adauga un copil la finalul listei.
+     *
+     * @param child copilul adaugat
+     */
+    void append(FsNode child) {
+        if (end == slots.length) {
+            if (end - live >= MIN_COMPACT_GAPS) compact();
+            else slots = Arrays.copyOf(slots, slots.length * 2);
+        }
+        child.slot = end;
+        slots[end++] = child;
+        live++;
+        indexAdd(child);
+    }
+
+    /**
+     * Insereaza un copil pe o pozitie data (pozitie printre copiii reali).
+     * Costa O(n) deoarece elementele de dupa pozitie trebuie deplasate.
+     *
+     * @param child    copilul inserat
+     * @param position pozitia dorita; valorile in afara intervalului sunt limitate la capete
+     */
+    void insert(FsNode child, int position) {
+        if (position >= live) {
+            append(child);
+            return;
+        }
+        compact();
+        if (end == slots.length) slots = Arrays.copyOf(slots, slots.length * 2);
+        int at = Math.max(0, position);
+        System.arraycopy(slots, at, slots, at + 1, end - at);
+        slots[at] = child;
+        end++;
+        live++;
+        for (int i = at; i < end; i++) slots[i].slot = i;
+        indexAdd(child);
+    }
+
+    /**
+     * Scoate un copil din lista in timp O(1) amortizat.
+     *
+     * @param child copilul scos
+     * @return true daca copilul facea parte din aceasta lista
+     */
+    boolean remove(FsNode child) {
+        int s = child.slot;
+        if (s < 0 || s >= end || slots[s] != child) return false;
+        slots[s] = null;
+        child.slot = -1;
+        live--;
+        if (index != null) index.remove(FsNode.foldName(child.getName()));
+        while (end > 0 && slots[end - 1] == null) end--;
+        int gaps = end - live;
+        if (gaps >= MIN_COMPACT_GAPS && gaps > live) compact();
+        if (index != null && live < INDEX_THRESHOLD / 2) index = null;
+        return true;
+    }
+
+    /**
+     * Actualizeaza indexul dupa redenumirea unui copil.
+     *
+     * @param child   copilul redenumit (are deja numele nou)
+     * @param oldName numele vechi
+     */
+    void renamed(FsNode child, String oldName) {
+        if (index == null) return;
+        index.remove(FsNode.foldName(oldName));
+        index.put(FsNode.foldName(child.getName()), child);
+    }
+
+    /**
+     * Pozitia unui copil printre copiii reali.
+     *
+     * @param child copilul cautat
+     * @return pozitia sau -1 daca nu apartine listei
+     */
+    int positionOf(FsNode child) {
+        int s = child.slot;
+        if (s < 0 || s >= end || slots[s] != child) return -1;
+        if (end == live) return s;
+        int pos = 0;
+        for (int i = 0; i < s; i++) if (slots[i] != null) pos++;
+        return pos;
+    }
+
+    @Override
+    public FsNode get(int i) {
+        if (i < 0 || i >= live) throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + live);
+        if (end == live) return slots[i];
+        for (int s = 0; s < end; s++) {
+            if (slots[s] != null && i-- == 0) return slots[s];
+        }
+        throw new ConcurrentModificationException();
+    }
+
+    @Override
+    public int size() {
+        return live;
+    }
+
+    @Override
+    public Iterator<FsNode> iterator() {
+        return new Iterator<>() {
+            private int next = advance(0);
+
+            private int advance(int from) {
+                while (from < end && slots[from] == null) from++;
+                return from;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next < end;
+            }
+
+            @Override
+            public FsNode next() {
+                if (next >= end) throw new NoSuchElementException();
+                FsNode n = slots[next];
+                next = advance(next + 1);
+                return n;
+            }
+        };
+    }
+
+    /**
+     * Elimina golurile din vector si renumeroteaza sloturile copiilor.
+     */
+    private void compact() {
+        int w = 0;
+        for (int r = 0; r < end; r++) {
+            FsNode c = slots[r];
+            if (c == null) continue;
+            c.slot = w;
+            slots[w++] = c;
+        }
+        Arrays.fill(slots, w, end, null);
+        end = w;
+        int cap = Math.max(4, Integer.highestOneBit(Math.max(1, w)) * 2);
+        if (cap < slots.length / 2) slots = Arrays.copyOf(slots, cap);
+    }
+
+    /**
+     * Adauga copilul in index, construind indexul daca s-a depasit pragul.
+     *
+     * @param child copilul adaugat
+     */
+    private void indexAdd(FsNode child) {
+        if (index != null) {
+            index.put(FsNode.foldName(child.getName()), child);
+        } else if (live > INDEX_THRESHOLD) {
+            index = new HashMap<>(live * 2);
+            for (int i = 0; i < end; i++) {
+                FsNode c = slots[i];
+                if (c != null) index.put(FsNode.foldName(c.getName()), c);
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package model;
+
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Sursa copiilor pentru folderele incarcate la cerere dintr-un fisier text.
+ * <p>
+ * Un folder legat de un incarcator ({@link FsNode#setChildLoader}) are totalurile
+ * subarborelui setate, dar copiii lui sunt cititi abia la primul acces prin
+ * {@link FsNode#getChildren()}, {@link FsNode#childByName(String)} sau {@link FsNode#addChild}.
+ * Ascultatorii inregistrati cu {@link #addLoadListener(Consumer)} sunt notificati dupa fiecare
+ * materializare (ex: pentru a inregistra nodurile noi intr-un index).
+ * <p>
+ * Pozitia unui folder in fisier se obtine din pozitiile relative retinute in noduri
+ * ({@link FsNode#getTextOffset()}), adunate pana la radacina. Pentru ca lantul se rupe cand un
+ * subarbore este mutat, la detasarea unui nod legat de incarcator pozitia lui absoluta este
+ * retinuta separat, pana la urmatoarea rescriere a fisierului ({@link #fileRewritten()}).
+ */
+public abstract class ChildLoader {
+
+    private final List<Consumer<FsNode>> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Pozitiile absolute ale nodurilor detasate (mutate sau sterse), in fisierul curent.
+     */
+    private final Map<FsNode, Long> detached = new WeakHashMap<>();
+
+    /**
+     * Citeste copiii directi ai unui folder. Nodurile returnate sunt detasate, au pozitiile
+     * relative setate ({@link FsNode#setTextRange}), iar folderele dintre ele sunt la randul
+     * lor legate de un incarcator, cu totalurile subarborelui setate.
+     *
+     * @param folder folderul
+     * @param start  pozitia absoluta a liniei folderului in fisier (0 pentru radacina invizibila),
+     *               sau -1 daca nu se cunoaste
+     * @return copiii, in ordinea din fisier
+     * @throws java.io.UncheckedIOException daca fisierul nu mai poate fi citit
+     */
+    protected abstract List<FsNode> read(FsNode folder, long start);
+
+    /**
+     * Indica daca memoria este putina si copiii incarcati care nu sunt folositi ar trebui
+     * eliberati cu {@link FsNode#unloadChildren()}. Implicit false.
+     *
+     * @return true daca eliberarea este recomandata si copiii pot fi recititi
+     */
+    public boolean shouldEvict() {
+        return false;
+    }
+
+    /**
+     * Inregistreaza un ascultator apelat dupa ce copiii unui folder au fost atasati.
+     * Poate fi apelat din orice fir care a atins folderul.
+     *
+     * @param listener primeste folderul materializat
+     */
+    public void addLoadListener(Consumer<FsNode> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Uita pozitiile absolute retinute pentru nodurile detasate; apelata cand fisierul este
+     * rescris si pozitiile relative din noduri corespund noului fisier.
+     */
+    protected void fileRewritten() {
+        synchronized (detached) {
+            detached.clear();
+        }
+    }
+
+    /**
+     * Materializeaza copiii unui folder; apelata de {@link FsNode} sub lock-ul folderului.
+     */
+    final void load(FsNode folder) {
+        List<FsNode> kids = read(folder, positionOf(folder));
+        folder.attachLoaded(kids);
+        for (Consumer<FsNode> l : listeners) l.accept(folder);
+    }
+
+    /**
+     * Retine pozitia unui nod care este pe cale sa fie detasat din parintele lui.
+     */
+    final void detaching(FsNode node) {
+        long pos = positionOf(node);
+        if (pos < 0) return;
+        synchronized (detached) {
+            detached.put(node, pos);
+        }
+    }
+
+    /**
+     * Pozitia absoluta a liniei unui nod: suma pozitiilor relative pana la radacina sau pana la
+     * primul nod detasat anterior.
+     *
+     * @return pozitia sau -1 daca nodul nu provine din fisier
+     */
+    private long positionOf(FsNode node) {
+        long sum = 0;
+        for (FsNode cur = node; ; cur = cur.getParent()) {
+            Long base;
+            synchronized (detached) {
+                base = detached.isEmpty() ? null : detached.get(cur);
+            }
+            if (base != null) return base + sum;
+            if (cur.getParent() == null) return sum;
+            if (cur.getTextOffset() < 0) return -1;
+            sum += cur.getTextOffset();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package model;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tabela globala de simboluri pentru extensiile fisierelor.
+ * <p>
+ * Fiecare extensie distincta (normalizata cu {@link FsNode#foldName(String)})
+ * primeste un identificator intreg mic, pe care {@link FsNode} il retine in locul
+ * unui String separat. Identificatorul 0 inseamna "fara extensie".
+ * Numarul de extensii este limitat la {@link #MAX_EXTENSIONS}; peste limita
+ * se intoarce {@link #OVERFLOW}, iar extensia se recalculeaza din nume.
+ * <p>
+ * Tabela este folosita de firele care incarca arborele in paralel, deci cautarea nu ia
+ * niciun lock: fiecare fir are un cache mic, indexat dupa hash-ul extensiei calculat direct
+ * din caracterele numelui, astfel incat o extensie deja vazuta nu aloca nimic. Doar la o
+ * ratare extensia este extrasa si cautata in tabela comuna ({@link ConcurrentHashMap});
+ * sectiunea sincronizata ramane doar pentru inregistrarea extensiilor noi.
+ * <p>
+ * Tabela serveste la grupare si numarare; extensia afisata pentru un fisier se ia din
+ * numele lui ({@link FsNode#getExtension()}), nu din tabela.
+ */
+public final class ExtensionTable {
+
+    /**
+     * Identificatorul pentru nume fara extensie.
+     */
+    public static final int NONE = 0;
+
+    /**
+     * Identificatorul folosit cand tabela este plina.
+     */
+    public static final int OVERFLOW = -1;
+
+    /**
+     * Numarul maxim de extensii distincte retinute.
+     */
+    public static final int MAX_EXTENSIONS = 1 << 16;
+
+    /**
+     * Numarul de sloturi din cache-ul fiecarui fir (putere a lui 2).
+     */
+    private static final int CACHE_SLOTS = 256;
+
+    /**
+     * Extensie normalizata -> identificator.
+     */
+    private static final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+
+    /**
+     * Identificator -> extensie normalizata (pozitia 0 este rezervata).
+     * Elementele sunt scrise inainte ca identificatorul sa fie publicat prin {@link #ids}.
+     */
+    private static volatile String[] names = new String[64];
+
+    /**
+     * Urmatorul identificator liber; modificat doar sub lock-ul clasei.
+     */
+    private static volatile int next = 1;
+
+    /**
+     * Cache-ul local al fiecarui fir: extensii normalizate si identificatorii lor.
+     */
+    private static final ThreadLocal<Cache> caches = ThreadLocal.withInitial(Cache::new);
+
+    private static final class Cache {
+        final String[] keys = new String[CACHE_SLOTS];
+        final int[] values = new int[CACHE_SLOTS];
+    }
+
+    private ExtensionTable() {
+    }
+
+    /**
+     * Returneaza identificatorul extensiei unui nume de fisier.
+     * Extensia este textul de dupa ultimul punct, daca punctul nu este ultimul caracter.
+     *
+     * @param name numele fisierului
+     * @return identificatorul extensiei, {@link #NONE} sau {@link #OVERFLOW}
+     */
+    public static int idOf(String name) {
+        int dot = name.lastIndexOf('.');
+        if (dot == -1 || dot == name.length() - 1) return NONE;
+        int h = 0;
+        for (int i = dot + 1; i < name.length(); i++) h = 31 * h + fold(name.charAt(i));
+        Cache cache = caches.get();
+        int slot = (h ^ (h >>> 16)) & (CACHE_SLOTS - 1);
+        String key = cache.keys[slot];
+        if (key != null && matches(key, name, dot + 1)) return cache.values[slot];
+
+        String ext = FsNode.foldName(name.substring(dot + 1));
+        Integer id = ids.get(ext);
+        if (id == null) id = register(ext);
+        if (id == OVERFLOW) return OVERFLOW;
+        cache.keys[slot] = ext;
+        cache.values[slot] = id;
+        return id;
+    }
+
+    /**
+     * Atribuie un identificator unei extensii noi (sau il intoarce pe cel atribuit intre timp
+     * de alt fir).
+     *
+     * @param ext extensia normalizata
+     */
+    private static synchronized int register(String ext) {
+        Integer id = ids.get(ext);
+        if (id != null) return id;
+        int n = next;
+        if (n >= MAX_EXTENSIONS) return OVERFLOW;
+        String[] arr = names;
+        if (n == arr.length) arr = Arrays.copyOf(arr, arr.length * 2);
+        arr[n] = ext;
+        names = arr;
+        next = n + 1;
+        ids.put(ext, n);
+        return n;
+    }
+
+    /**
+     * Compara extensia normalizata din cache cu sufixul unui nume, fara a-l extrage.
+     */
+    private static boolean matches(String key, String name, int from) {
+        if (key.length() != name.length() - from) return false;
+        for (int i = 0; i < key.length(); i++) {
+            if (key.charAt(i) != fold(name.charAt(from + i))) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Normalizarea unui caracter, aceeasi ca in {@link FsNode#foldName(String)}.
+     */
+    private static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    /**
+     * Returneaza extensia normalizata pentru un identificator.
+     *
+     * @param id identificatorul extensiei
+     * @return extensia sau null pentru {@link #NONE}
+     */
+    public static String nameOf(int id) {
+        String[] arr = names;
+        return id > 0 && id < arr.length ? arr[id] : null;
+    }
+
+    /**
+     * Numarul de extensii distincte inregistrate.
+     *
+     * @return numarul de extensii
+     */
+    public static int size() {
+        return next - 1;
+    }
+
+    /**
+     * Extrage extensia normalizata dintr-un nume.
+     *
+     * @param name numele fisierului
+     * @return extensia (fara punct) sau null daca nu exista
+     */
+    public static String extensionOf(String name) {
+        int dot = name.lastIndexOf('.');
+        if (dot == -1 || dot == name.length() - 1) return null;
+        return FsNode.foldName(name.substring(dot + 1));
+    }
+}
@@ -1,6 +1,7 @@
 package model;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Reprezinta un nod din arborele logic al sistemului de fisiere.
@@ -11,6 +12,17 @@ import java.util.*;
  */
 public class FsNode {
 
+    /**
+     * Generatorul de id-uri; fiecare nod creat primeste urmatoarea valoare.
+     */
+    private static final AtomicLong NEXT_ID = new AtomicLong(1);
+
+    /**
+     * Identificatorul stabil al nodului: unic in procesul curent, nu se schimba
+     * la redenumire sau mutare.
+     */
+    private final long id = NEXT_ID.getAndIncrement();
+
     /**
      * Numele afisat al nodului (ex: "C:", "folder1", "poza.jpg").
      */
@@ -22,6 +34,12 @@ public class FsNode {
      */
     private final NodeType type;
 
+    /**
+     * Identificatorul extensiei din {@link ExtensionTable}.
+     * Este {@link ExtensionTable#NONE} pentru foldere, drive-uri si fisiere fara extensie.
+     */
+    private int extensionId;
+
     /**
      * Referinta catre nodul parinte in arbore.
      * Pentru radacina invizibila sau pentru drive-uri poate fi null.
@@ -36,10 +54,88 @@ public class FsNode {
     private long sizeBytes;
 
     /**
-     * Lista copiilor acestui nod in arbore.
-     * Lista este modificabila doar din interiorul clasei prin addChild/removeChild.
+     * Copiii acestui nod in arbore.
+     * Containerul este creat doar la primul copil adaugat si este modificabil
+     * doar din interiorul clasei prin addChild/removeChild.
+     */
+    private ChildList children;
+
+    /**
+     * Pozitia nodului in containerul de copii al parintelui.
+     * Este -1 cat timp nodul nu este atasat; permite stergerea in O(1).
      */
-    private final List<FsNode> children = new ArrayList<>();
+    int slot = -1;
+
+    /**
+     * Ultima imagine imutabila a subarborelui acestui nod, sau null daca
+     * nodul ori un descendent s-a modificat de la ultimul {@link #freeze()}.
+     * Daca imaginea unui nod lipseste, lipseste si imaginea tuturor stramosilor lui.
+     */
+    private SnapshotNode frozen;
+
+    /**
+     * Hash-ul continutului subarborelui (tip, dimensiune si hash-urile copiilor, fara numele
+     * nodului), valid doar daca {@link #hashed} este true. Se invalideaza impreuna cu
+     * {@link #frozen}, deci un nod cu hash valid are hash valid la toti descendentii.
+     */
+    private long contentHash;
+
+    /**
+     * Indica daca {@link #contentHash} este calculat si actual.
+     */
+    private boolean hashed;
+
+    /**
+     * Pozitia (in bytes) a liniei nodului in ultimul fisier text incarcat sau salvat,
+     * relativa la linia parintelui; -1 daca nodul nu a fost scris acolo sau a fost
+     * atasat de atunci sub alt parinte. Fiind relativa, o salvare incrementala trebuie
+     * sa actualizeze doar radacinile subarborilor copiati, nu toti descendentii lor.
+     */
+    private long textOffset = -1;
+
+    /**
+     * Lungimea in bytes a textului subarborelui in acelasi fisier, sau -1 daca subarborele
+     * este "murdar" (nodul sau un descendent s-a modificat de atunci). Se invalideaza
+     * impreuna cu {@link #frozen}, deci un nod curat are toti descendentii curati.
+     */
+    private long textLength = -1;
+
+    /**
+     * Suma dimensiunilor fisierelor din subarborele acestui nod (inclusiv nodul).
+     * Este intretinuta incremental la fiecare modificare a arborelui.
+     */
+    private long subtreeSizeBytes;
+
+    /**
+     * Numarul de fisiere din subarbore (inclusiv nodul, daca este fisier).
+     */
+    private int subtreeFiles;
+
+    /**
+     * Numarul de foldere din subarbore (inclusiv nodul, daca este folder).
+     */
+    private int subtreeFolders;
+
+    /**
+     * Numarul total de noduri din subarbore (inclusiv nodul).
+     */
+    private int subtreeNodes;
+
+    /**
+     * Inaltimea subarborelui: 0 pentru un nod fara copii.
+     */
+    private int subtreeHeight;
+
+    /**
+     * Incarcatorul din care provin copiii nodului, daca a fost citit la cerere; ramane setat
+     * si dupa incarcare, pentru ca nodul sa poata fi eliberat si recitit.
+     */
+    private ChildLoader loader;
+
+    /**
+     * True cat timp copiii nu au fost inca cititi prin {@link #loader}.
+     */
+    private volatile boolean pending;
 
     /**
      * Creeaza un nod cu nume si tip, cu dimensiune 0.
@@ -62,6 +158,14 @@ public class FsNode {
         this.name = name;
         this.type = type;
         this.sizeBytes = sizeBytes;
+        this.subtreeNodes = 1;
+        if (type == NodeType.FILE) {
+            this.extensionId = ExtensionTable.idOf(name);
+            this.subtreeFiles = 1;
+            this.subtreeSizeBytes = sizeBytes;
+        } else if (type == NodeType.FOLDER) {
+            this.subtreeFolders = 1;
+        }
     }
 
     /**
@@ -81,7 +185,58 @@ public class FsNode {
      * @param sizeBytes noua dimensiune in bytes
      */
     public void setSizeBytes(long sizeBytes) {
+        long delta = sizeBytes - this.sizeBytes;
         this.sizeBytes = sizeBytes;
+        if (type != NodeType.FILE || delta == 0) return;
+        invalidateCaches();
+        for (FsNode cur = this; cur != null; cur = cur.parent) {
+            cur.subtreeSizeBytes += delta;
+        }
+    }
+
+    /**
+     * Returneaza suma dimensiunilor fisierelor din subarborele nodului.
+     *
+     * @return dimensiunea totala in bytes, mentinuta incremental
+     */
+    public long getSubtreeSizeBytes() {
+        return subtreeSizeBytes;
+    }
+
+    /**
+     * Returneaza numarul de fisiere din subarborele nodului.
+     *
+     * @return numarul de fisiere (inclusiv nodul curent)
+     */
+    public int getSubtreeFiles() {
+        return subtreeFiles;
+    }
+
+    /**
+     * Returneaza numarul de foldere din subarborele nodului.
+     *
+     * @return numarul de foldere (inclusiv nodul curent)
+     */
+    public int getSubtreeFolders() {
+        return subtreeFolders;
+    }
+
+    /**
+     * Returneaza numarul total de noduri din subarborele nodului.
+     *
+     * @return numarul de noduri (inclusiv nodul curent)
+     */
+    public int getSubtreeNodes() {
+        return subtreeNodes;
+    }
+
+    /**
+     * Returneaza inaltimea subarborelui (adancimea maxima relativa la nod).
+     *
+     * @return 0 pentru un nod fara copii
+     */
+    public int getSubtreeHeight() {
+        return subtreeHeight;
     }
 
     /**
@@ -94,6 +249,15 @@ public class FsNode {
         return type == NodeType.DRIVE || type == NodeType.FOLDER;
     }
 
+    /**
+     * Returneaza identificatorul stabil al nodului.
+     *
+     * @return id-ul nodului (mereu pozitiv)
+     */
+    public long getId() {
+        return id;
+    }
+
     /**
      * Returneaza numele nodului.
      *
@@ -112,6 +276,27 @@ public class FsNode {
         return type;
     }
 
+    /**
+     * Returneaza extensia fisierului (fara punct), asa cum este scrisa in numele lui.
+     * Pentru grupare si numarare se foloseste {@link #getExtensionId()}, comun tuturor
+     * scrierilor aceleiasi extensii.
+     *
+     * @return extensia sau null daca nodul nu este fisier sau nu are extensie
+     */
+    public String getExtension() {
+        if (extensionId == ExtensionTable.NONE) return null;
+        return name.substring(name.lastIndexOf('.') + 1);
+    }
+
+    /**
+     * Returneaza identificatorul extensiei din {@link ExtensionTable}.
+     *
+     * @return identificatorul extensiei
+     */
+    public int getExtensionId() {
+        return extensionId;
+    }
+
     /**
      * Returneaza parintele acestui nod in arbore.
      *
@@ -128,19 +313,124 @@ public class FsNode {
      * @return lista copii (unmodifiable)
      */
     public List<FsNode> getChildren() {
-        return Collections.unmodifiableList(children);
+        if (pending) load();
+        return children == null ? Collections.emptyList() : children;
+    }
+
+    /**
+     * Returneaza copiii deja aflati in memorie, fara a-i citi pe cei neincarcati
+     * (pentru parcurgeri care nu trebuie sa incarce tot arborele).
+     *
+     * @return copiii incarcati, sau lista goala daca nu sunt inca cititi
+     */
+    public List<FsNode> getLoadedChildren() {
+        return pending || children == null ? Collections.emptyList() : children;
+    }
+
+    /**
+     * @return true daca toti copiii nodului sunt in memorie
+     */
+    public boolean isChildrenLoaded() {
+        return !pending;
+    }
+
+    /**
+     * @return incarcatorul din care provin copiii nodului, sau null
+     */
+    public ChildLoader getChildLoader() {
+        return loader;
+    }
+
+    /**
+     * Leaga un folder detasat si fara copii de un incarcator: copiii lui vor fi cititi la
+     * primul acces. Totalurile subarborelui sunt cele date (citite dintr-un index), astfel
+     * incat statisticile si parintii sunt corecti fara a incarca subarborele.
+     *
+     * @param loader           incarcatorul copiilor
+     * @param subtreeSizeBytes dimensiunea totala a fisierelor din subarbore
+     * @param subtreeFiles     numarul de fisiere din subarbore
+     * @param subtreeFolders   numarul de foldere din subarbore (inclusiv nodul, daca este folder)
+     * @param subtreeNodes     numarul de noduri din subarbore (inclusiv nodul)
+     * @param subtreeHeight    inaltimea subarborelui
+     * @throws IllegalStateException daca nodul nu poate avea copii, este atasat sau are deja copii
+     */
+    public void setChildLoader(ChildLoader loader, long subtreeSizeBytes, int subtreeFiles,
+                               int subtreeFolders, int subtreeNodes, int subtreeHeight) {
+        if (!canHaveChildren() || parent != null || (children != null && children.size() > 0))
+            throw new IllegalStateException("Only detached empty folders can be loaded lazily");
+        this.loader = loader;
+        this.subtreeSizeBytes = subtreeSizeBytes;
+        this.subtreeFiles = subtreeFiles;
+        this.subtreeFolders = subtreeFolders;
+        this.subtreeNodes = subtreeNodes;
+        this.subtreeHeight = subtreeHeight;
+        this.pending = true;
+    }
+
+    /**
+     * Elibereaza copiii unui folder incarcat la cerere, care vor fi recititi la urmatorul acces.
+     * Este permis doar daca subarborele nu s-a modificat de la ultima citire sau salvare in text
+     * ({@link #isTextDirty()}); totalurile, hash-ul si imaginea imutabila raman valide.
+     * Apelantul garanteaza ca nimeni nu mai foloseste nodurile eliberate.
+     *
+     * @return true daca copiii au fost eliberati
+     */
+    public synchronized boolean unloadChildren() {
+        if (loader == null || pending || parent == null || isTextDirty()) return false;
+        if (children != null) {
+            for (FsNode c : children) c.parent = null;
+            children = null;
+        }
+        pending = true;
+        return true;
+    }
+
+    /**
+     * Citeste copiii prin incarcator, o singura data chiar daca mai multe fire ating nodul simultan.
+     */
+    private synchronized void load() {
+        if (pending) loader.load(this);
+    }
+
+    /**
+     * Ataseaza copiii cititi de incarcator, fara a modifica totalurile (deja cunoscute)
+     * si fara a marca nodul ca modificat.
+     *
+     * @param kids copiii, in ordinea din fisier
+     * @throws IllegalArgumentException daca doi copii au acelasi nume
+     */
+    void attachLoaded(List<FsNode> kids) {
+        ChildList list = new ChildList();
+        for (FsNode k : kids) {
+            if (list.byName(k.name) != null) throw new IllegalArgumentException("Duplicate name");
+            list.insert(k, Integer.MAX_VALUE);
+        }
+        for (FsNode k : kids) k.parent = this;
+        children = kids.isEmpty() ? null : list;
+        pending = false;
     }
 
     /**
      * Schimba numele nodului.
+     * Daca nodul este atasat, indexul de nume al parintelui este actualizat.
      *
      * @param newName noul nume; nu are voie sa fie null sau gol
-     * @throws IllegalArgumentException daca numele este null sau gol
+     * @throws IllegalArgumentException daca numele este null sau gol, sau daca
+     *                                  parintele are deja alt copil cu acest nume
      */
     public void rename(String newName) {
         if(newName==null||newName.isBlank())
             throw new IllegalArgumentException();
-        name = newName.trim();
+        String trimmed = newName.trim();
+        if (parent != null) {
+            FsNode other = parent.childByName(trimmed);
+            if (other != null && other != this) throw new IllegalArgumentException("Duplicate name");
+        }
+        String old = name;
+        name = trimmed;
+        if (type == NodeType.FILE) extensionId = ExtensionTable.idOf(trimmed);
+        invalidateCaches();
+        if (parent != null) parent.children.renamed(this, old);
     }
 
     /**
@@ -157,33 +447,300 @@ public class FsNode {
      * @throws IllegalArgumentException daca exista deja un copil cu acelasi nume
      */
     public void addChild(FsNode child) {
+        addChild(child, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Adauga un copil pe o pozitie data printre copiii acestui nod.
+     * Are aceleasi verificari ca {@link #addChild(FsNode)}; inserarea in mijlocul
+     * listei costa O(numar copii).
+     *
+     * @param child    nodul copil care va fi atasat
+     * @param position pozitia dorita; valorile prea mari adauga copilul la final
+     * @throws IllegalStateException    daca nodul curent nu poate avea copii sau copilul este deja atasat
+     * @throws IllegalArgumentException daca exista deja un copil cu acelasi nume
+     */
+    public void addChild(FsNode child, int position) {
         if(!canHaveChildren()) throw new IllegalStateException("Files cannot have children");
         if(child.parent != null) throw new IllegalStateException("Already attached");
+        if(pending) load();
         if(childByName(child.name)!=null) throw new IllegalArgumentException("Duplicate name");
-        child.parent = this; children.add(child);
+        if(children == null) children = new ChildList();
+        child.parent = this; children.insert(child, position);
+        child.textOffset = -1;
+        propagateAdded(child);
+    }
+
+    /**
+     * Returneaza pozitia unui copil printre copiii acestui nod.
+     *
+     * @param child copilul cautat
+     * @return pozitia sau -1 daca nu este copil al acestui nod
+     */
+    public int indexOfChild(FsNode child) {
+        return child.parent == this ? children.positionOf(child) : -1;
     }
 
     /**
-     * Elimina un copil din acest nod.
+     * Elimina un copil din acest nod, in timp O(1) amortizat.
      * Daca nodul copil exista in lista, este scos si parintele lui devine null.
      *
      * @param child nodul copil care va fi eliminat
      */
     public void removeChild(FsNode child) {
-        if(children.remove(child))
+        if(child.parent != this) return;
+        if(child.loader != null) child.loader.detaching(child);
+        if(children.remove(child)) {
             child.parent = null;
+            propagateRemoved(child);
+        }
+    }
+
+    /**
+     * Aduna totalurile unui copil nou atasat pe tot lantul de parinti.
+     *
+     * @param child copilul tocmai atasat
+     */
+    private void propagateAdded(FsNode child) {
+        invalidateCaches();
+        int h = child.subtreeHeight + 1;
+        for (FsNode cur = this; cur != null; cur = cur.parent) {
+            cur.subtreeSizeBytes += child.subtreeSizeBytes;
+            cur.subtreeFiles += child.subtreeFiles;
+            cur.subtreeFolders += child.subtreeFolders;
+            cur.subtreeNodes += child.subtreeNodes;
+            if (h > cur.subtreeHeight) cur.subtreeHeight = h;
+            h = cur.subtreeHeight + 1;
+        }
+    }
+
+    /**
+     * Scade totalurile unui copil tocmai detasat pe tot lantul de parinti.
+     * Inaltimea este recalculata doar pentru stramosii a caror inaltime
+     * era data chiar de ramura eliminata.
+     *
+     * @param child copilul tocmai detasat
+     */
+    private void propagateRemoved(FsNode child) {
+        invalidateCaches();
+        int removedH = child.subtreeHeight + 1;
+        boolean heightMayChange = true;
+        for (FsNode cur = this; cur != null; cur = cur.parent) {
+            cur.subtreeSizeBytes -= child.subtreeSizeBytes;
+            cur.subtreeFiles -= child.subtreeFiles;
+            cur.subtreeFolders -= child.subtreeFolders;
+            cur.subtreeNodes -= child.subtreeNodes;
+            if (heightMayChange && removedH == cur.subtreeHeight) {
+                int old = cur.subtreeHeight;
+                int h = 0;
+                for (FsNode c : cur.getChildren()) h = Math.max(h, c.subtreeHeight + 1);
+                cur.subtreeHeight = h;
+                heightMayChange = h != old;
+                removedH = old + 1;
+            } else {
+                heightMayChange = false;
+            }
+        }
     }
 
     /**
      * Cauta un copil dupa nume (case-insensitive).
+     * Pentru folderele late cautarea foloseste indexul hash al containerului de copii.
      *
      * @param name numele copilului cautat
      * @return nodul copil daca este gasit, altfel null
      */
     public FsNode childByName(String name){
-        for(var c:children)
-            if(c.name.equalsIgnoreCase(name))
-                return c; return null;
+        if (pending) load();
+        return children == null ? null : children.byName(name);
+    }
+
+    /**
+     * Returneaza imaginea imutabila a subarborelui acestui nod.
+     * Subarborii nemodificati de la apelul anterior isi refolosesc imaginea,
+     * deci costul este proportional doar cu nodurile modificate intre timp
+     * (si cu numarul lor de copii). Parcurgerea este iterativa.
+     * <p>
+     * Apelantul trebuie sa se asigure ca arborele nu este modificat in timpul apelului
+     * si ca doua apeluri nu ruleaza simultan.
+     * <p>
+     * Folderele incarcate la cerere nu sunt citite din fisier: daca parcurgerea ajunge la un
+     * folder necitit fara imagine pastrata, apelul este refuzat.
+     *
+     * @return imaginea imutabila a subarborelui
+     * @throws IllegalStateException daca subarborele contine foldere necitite
+     */
+    public SnapshotNode freeze() {
+        if (frozen != null) return frozen;
+        Deque<FsNode> stack = new ArrayDeque<>();
+        stack.push(this);
+        while (!stack.isEmpty()) {
+            FsNode n = stack.peek();
+            n.requireLoaded();
+            boolean ready = true;
+            for (FsNode c : n.getChildren()) {
+                if (c.frozen == null) {
+                    stack.push(c);
+                    ready = false;
+                }
+            }
+            if (!ready) continue;
+            stack.pop();
+            SnapshotNode[] kids = new SnapshotNode[n.getChildren().size()];
+            int i = 0;
+            for (FsNode c : n.getChildren()) kids[i++] = c.frozen;
+            n.frozen = new SnapshotNode(n, kids);
+        }
+        return frozen;
+    }
+
+    /**
+     * Returneaza hash-ul Merkle al subarborelui: depinde de numele, tipul si dimensiunea
+     * nodului si, recursiv, de hash-urile copiilor (independent de ordinea lor).
+     * Doi subarbori cu acelasi continut au acelasi hash; doi subarbori diferiti au acelasi hash
+     * doar printr-o coliziune pe 64 de biti.
+     * <p>
+     * Hash-urile sunt calculate lenes si pastrate in noduri; o modificare invalideaza doar
+     * nodul atins si stramosii lui, deci dupa o editare recalcularea costa O(adancime + copiii
+     * nodurilor de pe drum). Are aceleasi conditii de apel ca {@link #freeze()}.
+     *
+     * @return hash-ul subarborelui
+     * @throws IllegalStateException daca subarborele contine foldere necitite fara hash pastrat
+     */
+    public long getSubtreeHash() {
+        return hashOf(name, getContentHash());
+    }
+
+    /**
+     * Returneaza hash-ul continutului subarborelui, adica {@link #getSubtreeHash()} fara
+     * numele nodului insusi. Doua noduri cu acelasi continut si nume diferite au acelasi
+     * hash de continut (folosit la detectarea redenumirilor).
+     * Ca si {@link #freeze()}, nu citeste foldere incarcate la cerere.
+     *
+     * @return hash-ul continutului
+     * @throws IllegalStateException daca subarborele contine foldere necitite fara hash pastrat
+     */
+    public long getContentHash() {
+        if (hashed) return contentHash;
+        Deque<FsNode> stack = new ArrayDeque<>();
+        stack.push(this);
+        while (!stack.isEmpty()) {
+            FsNode n = stack.peek();
+            n.requireLoaded();
+            boolean ready = true;
+            for (FsNode c : n.getChildren()) {
+                if (!c.hashed) {
+                    stack.push(c);
+                    ready = false;
+                }
+            }
+            if (!ready) continue;
+            stack.pop();
+            long size = n.type == NodeType.FILE ? n.sizeBytes : 0;
+            long h = mix(n.type.ordinal() + 1L) ^ mix(size + 0x632BE59BD9B4E019L);
+            long sum = 0;
+            for (FsNode c : n.getChildren()) sum += hashOf(c.name, c.contentHash);
+            n.contentHash = mix(h + mix(sum));
+            n.hashed = true;
+        }
+        return contentHash;
+    }
+
+    /**
+     * Refuza parcurgerile complete care ar citi din fisier copiii unui folder necitit.
+     */
+    private void requireLoaded() {
+        if (pending) throw new IllegalStateException("Folder not loaded: " + name);
+    }
+
+    /**
+     * Combina numele unui nod cu hash-ul continutului lui.
+     */
+    private static long hashOf(String name, long contentHash) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < name.length(); i++) h = (h ^ name.charAt(i)) * 0x100000001b3L;
+        return mix(h ^ contentHash);
+    }
+
+    /**
+     * Amestec pe 64 de biti (finalizatorul din SplitMix64).
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Sterge imaginea imutabila si hash-ul nodului si ale stramosilor lui.
+     * Marcheaza, in acelasi drum, subarborii ca murdari pentru salvarea incrementala.
+     * Se opreste la primul stramos la care toate sunt deja invalidate.
+     */
+    private void invalidateCaches() {
+        for (FsNode cur = this; cur != null && (cur.frozen != null || cur.hashed || cur.textLength >= 0); cur = cur.parent) {
+            cur.frozen = null;
+            cur.hashed = false;
+            cur.textLength = -1;
+        }
+    }
+
+    /**
+     * Indica daca subarborele s-a modificat de la ultima incarcare sau salvare in text
+     * (sau nu a fost niciodata scris).
+     *
+     * @return true daca subarborele trebuie rescris
+     */
+    public boolean isTextDirty() {
+        return textLength < 0;
+    }
+
+    /**
+     * @return pozitia liniei nodului fata de linia parintelui in ultimul fisier text, sau -1
+     */
+    public long getTextOffset() {
+        return textOffset;
+    }
+
+    /**
+     * @return lungimea in bytes a subarborelui in ultimul fisier text, sau -1 daca este murdar
+     */
+    public long getTextLength() {
+        return textLength;
+    }
+
+    /**
+     * Retine pozitia subarborelui in fisierul text tocmai citit sau scris si il marcheaza curat.
+     * Folosita de {@code FileTreeRepository}; apelantul garanteaza ca descendentii au deja
+     * pozitii valide in acelasi fisier.
+     *
+     * @param offset pozitia liniei nodului fata de linia parintelui
+     * @param length lungimea in bytes a textului subarborelui
+     */
+    public void setTextRange(long offset, long length) {
+        this.textOffset = offset;
+        this.textLength = length;
+    }
+
+    /**
+     * Normalizeaza un nume pentru comparatii case-insensitive.
+     * Doua nume au aceeasi forma normalizata exact atunci cand
+     * {@link String#equalsIgnoreCase(String)} le considera egale.
+     *
+     * @param name numele original
+     * @return forma normalizata (acelasi obiect daca nu are nimic de schimbat)
+     */
+    public static String foldName(String name){
+        int n = name.length();
+        int i = 0;
+        while (i < n) {
+            char c = name.charAt(i);
+            if (Character.toLowerCase(Character.toUpperCase(c)) != c) break;
+            i++;
+        }
+        if (i == n) return name;
+        char[] out = name.toCharArray();
+        for (; i < n; i++) out[i] = Character.toLowerCase(Character.toUpperCase(out[i]));
+        return new String(out);
     }
 
     /**
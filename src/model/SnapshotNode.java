@@ -0,0 +1,146 @@
+package model;
+
+import java.util.*;
+
+/**
+ * Imaginea imutabila a unui {@link FsNode} la un anumit moment.
+ * <p>
+ * Nodurile de snapshot sunt construite prin {@link FsNode#freeze()} si sunt
+ * partajate intre versiuni: cand se modifica un nod, doar el si stramosii lui
+ * primesc imagini noi (path copying), restul subarborilor fiind refolositi.
+ * Toate campurile sunt finale, deci un snapshot poate fi citit din orice fir fara lock-uri.
+ */
+public final class SnapshotNode {
+
+    private final long id;
+    private final String name;
+    private final NodeType type;
+    private final long sizeBytes;
+    private final SnapshotNode[] children;
+    private final long subtreeSizeBytes;
+    private final int subtreeFiles;
+    private final int subtreeFolders;
+    private final int subtreeNodes;
+    private final int subtreeHeight;
+
+    /**
+     * Index nume normalizat -> copil, construit doar pentru nodurile late.
+     */
+    private final Map<String, SnapshotNode> index;
+
+    /**
+     * Creeaza imaginea unui nod, cu imaginile deja construite ale copiilor.
+     *
+     * @param n        nodul original
+     * @param children imaginile copiilor, in aceeasi ordine
+     */
+    SnapshotNode(FsNode n, SnapshotNode[] children) {
+        this.id = n.getId();
+        this.name = n.getName();
+        this.type = n.getType();
+        this.sizeBytes = n.getSizeBytes();
+        this.children = children;
+        this.subtreeSizeBytes = n.getSubtreeSizeBytes();
+        this.subtreeFiles = n.getSubtreeFiles();
+        this.subtreeFolders = n.getSubtreeFolders();
+        this.subtreeNodes = n.getSubtreeNodes();
+        this.subtreeHeight = n.getSubtreeHeight();
+        if (children.length > ChildList.INDEX_THRESHOLD) {
+            Map<String, SnapshotNode> m = new HashMap<>(children.length * 2);
+            for (SnapshotNode c : children) m.put(FsNode.foldName(c.name), c);
+            this.index = m;
+        } else {
+            this.index = null;
+        }
+    }
+
+    /**
+     * @return id-ul stabil al nodului original
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * @return numele nodului
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return tipul nodului
+     */
+    public NodeType getType() {
+        return type;
+    }
+
+    /**
+     * @return dimensiunea in bytes
+     */
+    public long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    /**
+     * @return copiii nodului, ca lista nemodificabila
+     */
+    public List<SnapshotNode> getChildren() {
+        return Collections.unmodifiableList(Arrays.asList(children));
+    }
+
+    /**
+     * Cauta un copil dupa nume (case-insensitive).
+     *
+     * @param name numele cautat
+     * @return copilul gasit sau null
+     */
+    public SnapshotNode childByName(String name) {
+        if (name == null) return null;
+        if (index != null) return index.get(FsNode.foldName(name));
+        for (SnapshotNode c : children) {
+            if (c.name.equalsIgnoreCase(name)) return c;
+        }
+        return null;
+    }
+
+    /**
+     * @return suma dimensiunilor fisierelor din subarbore
+     */
+    public long getSubtreeSizeBytes() {
+        return subtreeSizeBytes;
+    }
+
+    /**
+     * @return numarul de fisiere din subarbore
+     */
+    public int getSubtreeFiles() {
+        return subtreeFiles;
+    }
+
+    /**
+     * @return numarul de foldere din subarbore
+     */
+    public int getSubtreeFolders() {
+        return subtreeFolders;
+    }
+
+    /**
+     * @return numarul de noduri din subarbore
+     */
+    public int getSubtreeNodes() {
+        return subtreeNodes;
+    }
+
+    /**
+     * @return inaltimea subarborelui
+     */
+    public int getSubtreeHeight() {
+        return subtreeHeight;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
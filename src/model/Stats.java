@@ -1,5 +1,7 @@
 package model;
 
+import java.util.Arrays;
+
 /**
  * Clasa care retine statistici pentru un nod selectat:
  * numar de fisiere, foldere, noduri totale, adancime maxima
@@ -52,6 +54,19 @@ public class Stats {
      */
     public int[][] countByTypePerDepth;
 
+    /**
+     * Histograma logaritmica a dimensiunilor fisierelor.
+     * <p>
+     * Compartimentul 0 numara fisierele goale, iar compartimentul {@code k >= 1}
+     * fisierele cu dimensiunea in intervalul [2^(k-1), 2^k). Vezi {@link #sizeBucket(long)}.
+     */
+    public int[] sizeHistogram;
+
+    /**
+     * Numarul de compartimente ale histogramei de dimensiuni (acopera orice long pozitiv).
+     */
+    public static final int SIZE_BUCKETS = 64;
+
     /**
      * Constructor gol, folosit atunci cand ne intereseaza doar
      * valorile agregate simple (totalNodes, folders, files, maxDepth, totalSizeBytes).
@@ -68,6 +83,8 @@ public class Stats {
      *     <li>nodesPerDepth – vector de dimensiune maxDepth + 1</li>
      *     <li>countByTypePerDepth – matrice [maxDepth + 1][nodeTypeCount]</li>
      * </ul>
+     * si histograma de dimensiuni {@code sizeHistogram}. Masivele pe adancime pot fi
+     * marite ulterior cu {@link #ensureDepth(int)}.
      *
      * @param maxDepth      adancimea maxima estimata a subarborelui
      * @param nodeTypeCount numarul de tipuri de noduri (ex: NodeType.values().length)
@@ -75,7 +92,79 @@ public class Stats {
     public Stats(int maxDepth, int nodeTypeCount) {
         this.nodesPerDepth = new int[maxDepth + 1];
         this.countByTypePerDepth = new int[maxDepth + 1][nodeTypeCount];
+        this.sizeHistogram = new int[SIZE_BUCKETS];
+    }
+
+    /**
+     * Compartimentul histogramei in care intra o dimensiune de fisier.
+     *
+     * @param sizeBytes dimensiunea in bytes
+     * @return 0 pentru fisiere goale, altfel {@code floor(log2(size)) + 1}
+     */
+    public static int sizeBucket(long sizeBytes) {
+        return sizeBytes <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(sizeBytes);
+    }
+
+    /**
+     * Limita inferioara (inclusiv) a unui compartiment din histograma de dimensiuni.
+     *
+     * @param bucket indexul compartimentului
+     * @return dimensiunea minima a fisierelor din compartiment
+     */
+    public static long bucketLowerBound(int bucket) {
+        return bucket == 0 ? 0 : 1L << (bucket - 1);
     }
 
+    /**
+     * Mareste masivele pe adancime astfel incat sa cuprinda nivelul dat.
+     * Capacitatea se dubleaza, deci construirea intr-o singura trecere are cost amortizat O(1).
+     * Lungimea efectiva folosita ramane {@code maxDepth + 1}; vezi {@link #trimToDepth()}.
+     *
+     * @param depth adancimea care trebuie sa incapa
+     */
+    public void ensureDepth(int depth) {
+        if (depth < nodesPerDepth.length) return;
+        int cap = Math.max(depth + 1, nodesPerDepth.length * 2);
+        int types = countByTypePerDepth.length > 0 ? countByTypePerDepth[0].length : NodeType.values().length;
+        nodesPerDepth = Arrays.copyOf(nodesPerDepth, cap);
+        int old = countByTypePerDepth.length;
+        countByTypePerDepth = Arrays.copyOf(countByTypePerDepth, cap);
+        for (int i = old; i < cap; i++) countByTypePerDepth[i] = new int[types];
+    }
 
+    /**
+     * Taie masivele pe adancime la lungimea {@code maxDepth + 1}, dupa terminarea calculului.
+     */
+    public void trimToDepth() {
+        if (nodesPerDepth == null || nodesPerDepth.length == maxDepth + 1) return;
+        nodesPerDepth = Arrays.copyOf(nodesPerDepth, maxDepth + 1);
+        countByTypePerDepth = Arrays.copyOf(countByTypePerDepth, maxDepth + 1);
+    }
+
+    /**
+     * Aduna in acest obiect statisticile partiale ale altui subarbore.
+     * Adancimile celor doua obiecte trebuie sa fie masurate fata de acelasi nod de start.
+     * Histogramele sunt adunate doar daca ambele obiecte sunt detaliate.
+     *
+     * @param other statisticile partiale adaugate
+     * @return acest obiect, pentru apeluri inlantuite
+     */
+    public Stats merge(Stats other) {
+        totalNodes += other.totalNodes;
+        folders += other.folders;
+        files += other.files;
+        totalSizeBytes += other.totalSizeBytes;
+        if (other.maxDepth > maxDepth) maxDepth = other.maxDepth;
+        if (nodesPerDepth != null && other.nodesPerDepth != null) {
+            ensureDepth(other.nodesPerDepth.length - 1);
+            for (int d = 0; d < other.nodesPerDepth.length; d++) {
+                nodesPerDepth[d] += other.nodesPerDepth[d];
+                int[] src = other.countByTypePerDepth[d];
+                int[] dst = countByTypePerDepth[d];
+                for (int t = 0; t < src.length; t++) dst[t] += src[t];
+            }
+            for (int b = 0; b < SIZE_BUCKETS; b++) sizeHistogram[b] += other.sizeHistogram[b];
+        }
+        return this;
+    }
 }
@@ -0,0 +1,32 @@
+package service;
+
+/**
+ * Exceptia aruncata cand un lot de operatii este respins.
+ * Arborele ramane neschimbat: fie lotul nu a trecut de validare,
+ * fie modificarile deja aplicate au fost anulate.
+ */
+public class BatchException extends IllegalArgumentException {
+
+    /**
+     * Indicele operatiei care a esuat.
+     */
+    private final int opIndex;
+
+    /**
+     * Creeaza exceptia pentru o operatie din lot.
+     *
+     * @param opIndex indicele operatiei care a esuat
+     * @param cause   motivul respingerii
+     */
+    public BatchException(int opIndex, RuntimeException cause) {
+        super("Batch op #" + opIndex + ": " + cause.getMessage(), cause);
+        this.opIndex = opIndex;
+    }
+
+    /**
+     * @return indicele operatiei care a esuat
+     */
+    public int getOpIndex() {
+        return opIndex;
+    }
+}
@@ -0,0 +1,209 @@
+package service;
+
+import model.FsNode;
+import model.NodeType;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Valideaza un lot intreg de operatii intr-o singura trecere, fara sa modifice arborele,
+ * si produce planul de aplicare (nodurile deja rezolvate pentru fiecare operatie).
+ * <p>
+ * Efectul operatiilor este simulat pe un strat "umbra": fiecare nod atins primeste
+ * un {@link Shadow}, iar copiii adaugati, mutati sau stersi sunt tinuti intr-un
+ * dictionar de suprascrieri peste copiii reali. Astfel caile din operatiile ulterioare
+ * se rezolva exact ca dupa aplicarea celor anterioare, iar costul este proportional
+ * cu lungimea cailor din lot, nu cu dimensiunea arborelui.
+ * <p>
+ * Planul este valid doar daca arborele nu se modifica intre validare si aplicare,
+ * deci apelantul trebuie sa detina lock-ul de scriere pe toata durata lotului.
+ */
+final class BatchValidator {
+
+    /**
+     * Nodul (real sau creat de lot) vazut prin stratul umbra.
+     */
+    static final class Shadow {
+
+        /**
+         * Nodul real; pentru nodurile create de lot este setat la aplicare.
+         */
+        FsNode real;
+        final NodeType type;
+        String name;
+        Shadow parent;
+
+        /**
+         * Copiii suprascrisi: nume normalizat -> umbra, sau null pentru copil eliminat.
+         */
+        Map<String, Shadow> kids;
+
+        Shadow(FsNode real, String name, NodeType type, Shadow parent) {
+            this.real = real;
+            this.name = name;
+            this.type = type;
+            this.parent = parent;
+        }
+
+        boolean canHaveChildren() {
+            return type == NodeType.DRIVE || type == NodeType.FOLDER;
+        }
+    }
+
+    /**
+     * Un pas din planul de aplicare.
+     *
+     * @param op     operatia originala
+     * @param target nodul modificat (sau parintele, pentru creari)
+     * @param dest   noul parinte (mutare) sau umbra nodului creat (creare)
+     */
+    record Step(Op op, Shadow target, Shadow dest) { }
+
+    private final Shadow root;
+
+    /**
+     * Ultima cale rezolvata si rezultatul ei; scripturile trimit de regula multe
+     * operatii consecutive sub acelasi parinte. Se invalideaza la orice schimbare de structura.
+     */
+    private String[] lastPath;
+    private Shadow lastResolved;
+
+    /**
+     * Creeaza un validator peste arborele dat.
+     *
+     * @param realRoot radacina invizibila a arborelui
+     */
+    BatchValidator(FsNode realRoot) {
+        this.root = new Shadow(realRoot, realRoot.getName(), realRoot.getType(), null);
+    }
+
+    /**
+     * Valideaza toate operatiile, in ordine, si construieste planul de aplicare.
+     *
+     * @param ops lotul de operatii
+     * @return pasii lotului, in aceeasi ordine
+     * @throws BatchException la prima operatie invalida
+     */
+    Step[] validate(List<Op> ops) {
+        Step[] steps = new Step[ops.size()];
+        for (int i = 0; i < steps.length; i++) {
+            try {
+                steps[i] = check(ops.get(i));
+            } catch (IllegalArgumentException | IllegalStateException | NullPointerException e) {
+                throw new BatchException(i, e);
+            }
+        }
+        return steps;
+    }
+
+    private Step check(Op op) {
+        if (op instanceof Op.CreateFolder c) {
+            return create(op, c.parentPath(), c.name(), NodeType.FOLDER);
+        } else if (op instanceof Op.CreateFile c) {
+            return create(op, c.parentPath(), c.name(), NodeType.FILE);
+        } else if (op instanceof Op.Rename r) {
+            Shadow n = resolveNonRoot(r.path());
+            requireName(r.newName());
+            String nn = r.newName().trim();
+            if (child(n.parent, nn) != null) throw new IllegalArgumentException("Duplicate name");
+            detach(n);
+            n.name = nn;
+            attach(n.parent, n);
+            lastPath = null;
+            return new Step(op, n, null);
+        } else if (op instanceof Op.Delete d) {
+            Shadow n = resolveNonRoot(d.path());
+            detach(n);
+            lastPath = null;
+            return new Step(op, n, null);
+        } else {
+            Op.Move m = (Op.Move) op;
+            Shadow n = resolveNonRoot(m.path());
+            Shadow np = resolve(m.newParentPath());
+            if (!np.canHaveChildren()) throw new IllegalArgumentException("Poti muta doar in drive sau folder");
+            for (Shadow cur = np; cur != null; cur = cur.parent) {
+                if (cur == n) throw new IllegalArgumentException("Nu poti muta un folder in el insusi sau intr-un descendent");
+            }
+            Shadow other = child(np, n.name);
+            if (other != null && other != n) throw new IllegalArgumentException("Duplicate name");
+            detach(n);
+            n.parent = np;
+            attach(np, n);
+            lastPath = null;
+            return new Step(op, n, np);
+        }
+    }
+
+    private Step create(Op op, String[] parentPath, String name, NodeType type) {
+        Shadow p = resolve(parentPath);
+        requireName(name);
+        if (!p.canHaveChildren()) throw new IllegalStateException("Files cannot have children");
+        String key = FsNode.foldName(name);
+        if (lookup(p, key, name) != null) throw new IllegalArgumentException("Duplicate name");
+        Shadow c = new Shadow(null, name, type, p);
+        p.kids.put(key, c);
+        return new Step(op, p, c);
+    }
+
+    private static void requireName(String name) {
+        if (name == null || name.isBlank()) throw new IllegalArgumentException("Empty name");
+    }
+
+    private Shadow resolveNonRoot(String[] path) {
+        Shadow n = resolve(path);
+        if (n == root) throw new IllegalStateException("Cannot modify root");
+        return n;
+    }
+
+    private Shadow resolve(String[] path) {
+        if (path == lastPath || Arrays.equals(path, lastPath)) return lastResolved;
+        Shadow cur = root;
+        for (String p : path) {
+            Shadow next = child(cur, p);
+            if (next == null) throw new IllegalArgumentException("Path not found: " + String.join("/", path));
+            cur = next;
+        }
+        lastPath = path;
+        lastResolved = cur;
+        return cur;
+    }
+
+    /**
+     * Cauta un copil in stratul umbra, apoi in arborele real.
+     * Copiii reali gasiti primesc o umbra, retinuta pentru rezolvarile urmatoare.
+     */
+    private Shadow child(Shadow p, String name) {
+        if (name == null) return null;
+        return lookup(p, FsNode.foldName(name), name);
+    }
+
+    /**
+     * Varianta lui {@link #child(Shadow, String)} cu cheia deja normalizata.
+     * La iesire dictionarul de suprascrieri al parintelui exista mereu.
+     */
+    private Shadow lookup(Shadow p, String key, String name) {
+        if (p.kids == null) p.kids = new HashMap<>();
+        Shadow s = p.kids.get(key);
+        if (s != null || p.kids.containsKey(key)) return s;
+        if (p.real == null) return null;
+        FsNode r = p.real.childByName(name);
+        if (r == null) return null;
+        s = new Shadow(r, r.getName(), r.getType(), p);
+        p.kids.put(key, s);
+        return s;
+    }
+
+    private void attach(Shadow p, Shadow c) {
+        if (p.kids == null) p.kids = new HashMap<>();
+        p.kids.put(FsNode.foldName(c.name), c);
+    }
+
+    private void detach(Shadow c) {
+        Shadow p = c.parent;
+        if (p.kids == null) p.kids = new HashMap<>();
+        p.kids.put(FsNode.foldName(c.name), null);
+    }
+}
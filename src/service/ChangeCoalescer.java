@@ -0,0 +1,146 @@
+package service;
+
+import model.FsNode;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Comaseaza modificarile elementare ale unei operatii (sau ale unui lot intreg) intr-o lista
+ * de {@link NodeChange} care descrie efectul net asupra fiecarui nod.
+ * <p>
+ * Pentru fiecare nod atins se retine doar starea de dinainte de prima modificare (parinte,
+ * nume, dimensiune, daca exista deja in arbore); la final aceasta este comparata cu starea
+ * curenta. Lista rezultata are ordinea in care o poate aplica direct o vedere (de exemplu un
+ * {@code JTree}): intai detasarile, apoi atasarile crescator dupa pozitia finala (astfel
+ * fiecare pozitie este valida in momentul inserarii), apoi redenumirile si redimensionarile.
+ * <p>
+ * Clasa nu este thread-safe; serviciul o foloseste sub lock-ul de scriere.
+ */
+final class ChangeCoalescer {
+
+    /**
+     * Starea de dinainte a unui nod atins.
+     */
+    private static final class Before {
+        final boolean existed;
+        final FsNode parent;
+        final String name;
+        final long size;
+        boolean structural;
+
+        Before(boolean existed, FsNode parent, String name, long size) {
+            this.existed = existed;
+            this.parent = parent;
+            this.name = name;
+            this.size = size;
+        }
+    }
+
+    private final FsNode root;
+    private final Map<FsNode, Before> touched = new IdentityHashMap<>();
+    private final List<FsNode> order = new ArrayList<>();
+
+    /**
+     * @param root radacina invizibila; un nod este "in arbore" daca root este stramosul lui
+     */
+    ChangeCoalescer(FsNode root) {
+        this.root = root;
+    }
+
+    /**
+     * Un nod nou a fost atasat (si subarborele lui).
+     */
+    void created(FsNode n) {
+        before(n, false, null, n.getName(), n.getSizeBytes()).structural = true;
+    }
+
+    /**
+     * Un nod a fost detasat din parintele dat.
+     */
+    void deleted(FsNode n, FsNode oldParent) {
+        before(n, true, oldParent, n.getName(), n.getSizeBytes()).structural = true;
+    }
+
+    /**
+     * Un nod a fost mutat din parintele dat.
+     */
+    void moved(FsNode n, FsNode oldParent) {
+        before(n, true, oldParent, n.getName(), n.getSizeBytes()).structural = true;
+    }
+
+    /**
+     * Un nod a fost redenumit.
+     */
+    void renamed(FsNode n, String oldName) {
+        before(n, true, n.getParent(), oldName, n.getSizeBytes());
+    }
+
+    /**
+     * Dimensiunea unui fisier a fost schimbata.
+     */
+    void resized(FsNode n, long oldSize) {
+        before(n, true, n.getParent(), n.getName(), oldSize);
+    }
+
+    private Before before(FsNode n, boolean existed, FsNode parent, String name, long size) {
+        Before b = touched.get(n);
+        if (b == null) {
+            b = new Before(existed, parent, name, size);
+            touched.put(n, b);
+            order.add(n);
+        }
+        return b;
+    }
+
+    /**
+     * Compara starea de dinainte cu cea curenta si produce modificarile nete.
+     *
+     * @return modificarile, in ordinea descrisa la nivelul clasei
+     */
+    List<NodeChange> finish() {
+        List<NodeChange> removed = new ArrayList<>();
+        List<NodeChange> attached = new ArrayList<>();
+        List<NodeChange> updated = new ArrayList<>();
+        for (FsNode n : order) {
+            Before b = touched.get(n);
+            boolean inTree = isInTree(n);
+            if (!inTree) {
+                // un nod care a iesit din arbore doar odata cu un stramos este acoperit de acela
+                if (b.existed && b.structural) {
+                    removed.add(new NodeChange(NodeChange.Kind.REMOVED, n, null, -1, b.parent, null, 0));
+                }
+                continue;
+            }
+            FsNode p = n.getParent();
+            if (!b.existed) {
+                Before pb = touched.get(p);
+                // subarborele unui nod nou este raportat doar prin radacina lui
+                if (pb == null || pb.existed) {
+                    attached.add(new NodeChange(NodeChange.Kind.ADDED, n, p, p.indexOfChild(n), null, null, 0));
+                }
+                continue;
+            }
+            if (b.structural) {
+                attached.add(new NodeChange(NodeChange.Kind.MOVED, n, p, p.indexOfChild(n), b.parent, null, 0));
+            }
+            if (!b.name.equals(n.getName())) {
+                updated.add(new NodeChange(NodeChange.Kind.RENAMED, n, p, -1, null, b.name, 0));
+            }
+            if (b.size != n.getSizeBytes()) {
+                updated.add(new NodeChange(NodeChange.Kind.RESIZED, n, p, -1, null, null, b.size));
+            }
+        }
+        attached.sort((x, y) -> Integer.compare(x.index(), y.index()));
+        removed.addAll(attached);
+        removed.addAll(updated);
+        return removed;
+    }
+
+    private boolean isInTree(FsNode n) {
+        for (FsNode c = n; c != null; c = c.getParent()) if (c == root) return true;
+        return false;
+    }
+}
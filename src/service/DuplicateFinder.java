@@ -0,0 +1,327 @@
+package service;
+
+import model.NodeType;
+import model.SnapshotNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+/**
+ * Detectarea fisierelor candidate la duplicat, grupate dupa (nume normalizat, dimensiune)
+ * si dupa dimensiune.
+ * <p>
+ * Lucreaza pe un snapshot imutabil. Fiecare copil al nodului de start (pentru root: fiecare
+ * drive) este parcurs in paralel intr-o sarcina proprie, care colecteaza fisierele in vectori
+ * primitivi: dimensiune, hash-ul pe 64 de biti al numelui normalizat si indexul folderului
+ * parinte (caile sunt reconstruite doar pentru fisierele raportate). Gruparea foloseste o
+ * tabela cu chei {@code long} si liste inlantuite prin indici {@code int}, fara obiecte
+ * per fisier. Coliziunile de hash sunt separate la raportare, comparand numele reale.
+ * <p>
+ * Grupurile sunt trimise pe rand consumatorului, descrescator dupa spatiul irosit.
+ * Fisierele goale nu formeaza grupuri doar dupa dimensiune, deoarece orice doua s-ar potrivi.
+ */
+final class DuplicateFinder {
+
+    private DuplicateFinder() {
+    }
+
+    /**
+     * Cauta grupurile de duplicate sub un nod si le trimite consumatorului.
+     *
+     * @param start     nodul de start
+     * @param startPath calea (cu nume reale) a nodului de start
+     * @param sink      consumatorul grupurilor
+     */
+    static void run(SnapshotNode start, String[] startPath, Consumer<DuplicateGroup> sink) {
+        List<SnapshotNode> units = start.getChildren();
+        Collector[] parts = new Collector[units.size()];
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int i = 0; i < parts.length; i++) {
+            Collector c = new Collector(units.get(i), startPath);
+            parts[i] = c;
+            tasks.add(c);
+        }
+        ForkJoinTask.invokeAll(tasks);
+
+        Files all = Files.concat(parts);
+        report(all, true, sink);
+        report(all, false, sink);
+    }
+
+    /**
+     * Grupeaza fisierele dupa o cheie si raporteaza grupurile cu cel putin doua fisiere.
+     *
+     * @param f        fisierele colectate
+     * @param withName true pentru cheia (nume, dimensiune), false pentru dimensiune
+     * @param sink     consumatorul grupurilor
+     */
+    private static void report(Files f, boolean withName, Consumer<DuplicateGroup> sink) {
+        int n = f.size;
+        LongGroups groups = new LongGroups(n);
+        for (int i = 0; i < n; i++) {
+            if (!withName && f.sizes[i] == 0) continue;
+            long key = withName ? mix(f.nameHashes[i], f.sizes[i]) : f.sizes[i];
+            groups.add(key, i);
+        }
+        int[] heads = groups.headsWithAtLeast(2);
+        int[] counts = groups.headCounts;
+        long[] wasted = new long[heads.length];
+        Integer[] order = new Integer[heads.length];
+        for (int g = 0; g < heads.length; g++) {
+            wasted[g] = f.sizes[heads[g]] * (counts[g] - 1);
+            order[g] = g;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(wasted[b], wasted[a]));
+
+        for (int g : order) {
+            int head = heads[g];
+            if (withName) {
+                // separa eventualele coliziuni de hash dupa numele real
+                List<List<Integer>> byName = new ArrayList<>();
+                for (int i = head; i >= 0; i = groups.next[i]) {
+                    List<Integer> target = null;
+                    for (List<Integer> l : byName) {
+                        if (f.nodes[l.get(0)].getName().equalsIgnoreCase(f.nodes[i].getName())) {
+                            target = l;
+                            break;
+                        }
+                    }
+                    if (target == null) byName.add(target = new ArrayList<>());
+                    target.add(i);
+                }
+                for (List<Integer> l : byName) {
+                    if (l.size() < 2) continue;
+                    List<SearchHit> hits = new ArrayList<>(l.size());
+                    for (int i : l) hits.add(f.hit(i));
+                    sink.accept(new DuplicateGroup(DuplicateGroup.Kind.NAME_AND_SIZE, f.nodes[l.get(0)].getName(), f.sizes[head], hits));
+                }
+            } else {
+                List<SearchHit> hits = new ArrayList<>(counts[g]);
+                for (int i = head; i >= 0; i = groups.next[i]) hits.add(f.hit(i));
+                sink.accept(new DuplicateGroup(DuplicateGroup.Kind.SIZE, null, f.sizes[head], hits));
+            }
+        }
+    }
+
+    /**
+     * Hash FNV-1a pe 64 de biti al numelui normalizat caracter cu caracter,
+     * la fel ca {@code FsNode.foldName}, fara a construi sirul normalizat.
+     */
+    static long nameHash(String name) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < name.length(); i++) {
+            char c = Character.toLowerCase(Character.toUpperCase(name.charAt(i)));
+            h = (h ^ c) * 0x100000001b3L;
+        }
+        return h;
+    }
+
+    private static long mix(long nameHash, long size) {
+        long h = nameHash ^ (size * 0x9E3779B97F4A7C15L);
+        return h ^ (h >>> 31);
+    }
+
+    /**
+     * Fisierele colectate, in vectori paraleli. Folderele sunt tinute separat
+     * (nume si parinte), pentru reconstruirea cailor doar la raportare.
+     */
+    private static final class Files {
+
+        SnapshotNode[] nodes = new SnapshotNode[64];
+        long[] sizes = new long[64];
+        long[] nameHashes = new long[64];
+        int[] parents = new int[64];
+        int size;
+
+        String[] folderNames = new String[16];
+        int[] folderParents = new int[16];
+        int folderCount;
+
+        String[] basePath;
+
+        int addFolder(String name, int parent) {
+            if (folderCount == folderNames.length) {
+                folderNames = Arrays.copyOf(folderNames, folderCount * 2);
+                folderParents = Arrays.copyOf(folderParents, folderCount * 2);
+            }
+            folderNames[folderCount] = name;
+            folderParents[folderCount] = parent;
+            return folderCount++;
+        }
+
+        void addFile(SnapshotNode n, int parent) {
+            if (size == nodes.length) grow(size * 2);
+            nodes[size] = n;
+            sizes[size] = n.getSizeBytes();
+            nameHashes[size] = nameHash(n.getName());
+            parents[size] = parent;
+            size++;
+        }
+
+        void grow(int cap) {
+            nodes = Arrays.copyOf(nodes, cap);
+            sizes = Arrays.copyOf(sizes, cap);
+            nameHashes = Arrays.copyOf(nameHashes, cap);
+            parents = Arrays.copyOf(parents, cap);
+        }
+
+        SearchHit hit(int i) {
+            int depth = 1;
+            for (int p = parents[i]; p >= 0; p = folderParents[p]) depth++;
+            String[] path = Arrays.copyOf(basePath, basePath.length + depth);
+            int w = path.length - 1;
+            path[w--] = nodes[i].getName();
+            for (int p = parents[i]; p >= 0; p = folderParents[p]) path[w--] = folderNames[p];
+            SnapshotNode n = nodes[i];
+            return new SearchHit(n.getId(), path, NodeType.FILE, n.getSizeBytes());
+        }
+
+        /**
+         * Lipeste colectiile partiale intr-una singura, renumerotand folderele.
+         */
+        static Files concat(Collector[] parts) {
+            Files all = new Files();
+            int files = 0, folders = 0;
+            for (Collector c : parts) {
+                files += c.files.size;
+                folders += c.files.folderCount;
+            }
+            all.grow(Math.max(1, files));
+            all.folderNames = new String[Math.max(1, folders)];
+            all.folderParents = new int[Math.max(1, folders)];
+            for (Collector c : parts) {
+                Files f = c.files;
+                all.basePath = f.basePath;
+                int base = all.folderCount;
+                System.arraycopy(f.folderNames, 0, all.folderNames, base, f.folderCount);
+                for (int i = 0; i < f.folderCount; i++) {
+                    int p = f.folderParents[i];
+                    all.folderParents[base + i] = p < 0 ? -1 : p + base;
+                }
+                all.folderCount += f.folderCount;
+                System.arraycopy(f.nodes, 0, all.nodes, all.size, f.size);
+                System.arraycopy(f.sizes, 0, all.sizes, all.size, f.size);
+                System.arraycopy(f.nameHashes, 0, all.nameHashes, all.size, f.size);
+                for (int i = 0; i < f.size; i++) {
+                    int p = f.parents[i];
+                    all.parents[all.size + i] = p < 0 ? -1 : p + base;
+                }
+                all.size += f.size;
+                c.files = null;
+            }
+            if (all.basePath == null) all.basePath = new String[0];
+            return all;
+        }
+    }
+
+    /**
+     * Sarcina care colecteaza fisierele dintr-un subarbore (un drive sau un copil al nodului de start).
+     */
+    private static final class Collector extends RecursiveAction {
+
+        private final SnapshotNode unit;
+        private Files files = new Files();
+
+        Collector(SnapshotNode unit, String[] basePath) {
+            this.unit = unit;
+            files.basePath = basePath;
+        }
+
+        @Override
+        protected void compute() {
+            if (unit.getType() == NodeType.FILE) {
+                files.addFile(unit, -1);
+                return;
+            }
+            SnapshotNode[] stack = new SnapshotNode[64];
+            int[] folderOf = new int[64];
+            int top = 0;
+            stack[top] = unit;
+            folderOf[top++] = -1;
+            while (top > 0) {
+                SnapshotNode n = stack[--top];
+                int parent = folderOf[top];
+                stack[top] = null;
+                int self = files.addFolder(n.getName(), parent);
+                List<SnapshotNode> kids = n.getChildren();
+                if (top + kids.size() > stack.length) {
+                    int cap = Math.max(stack.length * 2, top + kids.size());
+                    stack = Arrays.copyOf(stack, cap);
+                    folderOf = Arrays.copyOf(folderOf, cap);
+                }
+                for (SnapshotNode c : kids) {
+                    if (c.getType() == NodeType.FILE) {
+                        files.addFile(c, self);
+                    } else {
+                        stack[top] = c;
+                        folderOf[top++] = self;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Grupare dupa chei {@code long}: adresare deschisa pentru chei, iar membrii fiecarui
+     * grup sunt inlantuiti prin vectorul {@link #next} (indici de fisiere).
+     */
+    private static final class LongGroups {
+
+        private final long[] keys;
+        private final int[] heads;
+        private final int[] counts;
+        private final boolean[] used;
+        final int[] next;
+
+        LongGroups(int n) {
+            int cap = Integer.highestOneBit(Math.max(16, n * 2 - 1)) << 1;
+            keys = new long[cap];
+            heads = new int[cap];
+            counts = new int[cap];
+            used = new boolean[cap];
+            next = new int[Math.max(1, n)];
+        }
+
+        void add(long key, int i) {
+            int mask = keys.length - 1;
+            long h = key * 0x9E3779B97F4A7C15L;
+            int s = (int) (h ^ (h >>> 32)) & mask;
+            while (used[s] && keys[s] != key) s = (s + 1) & mask;
+            if (!used[s]) {
+                used[s] = true;
+                keys[s] = key;
+                heads[s] = -1;
+            }
+            next[i] = heads[s];
+            heads[s] = i;
+            counts[s]++;
+        }
+
+        /**
+         * Numarul de membri ai grupurilor intoarse de ultimul apel {@link #headsWithAtLeast(int)}.
+         */
+        int[] headCounts;
+
+        /**
+         * @return primul membru al fiecarui grup cu cel putin {@code min} membri
+         */
+        int[] headsWithAtLeast(int min) {
+            int c = 0;
+            for (int s = 0; s < keys.length; s++) if (used[s] && counts[s] >= min) c++;
+            int[] out = new int[c];
+            headCounts = new int[c];
+            int w = 0;
+            for (int s = 0; s < keys.length; s++) {
+                if (used[s] && counts[s] >= min) {
+                    headCounts[w] = counts[s];
+                    out[w++] = heads[s];
+                }
+            }
+            return out;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package service;
+
+import java.util.List;
+
+/**
+ * Un grup de fisiere candidate la duplicat, raportat de
+ * {@link FileTreeService#findDuplicates(String[], java.util.function.Consumer)}.
+ *
+ * @param kind      criteriul de grupare
+ * @param name      numele comun (pentru {@link Kind#NAME_AND_SIZE}); null pentru {@link Kind#SIZE}
+ * @param sizeBytes dimensiunea comuna a fisierelor
+ * @param files     fisierele din grup (cel putin doua), cu caile lor complete
+ */
+public record DuplicateGroup(Kind kind, String name, long sizeBytes, List<SearchHit> files) {
+
+    /**
+     * Criteriul dupa care au fost grupate fisierele.
+     */
+    public enum Kind {
+        /** Acelasi nume (ignorand literele mari/mici) si aceeasi dimensiune. */
+        NAME_AND_SIZE,
+        /** Doar aceeasi dimensiune. */
+        SIZE
+    }
+
+    /**
+     * @return spatiul care ar fi eliberat daca s-ar pastra un singur fisier din grup
+     */
+    public long wastedBytes() {
+        return sizeBytes * (files.size() - 1);
+    }
+}
@@ -2,6 +2,18 @@ package service;
 
 import model.*;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
 /**
  * Clasa de serviciu care incapsuleaza operatiile asupra arborelui logic de fisiere.
  * Lucreaza cu un root invizibil care contine ca si copii principalele drive-uri
@@ -9,150 +21,1325 @@ import model.*;
  * <p>
  * UI-ul (Swing) foloseste aceasta clasa pentru a crea, muta, sterge, redenumi
  * noduri si pentru a calcula statistici.
+ * <p>
+ * Serviciul este thread-safe:
+ * <ul>
+ *     <li>citirile ({@link #find}, {@link #stats}) iau lock-ul de citire al arborelui
+ *         si ruleaza in paralel;</li>
+ *     <li>modificarile sunt serializate sub lock-ul de scriere: fiecare schimbare actualizeaza
+ *         totalurile tuturor stramosilor, versiunea, indexurile si jurnalul, deci doi scriitori
+ *         nu pot lucra in paralel nici pe parinti diferiti. Validarea si aplicarea se fac in
+ *         aceeasi sectiune exclusiva, iar asteptarea jurnalului si notificarea ascultatorilor
+ *         ruleaza dupa eliberarea lock-ului.</li>
+ * </ul>
+ * Cititorii lungi (export, cautari, statistici) pot folosi {@link #snapshot()},
+ * care ofera o versiune imutabila a arborelui fara a bloca scriitorii.
+ * Nodurile returnate pot fi citite direct doar din firul care face si modificarile (ex: EDT).
  */
 public class FileTreeService {
 
     /**
-     * Radacina invizibila a arborelui (parinte pentru toate drive-urile).
+     * Radacina invizibila a arborelui (parinte pentru toate drive-urile).
+     */
+    private final FsNode root; // root invizibil (conține C:, D:, ...)
+
+    /**
+     * Daca este activ, {@link #stats(String[])} compara totalurile mentinute
+     * incremental in {@link FsNode} cu o parcurgere completa a subarborelui.
+     */
+    private volatile boolean verifyStats;
+
+    /**
+     * Lock-ul arborelui: citire pentru interogari si validari, scriere pentru
+     * aplicarea efectiva a modificarilor.
+     */
+    private final ReentrantReadWriteLock treeLock = new ReentrantReadWriteLock();
+
+    /**
+     * Versiunea curenta a arborelui; creste la fiecare modificare aplicata.
+     */
+    private volatile long version;
+
+    /**
+     * Ultimul snapshot publicat: versiunea si radacina imutabila a acesteia.
+     */
+    private final AtomicReference<TreeSnapshot> published = new AtomicReference<>();
+
+    /**
+     * Serializeaza intre cititori calculele care scriu cache-uri in noduri:
+     * imaginile imutabile (freeze) si hash-urile subarborilor.
+     */
+    private final Object freezeLock = new Object();
+
+    /**
+     * Cache-ul LRU cale -> nod folosit la rezolvarea cailor.
+     */
+    private final PathCache pathCache = new PathCache(4096);
+
+    /**
+     * Indexul id -> nod pentru toate nodurile atasate arborelui si incarcate in memorie.
+     */
+    private final NodeIdIndex ids;
+
+    /**
+     * Indexul optional de trigrame pentru cautarea dupa subsir; null cat timp este dezactivat.
+     * Este modificat doar sub lock-ul de scriere si citit sub lock-ul de citire.
+     */
+    private TrigramIndex trigrams;
+
+    /**
+     * Indexul optional al fisierelor dupa dimensiune; null cat timp este dezactivat.
+     */
+    private SizeIndex sizeIndex;
+
+    /**
+     * Jurnalul de scriere in avans; null cat timp este dezactivat.
+     * Este schimbat si folosit pentru inregistrare doar sub lock-ul de scriere.
+     */
+    private volatile WriteAheadLog wal;
+
+    /**
+     * Ascultatorii notificati dupa fiecare modificare sau lot.
+     */
+    private final List<TreeChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * O modificare deja aplicata, retinuta pentru anulare: contine exact datele necesare
+     * operatiei inverse (vezi {@link #invert(Applied[], List)}), nu o copie a arborelui.
+     *
+     * @param kind     tipul modificarii
+     * @param node     nodul modificat (pentru stergere: radacina subarborelui detasat)
+     * @param parent   parintele in care a fost atasat (creare) sau parintele anterior (stergere, mutare)
+     * @param position pozitia nodului in acel parinte
+     * @param oldName  numele anterior (pentru redenumire)
+     * @param oldSize  dimensiunea anterioara (pentru redimensionare)
+     */
+    private record Applied(Kind kind, FsNode node, FsNode parent, int position, String oldName, long oldSize) {
+        enum Kind { CREATED, RENAMED, DELETED, MOVED, RESIZED }
+
+        static final Applied[] NONE = new Applied[0];
+    }
+
+    /**
+     * Jurnalul de undo/redo; grupurile sunt editari simple sau loturi intregi.
+     */
+    private final UndoJournal<Applied> journal = new UndoJournal<>(DEFAULT_UNDO_DEPTH);
+
+    /**
+     * Adancimea implicita a jurnalului de undo.
+     */
+    public static final int DEFAULT_UNDO_DEPTH = 10_000;
+
+    /**
+     * Constructor care initializeaza serviciul cu un root invizibil deja construit.
+     * Daca arborele este incarcat la cerere ({@link ChildLoader}), nodurile sunt inregistrate
+     * in serviciu pe masura ce sunt citite.
+     *
+     * @param invisibleRoot nodul radacina invizibil
+     */
+    public FileTreeService(FsNode invisibleRoot){
+        this.root = invisibleRoot;
+        this.ids = new NodeIdIndex(countLoaded(invisibleRoot));
+        ids.putSubtree(invisibleRoot);
+        ChildLoader loader = invisibleRoot.getChildLoader();
+        if (loader != null) loader.addLoadListener(this::registerLoaded);
+    }
+
+    /**
+     * Numarul de noduri deja aflate in memorie (fara a incarca folderele necitite).
+     */
+    private static int countLoaded(FsNode start){
+        if (start.getChildLoader() == null) return start.getSubtreeNodes();
+        int count = 0;
+        ArrayDeque<FsNode> stack = new ArrayDeque<>();
+        stack.push(start);
+        while (!stack.isEmpty()) {
+            FsNode n = stack.pop();
+            count++;
+            for (FsNode c : n.getLoadedChildren()) stack.push(c);
+        }
+        return count;
+    }
+
+    /**
+     * Inregistreaza copiii tocmai cititi ai unui folder incarcat la cerere.
+     * Apelata din firul care a atins folderul (UI sau cititor sub lock-ul de citire).
+     */
+    private void registerLoaded(FsNode folder){
+        FsNode top = folder;
+        while (top.getParent() != null) top = top.getParent();
+        // subarbore sters: va fi inregistrat la reatasare (undo)
+        if (top != root) return;
+        for (FsNode c : folder.getLoadedChildren()) ids.put(c);
+    }
+
+    /**
+     * Returneaza radacina invizibila folosita de serviciu.
+     */
+    public FsNode getRoot(){
+        return root;
+    }
+
+    /**
+     * Indica daca arborele este incarcat la cerere ({@link ChildLoader}). In acest mod sunt
+     * refuzate operatiile care parcurg subarbori intregi (statistici detaliate, top, cautare,
+     * duplicate, snapshot, indexuri, hash-uri), pentru ca ar citi din fisier tot arborele;
+     * statisticile simple ({@link #stats(String[])}) si editarile raman disponibile.
+     *
+     * @return true daca folderele sunt citite din fisier la primul acces
+     */
+    public boolean isLazy(){
+        return root.getChildLoader() != null;
+    }
+
+    /**
+     * Refuza o operatie care ar parcurge tot subarborele unui arbore incarcat la cerere.
+     *
+     * @param operation numele operatiei, pentru mesajul exceptiei
+     */
+    private void requireEager(String operation){
+        if (isLazy()) throw new IllegalStateException(operation + " is not available for a lazily loaded tree");
+    }
+
+    /**
+     * Activeaza sau dezactiveaza modul de verificare a statisticilor.
+     * In modul de verificare fiecare apel {@link #stats(String[])} face si
+     * o parcurgere completa (paralela pentru subarbori mari) si arunca exceptie la orice diferenta.
+     *
+     * @param verifyStats true pentru a activa verificarea
+     * @throws IllegalStateException daca arborele este incarcat la cerere ({@link #isLazy()})
+     */
+    public void setVerifyStats(boolean verifyStats){
+        if (verifyStats) requireEager("Stats verification");
+        this.verifyStats = verifyStats;
+    }
+
+    /**
+     * Numarul de rezolvari de cai servite din cache.
+     *
+     * @return numarul de hit-uri in cache-ul de cai
+     */
+    public long getPathCacheHits(){
+        return pathCache.getHits();
+    }
+
+    /**
+     * Numarul de rezolvari de cai care au parcurs arborele.
+     *
+     * @return numarul de miss-uri in cache-ul de cai
+     */
+    public long getPathCacheMisses(){
+        return pathCache.getMisses();
+    }
+
+    /**
+     * Activeaza indexul fisierelor dupa dimensiune, construindu-l din arborele curent.
+     * Cu indexul activ, {@link #filesBySize} si {@link #countFilesBySize} nu mai parcurg arborele.
+     *
+     * @throws IllegalStateException daca arborele este incarcat la cerere ({@link #isLazy()})
+     */
+    public void enableSizeIndex(){
+        requireEager("Size index");
+        treeLock.writeLock().lock();
+        try {
+            sizeIndex = SizeIndex.build(root);
+        } finally {
+            treeLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Dezactiveaza indexul de dimensiuni si elibereaza memoria ocupata de el.
+     */
+    public void disableSizeIndex(){
+        treeLock.writeLock().lock();
+        try {
+            sizeIndex = null;
+        } finally {
+            treeLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Activeaza indexul de trigrame, construindu-l din arborele curent.
+     * Cu indexul activ, cautarile {@link SearchOptions.Mode#SUBSTRING} nu mai parcurg arborele.
+     *
+     * @throws IllegalStateException daca arborele este incarcat la cerere ({@link #isLazy()})
+     */
+    public void enableTrigramIndex(){
+        requireEager("Trigram index");
+        treeLock.writeLock().lock();
+        try {
+            trigrams = TrigramIndex.build(root);
+        } finally {
+            treeLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Activeaza indexul de trigrame, incarcandu-l din fisierul salvat langa structura
+     * daca acesta corespunde structurii incarcate; altfel indexul este reconstruit.
+     *
+     * @param indexFile fisierul indexului (ex: {@code structura.trigrams})
+     * @param structure fisierul din care a fost incarcat arborele (ex: {@code structura.txt})
+     * @return true daca indexul a fost incarcat din fisier, false daca a fost reconstruit
+     * @throws IllegalStateException daca arborele este incarcat la cerere ({@link #isLazy()})
+     */
+    public boolean enableTrigramIndex(File indexFile, File structure){
+        requireEager("Trigram index");
+        treeLock.writeLock().lock();
+        try {
+            TrigramIndex loaded = null;
+            try {
+                loaded = TrigramIndex.read(root, indexFile, structure);
+            } catch (IOException e) {
+                // fisier corupt sau trunchiat: indexul se reconstruieste
+            }
+            trigrams = loaded != null ? loaded : TrigramIndex.build(root);
+            return loaded != null;
+        } finally {
+            treeLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Dezactiveaza indexul de trigrame si elibereaza memoria ocupata de el.
+     */
+    public void disableTrigramIndex(){
+        treeLock.writeLock().lock();
+        try {
+            trigrams = null;
+        } finally {
+            treeLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Salveaza indexul de trigrame langa structura. Trebuie apelata dupa salvarea structurii,
+     * deoarece indexul retine lungimea si data modificarii fisierului structurii.
+     *
+     * @param indexFile fisierul indexului
+     * @param structure fisierul structurii tocmai salvat
+     * @throws IOException la erori de scriere
+     * @throws IllegalStateException daca indexul nu este activ
+     */
+    public void saveTrigramIndex(File indexFile, File structure) throws IOException {
+        treeLock.readLock().lock();
+        try {
+            if (trigrams == null) throw new IllegalStateException("Trigram index not enabled");
+            trigrams.write(root, indexFile, structure);
+        } finally {
+            treeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Activeaza jurnalul de scriere in avans: fiecare editare aplicata de acum inainte
+     * (inclusiv loturile, undo si redo) este adaugata in jurnal ca o singura inregistrare,
+     * inainte de notificarea ascultatorilor. Cu {@link WriteAheadLog.Sync#ALWAYS} metoda care
+     * a facut editarea revine abia dupa ce inregistrarea este pe disc; lock-urile arborelui
+     * sunt deja eliberate, deci editarile concurente sunt scrise impreuna.
+     * <p>
+     * Editarile din jurnal trebuie reaplicate ({@link WriteAheadLog#replay(FsNode)}) inainte
+     * de crearea serviciului.
+     *
+     * @param wal jurnalul deschis peste fisierul din care a fost incarcat arborele
+     */
+    public void enableJournal(WriteAheadLog wal){
+        treeLock.writeLock().lock();
+        try {
+            this.wal = wal;
+        } finally {
+            treeLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Dezactiveaza jurnalul de scriere in avans; jurnalul nu este inchis.
+     */
+    public void disableJournal(){
+        treeLock.writeLock().lock();
+        try {
+            wal = null;
+        } finally {
+            treeLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Compacteaza jurnalul: scrie starea curenta a arborelui in snapshot-ul jurnalului si
+     * pastreaza in jurnal doar editarile facute intre timp. Textul este scris dintr-un
+     * {@link #snapshot()}, deci editarile nu sunt blocate; fisierul text salvat nu este atins.
+     *
+     * @param sink scrierea textului (ex: {@code FileTreeRepository::writeSnapshot})
+     * @return false daca jurnalul nu este activ
+     * @throws IOException la erori de scriere; jurnalul si snapshot-ul vechi raman valide
+     * @throws IllegalStateException daca arborele este incarcat la cerere ({@link #isLazy()})
+     */
+    public boolean compactJournal(WriteAheadLog.SnapshotSink sink) throws IOException {
+        WriteAheadLog w;
+        TreeSnapshot s;
+        long seq;
+        // sub lock-ul de citire nu se pot adauga inregistrari, deci snapshot-ul contine exact
+        // editarile pana la secventa curenta
+        treeLock.readLock().lock();
+        try {
+            w = wal;
+            if (w == null) return false;
+            s = snapshot();
+            seq = w.lastSeq();
+        } finally {
+            treeLock.readLock().unlock();
+        }
+        try (TreeSnapshot snap = s) {
+            w.fold(snap.getRoot(), seq, sink);
+        }
+        return true;
+    }
+
+    /**
+     * Adauga in jurnalul de scriere in avans editarea tocmai aplicata.
+     * Apelantul detine lock-ul de scriere.
+     *
+     * @return secventa inregistrarii, sau 0 fara jurnal
+     */
+    private long commitJournal(){
+        return wal != null ? wal.commit() : 0;
+    }
+
+    /**
+     * Incheie sectiunea exclusiva a unei editari. Operatiile ramase in jurnalul de scriere in
+     * avans fara sa fi ajuns intr-o inregistrare (editare intrerupta de orice exceptie sau
+     * eroare, ex: {@link StackOverflowError}) sunt aruncate, ca sa nu fie lipite de editarea
+     * urmatoare; dupa {@link #commitJournal()} nu mai ramane nimic de aruncat.
+     */
+    private void endEdit(){
+        try {
+            if (wal != null) wal.discard();
+        } finally {
+            treeLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Asteapta, dupa eliberarea lock-urilor, ca editarea sa fie durabila conform politicii jurnalului.
+     */
+    private void awaitJournal(long seq){
+        WriteAheadLog w = wal;
+        if (w != null) w.awaitDurable(seq);
+    }
+
+    /**
+     * Elibereaza copiii folderelor incarcate la cerere care nu sunt folosite, daca incarcatorul
+     * arborelui o cere ({@link ChildLoader#shouldEvict()}, ex: memorie putina). Sunt eliberate
+     * doar folderele nemodificate de la ultima citire sau salvare, care vor fi recitite din
+     * fisier la urmatorul acces; totalurile lor raman in noduri.
+     * <p>
+     * Id-urile nodurilor eliberate nu mai sunt valide. Eliberarea este refuzata cat timp
+     * indexul de trigrame sau cel de dimensiuni este activ, deoarece acestea retin nodurile.
+     * <p>
+     * Apelul ia lock-ul de scriere si parcurge nodurile incarcate, deci este gandit pentru
+     * momentele in care memoria chiar este putina (ex: la depasirea unui prag de heap), nu
+     * pentru fiecare actiune din UI; daca incarcatorul nu cere eliberarea, apelul iese fara lock.
+     *
+     * @param inUse indica folderele ai caror copii sunt folositi (ex: afisati in UI)
+     * @return numarul de foldere eliberate
+     */
+    public int evictUnused(Predicate<FsNode> inUse){
+        ChildLoader loader = root.getChildLoader();
+        if (loader == null || !loader.shouldEvict()) return 0;
+        treeLock.writeLock().lock();
+        try {
+            if (trigrams != null || sizeIndex != null || !loader.shouldEvict()) return 0;
+            int evicted = 0;
+            ArrayDeque<FsNode> stack = new ArrayDeque<>(root.getLoadedChildren());
+            while (!stack.isEmpty()) {
+                FsNode n = stack.pop();
+                List<FsNode> kids = n.getLoadedChildren();
+                if (kids.isEmpty()) continue;
+                if (n.getChildLoader() != null && !n.isTextDirty() && !inUse.test(n) && n.unloadChildren()) {
+                    for (FsNode c : kids) ids.removeSubtree(c);
+                    evicted++;
+                    continue;
+                }
+                for (FsNode c : kids) stack.push(c);
+            }
+            if (evicted > 0) pathCache.clear();
+            return evicted;
+        } finally {
+            treeLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Inregistreaza un ascultator pentru modificarile arborelui.
+     *
+     * @param l ascultatorul
+     */
+    public void addTreeChangeListener(TreeChangeListener l){
+        listeners.add(l);
+    }
+
+    /**
+     * Elimina un ascultator inregistrat anterior.
+     *
+     * @param l ascultatorul
+     */
+    public void removeTreeChangeListener(TreeChangeListener l){
+        listeners.remove(l);
+    }
+
+    /**
+     * Returneaza versiunea curenta a arborelui.
+     *
+     * @return numarul de modificari aplicate de la crearea serviciului
+     */
+    public long getVersion(){
+        return version;
+    }
+
+    /**
+     * Indica daca arborele are modificari nesalvate fata de ultimul fisier text incarcat
+     * sau salvat. Fiecare modificare marcheaza ca murdari nodul atins si stramosii lui
+     * ({@link FsNode#isTextDirty()}); salvarea incrementala rescrie doar acele drumuri.
+     *
+     * @return true daca exista modificari nesalvate
+     */
+    public boolean isDirty(){
+        treeLock.readLock().lock();
+        try {
+            return root.isTextDirty();
+        } finally {
+            treeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returneaza un snapshot imutabil si consistent al arborelui.
+     * <p>
+     * Daca arborele nu s-a schimbat de la ultimul snapshot publicat, acesta este refolosit
+     * fara niciun lock. Altfel, sub lock-ul de citire, sunt copiate doar nodurile modificate
+     * si stramosii lor (restul fiind partajat cu versiunea anterioara), iar noua radacina
+     * este publicata atomic. Snapshot-ul trebuie inchis cu {@link TreeSnapshot#close()}.
+     * <p>
+     * Cautarile, duplicatele si compactarea jurnalului lucreaza pe snapshot, deci sunt
+     * refuzate impreuna cu el pentru arborii incarcati la cerere.
+     *
+     * @return snapshot-ul versiunii curente
+     * @throws IllegalStateException daca arborele este incarcat la cerere ({@link #isLazy()})
+     */
+    public TreeSnapshot snapshot(){
+        requireEager("Snapshot");
+        TreeSnapshot cur = published.get();
+        if (cur != null && cur.getVersion() == version) {
+            return new TreeSnapshot(cur.getVersion(), cur.getRoot());
+        }
+        treeLock.readLock().lock();
+        try {
+            synchronized (freezeLock) {
+                cur = published.get();
+                long v = version;
+                if (cur == null || cur.getVersion() != v) {
+                    cur = new TreeSnapshot(v, root.freeze());
+                    published.set(cur);
+                }
+            }
+            return new TreeSnapshot(cur.getVersion(), cur.getRoot());
+        } finally {
+            treeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Cauta un nod pe baza unei cai logice, data ca sir de nume.
+     * Exemplu: find("C:", "folder1", "fisier.txt").
+     *
+     * @param parts secventa de nume, de la root invizibil pana la nodul dorit
+     * @return nodul gasit
+     * @throws IllegalArgumentException daca nu exista un copil pentru una dintre componente
+     */
+    public FsNode find(String... parts){
+        treeLock.readLock().lock();
+        try {
+            return resolve(parts);
+        } finally {
+            treeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Cauta un nod dupa id-ul lui stabil, in O(1).
+     *
+     * @param id id-ul nodului
+     * @return nodul gasit
+     * @throws IllegalArgumentException daca nu exista un nod atasat cu acest id
+     */
+    public FsNode findById(long id){
+        treeLock.readLock().lock();
+        try {
+            return byId(id);
+        } finally {
+            treeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Cauta un nod dupa id fara a lua lock-uri; apelantul trebuie sa detina lock-ul arborelui.
+     */
+    private FsNode byId(long id){
+        FsNode n = ids.get(id);
+        if (n == null) throw new IllegalArgumentException("Node not found: " + id);
+        return n;
+    }
+
+    /**
+     * Rezolva o cale fara a lua lock-uri; apelantul trebuie sa detina lock-ul arborelui.
+     * Rezultatul este cautat si retinut in cache-ul de cai; intrarile sunt invalidate
+     * de operatiile de scriere, care nu pot rula cat timp apelantul detine lock-ul.
+     *
+     * @param parts secventa de nume
+     * @return nodul gasit
+     * @throws IllegalArgumentException daca nu exista un copil pentru una dintre componente
+     */
+    private FsNode resolve(String... parts){
+        if (parts.length == 0) return root;
+        String key = PathCache.keyOf(parts);
+        FsNode cached = pathCache.get(key);
+        if (cached != null) return cached;
+        FsNode cur = root;
+        for (String p : parts) {
+            FsNode next = cur.childByName(p);
+            if(next==null) throw new IllegalArgumentException("Path not found: "+String.join("/",parts));
+            cur = next;
+        }
+        pathCache.put(key, cur);
+        return cur;
+    }
+
+    /**
+     * Creeaza un folder nou ca si copil al unui nod dat prin cale.
+     * <p>
+     * cu nume gol, conform implementarii existente.
+     *
+     * @param parentPath calea pana la parinte (ex: ["C:", "folder1"])
+     * @param name       numele noului folder
+     * @return nodul folder creat
+     * @throws IllegalArgumentException daca parintele nu este gasit
+     */
+    public FsNode createFolder(String[] parentPath, String name){
+        return create(find(parentPath), new FsNode(name, NodeType.FOLDER));
+    }
+
+    /**
+     * Creeaza un folder nou sub parintele dat prin id.
+     *
+     * @param parentId id-ul parintelui
+     * @param name     numele noului folder
+     * @return nodul folder creat
+     * @throws IllegalArgumentException daca parintele nu este gasit
+     */
+    public FsNode createFolder(long parentId, String name){
+        return create(findById(parentId), new FsNode(name, NodeType.FOLDER));
+    }
+
+    /**
+     * Creeaza un fisier nou in cadrul unui folder dat prin cale.
+     *
+     * @param parentPath calea pana la folderul parinte
+     * @param name       numele fisierului (ex: "poza.jpg")
+     * @param sizeBytes  dimensiunea fisierului in bytes
+     * @return nodul fisier creat
+     * @throws IllegalArgumentException daca parintele nu este gasit
+     */
+    public FsNode createFile(String[] parentPath, String name, long sizeBytes){
+        return create(find(parentPath), new FsNode(name, NodeType.FILE, sizeBytes));
+    }
+
+    /**
+     * Creeaza un fisier nou sub parintele dat prin id.
+     *
+     * @param parentId  id-ul parintelui
+     * @param name      numele fisierului
+     * @param sizeBytes dimensiunea fisierului in bytes
+     * @return nodul fisier creat
+     * @throws IllegalArgumentException daca parintele nu este gasit
+     */
+    public FsNode createFile(long parentId, String name, long sizeBytes){
+        return create(findById(parentId), new FsNode(name, NodeType.FILE, sizeBytes));
+    }
+
+    /**
+     * Ataseaza un nod nou sub un parinte, cu protocolul de lock-uri al serviciului.
+     *
+     * @param parent parintele, deja rezolvat
+     * @param node   nodul nou, inca neatasat
+     * @return nodul atasat
+     */
+    private FsNode create(FsNode parent, FsNode node){
+        long v, seq;
+        List<NodeChange> changes;
+        treeLock.writeLock().lock();
+        try {
+            ensureAttached(parent);
+            if(!parent.canHaveChildren()) throw new IllegalStateException("Files cannot have children");
+            if(parent.childByName(node.getName())!=null) throw new IllegalArgumentException("Duplicate name");
+            List<Applied> log = new ArrayList<>(1);
+            doCreate(parent, node, log);
+            journal.record(log.toArray(Applied.NONE));
+            v = ++version;
+            seq = commitJournal();
+            changes = changesOf(log);
+        } finally {
+            endEdit();
+        }
+        awaitJournal(seq);
+        fire(new TreeChangeEvent(parent, 1, v, changes));
+        return node;
+    }
+
+    /**
+     * Redenumeste un nod identificat prin calea sa logica.
+     * Verifica daca in parinte nu exista deja un copil cu acelasi nume
+     * (pentru a evita duplicatele).
+     *
+     * @param path    calea pana la nodul care va fi redenumit
+     * @param newName numele nou
+     * @throws IllegalArgumentException daca exista deja un copil cu acelasi nume
+     */
+    public void rename(String[] path, String newName){
+        rename(find(path), newName);
+    }
+
+    /**
+     * Redenumeste un nod identificat prin id.
+     *
+     * @param id      id-ul nodului
+     * @param newName numele nou
+     * @throws IllegalArgumentException daca nodul nu exista sau numele este duplicat
+     */
+    public void rename(long id, String newName){
+        rename(findById(id), newName);
+    }
+
+    /**
+     * Redenumeste un nod deja rezolvat.
+     *
+     * @param n       nodul redenumit
+     * @param newName numele nou
+     */
+    private void rename(FsNode n, String newName){
+        FsNode parent;
+        long v, seq;
+        List<NodeChange> changes;
+        treeLock.writeLock().lock();
+        try {
+            ensureAttached(n);
+            parent = n.getParent();
+            if(parent!=null && parent.childByName(newName)!=null)
+                throw new IllegalArgumentException("Duplicate name");
+            List<Applied> log = new ArrayList<>(1);
+            doRename(n, newName, log);
+            journal.record(log.toArray(Applied.NONE));
+            v = ++version;
+            seq = commitJournal();
+            changes = changesOf(log);
+        } finally {
+            endEdit();
+        }
+        awaitJournal(seq);
+        fire(new TreeChangeEvent(parent != null ? parent : n, 1, v, changes));
+    }
+
+    /**
+     * Schimba dimensiunea unui fisier identificat prin cale.
+     * Totalurile stramosilor si indexul de dimensiuni sunt actualizate.
+     *
+     * @param path      calea fisierului
+     * @param sizeBytes dimensiunea noua in bytes
+     * @throws IllegalArgumentException daca nodul nu exista, nu este fisier sau dimensiunea este negativa
+     */
+    public void setFileSize(String[] path, long sizeBytes){
+        setFileSize(find(path), sizeBytes);
+    }
+
+    /**
+     * Schimba dimensiunea unui fisier identificat prin id.
+     *
+     * @param id        id-ul fisierului
+     * @param sizeBytes dimensiunea noua in bytes
+     * @throws IllegalArgumentException daca nodul nu exista, nu este fisier sau dimensiunea este negativa
+     */
+    public void setFileSize(long id, long sizeBytes){
+        setFileSize(findById(id), sizeBytes);
+    }
+
+    private void setFileSize(FsNode n, long sizeBytes){
+        if (n.getType() != NodeType.FILE) throw new IllegalArgumentException("Not a file: " + n.getName());
+        if (sizeBytes < 0) throw new IllegalArgumentException("Negative size: " + sizeBytes);
+        FsNode parent;
+        long v, seq;
+        List<NodeChange> changes;
+        treeLock.writeLock().lock();
+        try {
+            ensureAttached(n);
+            parent = n.getParent();
+            List<Applied> log = new ArrayList<>(1);
+            doResize(n, sizeBytes, log);
+            journal.record(log.toArray(Applied.NONE));
+            v = ++version;
+            seq = commitJournal();
+            changes = changesOf(log);
+        } finally {
+            endEdit();
+        }
+        awaitJournal(seq);
+        fire(new TreeChangeEvent(parent, 1, v, changes));
+    }
+
+    /**
+     * Sterge un nod din arbore, pe baza caii sale logice.
+     * Nu permite stergerea root-ului invizibil.
+     *
+     * @param path calea pana la nodul care va fi sters
+     * @throws IllegalStateException daca se incearca stergerea radacinii
+     */
+    public void delete(String[] path){
+        delete(find(path));
+    }
+
+    /**
+     * Sterge un nod identificat prin id, impreuna cu subarborele lui.
+     *
+     * @param id id-ul nodului
+     * @throws IllegalArgumentException daca nodul nu exista
+     * @throws IllegalStateException    daca se incearca stergerea radacinii
+     */
+    public void delete(long id){
+        delete(findById(id));
+    }
+
+    /**
+     * Sterge un nod deja rezolvat.
+     *
+     * @param n nodul sters
+     */
+    private void delete(FsNode n){
+        if(n == root)
+            throw new IllegalStateException("Cannot delete root");
+        FsNode parent;
+        long v, seq;
+        List<NodeChange> changes;
+        treeLock.writeLock().lock();
+        try {
+            ensureAttached(n);
+            parent = n.getParent();
+            List<Applied> log = new ArrayList<>(1);
+            doDelete(n, log);
+            journal.record(log.toArray(Applied.NONE));
+            v = ++version;
+            seq = commitJournal();
+            changes = changesOf(log);
+        } finally {
+            endEdit();
+        }
+        awaitJournal(seq);
+        fire(new TreeChangeEvent(parent, 1, v, changes));
+    }
+
+    /**
+     * Muta un nod (fisier sau folder) intr-un nou parinte.
+     * <ul>
+     *     <li>Nu permite mutarea root-ului invizibil.</li>
+     *     <li>Noul parinte trebuie sa poata avea copii (DRIVE sau FOLDER).</li>
+     *     <li>Nu permite mutarea unui nod intr-un descendent al sau (evita cicluri).</li>
+     * </ul>
+     *
+     * @param nodeToMove nodul care va fi mutat
+     * @param newParent  noul parinte
+     * @throws IllegalArgumentException daca regulile de mai sus sunt incalcate
+     */
+    public void moveNode(FsNode nodeToMove, FsNode newParent) {
+        if (nodeToMove == null || newParent == null) return;
+
+        // nu mutam root-ul invizibil
+        if (nodeToMove == root) {
+            throw new IllegalArgumentException("Nu poti muta root-ul");
+        }
+
+        // noul parinte trebuie sa poata avea copii (DRIVE sau FOLDER)
+        if (!newParent.canHaveChildren()) {
+            throw new IllegalArgumentException("Poti muta doar in drive sau folder");
+        }
+
+        long v, seq;
+        List<NodeChange> changes;
+        FsNode changed;
+        treeLock.writeLock().lock();
+        try {
+            validateMove(nodeToMove, newParent);
+            changed = commonAncestor(nodeToMove.getParent(), newParent);
+            List<Applied> log = new ArrayList<>(1);
+            doMove(nodeToMove, newParent, log);
+            journal.record(log.toArray(Applied.NONE));
+            v = ++version;
+            seq = commitJournal();
+            changes = changesOf(log);
+        } finally {
+            endEdit();
+        }
+        awaitJournal(seq);
+        fire(new TreeChangeEvent(changed, 1, v, changes));
+    }
+
+    /**
+     * Muta un nod sub un alt parinte, ambele fiind date prin id.
+     *
+     * @param nodeId      id-ul nodului mutat
+     * @param newParentId id-ul noului parinte
+     * @throws IllegalArgumentException daca unul dintre noduri nu exista sau mutarea nu este permisa
+     */
+    public void moveNode(long nodeId, long newParentId) {
+        moveNode(findById(nodeId), findById(newParentId));
+    }
+
+    /**
+     * Aplica atomic un lot de operatii.
+     * <ol>
+     *     <li>Intregul lot este validat intr-o singura trecere (nume duplicate, cicluri,
+     *         parinti lipsa), fara a modifica arborele; fiecare cale este rezolvata o singura data.</li>
+     *     <li>Operatiile sunt aplicate in aceeasi sectiune exclusiva, pe nodurile deja rezolvate;
+     *         daca una esueaza neasteptat, cele deja aplicate sunt anulate in ordine inversa.</li>
+     *     <li>Ascultatorii primesc un singur {@link TreeChangeEvent} pentru tot lotul.</li>
+     * </ol>
+     *
+     * @param ops operatiile, in ordinea aplicarii
+     * @return pentru fiecare operatie, nodul creat sau nodul modificat
+     * @throws BatchException daca lotul este respins; arborele ramane neschimbat
+     */
+    public List<FsNode> applyBatch(List<Op> ops){
+        if (ops.isEmpty()) return List.of();
+        List<FsNode> results = new ArrayList<>(ops.size());
+        List<Applied> log = new ArrayList<>(ops.size());
+        List<FsNode> touched = new ArrayList<>(ops.size());
+        FsNode changed = null;
+        long v, seq;
+        List<NodeChange> changes;
+        treeLock.writeLock().lock();
+        try {
+            BatchValidator.Step[] steps = new BatchValidator(root).validate(ops);
+            for (int i = 0; i < steps.length; i++) {
+                try {
+                    touched.add(applyStep(steps[i], log, results));
+                } catch (RuntimeException e) {
+                    rollback(log);
+                    if (wal != null) wal.discard();
+                    throw new BatchException(i, e);
+                }
+            }
+            // nodurile detasate ulterior in lot sunt acoperite de parintele din care au fost scoase
+            for (FsNode t : touched) {
+                if (isDescendant(t, root)) changed = commonAncestor(changed, t);
+            }
+            journal.record(log.toArray(Applied.NONE));
+            v = ++version;
+            seq = commitJournal();
+            changes = changesOf(log);
+        } finally {
+            endEdit();
+        }
+        awaitJournal(seq);
+        fire(new TreeChangeEvent(changed, ops.size(), v, changes));
+        return results;
+    }
+
+    /**
+     * Anuleaza ultima editare (o operatie simpla sau un lot intreg).
+     * Jurnalul retine doar operatiile inverse, nu copii ale arborelui; subarborii stersi
+     * sunt pastrati prin referinta pana cand grupul iese din istoric. Mutarile sunt anulate
+     * pe pozitia initiala printre frati, iar stergerile reatasaza subarborele pe pozitia lui.
+     *
+     * @return true daca a existat o editare de anulat
+     * @throws IllegalStateException daca anularea nu a putut fi aplicata (arborele ramane neschimbat)
+     */
+    public boolean undo(){
+        return replay(true);
+    }
+
+    /**
+     * Reface ultima editare anulata. Orice editare noua goleste istoricul de redo.
+     *
+     * @return true daca a existat o editare de refacut
+     * @throws IllegalStateException daca refacerea nu a putut fi aplicata (arborele ramane neschimbat)
+     */
+    public boolean redo(){
+        return replay(false);
+    }
+
+    /**
+     * @return true daca exista o editare de anulat
+     */
+    public boolean canUndo(){
+        treeLock.readLock().lock();
+        try {
+            return journal.canUndo();
+        } finally {
+            treeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return true daca exista o editare de refacut
      */
-    private final FsNode root; // root invizibil (conține C:, D:, ...)
+    public boolean canRedo(){
+        treeLock.readLock().lock();
+        try {
+            return journal.canRedo();
+        } finally {
+            treeLock.readLock().unlock();
+        }
+    }
 
     /**
-     * Constructor care initializeaza serviciul cu un root invizibil deja construit.
+     * Seteaza numarul maxim de editari retinute pentru undo; cele mai vechi sunt eliminate.
+     * Cu adancimea 0 istoricul este dezactivat.
      *
-     * @param invisibleRoot nodul radacina invizibil
+     * @param depth adancimea noua
+     * @throws IllegalArgumentException daca adancimea este negativa
      */
-    public FileTreeService(FsNode invisibleRoot){
-        this.root = invisibleRoot;
+    public void setUndoDepth(int depth){
+        treeLock.writeLock().lock();
+        try {
+            journal.setDepth(depth);
+        } finally {
+            treeLock.writeLock().unlock();
+        }
     }
 
     /**
-     * Returneaza radacina invizibila folosita de serviciu.
+     * @return numarul maxim de editari retinute pentru undo
      */
-    public FsNode getRoot(){
-        return root;
+    public int getUndoDepth(){
+        treeLock.readLock().lock();
+        try {
+            return journal.getDepth();
+        } finally {
+            treeLock.readLock().unlock();
+        }
     }
 
     /**
-     * Cauta un nod pe baza unei cai logice, data ca sir de nume.
-     * Exemplu: find("C:", "folder1", "fisier.txt").
-     *
-     * @param parts secventa de nume, de la root invizibil pana la nodul dorit
-     * @return nodul gasit
-     * @throws IllegalArgumentException daca nu exista un copil pentru una dintre componente
+     * Goleste istoricul de undo si redo (de exemplu dupa incarcarea altui arbore).
      */
-    public FsNode find(String... parts){
-        FsNode cur = root;
-        for (String p : parts) {
-            FsNode next = cur.childByName(p);
-            if(next==null) throw new IllegalArgumentException("Path not found: "+String.join("/",parts));
-            cur = next;
+    public void clearUndoHistory(){
+        treeLock.writeLock().lock();
+        try {
+            journal.clear();
+        } finally {
+            treeLock.writeLock().unlock();
         }
-        return cur;
     }
 
     /**
-     * Creeaza un folder nou ca si copil al unui nod dat prin cale.
-     * <p>
-     * cu nume gol, conform implementarii existente.
+     * Scoate un grup din stiva de undo (sau redo), il inverseaza si pune grupul invers pe
+     * cealalta stiva. Daca inversarea esueaza la jumatate, pasii deja facuti sunt la randul
+     * lor inversati, iar grupul revine pe stiva de unde a fost luat.
      *
-     * @param parentPath calea pana la parinte (ex: ["C:", "folder1"])
-     * @param name       numele noului folder
-     * @return nodul folder creat
-     * @throws IllegalArgumentException daca parintele nu este gasit
+     * @param undo true pentru undo, false pentru redo
+     * @return true daca a existat un grup de aplicat
      */
-    public FsNode createFolder(String[] parentPath, String name){
-        FsNode parent = find(parentPath);
-        FsNode node = new FsNode(name, NodeType.FOLDER);
-       // node.addChild(new FsNode("",NodeType.FILE)); //asta era simulare de fisier inainte de nodeRenderer
-        parent.addChild(node);
-
-        return node;
+    private boolean replay(boolean undo){
+        FsNode changed = null;
+        int count;
+        long v, seq;
+        List<NodeChange> changes;
+        treeLock.writeLock().lock();
+        try {
+            Applied[] group = undo ? journal.popUndo() : journal.popRedo();
+            if (group == null) return false;
+            List<Applied> out = new ArrayList<>(group.length);
+            try {
+                invert(group, out);
+            } catch (RuntimeException | Error e) {
+                invert(out.toArray(Applied.NONE), null);
+                if (wal != null) wal.discard();
+                if (undo) journal.pushUndo(group);
+                else journal.pushRedo(group);
+                if (e instanceof Error err) throw err;
+                throw new IllegalStateException(undo ? "Undo failed" : "Redo failed", e);
+            }
+            Applied[] inverse = out.toArray(Applied.NONE);
+            if (undo) journal.pushRedo(inverse);
+            else journal.pushUndo(inverse);
+            for (Applied a : inverse) {
+                changed = touch(changed, a.parent());
+                changed = touch(changed, a.node().getParent());
+            }
+            count = inverse.length;
+            v = ++version;
+            seq = commitJournal();
+            changes = changesOf(out);
+        } finally {
+            endEdit();
+        }
+        awaitJournal(seq);
+        fire(new TreeChangeEvent(changed, count, v, changes));
+        return true;
     }
 
     /**
-     * Creeaza un fisier nou in cadrul unui folder dat prin cale.
+     * Comaseaza jurnalul unei editari in modificarile nete trimise ascultatorilor.
+     * Pozitiile sunt calculate acum, sub lock-ul de scriere, deci sunt valide fata de
+     * versiunea produsa de editare. Fara ascultatori nu se calculeaza nimic.
      *
-     * @param parentPath calea pana la folderul parinte
-     * @param name       numele fisierului (ex: "poza.jpg")
-     * @param sizeBytes  dimensiunea fisierului in bytes
-     * @return nodul fisier creat
-     * @throws IllegalArgumentException daca parintele nu este gasit
+     * @param log modificarile aplicate, in ordine
+     * @return modificarile nete
      */
-    public FsNode createFile(String[] parentPath, String name, long sizeBytes){
-        FsNode parent = find(parentPath);
-        FsNode node = new FsNode(name, NodeType.FILE, sizeBytes);
-        parent.addChild(node);
-        return node;
+    private List<NodeChange> changesOf(List<Applied> log){
+        if (listeners.isEmpty()) return List.of();
+        ChangeCoalescer c = new ChangeCoalescer(root);
+        for (Applied a : log) {
+            switch (a.kind()) {
+                case CREATED -> c.created(a.node());
+                case DELETED -> c.deleted(a.node(), a.parent());
+                case MOVED -> c.moved(a.node(), a.parent());
+                case RENAMED -> c.renamed(a.node(), a.oldName());
+                case RESIZED -> c.resized(a.node(), a.oldSize());
+            }
+        }
+        return c.finish();
     }
 
     /**
-     * Redenumeste un nod identificat prin calea sa logica.
-     * Verifica daca in parinte nu exista deja un copil cu acelasi nume
-     * (pentru a evita duplicatele).
+     * Extinde stramosul comun cu un nod, daca nodul este inca atasat arborelui.
+     */
+    private FsNode touch(FsNode changed, FsNode t){
+        return t != null && isDescendant(t, root) ? commonAncestor(changed, t) : changed;
+    }
+
+    /**
+     * Aplica un pas validat dintr-un lot; apelantul detine lock-ul de scriere.
+     * Nodurile sunt deja rezolvate de {@link BatchValidator}, deci nu se mai parcurg cai.
      *
-     * @param path    calea pana la nodul care va fi redenumit
-     * @param newName numele nou
-     * @throws IllegalArgumentException daca exista deja un copil cu acelasi nume
+     * @param step    pasul din planul lotului
+     * @param log     jurnalul modificarilor aplicate (pentru anulare)
+     * @param results lista de rezultate a lotului
+     * @return parintele (sau stramosul comun) atins de operatie
      */
-    public void rename(String[] path, String newName){
-        FsNode n = find(path);
-        FsNode parent = n.getParent();
-        if(parent!=null && parent.childByName(newName)!=null)
-            throw new IllegalArgumentException("Duplicate name");
-        n.rename(newName);
+    private FsNode applyStep(BatchValidator.Step step, List<Applied> log, List<FsNode> results){
+        Op op = step.op();
+        if (op instanceof Op.CreateFolder c) {
+            FsNode parent = step.target().real;
+            step.dest().real = doCreate(parent, new FsNode(c.name(), NodeType.FOLDER), log);
+            results.add(step.dest().real);
+            return parent;
+        } else if (op instanceof Op.CreateFile c) {
+            FsNode parent = step.target().real;
+            step.dest().real = doCreate(parent, new FsNode(c.name(), NodeType.FILE, c.sizeBytes()), log);
+            results.add(step.dest().real);
+            return parent;
+        } else if (op instanceof Op.Rename r) {
+            FsNode n = step.target().real;
+            doRename(n, r.newName(), log);
+            results.add(n);
+            return n.getParent();
+        } else if (op instanceof Op.Delete) {
+            FsNode n = step.target().real;
+            FsNode parent = n.getParent();
+            doDelete(n, log);
+            results.add(n);
+            return parent;
+        } else {
+            FsNode n = step.target().real;
+            FsNode np = step.dest().real;
+            FsNode touched = commonAncestor(n.getParent(), np);
+            doMove(n, np, log);
+            results.add(n);
+            return touched;
+        }
     }
 
     /**
-     * Sterge un nod din arbore, pe baza caii sale logice.
-     * Nu permite stergerea root-ului invizibil.
+     * Anuleaza, in ordine inversa, modificarile deja aplicate dintr-un lot.
+     * Apelantul detine lock-ul de scriere.
      *
-     * @param path calea pana la nodul care va fi sters
-     * @throws IllegalStateException daca se incearca stergerea radacinii
+     * @param log jurnalul modificarilor aplicate
      */
-    public void delete(String[] path){
-        FsNode n = find(path);
-        if(n.getParent()==null)
-            throw new IllegalStateException("Cannot delete root");
-        n.getParent().removeChild(n);
+    private void rollback(List<Applied> log){
+        invert(log.toArray(Applied.NONE), null);
     }
 
     /**
-     * Muta un nod (fisier sau folder) intr-un nou parinte.
-     * <ul>
-     *     <li>Nu permite mutarea root-ului invizibil.</li>
-     *     <li>Noul parinte trebuie sa poata avea copii (DRIVE sau FOLDER).</li>
-     *     <li>Nu permite mutarea unui nod intr-un descendent al sau (evita cicluri).</li>
-     * </ul>
+     * Aplica, in ordine inversa, operatiile inverse ale unui grup de modificari.
+     * Fiecare operatie inversa trece prin primitivele obisnuite, deci inregistreaza la randul
+     * ei modificarea facuta: jurnalul rezultat este exact grupul care reface starea initiala
+     * (undo produce grupul de redo si invers). Apelantul detine lock-ul de scriere.
      *
-     * @param nodeToMove nodul care va fi mutat
-     * @param newParent  noul parinte
-     * @throws IllegalArgumentException daca regulile de mai sus sunt incalcate
+     * @param group modificarile de inversat, in ordinea in care au fost aplicate
+     * @param out   jurnalul operatiilor inverse aplicate (sau null)
      */
-    public void moveNode(FsNode nodeToMove, FsNode newParent) {
-        if (nodeToMove == null || newParent == null) return;
+    private void invert(Applied[] group, List<Applied> out){
+        for (int i = group.length - 1; i >= 0; i--) {
+            Applied a = group[i];
+            FsNode n = a.node();
+            switch (a.kind()) {
+                case CREATED -> doDelete(n, out);
+                case DELETED -> doAttach(a.parent(), n, a.position(), out);
+                case RENAMED -> doRename(n, a.oldName(), out);
+                case MOVED -> doMove(n, a.parent(), a.position(), out);
+                case RESIZED -> doResize(n, a.oldSize(), out);
+            }
+        }
+    }
 
-        // nu mutam root-ul invizibil
-        if (nodeToMove == root) {
-            throw new IllegalArgumentException("Nu poti muta root-ul");
+    // Primitivele de modificare. Apelantul detine lock-ul de scriere si a validat deja operatia;
+    // fiecare primitiva actualizeaza indexurile serviciului si, optional, jurnalul de anulare
+    // si jurnalul de scriere in avans.
+
+    private FsNode doCreate(FsNode parent, FsNode node, List<Applied> log){
+        parent.addChild(node);
+        ids.put(node);
+        if (trigrams != null) trigrams.add(node);
+        if (sizeIndex != null && node.getType() == NodeType.FILE) sizeIndex.add(node);
+        if (log != null) log.add(new Applied(Applied.Kind.CREATED, node, parent, parent.indexOfChild(node), null, 0));
+        if (wal != null) wal.created(node);
+        return node;
+    }
+
+    private void doRename(FsNode n, String newName, List<Applied> log){
+        String old = n.getName();
+        pathCache.invalidatePrefix(PathCache.keyOf(n, root));
+        n.rename(newName);
+        if (trigrams != null) {
+            trigrams.renamed(n);
+            compactTrigrams();
         }
+        if (log != null) log.add(new Applied(Applied.Kind.RENAMED, n, null, -1, old, 0));
+        if (wal != null) wal.renamed(n, old);
+    }
 
-        // noul parinte trebuie sa poata avea copii (DRIVE sau FOLDER)
-        if (!newParent.canHaveChildren()) {
-            throw new IllegalArgumentException("Poti muta doar in drive sau folder");
+    private void doDelete(FsNode n, List<Applied> log){
+        FsNode parent = n.getParent();
+        int pos = parent.indexOfChild(n);
+        pathCache.invalidatePrefix(PathCache.keyOf(n, root));
+        parent.removeChild(n);
+        ids.removeSubtree(n);
+        if (trigrams != null) {
+            trigrams.removeSubtree(n);
+            compactTrigrams();
         }
+        if (sizeIndex != null) sizeIndex.removeSubtree(n);
+        if (log != null) log.add(new Applied(Applied.Kind.DELETED, n, parent, pos, null, 0));
+        if (wal != null) wal.deleted(parent, n);
+    }
+
+    private void doResize(FsNode n, long sizeBytes, List<Applied> log){
+        long old = n.getSizeBytes();
+        if (sizeIndex != null) sizeIndex.remove(n, old);
+        n.setSizeBytes(sizeBytes);
+        if (sizeIndex != null) sizeIndex.add(n);
+        if (log != null) log.add(new Applied(Applied.Kind.RESIZED, n, null, -1, null, old));
+        if (wal != null) wal.resized(n);
+    }
+
+    private void doMove(FsNode n, FsNode newParent, List<Applied> log){
+        doMove(n, newParent, Integer.MAX_VALUE, log);
+    }
+
+    private void doMove(FsNode n, FsNode newParent, int position, List<Applied> log){
+        FsNode oldParent = n.getParent();
+        int pos = oldParent.indexOfChild(n);
+        pathCache.invalidatePrefix(PathCache.keyOf(n, root));
+        oldParent.removeChild(n);
+        newParent.addChild(n, position);
+        if (log != null) log.add(new Applied(Applied.Kind.MOVED, n, oldParent, pos, null, 0));
+        if (wal != null) wal.moved(oldParent, n);
+    }
+
+    /**
+     * Reataseaza un subarbore detasat anterior (inversul stergerii), pe pozitia data.
+     */
+    private void doAttach(FsNode parent, FsNode n, int position, List<Applied> log){
+        parent.addChild(n, position);
+        ids.putSubtree(n);
+        if (trigrams != null) trigrams.addSubtree(n);
+        if (sizeIndex != null) sizeIndex.addSubtree(n);
+        if (log != null) log.add(new Applied(Applied.Kind.CREATED, n, parent, parent.indexOfChild(n), null, 0));
+        if (wal != null) wal.attached(n);
+    }
+
+    /**
+     * Reconstruieste indexul de trigrame cand intrarile sterse au devenit majoritare.
+     * Apelantul detine lock-ul de scriere.
+     */
+    private void compactTrigrams(){
+        if (trigrams.needsRebuild()) trigrams = TrigramIndex.build(root);
+    }
+
+    /**
+     * Notifica ascultatorii; se apeleaza dupa eliberarea lock-urilor.
+     *
+     * @param e evenimentul trimis
+     */
+    private void fire(TreeChangeEvent e){
+        for (TreeChangeListener l : listeners) l.treeChanged(e);
+    }
 
+    /**
+     * Cel mai adanc stramos comun al doua noduri atasate.
+     *
+     * @param a primul nod (null este ignorat)
+     * @param b al doilea nod (null este ignorat)
+     * @return stramosul comun
+     */
+    private FsNode commonAncestor(FsNode a, FsNode b){
+        if (a == null) return b;
+        if (b == null) return a;
+        int da = depthOf(a), db = depthOf(b);
+        while (da > db) { a = a.getParent(); da--; }
+        while (db > da) { b = b.getParent(); db--; }
+        while (a != b) { a = a.getParent(); b = b.getParent(); }
+        return a;
+    }
+
+    private static int depthOf(FsNode n){
+        int d = 0;
+        for (FsNode cur = n.getParent(); cur != null; cur = cur.getParent()) d++;
+        return d;
+    }
+
+    /**
+     * Verifica regulile de mutare care depind de starea curenta a arborelui.
+     * Numele este verificat inainte de a scoate nodul din vechiul parinte,
+     * astfel incat o mutare esuata sa nu lase nodul detasat.
+     *
+     * @param nodeToMove nodul mutat
+     * @param newParent  noul parinte
+     * @throws IllegalArgumentException daca mutarea nu este permisa
+     */
+    private void validateMove(FsNode nodeToMove, FsNode newParent) {
+        // nodul poate fi sters de alt fir dupa ce a fost gasit, inainte de blocare
+        ensureAttached(nodeToMove);
+        ensureAttached(newParent);
         // nu mutam un nod intr-un descendent al lui (ca sa nu facem ciclu)
         if (isDescendant(newParent, nodeToMove)) {
             throw new IllegalArgumentException("Nu poti muta un folder in el insusi sau intr-un descendent");
         }
-
-        FsNode oldParent = nodeToMove.getParent();
-        if (oldParent != null) {
-            oldParent.removeChild(nodeToMove);
+        FsNode other = newParent.childByName(nodeToMove.getName());
+        if (other != null && other != nodeToMove) {
+            throw new IllegalArgumentException("Duplicate name");
         }
+    }
 
-        newParent.addChild(nodeToMove);
+    /**
+     * Verifica faptul ca un nod este inca atasat la root (nu a fost sters de alt fir).
+     *
+     * @param node nodul verificat
+     * @throws IllegalArgumentException daca nodul nu mai face parte din arbore
+     */
+    private void ensureAttached(FsNode node) {
+        if (!isDescendant(node, root)) {
+            throw new IllegalArgumentException("Path not found: " + node.getName());
+        }
     }
 
     /**
@@ -176,91 +1363,498 @@ public class FileTreeService {
      * <ul>
      *     <li>Daca path este null sau gol, se foloseste root-ul invizibil.</li>
      *     <li>Completeaza campurile simple din {@link Stats}: totalNodes, folders, files, maxDepth, totalSizeBytes.</li>
+     *     <li>Valorile sunt citite din totalurile mentinute incremental de {@link FsNode}, deci costul este O(1).</li>
      * </ul>
      *
      * @param path calea pana la nodul pentru care se calculeaza statisticile
      * @return obiect Stats populat
+     * @throws IllegalStateException in modul de verificare, daca totalurile nu corespund parcurgerii complete
      */
     public Stats stats(String[] path){
-        FsNode start = (path == null || path.length == 0)
-                ? root
-                : find(path);
+        treeLock.readLock().lock();
+        try {
+            FsNode start = (path == null || path.length == 0)
+                    ? root
+                    : resolve(path);
 
-        Stats s = new Stats();
-        dfsStats(start, 0, s);
-        return s;
+            Stats s = cachedStats(start);
+            if (verifyStats) verify(start, s);
+            return s;
+        } finally {
+            treeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Calculeaza statisticile simple pentru subarborele unui nod dat prin id.
+     *
+     * @param id id-ul nodului de start
+     * @return obiect Stats populat
+     * @throws IllegalArgumentException daca nodul nu exista
+     */
+    public Stats stats(long id){
+        treeLock.readLock().lock();
+        try {
+            FsNode start = byId(id);
+            Stats s = cachedStats(start);
+            if (verifyStats) verify(start, s);
+            return s;
+        } finally {
+            treeLock.readLock().unlock();
+        }
     }
 
     /**
-     * Functie ajutatoare recursiva pentru calculul statisticilor simple.
-     * Numarara noduri, fisiere, foldere, adancime maxima si suma dimensiunilor fisierelor.
+     * Calculeaza statisticile detaliate pentru subarborele unui nod, intr-o singura parcurgere.
+     * <p>
+     * Pe langa campurile simple sunt completate {@code nodesPerDepth},
+     * {@code countByTypePerDepth} (indexat dupa {@code NodeType.ordinal()}) si
+     * histograma logaritmica {@code sizeHistogram}. Masivele cresc pe masura ce
+     * parcurgerea descopera niveluri noi, deci nu este nevoie de o trecere separata
+     * pentru aflarea adancimii maxime. Subarborii mari sunt parcursi in paralel.
      *
-     * @param node  nodul curent
-     * @param depth nivelul de adancime
-     * @param s     obiectul Stats care se actualizeaza
+     * @param path calea pana la nod; null sau gol pentru root-ul invizibil
+     * @return obiect Stats cu histogramele completate
+     * @throws IllegalStateException daca arborele este incarcat la cerere ({@link #isLazy()})
      */
-    private void dfsStats(FsNode node, int depth, Stats s){
-        s.totalNodes++;
-        if (depth > s.maxDepth) s.maxDepth = depth;
+    public Stats detailedStats(String[] path){
+        requireEager("Detailed stats");
+        treeLock.readLock().lock();
+        try {
+            FsNode start = (path == null || path.length == 0)
+                    ? root
+                    : resolve(path);
+            return StatsEngine.compute(start, true);
+        } finally {
+            treeLock.readLock().unlock();
+        }
+    }
 
-        if (node.getType() == NodeType.FILE) {
-            s.files++;
-            s.totalSizeBytes += node.getSizeBytes();
-        } else if (node.getType() == NodeType.FOLDER) {
-            s.folders++;
+    /**
+     * Calculeaza statisticile detaliate pentru subarborele unui nod dat prin id.
+     *
+     * @param id id-ul nodului de start
+     * @return obiect Stats cu histogramele completate
+     * @throws IllegalArgumentException daca nodul nu exista
+     * @throws IllegalStateException daca arborele este incarcat la cerere ({@link #isLazy()})
+     */
+    public Stats detailedStats(long id){
+        requireEager("Detailed stats");
+        treeLock.readLock().lock();
+        try {
+            return StatsEngine.compute(byId(id), true);
+        } finally {
+            treeLock.readLock().unlock();
         }
+    }
 
-        if (node.getChildren() != null) {
-            for (FsNode child : node.getChildren()) {
-                dfsStats(child, depth + 1, s);
+    /**
+     * Fisierele cu dimensiunea in intervalul inchis [min, max], crescator dupa dimensiune.
+     * <p>
+     * Cu indexul de dimensiuni activ, costul este O(log n + rezultate). Pentru un subarbore,
+     * serviciul alege intre intervalul global filtrat dupa stramos si parcurgerea subarborelui,
+     * dupa care dintre ele atinge mai putine noduri. Fara index, subarborele este parcurs.
+     *
+     * @param path  calea nodului; null sau gol pentru tot arborele
+     * @param min   dimensiunea minima (inclusiv)
+     * @param max   dimensiunea maxima (inclusiv)
+     * @param limit numarul maxim de rezultate
+     * @return fisierele gasite
+     * @throws IllegalArgumentException daca limita nu este pozitiva sau calea nu exista
+     * @throws IllegalStateException daca arborele este incarcat la cerere ({@link #isLazy()})
+     */
+    public List<SearchHit> filesBySize(String[] path, long min, long max, int limit){
+        if (limit <= 0) throw new IllegalArgumentException("Limit must be positive: " + limit);
+        requireEager("Size query");
+        treeLock.readLock().lock();
+        try {
+            FsNode under = (path == null || path.length == 0) ? root : resolve(path);
+            List<FsNode> found;
+            if (sizeIndex != null && under == root) {
+                found = sizeIndex.range(min, max, limit);
+            } else if (sizeIndex != null && preferSizeIndex(under, min, max)) {
+                found = new ArrayList<>();
+                for (FsNode f : sizeIndex.range(min, max, Integer.MAX_VALUE)) {
+                    if (isDescendant(f, under)) {
+                        found.add(f);
+                        if (found.size() == limit) break;
+                    }
+                }
+            } else {
+                found = scanBySize(under, min, max);
+                found.sort((a, b) -> a.getSizeBytes() != b.getSizeBytes()
+                        ? Long.compare(a.getSizeBytes(), b.getSizeBytes())
+                        : Long.compare(a.getId(), b.getId()));
+                if (found.size() > limit) found = found.subList(0, limit);
             }
+            List<SearchHit> hits = new ArrayList<>(found.size());
+            for (FsNode f : found) hits.add(new SearchHit(f.getId(), pathOf(f), NodeType.FILE, f.getSizeBytes()));
+            return hits;
+        } finally {
+            treeLock.readLock().unlock();
         }
     }
 
     /**
-     * Functie recursiva alternativa pentru calculul statisticilor detaliate,
-     * folosind doua masive in clasa {@link Stats}:
-     * <ul>
-     *     <li>{@code nodesPerDepth} - numar de noduri pe fiecare nivel</li>
-     *     <li>{@code countByTypePerDepth} - numar de noduri pe fiecare nivel si tip</li>
-     * </ul>
+     * Numarul de fisiere cu dimensiunea in intervalul inchis [min, max].
+     * Pentru tot arborele, cu indexul activ, costul este O(log n).
+     *
+     * @param path calea nodului; null sau gol pentru tot arborele
+     * @param min  dimensiunea minima (inclusiv)
+     * @param max  dimensiunea maxima (inclusiv)
+     * @return numarul de fisiere
+     * @throws IllegalArgumentException daca calea nu exista
+     * @throws IllegalStateException daca arborele este incarcat la cerere ({@link #isLazy()})
+     */
+    public int countFilesBySize(String[] path, long min, long max){
+        requireEager("Size query");
+        treeLock.readLock().lock();
+        try {
+            FsNode under = (path == null || path.length == 0) ? root : resolve(path);
+            if (sizeIndex != null && under == root) return sizeIndex.count(min, max);
+            if (sizeIndex != null && preferSizeIndex(under, min, max)) {
+                int c = 0;
+                for (FsNode f : sizeIndex.range(min, max, Integer.MAX_VALUE)) {
+                    if (isDescendant(f, under)) c++;
+                }
+                return c;
+            }
+            return scanBySize(under, min, max).size();
+        } finally {
+            treeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * True daca intervalul global are mult mai putine fisiere decat noduri are subarborele,
+     * deci filtrarea intervalului dupa stramos este mai ieftina decat parcurgerea.
+     */
+    private boolean preferSizeIndex(FsNode under, long min, long max){
+        return (long) sizeIndex.count(min, max) * 8 < under.getSubtreeNodes();
+    }
+
+    /**
+     * Parcurge un subarbore si colecteaza fisierele cu dimensiunea in interval.
+     */
+    private static List<FsNode> scanBySize(FsNode start, long min, long max){
+        List<FsNode> out = new ArrayList<>();
+        ArrayDeque<FsNode> stack = new ArrayDeque<>();
+        stack.push(start);
+        while (!stack.isEmpty()) {
+            FsNode n = stack.pop();
+            if (n.getType() == NodeType.FILE && n.getSizeBytes() >= min && n.getSizeBytes() <= max) out.add(n);
+            for (FsNode c : n.getChildren()) stack.push(c);
+        }
+        return out;
+    }
+
+    /**
+     * Cauta fisierele candidate la duplicat sub un nod si trimite grupurile pe masura ce sunt formate.
      * <p>
-     * Aceasta metoda poate fi apelata dintr-o varianta mai avansata a lui {@link #stats(String[])}
-     * daca se doreste folosirea masivelor.
+     * Fisierele sunt grupate dupa (nume ignorand literele mari/mici, dimensiune) si, separat,
+     * doar dupa dimensiune; in fiecare categorie grupurile vin descrescator dupa spatiul irosit.
+     * Cautarea ruleaza pe un snapshot (fara lock-uri tinute), cu cate o sarcina paralela
+     * pentru fiecare drive (sau copil al nodului de start).
+     *
+     * @param path calea nodului; null sau gol pentru tot arborele
+     * @param sink consumatorul grupurilor, apelat din firul apelantului
+     * @throws IllegalArgumentException daca calea nu exista
+     * @throws IllegalStateException daca arborele este incarcat la cerere ({@link #isLazy()})
+     */
+    public void findDuplicates(String[] path, Consumer<DuplicateGroup> sink){
+        try (TreeSnapshot snap = snapshot()) {
+            List<String> names = new ArrayList<>();
+            SnapshotNode start = searchStart(snap, path, names);
+            DuplicateFinder.run(start, names.toArray(new String[0]), sink);
+        }
+    }
+
+    /**
+     * Varianta care colecteaza toate grupurile intr-o lista.
      *
-     * @param node  nodul curent
-     * @param depth adancimea curenta
-     * @param s     obiectul Stats care se actualizeaza
+     * @param path calea nodului; null sau gol pentru tot arborele
+     * @return grupurile gasite
+     * @see #findDuplicates(String[], Consumer)
      */
-    private void calcStatsDfs(FsNode node, int depth, Stats s){
-        s.totalNodes++;
+    public List<DuplicateGroup> findDuplicates(String[] path){
+        List<DuplicateGroup> out = new ArrayList<>();
+        findDuplicates(path, out::add);
+        return out;
+    }
 
-        // incadram in interpolare de adancime
-        if(depth >= 0 && depth < s.nodesPerDepth.length){
-            s.nodesPerDepth[depth]++;
+    /**
+     * Hash-ul Merkle al subarborelui unui nod (vezi {@link FsNode#getSubtreeHash()}).
+     * Dupa o editare se recalculeaza doar nodurile de pe drumul catre modificare.
+     *
+     * @param path calea nodului; null sau gol pentru tot arborele
+     * @return hash-ul subarborelui
+     * @throws IllegalArgumentException daca calea nu exista
+     * @throws IllegalStateException daca arborele este incarcat la cerere ({@link #isLazy()})
+     */
+    public long subtreeHash(String[] path){
+        requireEager("Subtree hash");
+        treeLock.readLock().lock();
+        try {
+            FsNode n = path == null || path.length == 0 ? root : resolve(path);
+            synchronized (freezeLock) {
+                return n.getSubtreeHash();
+            }
+        } finally {
+            treeLock.readLock().unlock();
+        }
+    }
 
-            int typeIndex = node.getType().ordinal();
-            if(typeIndex >= 0 && typeIndex < s.countByTypePerDepth[depth].length){
-                s.countByTypePerDepth[depth][typeIndex]++;
+    /**
+     * Compara arborele serviciului cu alt arbore incarcat (de exemplu o versiune mai veche
+     * a lui {@code structura.txt}), coborand doar in subarborii cu hash-uri diferite.
+     * Celalalt arbore nu are voie sa fie modificat in timpul apelului.
+     *
+     * @param other radacina invizibila a arborelui de comparat (versiunea veche)
+     * @return diferentele, vezi {@link TreeDiff#compare(FsNode, FsNode)}
+     * @throws IllegalStateException daca arborele este incarcat la cerere ({@link #isLazy()})
+     */
+    public List<TreeDiff.Change> diff(FsNode other){
+        requireEager("Diff");
+        treeLock.readLock().lock();
+        try {
+            synchronized (freezeLock) {
+                return TreeDiff.compare(other, root);
             }
+        } finally {
+            treeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Cele mai mari K fisiere din subarborele unui nod, descrescator dupa dimensiune.
+     * <p>
+     * O singura parcurgere cu un min-heap marginit; subarborii a caror dimensiune totala
+     * nu poate intra in top sunt sariti, iar subarborii mari sunt parcursi in paralel.
+     *
+     * @param path calea nodului; null sau gol pentru tot arborele
+     * @param k    numarul de fisiere dorit
+     * @return fisierele gasite, fiecare cu calea completa si dimensiunea
+     * @throws IllegalArgumentException daca k nu este pozitiv sau calea nu exista
+     * @throws IllegalStateException daca arborele este incarcat la cerere ({@link #isLazy()})
+     */
+    public List<SearchHit> topFiles(String[] path, int k){
+        return largest(path, k, NodeType.FILE);
+    }
+
+    /**
+     * Cele mai mari K foldere din subarborele unui nod, dupa dimensiunea totala a continutului.
+     * Nodul de start nu este inclus. Vezi {@link #topFiles(String[], int)}.
+     *
+     * @param path calea nodului; null sau gol pentru tot arborele
+     * @param k    numarul de foldere dorit
+     * @return folderele gasite; {@link SearchHit#sizeBytes()} este dimensiunea totala a folderului
+     * @throws IllegalArgumentException daca k nu este pozitiv sau calea nu exista
+     * @throws IllegalStateException daca arborele este incarcat la cerere ({@link #isLazy()})
+     */
+    public List<SearchHit> topFolders(String[] path, int k){
+        return largest(path, k, NodeType.FOLDER);
+    }
+
+    private List<SearchHit> largest(String[] path, int k, NodeType type){
+        if (k <= 0) throw new IllegalArgumentException("k must be positive: " + k);
+        requireEager("Largest items");
+        treeLock.readLock().lock();
+        try {
+            FsNode start = (path == null || path.length == 0)
+                    ? root
+                    : resolve(path);
+            List<FsNode> found = TopK.largest(start, k, type);
+            List<SearchHit> hits = new ArrayList<>(found.size());
+            for (FsNode n : found) hits.add(new SearchHit(n.getId(), pathOf(n), n.getType(), TopK.sizeOf(n)));
+            return hits;
+        } finally {
+            treeLock.readLock().unlock();
         }
+    }
 
-        // numaram foldere / fisiere
-        switch (node.getType()) {
-            case FOLDER -> s.folders++;
-            case FILE   -> s.files++;
-            default     -> { /* DRIVE sau alt tip, il ignori aici */ }
+    /**
+     * Cauta noduri dupa nume si intoarce toate rezultatele (pana la limita din optiuni).
+     * <p>
+     * Cautarea ruleaza in paralel pe un snapshot, fara sa blocheze scriitorii;
+     * vezi {@link #searchStream(String, SearchOptions)}. Ordinea rezultatelor nu este determinista.
+     * Daca indexul de trigrame este activ, cautarile dupa subsir il folosesc in locul parcurgerii.
+     *
+     * @param pattern sablonul cautat (glob, regex sau subsir, dupa optiuni)
+     * @param options optiunile cautarii
+     * @return rezultatele, fiecare cu calea completa a nodului
+     * @throws IllegalArgumentException daca sablonul nu este valid sau calea de start nu exista
+     * @throws IllegalStateException daca arborele este incarcat la cerere ({@link #isLazy()})
+     */
+    public List<SearchHit> search(String pattern, SearchOptions options){
+        if (options.getMode() == SearchOptions.Mode.SUBSTRING) {
+            treeLock.readLock().lock();
+            try {
+                if (trigrams != null) return indexedSearch(pattern, options);
+            } finally {
+                treeLock.readLock().unlock();
+            }
         }
+        return searchStream(pattern, options).toList();
+    }
+
+    /**
+     * Cautare dupa subsir prin indexul de trigrame; apelantul detine lock-ul de citire.
+     */
+    private List<SearchHit> indexedSearch(String pattern, SearchOptions options){
+        if (pattern == null || pattern.isEmpty()) throw new IllegalArgumentException("Search pattern required");
+        String[] startPath = options.getStartPath();
+        FsNode under = (startPath == null || startPath.length == 0) ? null : resolve(startPath);
+        List<FsNode> found = trigrams.query(pattern, options.getType(), under, options.getLimit());
+        List<SearchHit> hits = new ArrayList<>(found.size());
+        for (FsNode n : found) hits.add(new SearchHit(n.getId(), pathOf(n), n.getType(), n.getSizeBytes()));
+        return hits;
+    }
+
+    /**
+     * Calea unui nod atasat, de la drive pana la nod.
+     */
+    private String[] pathOf(FsNode n){
+        int depth = 0;
+        for (FsNode p = n; p != root; p = p.getParent()) depth++;
+        String[] path = new String[depth];
+        for (FsNode p = n; p != root; p = p.getParent()) path[--depth] = p.getName();
+        return path;
+    }
 
-        if(depth > s.maxDepth){
-            s.maxDepth = depth;
+    /**
+     * Porneste o cautare paralela dupa nume si intoarce rezultatele pe masura ce sunt gasite.
+     * <p>
+     * Sunt verificati doar descendentii nodului de start, nu si nodul insusi.
+     * Rezultatele trec printr-o coada marginita ({@link SearchOptions#getBufferSize()}),
+     * deci un consumator lent franeaza cautarea in loc sa acumuleze memorie.
+     * Fluxul trebuie inchis daca nu este consumat pana la capat.
+     *
+     * @param pattern sablonul cautat
+     * @param options optiunile cautarii
+     * @return fluxul de rezultate
+     * @throws IllegalArgumentException daca sablonul nu este valid sau calea de start nu exista
+     * @throws IllegalStateException daca arborele este incarcat la cerere ({@link #isLazy()})
+     */
+    public SearchStream searchStream(String pattern, SearchOptions options){
+        NameMatcher matcher = NameMatcher.compile(pattern, options.getMode());
+        TreeSnapshot snap = snapshot();
+        try {
+            List<String> names = new ArrayList<>();
+            SnapshotNode start = searchStart(snap, options.getStartPath(), names);
+            return new SearchStream(snap, start, names.toArray(new String[0]), matcher, options);
+        } catch (RuntimeException e) {
+            snap.close();
+            throw e;
         }
+    }
 
-        // parcurgem recursiv copiii, daca exista
-        if(node.getChildren() != null){
-            for(FsNode child : node.getChildren()){
-                calcStatsDfs(child, depth + 1, s);
+    /**
+     * Intoarce o pagina de rezultate, in ordinea parcurgerii preordine a arborelui.
+     * <p>
+     * Parcurgerea se opreste imediat ce pagina este completa, deci primele pagini
+     * sunt ieftine si pe arbori foarte mari. Paginile cerute pe versiuni diferite
+     * ale arborelui pot fi decalate; versiunea este intoarsa in {@link SearchPage#version()}.
+     *
+     * @param pattern  sablonul cautat
+     * @param options  optiunile cautarii; limita se aplica numarului total de rezultate
+     * @param offset   numarul de rezultate sarite
+     * @param pageSize dimensiunea paginii
+     * @return pagina ceruta
+     * @throws IllegalArgumentException daca sablonul nu este valid sau argumentele sunt negative
+     * @throws IllegalStateException daca arborele este incarcat la cerere ({@link #isLazy()})
+     */
+    public SearchPage searchPage(String pattern, SearchOptions options, int offset, int pageSize){
+        if (offset < 0 || pageSize <= 0) throw new IllegalArgumentException("Invalid page: " + offset + "/" + pageSize);
+        NameMatcher matcher = NameMatcher.compile(pattern, options.getMode());
+        NodeType type = options.getType();
+        int end = (int) Math.min((long) offset + pageSize, options.getLimit());
+        try (TreeSnapshot snap = snapshot()) {
+            List<String> startNames = new ArrayList<>();
+            SnapshotNode start = searchStart(snap, options.getStartPath(), startNames);
+            int base = startNames.size();
+            String[] names = startNames.toArray(new String[base + 16]);
+            List<SearchHit> hits = new ArrayList<>(Math.min(pageSize, 1024));
+            ArrayDeque<SnapshotNode> stack = new ArrayDeque<>();
+            ArrayDeque<Integer> depths = new ArrayDeque<>();
+            pushChildren(start, base, stack, depths);
+            int seen = 0;
+            boolean more = false;
+            while (!stack.isEmpty()) {
+                SnapshotNode n = stack.pop();
+                int d = depths.pop();
+                if (d >= names.length) names = Arrays.copyOf(names, names.length * 2);
+                names[d] = n.getName();
+                if ((type == null || n.getType() == type) && matcher.matches(n.getName())) {
+                    if (seen >= end) {
+                        more = true;
+                        break;
+                    }
+                    if (seen >= offset) hits.add(SearchStream.hit(n, Arrays.copyOf(names, d + 1)));
+                    seen++;
+                }
+                pushChildren(n, d + 1, stack, depths);
             }
+            return new SearchPage(hits, seen, more, snap.getVersion());
+        }
+    }
+
+    /**
+     * Pune copiii unui nod pe stiva in ordine inversa, ca primul copil sa fie vizitat primul.
+     */
+    private static void pushChildren(SnapshotNode n, int depth, ArrayDeque<SnapshotNode> stack, ArrayDeque<Integer> depths){
+        List<SnapshotNode> kids = n.getChildren();
+        for (int i = kids.size() - 1; i >= 0; i--) {
+            stack.push(kids.get(i));
+            depths.push(depth);
+        }
+    }
+
+    /**
+     * Rezolva nodul de start al unei cautari in snapshot, colectand numele reale de pe cale.
+     */
+    private static SnapshotNode searchStart(TreeSnapshot snap, String[] path, List<String> names){
+        SnapshotNode cur = snap.getRoot();
+        if (path == null) return cur;
+        for (String p : path) {
+            SnapshotNode next = cur.childByName(p);
+            if (next == null) throw new IllegalArgumentException("Path not found: " + String.join("/", path));
+            names.add(next.getName());
+            cur = next;
+        }
+        return cur;
+    }
+
+    /**
+     * Construieste un obiect Stats din totalurile mentinute in nod.
+     *
+     * @param node nodul de start
+     * @return statisticile subarborelui
+     */
+    private Stats cachedStats(FsNode node){
+        Stats s = new Stats();
+        s.totalNodes = node.getSubtreeNodes();
+        s.folders = node.getSubtreeFolders();
+        s.files = node.getSubtreeFiles();
+        s.maxDepth = node.getSubtreeHeight();
+        s.totalSizeBytes = node.getSubtreeSizeBytes();
+        return s;
+    }
+
+    /**
+     * Compara statisticile din cache cu cele obtinute printr-o parcurgere completa.
+     * Parcurgerea este facuta de {@link StatsEngine}, care alege intre varianta iterativa
+     * si cea fork/join dupa numarul de noduri din subarbore.
+     *
+     * @param node   nodul de start
+     * @param cached statisticile citite din cache
+     * @throws IllegalStateException daca exista vreo diferenta
+     */
+    private void verify(FsNode node, Stats cached){
+        Stats full = StatsEngine.compute(node);
+        if (full.totalNodes != cached.totalNodes || full.folders != cached.folders
+                || full.files != cached.files || full.maxDepth != cached.maxDepth
+                || full.totalSizeBytes != cached.totalSizeBytes) {
+            throw new IllegalStateException("Cached stats out of sync for " + node.getName());
         }
     }
 }
@@ -0,0 +1,110 @@
+package service;
+
+import java.util.regex.Pattern;
+
+/**
+ * Potrivirea unui nume de nod cu sablonul unei cautari.
+ * Toate modurile ignora literele mari/mici, la fel ca {@code FsNode.childByName}.
+ * Instantele sunt imutabile si pot fi folosite din mai multe fire.
+ */
+abstract class NameMatcher {
+
+    /**
+     * @param name numele verificat
+     * @return true daca numele se potriveste
+     */
+    abstract boolean matches(String name);
+
+    /**
+     * Compileaza un sablon.
+     *
+     * @param pattern sablonul
+     * @param mode    modul de interpretare
+     * @return potrivirea compilata
+     * @throws IllegalArgumentException daca sablonul lipseste sau nu este valid
+     */
+    static NameMatcher compile(String pattern, SearchOptions.Mode mode) {
+        if (pattern == null || pattern.isEmpty()) throw new IllegalArgumentException("Search pattern required");
+        int flags = Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+        switch (mode) {
+            case SUBSTRING:
+                return new Substring(pattern);
+            case REGEX: {
+                Pattern p = Pattern.compile(pattern, flags);
+                return new NameMatcher() {
+                    @Override
+                    boolean matches(String name) {
+                        return p.matcher(name).find();
+                    }
+                };
+            }
+            default: {
+                Pattern p = Pattern.compile(globToRegex(pattern), flags);
+                return new NameMatcher() {
+                    @Override
+                    boolean matches(String name) {
+                        return p.matcher(name).matches();
+                    }
+                };
+            }
+        }
+    }
+
+    /**
+     * Traduce un sablon glob intr-o expresie regulata echivalenta.
+     *
+     * @param glob sablonul glob
+     * @return expresia regulata pentru numele intreg
+     */
+    static String globToRegex(String glob) {
+        StringBuilder sb = new StringBuilder(glob.length() + 8);
+        int i = 0;
+        while (i < glob.length()) {
+            char c = glob.charAt(i++);
+            if (c == '*') {
+                sb.append(".*");
+            } else if (c == '?') {
+                sb.append('.');
+            } else if (c == '[' && glob.indexOf(']', i + 1) > 0) {
+                int close = glob.indexOf(']', i + 1);
+                sb.append('[');
+                if (glob.charAt(i) == '!') {
+                    sb.append('^');
+                    i++;
+                }
+                for (; i < close; i++) {
+                    char k = glob.charAt(i);
+                    if (k == '\\' || k == '[' || k == '&' || k == '^') sb.append('\\');
+                    sb.append(k);
+                }
+                sb.append(']');
+                i = close + 1;
+            } else {
+                if ("\\.^$|+(){}[]".indexOf(c) >= 0) sb.append('\\');
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Cautare de subsir fara alocari per nume.
+     */
+    private static final class Substring extends NameMatcher {
+
+        private final String needle;
+
+        Substring(String needle) {
+            this.needle = needle;
+        }
+
+        @Override
+        boolean matches(String name) {
+            int n = needle.length();
+            for (int i = 0, last = name.length() - n; i <= last; i++) {
+                if (name.regionMatches(true, i, needle, 0, n)) return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package service;
+
+import model.FsNode;
+
+/**
+ * O modificare a unui singur nod, asa cum apare in {@link TreeChangeEvent#getChanges()}.
+ * <p>
+ * Modificarile dintr-un eveniment sunt deja comasate: descriu efectul net al operatiei
+ * (sau al lotului) asupra fiecarui nod, fata de starea de dinainte. Un nod creat si sters
+ * in acelasi lot nu apare deloc, un nod redenumit de mai multe ori apare o singura data,
+ * cu numele initial, iar un subarbore creat este raportat doar prin radacina lui.
+ *
+ * @param kind      tipul modificarii
+ * @param node      nodul modificat (pentru {@link Kind#REMOVED}: nodul detasat)
+ * @param parent    parintele dupa modificare; null pentru {@link Kind#REMOVED}
+ * @param index     pozitia nodului in {@code parent} dupa modificare; -1 daca nu se aplica
+ * @param oldParent parintele de dinainte (pentru {@link Kind#REMOVED} si {@link Kind#MOVED}), altfel null
+ * @param oldName   numele de dinainte (pentru {@link Kind#RENAMED}), altfel null
+ * @param oldSize   dimensiunea de dinainte (pentru {@link Kind#RESIZED}), altfel 0
+ */
+public record NodeChange(Kind kind, FsNode node, FsNode parent, int index,
+                         FsNode oldParent, String oldName, long oldSize) {
+
+    /**
+     * Tipul unei modificari.
+     */
+    public enum Kind {
+        /** Nod (impreuna cu subarborele lui) atasat arborelui. */
+        ADDED,
+        /** Nod (impreuna cu subarborele lui) detasat din arbore. */
+        REMOVED,
+        /** Nod mutat sub alt parinte sau pe alta pozitie. */
+        MOVED,
+        /** Nod redenumit. */
+        RENAMED,
+        /** Fisier cu dimensiunea schimbata. */
+        RESIZED
+    }
+}
@@ -0,0 +1,159 @@
+package service;
+
+import model.FsNode;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * Index id -> nod, cu chei primitive {@code long}.
+ * <p>
+ * Foloseste adresare deschisa cu sondare liniara si stergere prin deplasare inapoi
+ * (fara "tombstones"), astfel incat nu se creeaza obiecte Long pentru chei.
+ * Serviciul o modifica sub lock-ul de scriere; metodele sunt totusi sincronizate, pentru ca
+ * folderele incarcate la cerere ({@link model.ChildLoader}) isi inregistreaza copiii din
+ * firul care le atinge, inclusiv din cititori. Indexul contine doar nodurile incarcate.
+ */
+final class NodeIdIndex {
+
+    /**
+     * Cheia pentru slot liber (id-urile nodurilor incep de la 1).
+     */
+    private static final long EMPTY = 0L;
+
+    private long[] keys;
+    private FsNode[] values;
+    private int size;
+
+    /**
+     * Creeaza un index gol.
+     *
+     * @param expected numarul estimat de noduri
+     */
+    NodeIdIndex(int expected) {
+        int cap = Integer.highestOneBit(Math.max(16, expected * 2 - 1)) << 1;
+        keys = new long[cap];
+        values = new FsNode[cap];
+    }
+
+    /**
+     * Cauta un nod dupa id.
+     *
+     * @param id id-ul nodului
+     * @return nodul sau null
+     */
+    synchronized FsNode get(long id) {
+        int mask = keys.length - 1;
+        for (int i = slot(id, mask); ; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == id) return values[i];
+            if (k == EMPTY) return null;
+        }
+    }
+
+    /**
+     * Adauga un nod in index.
+     *
+     * @param node nodul adaugat
+     */
+    synchronized void put(FsNode node) {
+        if ((size + 1) * 2 > keys.length) grow();
+        insert(node.getId(), node);
+    }
+
+    /**
+     * Adauga in index un nod si partea incarcata a subarborelui lui.
+     *
+     * @param node radacina subarborelui
+     */
+    synchronized void putSubtree(FsNode node) {
+        Deque<FsNode> stack = new ArrayDeque<>();
+        stack.push(node);
+        while (!stack.isEmpty()) {
+            FsNode n = stack.pop();
+            put(n);
+            for (FsNode c : n.getLoadedChildren()) stack.push(c);
+        }
+    }
+
+    /**
+     * Scoate din index un nod si partea incarcata a subarborelui lui.
+     *
+     * @param node radacina subarborelui
+     */
+    synchronized void removeSubtree(FsNode node) {
+        Deque<FsNode> stack = new ArrayDeque<>();
+        stack.push(node);
+        while (!stack.isEmpty()) {
+            FsNode n = stack.pop();
+            remove(n.getId());
+            for (FsNode c : n.getLoadedChildren()) stack.push(c);
+        }
+    }
+
+    /**
+     * Scoate un id din index, mutand inapoi intrarile urmatoare din acelasi grup.
+     *
+     * @param id id-ul scos
+     */
+    synchronized void remove(long id) {
+        int mask = keys.length - 1;
+        int i = slot(id, mask);
+        while (keys[i] != id) {
+            if (keys[i] == EMPTY) return;
+            i = (i + 1) & mask;
+        }
+        size--;
+        for (int j = (i + 1) & mask; keys[j] != EMPTY; j = (j + 1) & mask) {
+            int home = slot(keys[j], mask);
+            // intrarea de pe j poate umple golul doar daca golul nu este inaintea pozitiei ei de baza
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                i = j;
+            }
+        }
+        keys[i] = EMPTY;
+        values[i] = null;
+    }
+
+    /**
+     * @return numarul de noduri din index
+     */
+    synchronized int size() {
+        return size;
+    }
+
+    private void insert(long id, FsNode node) {
+        int mask = keys.length - 1;
+        int i = slot(id, mask);
+        while (keys[i] != EMPTY) {
+            if (keys[i] == id) {
+                values[i] = node;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = id;
+        values[i] = node;
+        size++;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        FsNode[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new FsNode[oldKeys.length * 2];
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) insert(oldKeys[i], oldValues[i]);
+        }
+        Arrays.fill(oldValues, null);
+    }
+
+    private static int slot(long id, int mask) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,70 @@
+package service;
+
+/**
+ * O operatie dintr-un lot aplicat prin {@link FileTreeService#applyBatch(java.util.List)}.
+ * <p>
+ * Toate operatiile sunt adresate prin cai logice (sir de nume de la root invizibil),
+ * iar caile pot referi noduri create sau mutate de operatiile anterioare din acelasi lot.
+ */
+public sealed interface Op permits Op.CreateFolder, Op.CreateFile, Op.Rename, Op.Delete, Op.Move {
+
+    /**
+     * Creeaza un folder.
+     *
+     * @param parentPath calea parintelui
+     * @param name       numele folderului
+     */
+    record CreateFolder(String[] parentPath, String name) implements Op { }
+
+    /**
+     * Creeaza un fisier.
+     *
+     * @param parentPath calea parintelui
+     * @param name       numele fisierului
+     * @param sizeBytes  dimensiunea in bytes
+     */
+    record CreateFile(String[] parentPath, String name, long sizeBytes) implements Op { }
+
+    /**
+     * Redenumeste un nod.
+     *
+     * @param path    calea nodului
+     * @param newName numele nou
+     */
+    record Rename(String[] path, String newName) implements Op { }
+
+    /**
+     * Sterge un nod impreuna cu subarborele lui.
+     *
+     * @param path calea nodului
+     */
+    record Delete(String[] path) implements Op { }
+
+    /**
+     * Muta un nod sub un alt parinte.
+     *
+     * @param path          calea nodului mutat
+     * @param newParentPath calea noului parinte
+     */
+    record Move(String[] path, String[] newParentPath) implements Op { }
+
+    static Op createFolder(String[] parentPath, String name) {
+        return new CreateFolder(parentPath, name);
+    }
+
+    static Op createFile(String[] parentPath, String name, long sizeBytes) {
+        return new CreateFile(parentPath, name, sizeBytes);
+    }
+
+    static Op rename(String[] path, String newName) {
+        return new Rename(path, newName);
+    }
+
+    static Op delete(String[] path) {
+        return new Delete(path);
+    }
+
+    static Op move(String[] path, String[] newParentPath) {
+        return new Move(path, newParentPath);
+    }
+}
@@ -0,0 +1,136 @@
+package service;
+
+import model.FsNode;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache LRU cale -> nod pentru {@link FileTreeService#find(String...)}.
+ * <p>
+ * Cheia este calea normalizata: fiecare componenta trecuta prin
+ * {@link FsNode#foldName(String)}, componentele fiind separate prin {@link #SEP},
+ * astfel incat "C:/Folder" si "c:/folder" folosesc aceeasi intrare.
+ * Invalidarea este precisa: la redenumirea, stergerea sau mutarea unui nod se
+ * elimina doar intrarile pentru calea lui si pentru caile de sub ea.
+ * Toate metodele sunt sincronizate.
+ */
+final class PathCache {
+
+    /**
+     * Separatorul componentelor in cheie (nu poate aparea intr-un nume citit din fisier).
+     */
+    static final char SEP = '\n';
+
+    /**
+     * Numarul maxim de intrari.
+     */
+    private final int capacity;
+
+    /**
+     * Intrarile, in ordinea ultimei accesari.
+     */
+    private final LinkedHashMap<String, FsNode> entries;
+
+    private long hits;
+    private long misses;
+
+    /**
+     * Creeaza un cache cu o capacitate data.
+     *
+     * @param capacity numarul maxim de cai retinute
+     */
+    PathCache(int capacity) {
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<>(capacity * 4 / 3 + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, FsNode> eldest) {
+                return size() > PathCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Construieste cheia normalizata pentru o cale data ca sir de nume.
+     *
+     * @param parts componentele caii
+     * @return cheia normalizata
+     */
+    static String keyOf(String[] parts) {
+        StringBuilder sb = new StringBuilder(parts.length * 12);
+        for (String p : parts) {
+            sb.append(SEP).append(FsNode.foldName(p));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Construieste cheia normalizata pentru calea curenta a unui nod atasat.
+     *
+     * @param node nodul
+     * @param root radacina invizibila (nu face parte din cale)
+     * @return cheia normalizata
+     */
+    static String keyOf(FsNode node, FsNode root) {
+        int depth = 0;
+        for (FsNode cur = node; cur != null && cur != root; cur = cur.getParent()) depth++;
+        String[] parts = new String[depth];
+        for (FsNode cur = node; depth > 0; cur = cur.getParent()) parts[--depth] = cur.getName();
+        return keyOf(parts);
+    }
+
+    /**
+     * Cauta un nod in cache si actualizeaza contoarele.
+     *
+     * @param key cheia normalizata
+     * @return nodul sau null daca nu este in cache
+     */
+    synchronized FsNode get(String key) {
+        FsNode n = entries.get(key);
+        if (n == null) misses++;
+        else hits++;
+        return n;
+    }
+
+    /**
+     * Adauga sau actualizeaza o intrare.
+     *
+     * @param key  cheia normalizata
+     * @param node nodul rezolvat
+     */
+    synchronized void put(String key, FsNode node) {
+        entries.put(key, node);
+    }
+
+    /**
+     * Elimina intrarea pentru o cale si pentru toate caile de sub ea.
+     *
+     * @param key cheia normalizata a caii modificate
+     */
+    synchronized void invalidatePrefix(String key) {
+        if (entries.isEmpty()) return;
+        String below = key + SEP;
+        entries.keySet().removeIf(k -> k.equals(key) || k.startsWith(below));
+    }
+
+    /**
+     * Goleste tot cache-ul.
+     */
+    synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * @return numarul de cautari gasite in cache
+     */
+    synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return numarul de cautari care au necesitat parcurgerea arborelui
+     */
+    synchronized long getMisses() {
+        return misses;
+    }
+}
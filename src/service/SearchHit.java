@@ -0,0 +1,34 @@
+package service;
+
+import model.NodeType;
+
+/**
+ * Un nod gasit de o interogare: cautarea dupa nume sau topurile de dimensiune
+ * ({@link FileTreeService#topFiles(String[], int)}, {@link FileTreeService#topFolders(String[], int)}).
+ *
+ * @param id        id-ul stabil al nodului (vezi {@link FileTreeService#findById(long)})
+ * @param path      calea completa a nodului, de la drive pana la nodul gasit
+ * @param type      tipul nodului
+ * @param sizeBytes dimensiunea fisierului; pentru foldere din topuri, dimensiunea totala a continutului
+ */
+public record SearchHit(long id, String[] path, NodeType type, long sizeBytes) {
+
+    /**
+     * @return numele nodului gasit
+     */
+    public String name() {
+        return path[path.length - 1];
+    }
+
+    /**
+     * @return calea sub forma de text, cu componentele separate prin '/'
+     */
+    public String pathString() {
+        return String.join("/", path);
+    }
+
+    @Override
+    public String toString() {
+        return pathString();
+    }
+}
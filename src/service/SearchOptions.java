@@ -0,0 +1,129 @@
+package service;
+
+import model.NodeType;
+
+/**
+ * Optiunile unei cautari dupa nume ({@link FileTreeService#search(String, SearchOptions)}).
+ * <p>
+ * Obiectul este imutabil; metodele {@code withXxx} intorc o copie modificata:
+ * <pre>
+ * SearchOptions.glob().withStartPath("C:", "Users").withLimit(100)
+ * </pre>
+ */
+public final class SearchOptions {
+
+    /**
+     * Felul in care este interpretat sablonul cautat.
+     * In toate modurile literele mari/mici sunt ignorate, ca la {@code childByName}.
+     */
+    public enum Mode {
+        /** Sablon glob pe numele intreg: {@code *}, {@code ?} si clase {@code [abc]} / {@code [!abc]}. */
+        GLOB,
+        /** Expresie regulata cautata oriunde in nume. */
+        REGEX,
+        /** Subsir oarecare din nume. */
+        SUBSTRING
+    }
+
+    /**
+     * Capacitatea implicita a cozii dintre cautare si consumator.
+     */
+    public static final int DEFAULT_BUFFER = 1024;
+
+    private final Mode mode;
+    private final int limit;
+    private final String[] startPath;
+    private final NodeType type;
+    private final int bufferSize;
+
+    private SearchOptions(Mode mode, int limit, String[] startPath, NodeType type, int bufferSize) {
+        this.mode = mode;
+        this.limit = limit;
+        this.startPath = startPath;
+        this.type = type;
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Optiuni implicite pentru un mod dat: fara limita, tot arborele, toate tipurile.
+     *
+     * @param mode modul de potrivire
+     * @return optiunile
+     */
+    public static SearchOptions of(Mode mode) {
+        if (mode == null) throw new IllegalArgumentException("Search mode required");
+        return new SearchOptions(mode, Integer.MAX_VALUE, null, null, DEFAULT_BUFFER);
+    }
+
+    /** @return optiuni implicite pentru cautare glob */
+    public static SearchOptions glob() {
+        return of(Mode.GLOB);
+    }
+
+    /** @return optiuni implicite pentru cautare cu expresii regulate */
+    public static SearchOptions regex() {
+        return of(Mode.REGEX);
+    }
+
+    /** @return optiuni implicite pentru cautare dupa subsir */
+    public static SearchOptions substring() {
+        return of(Mode.SUBSTRING);
+    }
+
+    /**
+     * @param limit numarul maxim de rezultate; cautarea se opreste cand este atins
+     * @return o copie cu limita data
+     */
+    public SearchOptions withLimit(int limit) {
+        if (limit <= 0) throw new IllegalArgumentException("Limit must be positive");
+        return new SearchOptions(mode, limit, startPath, type, bufferSize);
+    }
+
+    /**
+     * @param startPath calea nodului sub care se cauta; goala pentru tot arborele
+     * @return o copie cu punctul de start dat
+     */
+    public SearchOptions withStartPath(String... startPath) {
+        return new SearchOptions(mode, limit, startPath == null ? null : startPath.clone(), type, bufferSize);
+    }
+
+    /**
+     * @param type tipul nodurilor acceptate; null pentru toate tipurile
+     * @return o copie cu filtrul de tip dat
+     */
+    public SearchOptions withType(NodeType type) {
+        return new SearchOptions(mode, limit, startPath, type, bufferSize);
+    }
+
+    /**
+     * @param bufferSize cate rezultate pot astepta consumatorul inainte ca cautarea sa fie franata
+     * @return o copie cu capacitatea de coada data
+     */
+    public SearchOptions withBufferSize(int bufferSize) {
+        if (bufferSize <= 0) throw new IllegalArgumentException("Buffer size must be positive");
+        return new SearchOptions(mode, limit, startPath, type, bufferSize);
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return o copie a caii de start sau null pentru tot arborele
+     */
+    public String[] getStartPath() {
+        return startPath == null ? null : startPath.clone();
+    }
+
+    public NodeType getType() {
+        return type;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+}
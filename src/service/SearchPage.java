@@ -0,0 +1,17 @@
+package service;
+
+import java.util.List;
+
+/**
+ * O pagina de rezultate intoarsa de {@link FileTreeService#searchPage(String, SearchOptions, int, int)}.
+ * <p>
+ * Rezultatele sunt in ordinea parcurgerii preordine a arborelui, deci paginile
+ * consecutive cerute pe aceeasi versiune nu se suprapun si nu sar rezultate.
+ *
+ * @param hits       rezultatele din pagina
+ * @param nextOffset offset-ul primei pagini urmatoare
+ * @param hasMore    true daca mai exista rezultate dupa aceasta pagina
+ * @param version    versiunea arborelui pe care s-a facut cautarea
+ */
+public record SearchPage(List<SearchHit> hits, int nextOffset, boolean hasMore, long version) {
+}
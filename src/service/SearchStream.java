@@ -0,0 +1,279 @@
+package service;
+
+import model.NodeType;
+import model.SnapshotNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fluxul de rezultate al unei cautari paralele dupa nume.
+ * <p>
+ * Cautarea ruleaza pe un snapshot imutabil, deci nu tine niciun lock al arborelui.
+ * Fiecare sarcina parcurge iterativ, cu o stiva explicita, un subarbore; copiii mari ai
+ * unui nod care are cel putin doi astfel de copii devin sarcini separate. Sarcinile nu se
+ * asteapta una pe alta: ultima care se termina inchide fluxul. Rezultatele sunt puse
+ * intr-o coada marginita: cand consumatorul nu tine pasul, firele de cautare
+ * asteapta (backpressure). Cautarea se opreste singura la atingerea limitei.
+ * <p>
+ * Ordinea rezultatelor nu este determinista. Fluxul trebuie inchis cu {@link #close()}
+ * daca nu este consumat pana la capat; inchiderea opreste si firele de cautare.
+ */
+public final class SearchStream implements Iterator<SearchHit>, AutoCloseable {
+
+    /**
+     * Numarul de noduri sub care un subarbore este parcurs intr-un singur fir.
+     */
+    static final int SPLIT_THRESHOLD = 8192;
+
+    /**
+     * Pool-ul dedicat cautarilor; firele lui pot astepta dupa consumator,
+     * deci nu se foloseste pool-ul comun.
+     */
+    private static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Marcaj pus in coada la terminarea cautarii.
+     */
+    private static final SearchHit END = new SearchHit(-1, new String[]{""}, null, 0);
+
+    private final TreeSnapshot snapshot;
+    private final NameMatcher matcher;
+    private final NodeType type;
+    private final int limit;
+    private final BlockingQueue<SearchHit> queue;
+    private final AtomicInteger emitted = new AtomicInteger();
+
+    /**
+     * Numarul de sarcini pornite si neterminate.
+     */
+    private final AtomicInteger running = new AtomicInteger();
+
+    private volatile boolean stopped;
+    private volatile boolean closed;
+    private volatile Throwable failure;
+
+    private SearchHit next;
+    private boolean finished;
+
+    /**
+     * Porneste cautarea in fundal.
+     *
+     * @param snapshot  snapshot-ul parcurs; este inchis la terminarea fluxului
+     * @param start     nodul sub care se cauta (nodul insusi nu este verificat)
+     * @param startPath calea nodului de start
+     * @param matcher   potrivirea numelor
+     * @param options   optiunile cautarii
+     */
+    SearchStream(TreeSnapshot snapshot, SnapshotNode start, String[] startPath,
+                 NameMatcher matcher, SearchOptions options) {
+        this.snapshot = snapshot;
+        this.matcher = matcher;
+        this.type = options.getType();
+        this.limit = options.getLimit();
+        this.queue = new ArrayBlockingQueue<>(options.getBufferSize());
+        running.set(1);
+        POOL.execute(new Task(start, startPath));
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next != null) return true;
+        if (finished) return false;
+        try {
+            SearchHit h = queue.take();
+            if (h == END) {
+                finish();
+                Throwable f = failure;
+                if (f instanceof Error) throw (Error) f;
+                if (f != null) throw new IllegalStateException("Search failed: " + f, f);
+                return false;
+            }
+            next = h;
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            throw new IllegalStateException("Search interrupted", e);
+        }
+    }
+
+    @Override
+    public SearchHit next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        SearchHit h = next;
+        next = null;
+        return h;
+    }
+
+    /**
+     * Consuma restul fluxului intr-o lista.
+     *
+     * @return rezultatele ramase
+     */
+    public List<SearchHit> toList() {
+        List<SearchHit> out = new ArrayList<>();
+        try {
+            while (hasNext()) out.add(next());
+        } finally {
+            close();
+        }
+        return out;
+    }
+
+    /**
+     * Opreste cautarea si elibereaza snapshot-ul. Poate fi apelata de mai multe ori.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        stopped = true;
+        queue.clear();
+        finish();
+    }
+
+    private void finish() {
+        finished = true;
+        next = null;
+        snapshot.close();
+    }
+
+    /**
+     * Publica un rezultat, respectand limita si asteptand daca coada este plina.
+     *
+     * @return false daca cautarea trebuie oprita
+     */
+    private boolean emit(SearchHit h) {
+        if (stopped) return false;
+        int n = emitted.incrementAndGet();
+        if (n > limit) {
+            stopped = true;
+            return false;
+        }
+        if (n == limit) stopped = true;
+        return offer(h) && !stopped;
+    }
+
+    /**
+     * Pune un element in coada; asteapta cat timp coada este plina si fluxul este deschis.
+     *
+     * @return false daca fluxul a fost inchis intre timp
+     */
+    private boolean offer(SearchHit h) {
+        try {
+            while (!closed) {
+                if (queue.offer(h, 50, TimeUnit.MILLISECONDS)) return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    /**
+     * Sarcina de cautare intr-un subarbore. Nodul insusi a fost deja verificat de parinte.
+     */
+    private final class Task extends RecursiveAction {
+
+        private final SnapshotNode node;
+        private final String[] path;
+
+        Task(SnapshotNode node, String[] path) {
+            this.node = node;
+            this.path = path;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                walk();
+            } catch (Throwable t) {
+                if (failure == null) failure = t;
+                stopped = true;
+            } finally {
+                if (running.decrementAndGet() == 0) offer(END);
+            }
+        }
+
+        private String[] names;
+        private SnapshotNode[] nodes = new SnapshotNode[64];
+        private int[] depths = new int[64];
+        private int top;
+
+        /**
+         * Parcurge iterativ descendentii nodului, tinand numele de pe drum intr-o stiva.
+         */
+        private void walk() {
+            names = Arrays.copyOf(path, path.length + 16);
+            push(node, path.length);
+            while (top > 0) {
+                if (stopped) return;
+                SnapshotNode n = nodes[--top];
+                int d = depths[top];
+                nodes[top] = null;
+                if (d >= names.length) names = Arrays.copyOf(names, names.length * 2);
+                names[d] = n.getName();
+                if (matchesNode(n) && !emit(hit(n, Arrays.copyOf(names, d + 1)))) return;
+                push(n, d + 1);
+            }
+        }
+
+        /**
+         * Pune copiii unui nod in stiva. Cand nodul are cel putin doi copii cu
+         * {@link #SPLIT_THRESHOLD} noduri, primul ramane in stiva, iar ceilalti sunt verificati
+         * si pornesc sarcini separate; un lant de foldere este deci parcurs in aceeasi sarcina.
+         *
+         * @param n nodul
+         * @param d adancimea copiilor in {@link #names}
+         */
+        private void push(SnapshotNode n, int d) {
+            List<SnapshotNode> kids = n.getChildren();
+            if (top + kids.size() > nodes.length) {
+                int cap = Math.max(nodes.length * 2, top + kids.size());
+                nodes = Arrays.copyOf(nodes, cap);
+                depths = Arrays.copyOf(depths, cap);
+            }
+            boolean split = n.getSubtreeNodes() >= 2 * SPLIT_THRESHOLD;
+            boolean kept = false;
+            for (SnapshotNode c : kids) {
+                if (split && c.getSubtreeNodes() >= SPLIT_THRESHOLD) {
+                    if (kept) {
+                        fork(c, d);
+                        continue;
+                    }
+                    kept = true;
+                }
+                nodes[top] = c;
+                depths[top++] = d;
+            }
+        }
+
+        /**
+         * Verifica un copil mare si porneste o sarcina pentru descendentii lui.
+         */
+        private void fork(SnapshotNode c, int d) {
+            String[] p = Arrays.copyOf(names, d + 1);
+            p[d] = c.getName();
+            if (matchesNode(c) && !emit(hit(c, p))) return;
+            running.incrementAndGet();
+            new Task(c, p).fork();
+        }
+    }
+
+    private boolean matchesNode(SnapshotNode n) {
+        return (type == null || n.getType() == type) && matcher.matches(n.getName());
+    }
+
+    static SearchHit hit(SnapshotNode n, String[] path) {
+        return new SearchHit(n.getId(), path, n.getType(), n.getSizeBytes());
+    }
+}
@@ -0,0 +1,331 @@
+package service;
+
+import model.FsNode;
+import model.NodeType;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Index secundar al fisierelor ordonat dupa dimensiune, pentru interogari pe intervale.
+ * <p>
+ * Este un treap tinut in vectori primitivi: fiecare slot are cheia (dimensiune, id),
+ * nodul, copiii stang/drept, prioritatea si numarul de noduri din subarborele treap-ului.
+ * Cu aceste numere, {@link #count(long, long)} costa O(log n), iar {@link #range}
+ * costa O(log n + rezultate). Sloturile eliberate sunt refolosite printr-o lista libera.
+ * <p>
+ * Clasa nu este thread-safe; serviciul o modifica sub lock-ul de scriere.
+ */
+final class SizeIndex {
+
+    private static final int NIL = -1;
+
+    private long[] sizes;
+    private long[] ids;
+    private FsNode[] nodes;
+    private int[] left;
+    private int[] right;
+    private int[] prio;
+    private int[] count;
+
+    private int root = NIL;
+    private int used;
+    private int free = NIL;
+    private int seed = 0x2545F491;
+
+    private SizeIndex(int expected) {
+        int cap = Math.max(16, expected);
+        sizes = new long[cap];
+        ids = new long[cap];
+        nodes = new FsNode[cap];
+        left = new int[cap];
+        right = new int[cap];
+        prio = new int[cap];
+        count = new int[cap];
+    }
+
+    /**
+     * Construieste indexul pentru toate fisierele dintr-un arbore complet in memorie
+     * (un arbore incarcat la cerere ar fi citit in intregime).
+     *
+     * @param root radacina invizibila
+     * @return indexul construit
+     */
+    static SizeIndex build(FsNode root) {
+        List<FsNode> files = files(root);
+        files.sort((x, y) -> compare(x.getSizeBytes(), x.getId(), y.getSizeBytes(), y.getId()));
+        int n = files.size();
+        SizeIndex idx = new SizeIndex(n);
+        for (FsNode f : files) idx.alloc(f);
+        // prioritati aleatoare sortate descrescator, date nodurilor in ordinea pe niveluri (BFS)
+        // a arborelui echilibrat: se obtine direct un treap valid, fara rotatii
+        int[] p = new int[n];
+        for (int i = 0; i < n; i++) p[i] = idx.nextPriority();
+        Arrays.sort(p);
+        int[] queue = new int[Math.max(1, 2 * n)];
+        int head = 0, tail = 0, next = n - 1;
+        idx.root = idx.balanced(0, n - 1);
+        if (idx.root != NIL) queue[tail++] = idx.root;
+        while (head < tail) {
+            int t = queue[head++];
+            idx.prio[t] = p[next--];
+            if (idx.left[t] != NIL) queue[tail++] = idx.left[t];
+            if (idx.right[t] != NIL) queue[tail++] = idx.right[t];
+        }
+        return idx;
+    }
+
+    /**
+     * Leaga sloturile [lo, hi] (deja ordonate) intr-un arbore echilibrat.
+     */
+    private int balanced(int lo, int hi) {
+        if (lo > hi) return NIL;
+        int mid = (lo + hi) >>> 1;
+        left[mid] = balanced(lo, mid - 1);
+        right[mid] = balanced(mid + 1, hi);
+        update(mid);
+        return mid;
+    }
+
+    /**
+     * Adauga fisierele dintr-un subarbore.
+     *
+     * @param n radacina subarborelui
+     */
+    void addSubtree(FsNode n) {
+        for (FsNode f : files(n)) add(f);
+    }
+
+    /**
+     * Scoate fisierele dintr-un subarbore.
+     *
+     * @param n radacina subarborelui
+     */
+    void removeSubtree(FsNode n) {
+        for (FsNode f : files(n)) remove(f, f.getSizeBytes());
+    }
+
+    /**
+     * Adauga un fisier cu dimensiunea lui curenta.
+     *
+     * @param f fisierul adaugat
+     */
+    void add(FsNode f) {
+        int s = alloc(f);
+        root = insert(root, s);
+    }
+
+    /**
+     * Scoate un fisier; dimensiunea trebuie sa fie cea cu care a fost indexat.
+     *
+     * @param f       fisierul scos
+     * @param oldSize dimensiunea indexata
+     */
+    void remove(FsNode f, long oldSize) {
+        root = delete(root, oldSize, f.getId());
+    }
+
+    /**
+     * @return numarul de fisiere indexate
+     */
+    int size() {
+        return root == NIL ? 0 : count[root];
+    }
+
+    /**
+     * Numarul de fisiere cu dimensiunea in intervalul inchis [min, max], in O(log n).
+     *
+     * @param min dimensiunea minima
+     * @param max dimensiunea maxima
+     * @return numarul de fisiere
+     */
+    int count(long min, long max) {
+        if (min > max) return 0;
+        return rankBelow(max, Long.MAX_VALUE) - rankBelow(min, Long.MIN_VALUE);
+    }
+
+    /**
+     * Fisierele cu dimensiunea in intervalul [min, max], crescator dupa dimensiune.
+     *
+     * @param min   dimensiunea minima
+     * @param max   dimensiunea maxima
+     * @param limit numarul maxim de rezultate
+     * @return fisierele gasite
+     */
+    List<FsNode> range(long min, long max, int limit) {
+        List<FsNode> out = new ArrayList<>();
+        if (min > max) return out;
+        int[] stack = new int[64];
+        int top = 0;
+        int cur = root;
+        while ((cur != NIL || top > 0) && out.size() < limit) {
+            while (cur != NIL) {
+                if (sizes[cur] < min) {
+                    cur = right[cur];
+                } else {
+                    if (top == stack.length) stack = Arrays.copyOf(stack, top * 2);
+                    stack[top++] = cur;
+                    cur = left[cur];
+                }
+            }
+            if (top == 0) break;
+            cur = stack[--top];
+            if (sizes[cur] > max) break;
+            out.add(nodes[cur]);
+            cur = right[cur];
+        }
+        return out;
+    }
+
+    /**
+     * Numarul de chei strict mai mici decat (size, id).
+     */
+    private int rankBelow(long size, long id) {
+        int r = 0;
+        int cur = root;
+        while (cur != NIL) {
+            if (compare(sizes[cur], ids[cur], size, id) < 0) {
+                r += cnt(left[cur]) + 1;
+                cur = right[cur];
+            } else {
+                cur = left[cur];
+            }
+        }
+        return r;
+    }
+
+    // --- treap ---
+
+    private int insert(int t, int s) {
+        if (t == NIL) return s;
+        if (compare(sizes[s], ids[s], sizes[t], ids[t]) < 0) {
+            left[t] = insert(left[t], s);
+            if (prio[left[t]] > prio[t]) t = rotateRight(t);
+        } else {
+            right[t] = insert(right[t], s);
+            if (prio[right[t]] > prio[t]) t = rotateLeft(t);
+        }
+        update(t);
+        return t;
+    }
+
+    private int delete(int t, long size, long id) {
+        if (t == NIL) return NIL;
+        int c = compare(size, id, sizes[t], ids[t]);
+        if (c < 0) {
+            left[t] = delete(left[t], size, id);
+        } else if (c > 0) {
+            right[t] = delete(right[t], size, id);
+        } else {
+            int merged = merge(left[t], right[t]);
+            release(t);
+            return merged;
+        }
+        update(t);
+        return t;
+    }
+
+    private int merge(int a, int b) {
+        if (a == NIL) return b;
+        if (b == NIL) return a;
+        if (prio[a] > prio[b]) {
+            right[a] = merge(right[a], b);
+            update(a);
+            return a;
+        }
+        left[b] = merge(a, left[b]);
+        update(b);
+        return b;
+    }
+
+    private int rotateRight(int t) {
+        int l = left[t];
+        left[t] = right[l];
+        right[l] = t;
+        update(t);
+        update(l);
+        return l;
+    }
+
+    private int rotateLeft(int t) {
+        int r = right[t];
+        right[t] = left[r];
+        left[r] = t;
+        update(t);
+        update(r);
+        return r;
+    }
+
+    private void update(int t) {
+        count[t] = cnt(left[t]) + cnt(right[t]) + 1;
+    }
+
+    private int cnt(int t) {
+        return t == NIL ? 0 : count[t];
+    }
+
+    private static int compare(long s1, long id1, long s2, long id2) {
+        int c = Long.compare(s1, s2);
+        return c != 0 ? c : Long.compare(id1, id2);
+    }
+
+    private int alloc(FsNode f) {
+        int s;
+        if (free != NIL) {
+            s = free;
+            free = left[s];
+        } else {
+            if (used == sizes.length) grow();
+            s = used++;
+        }
+        sizes[s] = f.getSizeBytes();
+        ids[s] = f.getId();
+        nodes[s] = f;
+        left[s] = NIL;
+        right[s] = NIL;
+        prio[s] = nextPriority();
+        count[s] = 1;
+        return s;
+    }
+
+    private void release(int s) {
+        nodes[s] = null;
+        left[s] = free;
+        free = s;
+    }
+
+    private int nextPriority() {
+        int x = seed;
+        x ^= x << 13;
+        x ^= x >>> 17;
+        x ^= x << 5;
+        seed = x;
+        return x;
+    }
+
+    private void grow() {
+        int cap = sizes.length * 2;
+        sizes = Arrays.copyOf(sizes, cap);
+        ids = Arrays.copyOf(ids, cap);
+        nodes = Arrays.copyOf(nodes, cap);
+        left = Arrays.copyOf(left, cap);
+        right = Arrays.copyOf(right, cap);
+        prio = Arrays.copyOf(prio, cap);
+        count = Arrays.copyOf(count, cap);
+    }
+
+    private static List<FsNode> files(FsNode start) {
+        List<FsNode> out = new ArrayList<>();
+        Deque<FsNode> stack = new ArrayDeque<>();
+        stack.push(start);
+        while (!stack.isEmpty()) {
+            FsNode n = stack.pop();
+            if (n.getType() == NodeType.FILE) out.add(n);
+            for (FsNode c : n.getChildren()) stack.push(c);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,217 @@
+package service;
+
+import model.FsNode;
+import model.NodeType;
+import model.Stats;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Motorul care calculeaza statisticile unui subarbore prin parcurgere completa.
+ * <p>
+ * Subarborii mici sunt parcursi iterativ, cu o stiva explicita, deci fara riscul
+ * de depasire a stivei pe arbori foarte adanci. Subarborii mari sunt impartiti dupa
+ * numarul de noduri (citit din totalurile mentinute de {@link FsNode}) intr-o lista plata
+ * de sarcini {@link ForkJoinPool}, tot iterativ; fiecare sarcina aduna intr-un {@link Stats}
+ * propriu, iar rezultatele partiale sunt combinate la final cu {@link Stats#merge(Stats)}.
+ * <p>
+ * Apelantul trebuie sa tina arborele nemodificat pe durata calculului
+ * (ex: lock-ul de citire al {@link FileTreeService}). Parcurgerea citeste copiii cu
+ * {@link FsNode#getChildren()}, deci pe un arbore incarcat la cerere ar citi tot fisierul;
+ * serviciul refuza acest caz ({@link FileTreeService#isLazy()}).
+ */
+final class StatsEngine {
+
+    /**
+     * Numarul de noduri sub care parcurgerea se face secvential.
+     */
+    static final int PARALLEL_THRESHOLD = 32_768;
+
+    private StatsEngine() {
+    }
+
+    /**
+     * Calculeaza statisticile subarborelui, alegand motorul dupa dimensiunea lui.
+     *
+     * @param start nodul de start (adancime 0)
+     * @return statisticile subarborelui
+     */
+    static Stats compute(FsNode start) {
+        return compute(start, false);
+    }
+
+    /**
+     * Calculeaza statisticile subarborelui, optional cu histogramele detaliate
+     * ({@code nodesPerDepth}, {@code countByTypePerDepth}, {@code sizeHistogram}).
+     * Histogramele sunt construite in aceeasi trecere, crescand masivele pe masura
+     * ce se descopera niveluri noi, deci adancimea nu trebuie cunoscuta dinainte.
+     *
+     * @param start    nodul de start (adancime 0)
+     * @param detailed true pentru a completa si histogramele
+     * @return statisticile subarborelui
+     */
+    static Stats compute(FsNode start, boolean detailed) {
+        Stats s = start.getSubtreeNodes() < PARALLEL_THRESHOLD
+                ? sequential(start, detailed)
+                : parallel(start, detailed);
+        if (detailed) s.trimToDepth();
+        return s;
+    }
+
+    /**
+     * Parcurge iterativ subarborele, fara fire suplimentare.
+     */
+    private static Stats sequential(FsNode start, boolean detailed) {
+        Stats s = newStats(detailed);
+        walk(start, 0, s);
+        return s;
+    }
+
+    /**
+     * Imparte subarborele in sarcini independente si le ruleaza in {@link ForkJoinPool}.
+     * <p>
+     * Impartirea se face in firul apelantului, cu o stiva explicita: nodurile cu cel putin
+     * {@link #PARALLEL_THRESHOLD} noduri in subarbore sunt numarate direct, iar copiii lor
+     * mai mici sunt grupati in sarcini de cel putin acelasi numar de noduri. Un lant adanc de
+     * foldere este deci parcurs iterativ, iar sarcinile formeaza o lista plata, fara sarcini
+     * care asteapta alte sarcini.
+     */
+    private static Stats parallel(FsNode start, boolean detailed) {
+        Stats s = newStats(detailed);
+        List<Task> tasks = new ArrayList<>();
+        Task pending = new Task(detailed);
+        FsNode[] nodes = new FsNode[64];
+        int[] depths = new int[64];
+        int top = 0;
+        nodes[top] = start;
+        depths[top++] = 0;
+        while (top > 0) {
+            FsNode node = nodes[--top];
+            int depth = depths[top];
+            nodes[top] = null;
+            count(node, depth, s);
+            for (FsNode c : node.getChildren()) {
+                if (c.getSubtreeNodes() >= PARALLEL_THRESHOLD) {
+                    if (top == nodes.length) {
+                        nodes = Arrays.copyOf(nodes, top * 2);
+                        depths = Arrays.copyOf(depths, top * 2);
+                    }
+                    nodes[top] = c;
+                    depths[top++] = depth + 1;
+                } else if (pending.add(c, depth + 1) >= PARALLEL_THRESHOLD) {
+                    tasks.add(pending);
+                    pending = new Task(detailed);
+                }
+            }
+        }
+        if (pending.size > 0) tasks.add(pending);
+        for (Task t : ForkJoinTask.invokeAll(tasks)) s.merge(t.join());
+        return s;
+    }
+
+    /**
+     * Creeaza un obiect Stats gol, cu masive mici daca se cer histogramele.
+     */
+    private static Stats newStats(boolean detailed) {
+        return detailed ? new Stats(15, NodeType.values().length) : new Stats();
+    }
+
+    /**
+     * Parcurgere DFS cu stiva explicita, care aduna in {@code s}.
+     *
+     * @param start     nodul de start
+     * @param baseDepth adancimea nodului de start fata de radacina calculului
+     * @param s         statisticile actualizate
+     */
+    private static void walk(FsNode start, int baseDepth, Stats s) {
+        FsNode[] nodes = new FsNode[64];
+        int[] depths = new int[64];
+        int top = 0;
+        nodes[top] = start;
+        depths[top++] = baseDepth;
+        while (top > 0) {
+            FsNode node = nodes[--top];
+            int depth = depths[top];
+            nodes[top] = null;
+            count(node, depth, s);
+            List<FsNode> kids = node.getChildren();
+            int n = kids.size();
+            if (n == 0) continue;
+            if (top + n > nodes.length) {
+                int cap = Math.max(nodes.length * 2, top + n);
+                nodes = Arrays.copyOf(nodes, cap);
+                depths = Arrays.copyOf(depths, cap);
+            }
+            for (FsNode c : kids) {
+                nodes[top] = c;
+                depths[top++] = depth + 1;
+            }
+        }
+    }
+
+    /**
+     * Numara un singur nod.
+     */
+    private static void count(FsNode node, int depth, Stats s) {
+        s.totalNodes++;
+        if (depth > s.maxDepth) s.maxDepth = depth;
+        NodeType type = node.getType();
+        if (type == NodeType.FILE) {
+            s.files++;
+            s.totalSizeBytes += node.getSizeBytes();
+        } else if (type == NodeType.FOLDER) {
+            s.folders++;
+        }
+        if (s.nodesPerDepth != null) {
+            s.ensureDepth(depth);
+            s.nodesPerDepth[depth]++;
+            s.countByTypePerDepth[depth][type.ordinal()]++;
+            if (type == NodeType.FILE) s.sizeHistogram[Stats.sizeBucket(node.getSizeBytes())]++;
+        }
+    }
+
+    /**
+     * Sarcina fork/join: un grup de subarbori mici, fiecare cu adancimea radacinii lui,
+     * parcursi iterativ intr-un singur {@link Stats}.
+     */
+    private static final class Task extends RecursiveTask<Stats> {
+
+        private final boolean detailed;
+        private FsNode[] roots = new FsNode[16];
+        private int[] depths = new int[16];
+        private int size;
+        private int nodes;
+
+        Task(boolean detailed) {
+            this.detailed = detailed;
+        }
+
+        /**
+         * Adauga un subarbore in grup.
+         *
+         * @return numarul total de noduri din grup
+         */
+        int add(FsNode root, int depth) {
+            if (size == roots.length) {
+                roots = Arrays.copyOf(roots, size * 2);
+                depths = Arrays.copyOf(depths, size * 2);
+            }
+            roots[size] = root;
+            depths[size++] = depth;
+            nodes += root.getSubtreeNodes();
+            return nodes;
+        }
+
+        @Override
+        protected Stats compute() {
+            Stats s = newStats(detailed);
+            for (int i = 0; i < size; i++) walk(roots[i], depths[i], s);
+            return s;
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package service;
+
+import model.FsNode;
+import model.NodeType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Cautarea celor mai mari K fisiere sau foldere dintr-un subarbore, intr-o singura parcurgere.
+ * <p>
+ * Candidatii sunt tinuti intr-un min-heap marginit la K elemente, cu dimensiunile intr-un
+ * {@code long[]} si nodurile intr-un vector paralel, deci fara obiecte per candidat.
+ * Totalurile mentinute de {@link FsNode} permit taierea subarborilor: odata ce heap-ul
+ * este plin, un subarbore a carui dimensiune totala nu depaseste minimul din heap nu poate
+ * contine niciun fisier sau folder mai mare si nu mai este parcurs.
+ * <p>
+ * Subarborii mari sunt impartiti iterativ intr-o lista plata de sarcini fork/join, fiecare
+ * cu heap-ul propriu; heap-urile partiale sunt combinate la final. Apelantul tine arborele
+ * nemodificat pe durata calculului (lock-ul de citire al {@link FileTreeService}) si nu
+ * il apeleaza pentru arbori incarcati la cerere, pe care taierea nu i-ar feri de citire.
+ */
+final class TopK {
+
+    private TopK() {
+    }
+
+    /**
+     * Cauta cele mai mari K noduri de un tip dat dintre descendentii unui nod.
+     * Pentru foldere se compara dimensiunea totala a subarborelui.
+     *
+     * @param start nodul de start (nu este inclus in rezultat)
+     * @param k     numarul de rezultate dorit
+     * @param type  {@link NodeType#FILE} sau {@link NodeType#FOLDER}
+     * @return nodurile gasite, descrescator dupa dimensiune
+     */
+    static List<FsNode> largest(FsNode start, int k, NodeType type) {
+        Heap h = new Heap(k);
+        if (start.getSubtreeNodes() < StatsEngine.PARALLEL_THRESHOLD) {
+            walkChildren(start, type, h);
+        } else {
+            parallel(start, type, h);
+        }
+        return h.toDescendingList();
+    }
+
+    /**
+     * Imparte subarborele in sarcini independente, ca {@link StatsEngine}: nodurile mari sunt
+     * vizitate in firul apelantului, cu o stiva explicita, iar copiii lor mai mici sunt grupati
+     * in sarcini de cel putin {@link StatsEngine#PARALLEL_THRESHOLD} noduri, rulate ca o lista
+     * plata in {@link ForkJoinPool}. Heap-urile sarcinilor sunt combinate in {@code h}.
+     */
+    private static void parallel(FsNode start, NodeType type, Heap h) {
+        List<Task> tasks = new ArrayList<>();
+        Task pending = new Task(h.capacity(), type);
+        ArrayList<FsNode> stack = new ArrayList<>();
+        stack.add(start);
+        while (!stack.isEmpty()) {
+            FsNode n = stack.remove(stack.size() - 1);
+            for (FsNode c : n.getChildren()) {
+                if (c.getSubtreeNodes() >= StatsEngine.PARALLEL_THRESHOLD) {
+                    visit(c, type, h);
+                    stack.add(c);
+                } else if (pending.add(c) >= StatsEngine.PARALLEL_THRESHOLD) {
+                    tasks.add(pending);
+                    pending = new Task(h.capacity(), type);
+                }
+            }
+        }
+        if (!pending.roots.isEmpty()) tasks.add(pending);
+        for (Task t : ForkJoinTask.invokeAll(tasks)) h.merge(t.join());
+    }
+
+    /**
+     * Dimensiunea dupa care este ordonat un nod.
+     */
+    static long sizeOf(FsNode n) {
+        return n.getType() == NodeType.FILE ? n.getSizeBytes() : n.getSubtreeSizeBytes();
+    }
+
+    /**
+     * Parcurge iterativ descendentii unui nod, cu taierea subarborilor prea mici.
+     */
+    private static void walkChildren(FsNode start, NodeType type, Heap h) {
+        ArrayList<FsNode> stack = new ArrayList<>();
+        pushChildren(start, stack);
+        while (!stack.isEmpty()) {
+            FsNode n = stack.remove(stack.size() - 1);
+            if (h.isFull() && n.getSubtreeSizeBytes() <= h.min()) continue;
+            visit(n, type, h);
+            pushChildren(n, stack);
+        }
+    }
+
+    private static void visit(FsNode n, NodeType type, Heap h) {
+        if (n.getType() == type) h.offer(sizeOf(n), n);
+    }
+
+    private static void pushChildren(FsNode n, ArrayList<FsNode> stack) {
+        List<FsNode> kids = n.getChildren();
+        for (int i = 0; i < kids.size(); i++) stack.add(kids.get(i));
+    }
+
+    /**
+     * Min-heap marginit peste perechi (dimensiune, nod).
+     */
+    static final class Heap {
+
+        private final long[] sizes;
+        private final FsNode[] nodes;
+        private int size;
+
+        Heap(int k) {
+            sizes = new long[k];
+            nodes = new FsNode[k];
+        }
+
+        int capacity() {
+            return sizes.length;
+        }
+
+        boolean isFull() {
+            return size == sizes.length;
+        }
+
+        /**
+         * @return cea mai mica dimensiune din heap (heap-ul trebuie sa nu fie gol)
+         */
+        long min() {
+            return sizes[0];
+        }
+
+        /**
+         * Propune un candidat; este pastrat doar daca intra printre cele mai mari K.
+         */
+        void offer(long s, FsNode n) {
+            if (size < sizes.length) {
+                int i = size++;
+                while (i > 0) {
+                    int p = (i - 1) >>> 1;
+                    if (sizes[p] <= s) break;
+                    sizes[i] = sizes[p];
+                    nodes[i] = nodes[p];
+                    i = p;
+                }
+                sizes[i] = s;
+                nodes[i] = n;
+            } else if (s > sizes[0]) {
+                siftDown(s, n);
+            }
+        }
+
+        /**
+         * Adauga in acest heap candidatii altui heap.
+         */
+        void merge(Heap other) {
+            for (int i = 0; i < other.size; i++) offer(other.sizes[i], other.nodes[i]);
+        }
+
+        /**
+         * Goleste heap-ul si intoarce nodurile descrescator dupa dimensiune.
+         */
+        List<FsNode> toDescendingList() {
+            FsNode[] out = new FsNode[size];
+            while (size > 0) {
+                out[size - 1] = nodes[0];
+                size--;
+                if (size > 0) siftDown(sizes[size], nodes[size]);
+                nodes[size] = null;
+            }
+            return List.of(out);
+        }
+
+        private void siftDown(long s, FsNode n) {
+            int i = 0;
+            int half = size >>> 1;
+            while (i < half) {
+                int c = 2 * i + 1;
+                if (c + 1 < size && sizes[c + 1] < sizes[c]) c++;
+                if (s <= sizes[c]) break;
+                sizes[i] = sizes[c];
+                nodes[i] = nodes[c];
+                i = c;
+            }
+            sizes[i] = s;
+            nodes[i] = n;
+        }
+    }
+
+    /**
+     * Sarcina fork/join: un grup de subarbori mici, parcursi in acelasi fir cu un heap propriu.
+     */
+    private static final class Task extends RecursiveTask<Heap> {
+
+        private final int k;
+        private final NodeType type;
+        private final List<FsNode> roots = new ArrayList<>();
+        private int nodes;
+
+        Task(int k, NodeType type) {
+            this.k = k;
+            this.type = type;
+        }
+
+        /**
+         * Adauga un subarbore in grup.
+         *
+         * @return numarul total de noduri din grup
+         */
+        int add(FsNode root) {
+            roots.add(root);
+            nodes += root.getSubtreeNodes();
+            return nodes;
+        }
+
+        @Override
+        protected Heap compute() {
+            Heap h = new Heap(k);
+            for (FsNode c : roots) {
+                if (!h.isFull() || c.getSubtreeSizeBytes() > h.min()) {
+                    visit(c, type, h);
+                    walkChildren(c, type, h);
+                }
+            }
+            return h;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package service;
+
+import model.FsNode;
+
+import java.util.List;
+
+/**
+ * Notificare trimisa ascultatorilor {@link TreeChangeListener} dupa ce o modificare
+ * (sau un lot intreg de modificari) a fost aplicata arborelui.
+ * <p>
+ * Un lot genereaza un singur eveniment, al carui subarbore acopera toate nodurile atinse.
+ * Pe langa subarbore, evenimentul contine modificarile nete pe noduri ({@link #getChanges()}),
+ * comasate pentru tot lotul, cu care o vedere se poate actualiza incremental.
+ */
+public class TreeChangeEvent {
+
+    /**
+     * Cel mai adanc nod care contine toate modificarile.
+     */
+    private final FsNode subtreeRoot;
+
+    /**
+     * Numarul de operatii acoperite de eveniment.
+     */
+    private final int operationCount;
+
+    /**
+     * Versiunea arborelui dupa aplicarea modificarilor.
+     */
+    private final long version;
+
+    /**
+     * Modificarile nete pe noduri.
+     */
+    private final List<NodeChange> changes;
+
+    /**
+     * Creeaza un eveniment fara detalii pe noduri.
+     *
+     * @param subtreeRoot    cel mai adanc nod care contine toate modificarile
+     * @param operationCount numarul de operatii aplicate
+     * @param version        versiunea arborelui dupa modificari
+     */
+    public TreeChangeEvent(FsNode subtreeRoot, int operationCount, long version) {
+        this(subtreeRoot, operationCount, version, List.of());
+    }
+
+    /**
+     * Creeaza un eveniment.
+     *
+     * @param subtreeRoot    cel mai adanc nod care contine toate modificarile
+     * @param operationCount numarul de operatii aplicate
+     * @param version        versiunea arborelui dupa modificari
+     * @param changes        modificarile nete pe noduri, in ordinea de aplicare
+     */
+    public TreeChangeEvent(FsNode subtreeRoot, int operationCount, long version, List<NodeChange> changes) {
+        this.subtreeRoot = subtreeRoot;
+        this.operationCount = operationCount;
+        this.version = version;
+        this.changes = List.copyOf(changes);
+    }
+
+    /**
+     * @return cel mai adanc nod care contine toate modificarile
+     */
+    public FsNode getSubtreeRoot() {
+        return subtreeRoot;
+    }
+
+    /**
+     * @return numarul de operatii acoperite de eveniment
+     */
+    public int getOperationCount() {
+        return operationCount;
+    }
+
+    /**
+     * @return versiunea arborelui dupa modificari
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Modificarile nete pe noduri, comasate pentru toata editarea. Ordinea este cea in care
+     * le poate aplica o vedere care reflecta versiunea anterioara: intai nodurile
+     * {@link NodeChange.Kind#REMOVED}, apoi cele {@link NodeChange.Kind#MOVED} si
+     * {@link NodeChange.Kind#ADDED} crescator dupa pozitia finala (dupa detasarea nodurilor
+     * mutate, fiecare pozitie este valida la momentul inserarii), apoi redenumirile si
+     * redimensionarile.
+     *
+     * @return modificarile; lista goala daca evenimentul nu are detalii
+     */
+    public List<NodeChange> getChanges() {
+        return changes;
+    }
+}
@@ -0,0 +1,16 @@
+package service;
+
+/**
+ * Ascultator pentru modificarile aplicate prin {@link FileTreeService}.
+ * Este apelat dupa eliberarea lock-urilor, in firul care a facut modificarea.
+ */
+@FunctionalInterface
+public interface TreeChangeListener {
+
+    /**
+     * Apelata dupa fiecare modificare sau lot de modificari.
+     *
+     * @param e evenimentul care descrie modificarea
+     */
+    void treeChanged(TreeChangeEvent e);
+}
@@ -0,0 +1,200 @@
+package service;
+
+import model.FsNode;
+import model.NodeType;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Diferentele dintre doi arbori incarcati (de exemplu doua versiuni ale lui
+ * {@code structura.txt}), calculate cu hash-urile Merkle din {@link FsNode#getSubtreeHash()}.
+ * <p>
+ * Nodurile sunt potrivite dupa nume (ignorand literele mari/mici), pornind de la radacini.
+ * O pereche cu acelasi hash are subarbori identici si nu mai este parcursa, deci costul
+ * depinde de numarul de foldere de pe drumurile catre modificari, nu de marimea arborilor.
+ * <p>
+ * Identitatea nodurilor nu se pastreaza intre doua incarcari, asa ca redenumirile si mutarile
+ * sunt deduse din continut:
+ * <ul>
+ *     <li>un nod disparut si unul aparut sub aceeasi pereche de parinti, de acelasi tip si cu
+ *         acelasi hash de continut ({@link FsNode#getContentHash()}), formeaza o redenumire;</li>
+ *     <li>un subarbore disparut si unul aparut oriunde, cu acelasi nume si acelasi hash,
+ *         formeaza o mutare.</li>
+ * </ul>
+ * Un subarbore mutat si modificat in acelasi timp, sau mutat si redenumit, apare ca stergere
+ * plus adaugare; la fel un nod mutat afara dintr-un folder sters. Pentru fisiere, continutul
+ * inseamna doar dimensiunea, deci stergerea unui fisier si crearea altuia de aceeasi
+ * dimensiune in acelasi folder sunt raportate ca redenumire.
+ */
+public final class TreeDiff {
+
+    /**
+     * O diferenta raportata.
+     *
+     * @param kind    tipul diferentei
+     * @param type    tipul nodului
+     * @param oldPath calea in arborele vechi; null pentru {@link Kind#ADDED}
+     * @param newPath calea in arborele nou; null pentru {@link Kind#DELETED}
+     * @param oldSize dimensiunea veche (pentru foldere: totalul subarborelui); 0 pentru {@link Kind#ADDED}
+     * @param newSize dimensiunea noua (pentru foldere: totalul subarborelui); 0 pentru {@link Kind#DELETED}
+     */
+    public record Change(Kind kind, NodeType type, String[] oldPath, String[] newPath, long oldSize, long newSize) {
+
+        /**
+         * Tipul unei diferente.
+         */
+        public enum Kind {
+            /** Subarbore care exista doar in arborele nou (raportat prin radacina lui). */
+            ADDED,
+            /** Subarbore care exista doar in arborele vechi (raportat prin radacina lui). */
+            DELETED,
+            /** Nod cu alt nume sub acelasi parinte. */
+            RENAMED,
+            /** Subarbore identic, sub alt parinte. */
+            MOVED,
+            /** Fisier cu alta dimensiune. */
+            RESIZED
+        }
+
+        /**
+         * @return calea ca text, cu "/" intre componente (calea noua, daca exista)
+         */
+        public String pathString() {
+            return String.join("/", newPath != null ? newPath : oldPath);
+        }
+    }
+
+    private TreeDiff() {
+    }
+
+    /**
+     * Compara doi arbori. Niciunul nu are voie sa fie modificat in timpul apelului
+     * (hash-urile sunt calculate si pastrate in noduri).
+     *
+     * @param oldRoot radacina arborelui vechi
+     * @param newRoot radacina arborelui nou
+     * @return diferentele: redenumiri si dimensiuni schimbate in ordinea parcurgerii,
+     *         apoi mutarile, adaugarile si stergerile
+     */
+    public static List<Change> compare(FsNode oldRoot, FsNode newRoot) {
+        List<Change> out = new ArrayList<>();
+        List<Side> deleted = new ArrayList<>();
+        List<Side> added = new ArrayList<>();
+
+        Deque<Pair> stack = new ArrayDeque<>();
+        stack.push(new Pair(oldRoot, newRoot, new String[0], new String[0]));
+        while (!stack.isEmpty()) {
+            Pair p = stack.pop();
+            FsNode o = p.oldNode(), n = p.newNode();
+            if (o.getSubtreeHash() == n.getSubtreeHash()) continue;
+            if (!o.getName().equals(n.getName())) {
+                out.add(new Change(Change.Kind.RENAMED, n.getType(), p.oldPath(), p.newPath(),
+                        TopK.sizeOf(o), TopK.sizeOf(n)));
+            }
+            if (n.getType() == NodeType.FILE) {
+                if (o.getSizeBytes() != n.getSizeBytes()) {
+                    out.add(new Change(Change.Kind.RESIZED, NodeType.FILE, p.oldPath(), p.newPath(),
+                            o.getSizeBytes(), n.getSizeBytes()));
+                }
+                continue;
+            }
+            if (o.getContentHash() == n.getContentHash()) continue;
+
+            // copiii disparuti si aparuti sub aceasta pereche; restul devin perechi noi
+            List<FsNode> gone = new ArrayList<>();
+            for (FsNode oc : o.getChildren()) {
+                FsNode nc = n.childByName(oc.getName());
+                if (nc == null || nc.getType() != oc.getType()) gone.add(oc);
+            }
+            Map<Long, List<FsNode>> goneByContent = new HashMap<>();
+            for (FsNode oc : gone) {
+                goneByContent.computeIfAbsent(key(oc.getType(), oc.getContentHash()), k -> new ArrayList<>()).add(oc);
+            }
+            for (FsNode nc : n.getChildren()) {
+                FsNode oc = o.childByName(nc.getName());
+                if (oc != null && oc.getType() == nc.getType()) {
+                    if (oc.getSubtreeHash() != nc.getSubtreeHash()) {
+                        stack.push(new Pair(oc, nc, append(p.oldPath(), oc.getName()), append(p.newPath(), nc.getName())));
+                    }
+                    continue;
+                }
+                FsNode renamed = take(goneByContent, key(nc.getType(), nc.getContentHash()));
+                if (renamed != null) {
+                    out.add(new Change(Change.Kind.RENAMED, nc.getType(), append(p.oldPath(), renamed.getName()),
+                            append(p.newPath(), nc.getName()), TopK.sizeOf(renamed), TopK.sizeOf(nc)));
+                } else {
+                    added.add(new Side(nc, append(p.newPath(), nc.getName())));
+                }
+            }
+            for (List<FsNode> rest : goneByContent.values()) {
+                for (FsNode oc : rest) deleted.add(new Side(oc, append(p.oldPath(), oc.getName())));
+            }
+        }
+
+        // mutari: subarbori identici (nume inclus) disparuti dintr-un loc si aparuti in altul
+        Map<Long, List<Side>> deletedByHash = new HashMap<>();
+        for (Side d : deleted) {
+            deletedByHash.computeIfAbsent(key(d.node.getType(), d.node.getSubtreeHash()), k -> new ArrayList<>()).add(d);
+        }
+        List<Change> adds = new ArrayList<>();
+        for (Side a : added) {
+            List<Side> same = deletedByHash.get(key(a.node.getType(), a.node.getSubtreeHash()));
+            if (same != null && !same.isEmpty()) {
+                Side d = same.remove(same.size() - 1);
+                d.matched = true;
+                out.add(new Change(Change.Kind.MOVED, a.node.getType(), d.path, a.path,
+                        TopK.sizeOf(d.node), TopK.sizeOf(a.node)));
+            } else {
+                adds.add(new Change(Change.Kind.ADDED, a.node.getType(), null, a.path, 0, TopK.sizeOf(a.node)));
+            }
+        }
+        out.addAll(adds);
+        for (Side d : deleted) {
+            if (!d.matched) {
+                out.add(new Change(Change.Kind.DELETED, d.node.getType(), d.path, null, TopK.sizeOf(d.node), 0));
+            }
+        }
+        return out;
+    }
+
+    private static long key(NodeType type, long hash) {
+        return hash * 31 + type.ordinal();
+    }
+
+    private static FsNode take(Map<Long, List<FsNode>> m, long key) {
+        List<FsNode> l = m.get(key);
+        return l == null || l.isEmpty() ? null : l.remove(l.size() - 1);
+    }
+
+    private static String[] append(String[] path, String name) {
+        String[] out = Arrays.copyOf(path, path.length + 1);
+        out[path.length] = name;
+        return out;
+    }
+
+    /**
+     * Doua noduri potrivite dupa nume, cu caile lor.
+     */
+    private record Pair(FsNode oldNode, FsNode newNode, String[] oldPath, String[] newPath) {
+    }
+
+    /**
+     * Un subarbore care exista doar intr-unul dintre arbori.
+     */
+    private static final class Side {
+        final FsNode node;
+        final String[] path;
+        boolean matched;
+
+        Side(FsNode node, String[] path) {
+            this.node = node;
+            this.path = path;
+        }
+    }
+}
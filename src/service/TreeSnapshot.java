@@ -0,0 +1,104 @@
+package service;
+
+import model.*;
+
+/**
+ * Vedere imutabila si consistenta a arborelui, obtinuta prin {@link FileTreeService#snapshot()}.
+ * <p>
+ * Un snapshot corespunde exact unei versiuni publicate a arborelui: nu vede
+ * niciodata o operatie aplicata pe jumatate si nu blocheaza scriitorii.
+ * Citirea lui nu ia lock-uri. Dupa {@link #close()} referinta catre versiune
+ * este eliberata, iar nodurile care nu mai sunt folosite de alta versiune pot fi
+ * colectate de GC.
+ */
+public final class TreeSnapshot implements AutoCloseable {
+
+    /**
+     * Versiunea arborelui din care provine snapshot-ul.
+     */
+    private final long version;
+
+    /**
+     * Radacina imutabila; devine null dupa {@link #close()}.
+     */
+    private volatile SnapshotNode root;
+
+    /**
+     * Creeaza un snapshot pentru o versiune publicata.
+     *
+     * @param version versiunea arborelui
+     * @param root    radacina imutabila a versiunii
+     */
+    TreeSnapshot(long version, SnapshotNode root) {
+        this.version = version;
+        this.root = root;
+    }
+
+    /**
+     * @return versiunea arborelui din care provine snapshot-ul
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returneaza radacina invizibila a snapshot-ului.
+     *
+     * @return radacina imutabila
+     * @throws IllegalStateException daca snapshot-ul a fost eliberat
+     */
+    public SnapshotNode getRoot() {
+        SnapshotNode r = root;
+        if (r == null) throw new IllegalStateException("Snapshot released");
+        return r;
+    }
+
+    /**
+     * Cauta un nod dupa cale, la fel ca {@link FileTreeService#find(String...)}.
+     *
+     * @param parts secventa de nume de la root pana la nod
+     * @return nodul gasit
+     * @throws IllegalArgumentException daca o componenta nu exista
+     */
+    public SnapshotNode find(String... parts) {
+        SnapshotNode cur = getRoot();
+        for (String p : parts) {
+            SnapshotNode next = cur.childByName(p);
+            if (next == null) throw new IllegalArgumentException("Path not found: " + String.join("/", parts));
+            cur = next;
+        }
+        return cur;
+    }
+
+    /**
+     * Statisticile simple ale unui subarbore din aceasta versiune.
+     *
+     * @param path calea nodului; null sau gol pentru radacina
+     * @return statisticile subarborelui
+     */
+    public Stats stats(String[] path) {
+        SnapshotNode n = (path == null || path.length == 0) ? getRoot() : find(path);
+        Stats s = new Stats();
+        s.totalNodes = n.getSubtreeNodes();
+        s.folders = n.getSubtreeFolders();
+        s.files = n.getSubtreeFiles();
+        s.maxDepth = n.getSubtreeHeight();
+        s.totalSizeBytes = n.getSubtreeSizeBytes();
+        return s;
+    }
+
+    /**
+     * @return true daca snapshot-ul a fost eliberat
+     */
+    public boolean isClosed() {
+        return root == null;
+    }
+
+    /**
+     * Elibereaza snapshot-ul. Apelurile ulterioare de citire arunca {@link IllegalStateException}.
+     */
+    @Override
+    public void close() {
+        root = null;
+    }
+}
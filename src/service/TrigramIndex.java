@@ -0,0 +1,465 @@
+package service;
+
+import model.FsNode;
+import model.NodeType;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Index inversat de trigrame peste numele nodurilor, pentru cautare rapida dupa subsir.
+ * <p>
+ * Fiecare nod indexat primeste un ordinal dens ({@code int}). Pentru fiecare trigrama
+ * a numelui normalizat ({@link FsNode#foldName(String)}) se tine lista ordinalelor care
+ * o contin, codificata ca diferente varint intr-un {@code byte[]}. Ordinalele noi sunt
+ * mereu mai mari decat cele existente, deci adaugarea este doar o scriere la final de lista.
+ * <p>
+ * Stergerea si redenumirea nu rescriu listele: ordinalul vechi devine gol si este sarit
+ * la interogare, iar un nod redenumit primeste un ordinal nou. Cand golurile depasesc
+ * nodurile vii, serviciul reconstruieste indexul ({@link #needsRebuild()}).
+ * Mutarea nu schimba numele, deci nu atinge indexul.
+ * <p>
+ * Indexul poate fi salvat langa {@code structura.txt}; ordinalele salvate sunt pozitiile
+ * in preordine, iar fisierul retine lungimea si data modificarii structurii pentru care
+ * a fost scris. Clasa nu este thread-safe; serviciul o modifica sub lock-ul de scriere.
+ */
+final class TrigramIndex {
+
+    private static final int MAGIC = 0x54524931; // "TRI1"
+
+    /**
+     * Numarul minim de goluri de la care se ia in calcul reconstruirea.
+     */
+    private static final int MIN_REBUILD_GAPS = 65_536;
+
+    /**
+     * Ordinal -> nod; null pentru ordinalele sterse.
+     */
+    private FsNode[] nodes;
+
+    /**
+     * Urmatorul ordinal liber.
+     */
+    private int next;
+
+    /**
+     * Numarul de ordinale vii.
+     */
+    private int live;
+
+    /**
+     * Id nod -> ordinal.
+     */
+    private final IdOrdinals ordinals;
+
+    /**
+     * Trigrama (3 caractere pe 16 biti, impachetate) + 1 -> lista; 0 inseamna slot liber.
+     */
+    private long[] keys;
+    private Posting[] postings;
+    private int trigramCount;
+
+    /**
+     * True cat timp ordinalele coincid cu preordinea arborelui (dupa construire sau incarcare).
+     */
+    private boolean preorder;
+
+    private TrigramIndex(int expected) {
+        nodes = new FsNode[Math.max(16, expected)];
+        ordinals = new IdOrdinals(expected);
+        keys = new long[1024];
+        postings = new Posting[1024];
+    }
+
+    /**
+     * Construieste indexul pentru tot arborele, cu ordinale in preordine.
+     *
+     * @param root radacina invizibila
+     * @return indexul construit
+     */
+    static TrigramIndex build(FsNode root) {
+        TrigramIndex idx = new TrigramIndex(root.getSubtreeNodes());
+        for (FsNode n : preorder(root)) idx.add(n);
+        idx.preorder = true;
+        return idx;
+    }
+
+    /**
+     * Adauga un nod (doar nodul, nu si copiii).
+     *
+     * @param n nodul adaugat
+     */
+    void add(FsNode n) {
+        if (next == nodes.length) nodes = Arrays.copyOf(nodes, nodes.length * 2);
+        int ord = next++;
+        nodes[ord] = n;
+        live++;
+        ordinals.put(n.getId(), ord);
+        forEachTrigram(FsNode.foldName(n.getName()), key -> posting(key, true).append(ord));
+        preorder = false;
+    }
+
+    /**
+     * Adauga un nod si tot subarborele lui.
+     *
+     * @param n radacina subarborelui
+     */
+    void addSubtree(FsNode n) {
+        for (FsNode c : preorder(n)) add(c);
+    }
+
+    /**
+     * Scoate un nod si tot subarborele lui.
+     *
+     * @param n radacina subarborelui
+     */
+    void removeSubtree(FsNode n) {
+        for (FsNode c : preorder(n)) remove(c);
+    }
+
+    /**
+     * Actualizeaza indexul dupa redenumirea unui nod.
+     *
+     * @param n nodul redenumit (are deja numele nou)
+     */
+    void renamed(FsNode n) {
+        remove(n);
+        add(n);
+    }
+
+    /**
+     * @return true daca ordinalele sterse au ajuns majoritare si indexul trebuie reconstruit
+     */
+    boolean needsRebuild() {
+        int gaps = next - live;
+        return gaps >= MIN_REBUILD_GAPS && gaps > live;
+    }
+
+    /**
+     * @return numarul de noduri indexate
+     */
+    int size() {
+        return live;
+    }
+
+    /**
+     * Cauta nodurile al caror nume contine un subsir, ignorand literele mari/mici.
+     * <p>
+     * Pentru subsiruri de cel putin 3 caractere se intersecteaza listele trigramelor,
+     * incepand cu cea mai scurta; candidatii sunt apoi verificati pe numele real.
+     * Subsirurile mai scurte sunt cautate liniar in tabela de noduri.
+     *
+     * @param needle subsirul cautat
+     * @param type   tipul acceptat sau null
+     * @param under  nodul sub care trebuie sa se afle rezultatele sau null
+     * @param limit  numarul maxim de rezultate
+     * @return nodurile gasite, in ordinea ordinalelor
+     */
+    List<FsNode> query(String needle, NodeType type, FsNode under, int limit) {
+        List<FsNode> out = new ArrayList<>();
+        String folded = FsNode.foldName(needle);
+        if (folded.length() < 3) {
+            for (int ord = 0; ord < next && out.size() < limit; ord++) {
+                FsNode n = nodes[ord];
+                if (n != null && accept(n, needle, type, under)) out.add(n);
+            }
+            return out;
+        }
+        List<Posting> lists = new ArrayList<>();
+        boolean[] missing = new boolean[1];
+        forEachTrigram(folded, key -> {
+            Posting p = posting(key, false);
+            if (p == null) missing[0] = true;
+            else if (!lists.contains(p)) lists.add(p);
+        });
+        if (missing[0]) return out;
+        lists.sort((a, b) -> Integer.compare(a.count, b.count));
+
+        int[] cand = lists.get(0).decode();
+        int n = cand.length;
+        for (int i = 1; i < lists.size() && n > 0; i++) n = lists.get(i).retain(cand, n);
+        for (int i = 0; i < n && out.size() < limit; i++) {
+            FsNode node = nodes[cand[i]];
+            if (node != null && accept(node, needle, type, under)) out.add(node);
+        }
+        return out;
+    }
+
+    private static boolean accept(FsNode n, String needle, NodeType type, FsNode under) {
+        if (type != null && n.getType() != type) return false;
+        if (!containsIgnoreCase(n.getName(), needle)) return false;
+        if (under == null) return true;
+        for (FsNode p = n.getParent(); p != null; p = p.getParent()) {
+            if (p == under) return true;
+        }
+        return false;
+    }
+
+    private static boolean containsIgnoreCase(String name, String needle) {
+        int len = needle.length();
+        for (int i = 0, last = name.length() - len; i <= last; i++) {
+            if (name.regionMatches(true, i, needle, 0, len)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Salveaza indexul. Daca ordinalele nu mai corespund preordinii (dupa modificari),
+     * se scrie un index reconstruit din arbore.
+     *
+     * @param root      radacina invizibila (cea salvata in structura)
+     * @param file      fisierul indexului
+     * @param structure fisierul structurii caruia ii corespunde indexul
+     * @throws IOException la erori de scriere
+     */
+    void write(FsNode root, File file, File structure) throws IOException {
+        TrigramIndex idx = preorder ? this : build(root);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeLong(structure.length());
+            out.writeLong(structure.lastModified());
+            out.writeInt(idx.next);
+            out.writeInt(idx.trigramCount);
+            for (int i = 0; i < idx.keys.length; i++) {
+                if (idx.keys[i] == 0) continue;
+                Posting p = idx.postings[i];
+                out.writeLong(idx.keys[i]);
+                out.writeInt(p.count);
+                out.writeInt(p.last);
+                out.writeInt(p.len);
+                out.write(p.data, 0, p.len);
+            }
+        }
+    }
+
+    /**
+     * Incarca un index salvat, daca acesta corespunde structurii si arborelui curent.
+     *
+     * @param root      radacina invizibila incarcata din structura
+     * @param file      fisierul indexului
+     * @param structure fisierul structurii
+     * @return indexul incarcat sau null daca fisierul lipseste sau este depasit
+     * @throws IOException la erori de citire
+     */
+    static TrigramIndex read(FsNode root, File file, File structure) throws IOException {
+        if (!file.isFile()) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC) return null;
+            if (in.readLong() != structure.length() || in.readLong() != structure.lastModified()) return null;
+            int count = in.readInt();
+            if (count != root.getSubtreeNodes()) return null;
+            TrigramIndex idx = new TrigramIndex(count);
+            for (FsNode n : preorder(root)) {
+                idx.nodes[idx.next] = n;
+                idx.ordinals.put(n.getId(), idx.next++);
+            }
+            idx.live = count;
+            int trigrams = in.readInt();
+            for (int t = 0; t < trigrams; t++) {
+                long key = in.readLong();
+                Posting p = new Posting();
+                p.count = in.readInt();
+                p.last = in.readInt();
+                p.len = in.readInt();
+                p.data = new byte[Math.max(4, p.len)];
+                in.readFully(p.data, 0, p.len);
+                idx.insertPosting(key, p);
+            }
+            idx.preorder = true;
+            return idx;
+        }
+    }
+
+    private void remove(FsNode n) {
+        int ord = ordinals.remove(n.getId());
+        if (ord < 0 || nodes[ord] != n) return;
+        nodes[ord] = null;
+        live--;
+        preorder = false;
+    }
+
+    // --- trigrame ---
+
+    private interface KeyConsumer {
+        void accept(long key);
+    }
+
+    private static void forEachTrigram(String folded, KeyConsumer c) {
+        for (int i = 0; i + 3 <= folded.length(); i++) {
+            long key = ((long) folded.charAt(i) << 32) | ((long) folded.charAt(i + 1) << 16) | folded.charAt(i + 2);
+            c.accept(key + 1);
+        }
+    }
+
+    private Posting posting(long key, boolean create) {
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            if (keys[i] == key) return postings[i];
+            if (keys[i] == 0) {
+                if (!create) return null;
+                Posting p = new Posting();
+                insertPosting(key, p);
+                return p;
+            }
+        }
+    }
+
+    private void insertPosting(long key, Posting p) {
+        if ((trigramCount + 1) * 2 > keys.length) {
+            long[] oldKeys = keys;
+            Posting[] oldPostings = postings;
+            keys = new long[oldKeys.length * 2];
+            postings = new Posting[oldKeys.length * 2];
+            trigramCount = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) insertPosting(oldKeys[i], oldPostings[i]);
+            }
+        }
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        while (keys[i] != 0) i = (i + 1) & mask;
+        keys[i] = key;
+        postings[i] = p;
+        trigramCount++;
+    }
+
+    private static int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private static List<FsNode> preorder(FsNode start) {
+        List<FsNode> out = new ArrayList<>();
+        ArrayList<FsNode> stack = new ArrayList<>();
+        stack.add(start);
+        while (!stack.isEmpty()) {
+            FsNode n = stack.remove(stack.size() - 1);
+            out.add(n);
+            List<FsNode> kids = n.getChildren();
+            for (int i = kids.size() - 1; i >= 0; i--) stack.add(kids.get(i));
+        }
+        return out;
+    }
+
+    /**
+     * Lista de ordinale crescatoare, codificata ca diferente varint.
+     */
+    private static final class Posting {
+
+        private byte[] data = new byte[4];
+        private int len;
+        private int count;
+        private int last = -1;
+
+        void append(int ord) {
+            if (ord == last) return; // trigrama repetata in acelasi nume
+            int delta = count == 0 ? ord : ord - last;
+            if (len + 5 > data.length) data = Arrays.copyOf(data, Math.max(data.length * 2, len + 5));
+            while ((delta & ~0x7F) != 0) {
+                data[len++] = (byte) ((delta & 0x7F) | 0x80);
+                delta >>>= 7;
+            }
+            data[len++] = (byte) delta;
+            last = ord;
+            count++;
+        }
+
+        int[] decode() {
+            int[] out = new int[count];
+            int pos = 0, cur = 0;
+            for (int i = 0; i < count; i++) {
+                int v = 0, shift = 0, b;
+                do {
+                    b = data[pos++];
+                    v |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                cur = i == 0 ? v : cur + v;
+                out[i] = cur;
+            }
+            return out;
+        }
+
+        /**
+         * Pastreaza in {@code cand[0..n)} doar ordinalele prezente si in aceasta lista.
+         *
+         * @return numarul de candidati ramasi
+         */
+        int retain(int[] cand, int n) {
+            int pos = 0, read = 0, cur = -1, w = 0;
+            for (int i = 0; i < n; i++) {
+                int want = cand[i];
+                while (cur < want) {
+                    if (read == count) return w;
+                    int v = 0, shift = 0, b;
+                    do {
+                        b = data[pos++];
+                        v |= (b & 0x7F) << shift;
+                        shift += 7;
+                    } while (b < 0);
+                    cur = read++ == 0 ? v : cur + v;
+                }
+                if (cur == want) cand[w++] = want;
+            }
+            return w;
+        }
+    }
+
+    /**
+     * Tabela id -> ordinal cu chei primitive (adresare deschisa, stergere prin deplasare inapoi).
+     */
+    private static final class IdOrdinals {
+
+        private long[] keys;
+        private int[] values;
+        private int size;
+
+        IdOrdinals(int expected) {
+            int cap = Integer.highestOneBit(Math.max(16, expected * 2 - 1)) << 1;
+            keys = new long[cap];
+            values = new int[cap];
+        }
+
+        void put(long id, int ord) {
+            if ((size + 1) * 2 > keys.length) {
+                long[] oldKeys = keys;
+                int[] oldValues = values;
+                keys = new long[oldKeys.length * 2];
+                values = new int[oldKeys.length * 2];
+                size = 0;
+                for (int i = 0; i < oldKeys.length; i++) {
+                    if (oldKeys[i] != 0) put(oldKeys[i], oldValues[i]);
+                }
+            }
+            int mask = keys.length - 1;
+            int i = slot(id, mask);
+            while (keys[i] != 0 && keys[i] != id) i = (i + 1) & mask;
+            if (keys[i] == 0) size++;
+            keys[i] = id;
+            values[i] = ord;
+        }
+
+        int remove(long id) {
+            int mask = keys.length - 1;
+            int i = slot(id, mask);
+            while (keys[i] != id) {
+                if (keys[i] == 0) return -1;
+                i = (i + 1) & mask;
+            }
+            int ord = values[i];
+            size--;
+            for (int j = (i + 1) & mask; keys[j] != 0; j = (j + 1) & mask) {
+                int home = slot(keys[j], mask);
+                if (((j - home) & mask) >= ((j - i) & mask)) {
+                    keys[i] = keys[j];
+                    values[i] = values[j];
+                    i = j;
+                }
+            }
+            keys[i] = 0;
+            return ord;
+        }
+    }
+}
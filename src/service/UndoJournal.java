@@ -0,0 +1,93 @@
+package service;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Jurnalul de undo/redo al serviciului: doua stive de grupuri de operatii inverse.
+ * <p>
+ * Un grup corespunde unei editari vizibile pentru utilizator (o operatie simpla sau un lot
+ * intreg) si contine doar datele necesare inversarii ei, nu copii ale arborelui. Stiva de
+ * undo este marginita la {@link #getDepth()} grupuri; cele mai vechi sunt uitate, deci memoria
+ * ramane constanta indiferent de numarul de editari. O editare noua goleste stiva de redo.
+ * Clasa nu este thread-safe; serviciul o foloseste sub lock-ul de scriere.
+ *
+ * @param <E> tipul unei operatii din grup
+ */
+final class UndoJournal<E> {
+
+    private final Deque<E[]> undo = new ArrayDeque<>();
+    private final Deque<E[]> redo = new ArrayDeque<>();
+    private int depth;
+
+    /**
+     * @param depth numarul maxim de grupuri pastrate; 0 dezactiveaza jurnalul
+     */
+    UndoJournal(int depth) {
+        setDepth(depth);
+    }
+
+    int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Schimba adancimea; grupurile in plus sunt uitate, incepand cu cele mai vechi.
+     *
+     * @param depth numarul maxim de grupuri; 0 dezactiveaza jurnalul
+     */
+    void setDepth(int depth) {
+        if (depth < 0) throw new IllegalArgumentException("Undo depth must not be negative: " + depth);
+        this.depth = depth;
+        while (undo.size() > depth) undo.removeLast();
+        while (redo.size() > depth) redo.removeLast();
+    }
+
+    /**
+     * Inregistreaza o editare noua si goleste stiva de redo.
+     *
+     * @param group operatiile editarii, in ordinea aplicarii
+     */
+    void record(E[] group) {
+        if (depth == 0 || group.length == 0) return;
+        redo.clear();
+        pushUndo(group);
+    }
+
+    void pushUndo(E[] group) {
+        undo.push(group);
+        if (undo.size() > depth) undo.removeLast();
+    }
+
+    void pushRedo(E[] group) {
+        redo.push(group);
+        if (redo.size() > depth) redo.removeLast();
+    }
+
+    /**
+     * @return ultimul grup de undo sau null
+     */
+    E[] popUndo() {
+        return undo.poll();
+    }
+
+    /**
+     * @return ultimul grup de redo sau null
+     */
+    E[] popRedo() {
+        return redo.poll();
+    }
+
+    boolean canUndo() {
+        return !undo.isEmpty();
+    }
+
+    boolean canRedo() {
+        return !redo.isEmpty();
+    }
+
+    void clear() {
+        undo.clear();
+        redo.clear();
+    }
+}
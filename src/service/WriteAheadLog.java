@@ -0,0 +1,930 @@
+package service;
+
+import model.FsNode;
+import model.NodeType;
+import model.SnapshotNode;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Jurnalul de scriere in avans (write-ahead log) al editarilor facute prin
+ * {@link FileTreeService} ({@link FileTreeService#enableJournal(WriteAheadLog)}).
+ * Fiecare editare (operatie simpla, lot, undo sau redo) este adaugata la sfarsitul unui
+ * fisier binar, astfel incat dupa o oprire brusca sa poata fi reaplicata peste ultimul
+ * {@code structura.txt} sau peste ultimul snapshot al compactarii ({@link #replay(FsNode)}).
+ * <p>
+ * Fisierul incepe cu un antet ({@link #MAGIC}, versiune, lungimea si data fisierului
+ * peste care se aplica), urmat de cate o inregistrare pe editare: lungime, CRC32, numar de
+ * secventa si operatiile editarii. Nodurile sunt identificate prin cai de nume (id-urile nu
+ * sunt stabile intre rulari); numerele sunt varint, numele UTF-8. O inregistrare incompleta
+ * sau corupta la sfarsit (scriere intrerupta) este taiata la deschidere.
+ * <p>
+ * Scrierea in fisier se face pe un fir separat, cu grupare (group commit): editarile
+ * adaugate cat timp firul scrie sunt scrise si sincronizate impreuna, la urmatoarea trecere.
+ * Politica {@link Sync} decide cand o editare este durabila.
+ * <p>
+ * Compactarea ({@link FileTreeService#compactJournal(SnapshotSink)}, periodic prin
+ * {@link #startCompactor}) scrie starea arborelui dintr-un snapshot imutabil, fara a bloca
+ * editarile, intr-un fisier separat ({@code structura.txt.snapshot}); fisierul text salvat de
+ * utilizator nu este atins, deci editarile din sesiune pot fi abandonate cu {@link #reset()}.
+ * Dupa scriere, intr-o sectiune scurta, compactarea scrie un jurnal temporar cu antetul
+ * snapshot-ului si doar inregistrarile mai noi decat el, si muta pe rand snapshot-ul si
+ * jurnalul peste cele vechi. Din acel moment jurnalul se aplica peste snapshot
+ * ({@link #getBase()}).
+ * <p>
+ * La deschidere, un jurnal temporar ramas de la o oprire intre cele doua mutari este folosit
+ * daca se potriveste cu textul sau cu snapshot-ul; un snapshot care nu corespunde jurnalului
+ * este sters. Un jurnal care nu se potriveste cu niciunul (textul schimbat din afara) este pus
+ * deoparte ({@code .orphan}), impreuna cu snapshot-ul, si nu este reaplicat.
+ */
+public final class WriteAheadLog implements AutoCloseable {
+
+    /**
+     * Cand devine durabila o editare adaugata in jurnal.
+     */
+    public enum Sync {
+        /** Editarea asteapta sincronizarea pe disc (fsync) a grupului din care face parte. */
+        ALWAYS,
+        /** Fisierul este sincronizat cel mult o data pe interval; o cadere a sistemului poate pierde ultimul interval. */
+        INTERVAL,
+        /** Sincronizarea este lasata sistemului de operare (si compactarii, inchiderii). */
+        NEVER
+    }
+
+    /**
+     * Scrie arborele unui snapshot in format text; folosita la compactare.
+     */
+    @FunctionalInterface
+    public interface SnapshotSink {
+
+        /**
+         * Scrie arborele in fisierul dat si il sincronizeaza pe disc.
+         *
+         * @param root radacina invizibila a snapshot-ului
+         * @param file fisierul de iesire (temporar)
+         */
+        void write(SnapshotNode root, File file) throws IOException;
+    }
+
+    private static final int MAGIC = 0x4653574C; // "FSWL"
+    private static final int VERSION = 1;
+
+    /**
+     * magic, versiune, lungimea si data fisierului peste care se aplica jurnalul.
+     */
+    private static final int HEADER = 4 + 4 + 8 + 8;
+
+    /**
+     * lungimea (secventa + operatii), CRC32, secventa.
+     */
+    private static final int FRAME = 4 + 4 + 8;
+
+    // tipurile operatiilor
+    private static final int CREATE = 1;
+    private static final int RENAME = 2;
+    private static final int DELETE = 3;
+    private static final int RESIZE = 4;
+    private static final int MOVE = 5;
+    private static final int ATTACH = 6;
+
+    // tipurile nodurilor
+    private static final int FOLDER = 0;
+    private static final int FILE = 1;
+    private static final int DRIVE = 2;
+
+    private final Path file;
+    private final Path text;
+    private final Path snapshot;
+
+    /**
+     * Fisierul peste care se aplica jurnalul: {@link #text} sau {@link #snapshot}.
+     */
+    private volatile Path base;
+    private final Sync sync;
+    private final long syncIntervalNanos;
+
+    /**
+     * Operatiile editarii curente; folosit doar de serviciu, sub lock-ul lui de scriere.
+     */
+    private final Buf ops = new Buf(256);
+    private int opCount;
+
+    /**
+     * Protejeaza bufferul de inregistrari nescrise si secventele.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private Buf pending = new Buf(1 << 12);
+    private long lastSeq;
+    private long writtenSeq;
+    private long durableSeq;
+    private boolean closing;
+    private IOException failure;
+
+    /**
+     * Serializeaza accesul la fisier: scrierile grupate si inlocuirea jurnalului.
+     */
+    private final Object io = new Object();
+    private FileChannel channel;
+    private Buf spare = new Buf(1 << 12);
+    private volatile long size;
+
+    /**
+     * Serializeaza compactarile intre ele si cu {@link #reset()}.
+     */
+    private final Object folding = new Object();
+
+    private final Thread writer;
+    private ScheduledExecutorService compactor;
+
+    private WriteAheadLog(Path file, Path text, Sync sync, long syncIntervalMillis) throws IOException {
+        this.file = file;
+        this.text = text;
+        this.snapshot = sibling(text, ".snapshot");
+        this.sync = sync;
+        this.syncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(syncIntervalMillis);
+        recover();
+        this.writer = new Thread(this::writeLoop, "journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Deschide (sau creeaza) jurnalul corespunzator unui fisier text. Arborele trebuie incarcat
+     * apoi din {@link #getBase()}, care poate fi snapshot-ul unei sesiuni intrerupte.
+     *
+     * @param journal            fisierul jurnalului (ex: {@code structura.journal})
+     * @param text               fisierul text peste care se aplica (ex: {@code structura.txt})
+     * @param sync               politica de sincronizare
+     * @param syncIntervalMillis intervalul pentru {@link Sync#INTERVAL}
+     * @return jurnalul, cu inregistrarile valide gata de {@link #replay(FsNode)}
+     */
+    public static WriteAheadLog open(File journal, File text, Sync sync, long syncIntervalMillis) throws IOException {
+        return new WriteAheadLog(journal.getAbsoluteFile().toPath(), text.getAbsoluteFile().toPath(),
+                sync, syncIntervalMillis);
+    }
+
+    /**
+     * Aduce jurnalul intr-o stare consistenta cu textul sau snapshot-ul: foloseste sau sterge
+     * jurnalul temporar, alege fisierul de baza, pune deoparte un jurnal care nu se potriveste
+     * si taie o inregistrare finala incompleta.
+     */
+    private void recover() throws IOException {
+        Path tmp = sibling(file, ".tmp");
+        Files.deleteIfExists(sibling(snapshot, ".tmp"));
+        if (Files.exists(tmp)) {
+            // oprire in timpul inlocuirii: jurnalul nou este valid doar daca baza lui a fost mutata
+            if (matches(tmp, text) || matches(tmp, snapshot)) move(tmp, file);
+            else Files.delete(tmp);
+        }
+        base = text;
+        if (Files.exists(file)) {
+            if (matches(file, snapshot)) {
+                base = snapshot;
+            } else if (matches(file, text)) {
+                Files.deleteIfExists(snapshot);
+            } else {
+                Files.move(file, sibling(file, ".orphan"), StandardCopyOption.REPLACE_EXISTING);
+                if (Files.exists(snapshot)) {
+                    Files.move(snapshot, sibling(snapshot, ".orphan"), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        }
+        if (!Files.exists(file)) {
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                writeFully(out, header(text));
+                out.force(false);
+            }
+            move(tmp, file);
+        }
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long end = scan(channel);
+        if (end < channel.size()) {
+            channel.truncate(end);
+            channel.force(false);
+        }
+        channel.position(end);
+        size = end;
+        writtenSeq = durableSeq = lastSeq;
+    }
+
+    /**
+     * Fisierul peste care se aplica jurnalul: fisierul text sau, dupa o compactare din sesiunea
+     * curenta ori dintr-una intrerupta, snapshot-ul compactarii.
+     *
+     * @return fisierul din care trebuie incarcat arborele inainte de {@link #replay(FsNode)}
+     */
+    public File getBase() {
+        return base.toFile();
+    }
+
+    /**
+     * Parcurge inregistrarile valide si retine ultima secventa.
+     *
+     * @return sfarsitul ultimei inregistrari valide
+     */
+    private long scan(FileChannel ch) throws IOException {
+        long pos = HEADER, end = ch.size();
+        ByteBuffer head = ByteBuffer.allocate(FRAME);
+        while (end - pos >= FRAME) {
+            head.clear();
+            readFully(ch, head, pos);
+            int length = head.getInt(0);
+            if (length < 8 || length > end - pos - 8) break;
+            ByteBuffer body = ByteBuffer.allocate(length);
+            readFully(ch, body, pos + 8);
+            if (crc(body.array(), 0, length) != head.getInt(4)) break;
+            lastSeq = body.getLong(0);
+            pos += 8 + length;
+        }
+        return pos;
+    }
+
+    /**
+     * Reaplica, in ordine, editarile din jurnal peste arborele incarcat din {@link #getBase()}.
+     * Se apeleaza inainte de a crea serviciul; nodurile atinse devin modificate
+     * ({@link FsNode#isTextDirty()}), deci urmatoarea salvare le scrie.
+     *
+     * @param root radacina invizibila
+     * @return numarul de editari reaplicate
+     * @throws IOException daca o editare nu se potriveste cu arborele
+     */
+    public int replay(FsNode root) throws IOException {
+        synchronized (io) {
+            int count = 0;
+            long pos = HEADER, end = size;
+            ByteBuffer head = ByteBuffer.allocate(8);
+            while (pos < end) {
+                head.clear();
+                readFully(channel, head, pos);
+                int length = head.getInt(0);
+                ByteBuffer body = ByteBuffer.allocate(length);
+                readFully(channel, body, pos + 8);
+                Reader r = new Reader(body.array(), 8, length);
+                try {
+                    long n = r.varint();
+                    for (long i = 0; i < n; i++) apply(root, r);
+                } catch (RuntimeException e) {
+                    throw new IOException("Journal entry " + body.getLong(0) + " does not apply: " + e.getMessage(), e);
+                }
+                count++;
+                pos += 8 + length;
+            }
+            return count;
+        }
+    }
+
+    private static void apply(FsNode root, Reader r) throws IOException {
+        int op = r.get();
+        switch (op) {
+            case CREATE -> {
+                FsNode parent = r.path(root);
+                int type = r.get();
+                String name = r.string();
+                parent.addChild(type == FILE ? new FsNode(name, NodeType.FILE, r.varint()) : new FsNode(name, nodeType(type)));
+            }
+            case RENAME -> {
+                FsNode n = r.child(r.path(root));
+                n.rename(r.string());
+            }
+            case DELETE -> {
+                FsNode parent = r.path(root);
+                parent.removeChild(r.child(parent));
+            }
+            case RESIZE -> r.path(root).setSizeBytes(r.varint());
+            case MOVE -> {
+                FsNode from = r.path(root);
+                FsNode n = r.child(from);
+                FsNode to = r.path(root);
+                int position = (int) r.varint();
+                from.removeChild(n);
+                to.addChild(n, position);
+            }
+            case ATTACH -> {
+                FsNode parent = r.path(root);
+                int position = (int) r.varint();
+                parent.addChild(r.subtree(), position);
+            }
+            default -> throw new IOException("Unknown journal operation " + op);
+        }
+    }
+
+    /**
+     * Inregistreaza crearea unui nod (fara copii), dupa aplicare.
+     */
+    void created(FsNode node) {
+        ops.put(CREATE);
+        path(node.getParent());
+        ops.put(typeOf(node));
+        ops.string(node.getName());
+        if (node.getType() == NodeType.FILE) ops.varint(node.getSizeBytes());
+        opCount++;
+    }
+
+    /**
+     * Inregistreaza redenumirea unui nod, dupa aplicare.
+     */
+    void renamed(FsNode node, String oldName) {
+        ops.put(RENAME);
+        path(node.getParent());
+        ops.string(oldName);
+        ops.string(node.getName());
+        opCount++;
+    }
+
+    /**
+     * Inregistreaza stergerea unui nod din parintele dat, dupa aplicare.
+     */
+    void deleted(FsNode parent, FsNode node) {
+        ops.put(DELETE);
+        path(parent);
+        ops.string(node.getName());
+        opCount++;
+    }
+
+    /**
+     * Inregistreaza noua dimensiune a unui fisier, dupa aplicare.
+     */
+    void resized(FsNode node) {
+        ops.put(RESIZE);
+        path(node);
+        ops.varint(node.getSizeBytes());
+        opCount++;
+    }
+
+    /**
+     * Inregistreaza mutarea unui nod din parintele dat pe pozitia lui actuala, dupa aplicare.
+     */
+    void moved(FsNode oldParent, FsNode node) {
+        ops.put(MOVE);
+        path(oldParent);
+        ops.string(node.getName());
+        path(node.getParent());
+        ops.varint(node.getParent().indexOfChild(node));
+        opCount++;
+    }
+
+    /**
+     * Inregistreaza reatasarea unui subarbore (undo al stergerii), cu tot continutul lui.
+     * Este singura inregistrare care parcurge un subarbore: un folder incarcat la cerere si
+     * inca necitit este citit aici intentionat, pentru ca reaplicarea nu se poate baza pe
+     * textul din care provine (o salvare ulterioara il poate elimina).
+     */
+    void attached(FsNode node) {
+        ops.put(ATTACH);
+        path(node.getParent());
+        ops.varint(node.getParent().indexOfChild(node));
+        subtree(node);
+        opCount++;
+    }
+
+    /**
+     * Adauga operatiile editarii curente ca o inregistrare noua. Apelata de serviciu sub
+     * lock-ul de scriere, deci ordinea inregistrarilor este ordinea editarilor.
+     *
+     * @return secventa inregistrarii, sau 0 daca editarea nu are operatii
+     */
+    long commit() {
+        if (opCount == 0) return 0;
+        Buf payload = new Buf(ops.length + 10);
+        payload.varint(opCount);
+        payload.put(ops.bytes, 0, ops.length);
+        discard();
+        lock.lock();
+        try {
+            long seq = ++lastSeq;
+            byte[] seqBytes = ByteBuffer.allocate(8).putLong(seq).array();
+            CRC32 crc = new CRC32();
+            crc.update(seqBytes);
+            crc.update(payload.bytes, 0, payload.length);
+            pending.putInt(8 + payload.length);
+            pending.putInt((int) crc.getValue());
+            pending.put(seqBytes, 0, 8);
+            pending.put(payload.bytes, 0, payload.length);
+            changed.signalAll();
+            return seq;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Renunta la operatiile editarii curente (editare anulata dupa o eroare).
+     */
+    void discard() {
+        ops.length = 0;
+        opCount = 0;
+    }
+
+    /**
+     * Asteapta ca inregistrarea data sa fie durabila, conform politicii; cu {@link Sync#ALWAYS}
+     * asteapta sincronizarea grupului, altfel revine imediat.
+     *
+     * @param seq secventa intoarsa de {@link #commit()}
+     * @throws UncheckedIOException daca scrierea jurnalului a esuat
+     */
+    void awaitDurable(long seq) {
+        if (seq <= 0) return;
+        lock.lock();
+        try {
+            if (sync == Sync.ALWAYS) {
+                while (durableSeq < seq && failure == null) changed.awaitUninterruptibly();
+            }
+            if (failure != null && durableSeq < seq) throw new UncheckedIOException("Journal write failed", failure);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return secventa ultimei inregistrari adaugate
+     */
+    long lastSeq() {
+        lock.lock();
+        try {
+            return lastSeq;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return dimensiunea jurnalului pe disc, in bytes
+     */
+    public long size() {
+        return size;
+    }
+
+    private void path(FsNode n) {
+        int depth = 0;
+        for (FsNode p = n; p.getParent() != null; p = p.getParent()) depth++;
+        String[] names = new String[depth];
+        for (FsNode p = n; p.getParent() != null; p = p.getParent()) names[--depth] = p.getName();
+        ops.varint(names.length);
+        for (String s : names) ops.string(s);
+    }
+
+    /**
+     * Scrie un subarbore in preordine: tip, nume si, pentru fisiere dimensiunea, iar pentru
+     * foldere numarul de copii urmat de copii. Parcurgerea foloseste o stiva explicita, ca un
+     * lant adanc de foldere sa nu depaseasca stiva firului.
+     */
+    private void subtree(FsNode node) {
+        ArrayDeque<FsNode> stack = new ArrayDeque<>();
+        stack.push(node);
+        while (!stack.isEmpty()) {
+            FsNode n = stack.pop();
+            ops.put(typeOf(n));
+            ops.string(n.getName());
+            if (n.getType() == NodeType.FILE) {
+                ops.varint(n.getSizeBytes());
+                continue;
+            }
+            List<FsNode> kids = n.getChildren();
+            ops.varint(kids.size());
+            for (int i = kids.size() - 1; i >= 0; i--) stack.push(kids.get(i));
+        }
+    }
+
+    private static int typeOf(FsNode n) {
+        return n.getType() == NodeType.FILE ? FILE : n.getType() == NodeType.DRIVE ? DRIVE : FOLDER;
+    }
+
+    private static NodeType nodeType(int type) throws IOException {
+        return switch (type) {
+            case FOLDER -> NodeType.FOLDER;
+            case FILE -> NodeType.FILE;
+            case DRIVE -> NodeType.DRIVE;
+            default -> throw new IOException("Unknown node type " + type);
+        };
+    }
+
+    /**
+     * Firul de scriere: goleste bufferul de inregistrari in fisier, sincronizand conform politicii.
+     */
+    private void writeLoop() {
+        long nextSync = System.nanoTime();
+        try {
+            while (true) {
+                boolean force;
+                lock.lock();
+                try {
+                    while (pending.length == 0 && !closing) {
+                        if (sync == Sync.INTERVAL && writtenSeq > durableSeq) {
+                            long wait = nextSync - System.nanoTime();
+                            if (wait <= 0) break;
+                            changed.awaitNanos(wait);
+                        } else {
+                            changed.await();
+                        }
+                    }
+                    if (closing && pending.length == 0 && writtenSeq == durableSeq) return;
+                    force = sync == Sync.ALWAYS || closing
+                            || (sync == Sync.INTERVAL && System.nanoTime() - nextSync >= 0);
+                } finally {
+                    lock.unlock();
+                }
+                flush(force);
+                if (force) nextSync = System.nanoTime() + syncIntervalNanos;
+            }
+        } catch (IOException e) {
+            lock.lock();
+            try {
+                failure = e;
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Scrie intr-o singura trecere toate inregistrarile adaugate pana acum.
+     *
+     * @param force true pentru a sincroniza fisierul pe disc dupa scriere
+     */
+    private void flush(boolean force) throws IOException {
+        synchronized (io) {
+            Buf batch;
+            long seq;
+            lock.lock();
+            try {
+                batch = pending;
+                pending = spare;
+                seq = lastSeq;
+            } finally {
+                lock.unlock();
+            }
+            writeFully(channel, ByteBuffer.wrap(batch.bytes, 0, batch.length));
+            size += batch.length;
+            batch.length = 0;
+            spare = batch;
+            if (force) channel.force(false);
+            lock.lock();
+            try {
+                writtenSeq = seq;
+                if (force) durableSeq = seq;
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Porneste compactarea periodica: la fiecare interval, daca jurnalul a depasit
+     * {@code minBytes}, starea curenta a serviciului este scrisa in snapshot
+     * ({@link FileTreeService#compactJournal(SnapshotSink)}). O compactare esuata lasa
+     * jurnalul valid si este reincercata la urmatorul interval.
+     *
+     * @param service      serviciul ale carui editari sunt in jurnal
+     * @param sink         scrierea textului (ex: {@code FileTreeRepository::writeSnapshot})
+     * @param periodMillis intervalul dintre verificari
+     * @param minBytes     dimensiunea jurnalului de la care se compacteaza
+     */
+    public synchronized void startCompactor(FileTreeService service, SnapshotSink sink, long periodMillis, long minBytes) {
+        if (compactor != null) return;
+        compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "journal-compactor");
+            t.setDaemon(true);
+            return t;
+        });
+        compactor.scheduleWithFixedDelay(() -> {
+            try {
+                if (size >= minBytes) service.compactJournal(sink);
+            } catch (IOException | RuntimeException e) {
+                // jurnalul ramane valid; compactarea este reincercata la urmatorul interval
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Opreste compactarea periodica, asteptand terminarea unei compactari in curs.
+     */
+    public synchronized void stopCompactor() {
+        if (compactor == null) return;
+        // fara intrerupere: un fir intrerupt in timpul unei operatii pe FileChannel inchide canalul
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        compactor = null;
+    }
+
+    /**
+     * Scrie arborele unui snapshot in fisierul snapshot-ului si pastreaza in jurnal doar
+     * inregistrarile mai noi decat el. Textul este scris fara niciun lock; doar inlocuirea
+     * finala opreste scurt firul de scriere.
+     *
+     * @param root radacina snapshot-ului
+     * @param seq  ultima secventa inclusa in snapshot
+     * @param sink scrierea textului
+     */
+    void fold(SnapshotNode root, long seq, SnapshotSink sink) throws IOException {
+        synchronized (folding) {
+            Path tmpText = sibling(snapshot, ".tmp");
+            try {
+                sink.write(root, tmpText.toFile());
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(tmpText);
+                throw e;
+            }
+            rotate(tmpText, seq);
+        }
+    }
+
+    /**
+     * Goleste jurnalul si sterge snapshot-ul: fisierul text contine deja toate editarile (tocmai
+     * a fost salvat) sau editarile sunt abandonate. Jurnalul nou se aplica peste textul actual.
+     */
+    public void reset() throws IOException {
+        synchronized (folding) {
+            rotate(null, Long.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Scrie jurnalul nou intr-un fisier temporar (antetul bazei noi si inregistrarile cu
+     * secventa peste {@code keepAfter}), apoi muta snapshot-ul nou (daca exista) si jurnalul.
+     * Fara snapshot nou, baza devine fisierul text, iar snapshot-ul vechi este sters.
+     */
+    private void rotate(Path newSnapshot, long keepAfter) throws IOException {
+        synchronized (io) {
+            flush(false);
+            Path tmp = sibling(file, ".tmp");
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                writeFully(out, header(newSnapshot != null ? newSnapshot : text));
+                copyFrames(channel, out, keepAfter);
+                out.force(false);
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(tmp);
+                throw e;
+            }
+            channel.close();
+            if (newSnapshot != null) move(newSnapshot, snapshot);
+            move(tmp, file);
+            base = newSnapshot != null ? snapshot : text;
+            if (newSnapshot == null) {
+                try {
+                    Files.deleteIfExists(snapshot);
+                } catch (IOException e) {
+                    // inca deschis (ex: citit la cerere); nu mai corespunde jurnalului si va fi
+                    // sters la urmatoarea deschidere
+                }
+            }
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            size = channel.size();
+            channel.position(size);
+            lock.lock();
+            try {
+                durableSeq = writtenSeq;
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static void copyFrames(FileChannel from, FileChannel to, long keepAfter) throws IOException {
+        long pos = HEADER, end = from.size();
+        ByteBuffer head = ByteBuffer.allocate(FRAME);
+        while (pos < end) {
+            head.clear();
+            readFully(from, head, pos);
+            long frame = 8 + head.getInt(0);
+            if (head.getLong(8) > keepAfter) {
+                long done = 0;
+                while (done < frame) done += from.transferTo(pos + done, frame - done, to);
+            }
+            pos += frame;
+        }
+    }
+
+    /**
+     * Scrie pe disc inregistrarile ramase, opreste firele jurnalului si inchide fisierul.
+     */
+    @Override
+    public void close() throws IOException {
+        stopCompactor();
+        lock.lock();
+        try {
+            closing = true;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (io) {
+            channel.close();
+        }
+        if (failure != null) throw failure;
+    }
+
+    private static ByteBuffer header(Path base) {
+        File f = base.toFile();
+        ByteBuffer h = ByteBuffer.allocate(HEADER);
+        h.putInt(MAGIC).putInt(VERSION).putLong(f.length()).putLong(f.lastModified());
+        return h.flip();
+    }
+
+    private static boolean matches(Path journal, Path base) throws IOException {
+        if (!Files.exists(base)) return false;
+        try (FileChannel ch = FileChannel.open(journal, StandardOpenOption.READ)) {
+            if (ch.size() < HEADER) return false;
+            ByteBuffer h = ByteBuffer.allocate(HEADER);
+            readFully(ch, h, 0);
+            return h.equals(header(base));
+        }
+    }
+
+    private static int crc(byte[] b, int off, int len) {
+        CRC32 crc = new CRC32();
+        crc.update(b, off, len);
+        return (int) crc.getValue();
+    }
+
+    private static Path sibling(Path p, String suffix) {
+        return p.resolveSibling(p.getFileName() + suffix);
+    }
+
+    private static void move(Path from, Path to) throws IOException {
+        try {
+            Files.move(from, to, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(from, to, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer b, long pos) throws IOException {
+        while (b.hasRemaining()) {
+            if (ch.read(b, pos + b.position()) < 0) throw new EOFException("Unexpected end of journal");
+        }
+        b.flip();
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer b) throws IOException {
+        while (b.hasRemaining()) ch.write(b);
+    }
+
+    /**
+     * Buffer de bytes care creste la nevoie.
+     */
+    private static final class Buf {
+        byte[] bytes;
+        int length;
+
+        Buf(int capacity) {
+            bytes = new byte[capacity];
+        }
+
+        void put(int b) {
+            ensure(1);
+            bytes[length++] = (byte) b;
+        }
+
+        void put(byte[] b, int off, int len) {
+            ensure(len);
+            System.arraycopy(b, off, bytes, length, len);
+            length += len;
+        }
+
+        void putInt(int v) {
+            ensure(4);
+            for (int shift = 24; shift >= 0; shift -= 8) bytes[length++] = (byte) (v >>> shift);
+        }
+
+        void varint(long v) {
+            while ((v & ~0x7FL) != 0) {
+                put((int) (v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            put((int) v);
+        }
+
+        void string(String s) {
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            varint(b.length);
+            put(b, 0, b.length);
+        }
+
+        private void ensure(int n) {
+            if (length + n > bytes.length) bytes = Arrays.copyOf(bytes, Math.max(length + n, bytes.length * 2));
+        }
+    }
+
+    /**
+     * Citeste operatiile unei inregistrari.
+     */
+    private static final class Reader {
+        private final byte[] b;
+        private int pos;
+        private final int end;
+
+        Reader(byte[] b, int pos, int end) {
+            this.b = b;
+            this.pos = pos;
+            this.end = end;
+        }
+
+        int get() throws IOException {
+            if (pos >= end) throw new EOFException("Truncated journal entry");
+            return b[pos++] & 0xFF;
+        }
+
+        long varint() throws IOException {
+            long v = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int x = get();
+                v |= (long) (x & 0x7F) << shift;
+                if ((x & 0x80) == 0) return v;
+            }
+            throw new IOException("Corrupt journal entry: varint too long");
+        }
+
+        String string() throws IOException {
+            long n = varint();
+            if (n > end - pos) throw new EOFException("Truncated journal entry");
+            String s = new String(b, pos, (int) n, StandardCharsets.UTF_8);
+            pos += (int) n;
+            return s;
+        }
+
+        FsNode path(FsNode root) throws IOException {
+            long depth = varint();
+            FsNode cur = root;
+            for (long i = 0; i < depth; i++) cur = child(cur);
+            return cur;
+        }
+
+        FsNode child(FsNode parent) throws IOException {
+            String name = string();
+            FsNode c = parent.childByName(name);
+            if (c == null) throw new IOException("Path not found: " + name);
+            return c;
+        }
+
+        /**
+         * Citeste un subarbore scris de {@link WriteAheadLog#subtree(FsNode)}, cu o stiva
+         * explicita de foldere incomplete. Un nod este atasat parintelui abia dupa ce i-au fost
+         * cititi toti copiii, deci totalurile se propaga o singura data pe nivel.
+         */
+        FsNode subtree() throws IOException {
+            ArrayDeque<FsNode> open = new ArrayDeque<>();
+            ArrayDeque<long[]> remaining = new ArrayDeque<>();
+            while (true) {
+                int type = get();
+                String name = string();
+                FsNode n;
+                if (type == FILE) {
+                    n = new FsNode(name, NodeType.FILE, varint());
+                } else {
+                    n = new FsNode(name, nodeType(type));
+                    long count = varint();
+                    if (count > 0) {
+                        open.push(n);
+                        remaining.push(new long[]{count});
+                        continue;
+                    }
+                }
+                // nodul n este complet: il atasam si inchidem folderele terminate
+                while (true) {
+                    if (open.isEmpty()) return n;
+                    open.peek().addChild(n);
+                    if (--remaining.peek()[0] > 0) break;
+                    remaining.pop();
+                    n = open.pop();
+                }
+            }
+        }
+    }
+}
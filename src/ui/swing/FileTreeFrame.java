@@ -3,12 +3,22 @@ package ui.swing;
 import io.FileTreeRepository;
 import model.FsNode;
 import service.FileTreeService;
+import service.WriteAheadLog;
 
+import javax.management.NotificationEmitter;
 import javax.swing.*;
+import javax.swing.event.PopupMenuEvent;
+import javax.swing.event.PopupMenuListener;
 import javax.swing.tree.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Fereastra principala Swing care afiseaza structura logica de fisiere
@@ -17,6 +27,9 @@ import java.io.File;
  * <p>
  * La pornire, structura este incarcata din fisierul text {@code structura.txt},
  * apoi este construita o reprezentare echivalenta in arborele Swing.
+ * Fisierele mari sunt incarcate la cerere: folderele sunt citite la prima expandare.
+ * Editarile sunt scrise pe loc in jurnalul {@code structura.journal}, reaplicat la pornire
+ * daca aplicatia nu a fost inchisa normal.
  * La inchidere, utilizatorul este intrebat daca vrea sa salveze modificarile.
  */
 public class FileTreeFrame extends JFrame {
@@ -52,10 +65,56 @@ public class FileTreeFrame extends JFrame {
      */
     private FileTreeService service;
 
+    /**
+     * Repository-ul din care a fost incarcata structura; retine pozitiile din
+     * {@code structura.txt} necesare salvarii incrementale.
+     */
+    private final FileTreeRepository repository = new FileTreeRepository();
+
+    /**
+     * Dimensiunea de la care {@code structura.txt} este incarcat la cerere
+     * ({@link FileTreeRepository#loadLazy(File)}).
+     */
+    private static final long LAZY_MIN_BYTES = 64L << 20;
+
+    /**
+     * True daca arborele este incarcat la cerere.
+     */
+    private final boolean lazy;
+
+    /**
+     * Fractiunea din zonele vechi ale heap-ului peste care GC-ul anunta, dupa o colectare,
+     * ca memoria ramane ocupata. Este sub pragul incarcatorului, ca anuntul sa nu fie ratat;
+     * decizia de eliberare ramane la {@link model.ChildLoader#shouldEvict()}.
+     */
+    private static final double EVICT_CHECK_RATIO = 0.6;
+
+    /**
+     * Jurnalul de scriere in avans al editarilor, deschis peste {@code structura.txt}.
+     */
+    private final WriteAheadLog journal;
+
+    /**
+     * Cat de des verifica compactorul jurnalul.
+     */
+    private static final long COMPACT_PERIOD_MILLIS = 60_000;
+
+    /**
+     * Dimensiunea de la care jurnalul este compactat in {@code structura.txt}.
+     */
+    private static final long COMPACT_MIN_BYTES = 4L << 20;
+
     /**
      * Constructorul ferestrei principale.
      * <ul>
-     *     <li>Incarca structura din fisierul {@code structura.txt}.</li>
+     *     <li>Incarca structura din fisierul {@code structura.txt} si indexul de cautare
+     *         {@code structura.trigrams} (reconstruit daca lipseste sau este depasit).
+     *         Peste {@link #LAZY_MIN_BYTES} structura este incarcata la cerere, fara indexul
+     *         de cautare, iar folderele nefolosite sunt eliberate cand memoria este putina.</li>
+     *     <li>Reaplica editarile din {@code structura.journal} ramase de la o oprire brusca
+     *         (peste {@code structura.txt} sau peste snapshot-ul compactarii) si activeaza
+     *         jurnalul; cu structura incarcata complet, jurnalul este compactat periodic in
+     *         {@code structura.txt.snapshot}, fara a atinge {@code structura.txt}.</li>
      *     <li>Construieste arborele Swing pe baza modelului.</li>
      *     <li>Configureaza renderer-ul de iconite, drag and drop si meniul contextual.</li>
      *     <li>Seteaza comportamentul la inchidere (intrebare de salvare).</li>
@@ -64,11 +123,25 @@ public class FileTreeFrame extends JFrame {
     public FileTreeFrame() {
         super("Proiect Anghel Vlad-Andrei -- Structura fisiere");
 
-        try { rootModel = new FileTreeRepository().loadFromText(new File("structura.txt")); }
+        File structure = new File("structura.txt");
+        File base;
+        int replayed;
+        try {
+            // dupa o oprire brusca jurnalul se poate aplica peste snapshot-ul compactarii
+            journal = WriteAheadLog.open(new File("structura.journal"), structure, WriteAheadLog.Sync.ALWAYS, 1000);
+            base = journal.getBase();
+            rootModel = base.length() >= LAZY_MIN_BYTES
+                    ? repository.loadLazy(base)
+                    : repository.loadFromTextParallel(base);
+            replayed = journal.replay(rootModel);
+        }
         catch (Exception e){ throw new RuntimeException(e); }
+        // fisierele malformate sunt incarcate complet chiar si peste prag
+        lazy = rootModel.getChildLoader() != null;
 
         DefaultMutableTreeNode swingRoot = TreeBuilder.buildSwingTree(rootModel);
         model = new DefaultTreeModel(swingRoot);
+        model.setAsksAllowsChildren(lazy);
         tree  = new JTree(model);
         tree.setRootVisible(false);
         tree.setShowsRootHandles(true);
@@ -77,7 +150,22 @@ public class FileTreeFrame extends JFrame {
 
         // Wire controller (service)
         service = new FileTreeService(rootModel);
-        controller = new PopupController(tree, model, service);
+        if (!lazy) {
+            // indexul salvat corespunde textului, nu si editarilor reaplicate din jurnal
+            if (replayed > 0 || !base.equals(structure.getAbsoluteFile())) service.enableTrigramIndex();
+            else service.enableTrigramIndex(new File("structura.trigrams"), structure);
+        }
+        service.enableJournal(journal);
+        // snapshot-ul compactarii ar citi tot fisierul incarcat la cerere
+        if (!lazy) journal.startCompactor(service, repository::writeSnapshot, COMPACT_PERIOD_MILLIS, COMPACT_MIN_BYTES);
+        SwingTreeSync sync = new SwingTreeSync(model);
+        service.addTreeChangeListener(sync);
+        if (lazy) {
+            tree.addTreeWillExpandListener(sync);
+            tree.addTreeExpansionListener(sync);
+            evictOnMemoryPressure(sync);
+        }
+        controller = new PopupController(tree, service);
 
         // Drag & Drop
         tree.setDragEnabled(true);
@@ -87,6 +175,7 @@ public class FileTreeFrame extends JFrame {
 
         // Popup (ramane cum era)
         JPopupMenu popup = buildPopupMenu();
+        bindUndoKeys();
         tree.addMouseListener(new MouseAdapter() {
             private void maybe(MouseEvent e){
                 if(!e.isPopupTrigger()) return;
@@ -113,11 +202,46 @@ public class FileTreeFrame extends JFrame {
         });
     }
 
+    /**
+     * Elibereaza folderele nefolosite doar cand memoria ramane ocupata dupa o colectare,
+     * nu la fiecare expandare: zonele vechi ale heap-ului primesc un prag
+     * ({@link #EVICT_CHECK_RATIO}), iar la notificarea GC-ului
+     * ({@link MemoryNotificationInfo#MEMORY_COLLECTION_THRESHOLD_EXCEEDED}) eliberarea este
+     * programata o singura data pe firul Swing, unde se stie ce foldere sunt afisate.
+     *
+     * @param sync sincronizatorul care stie ce foldere au copiii afisati
+     */
+    private void evictOnMemoryPressure(SwingTreeSync sync){
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            // doar generatia veche suporta ambele praguri (nu si eden sau survivor)
+            if (pool.getType() != MemoryType.HEAP || !pool.isUsageThresholdSupported()
+                    || !pool.isCollectionUsageThresholdSupported()) continue;
+            long max = pool.getUsage().getMax();
+            if (max > 0) pool.setCollectionUsageThreshold((long) (max * EVICT_CHECK_RATIO));
+        }
+        AtomicBoolean scheduled = new AtomicBoolean();
+        NotificationEmitter gc = (NotificationEmitter) ManagementFactory.getMemoryMXBean();
+        gc.addNotificationListener((n, handback) -> {
+            if (!scheduled.compareAndSet(false, true)) return;
+            SwingUtilities.invokeLater(() -> {
+                scheduled.set(false);
+                service.evictUnused(sync::isShowingChildren);
+            });
+        }, n -> MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(n.getType()), null);
+    }
+
     /**
      * Extinde primul nivel de noduri din arbore, astfel incat drive-urile
      * sa fie vizibile imediat dupa pornirea aplicatiei.
+     * In modul la cerere sunt extinse doar drive-urile, deja citite.
      */
     private void expandFirstLevel(){
+        if (lazy) {
+            DefaultMutableTreeNode r = (DefaultMutableTreeNode) model.getRoot();
+            for (int i = 0; i < r.getChildCount(); i++)
+                tree.expandPath(new TreePath(((DefaultMutableTreeNode) r.getChildAt(i)).getPath()));
+            return;
+        }
         for(int i=0;i<tree.getRowCount();i++)
             tree.expandRow(i);
     }
@@ -130,8 +254,13 @@ public class FileTreeFrame extends JFrame {
      *     <li>Create file</li>
      *     <li>Rename</li>
      *     <li>Delete</li>
+     *     <li>Undo, Redo</li>
      *     <li>Stats</li>
+     *     <li>Largest items</li>
+     *     <li>Find duplicates</li>
      * </ul>
+     * Pentru o structura incarcata la cerere, "Largest items" si "Find duplicates" sunt
+     * dezactivate ({@link FileTreeService#isLazy()}).
      *
      * @return un {@link JPopupMenu} configurat
      */
@@ -141,26 +270,73 @@ public class FileTreeFrame extends JFrame {
         JMenuItem miNewFile   = new JMenuItem("Create file");
         JMenuItem miRename    = new JMenuItem("Rename");
         JMenuItem miDelete    = new JMenuItem("Delete");
+        JMenuItem miUndo      = new JMenuItem("Undo");
+        JMenuItem miRedo      = new JMenuItem("Redo");
         JMenuItem miStats     = new JMenuItem("Stats");
+        JMenuItem miLargest   = new JMenuItem("Largest items");
+        JMenuItem miDuplicates = new JMenuItem("Find duplicates");
 
         miNewFolder.addActionListener(e -> controller.createFolder(clickedNode));
         miNewFile.addActionListener  (e -> controller.createFile(clickedNode));
         miRename.addActionListener   (e -> controller.rename(clickedNode));
         miDelete.addActionListener   (e -> controller.delete(clickedNode));
+        miUndo.addActionListener     (e -> controller.undo());
+        miRedo.addActionListener     (e -> controller.redo());
         miStats.addActionListener    (e -> controller.stats(clickedNode));
+        miLargest.addActionListener  (e -> controller.largestItems(clickedNode));
+        miDuplicates.addActionListener(e -> controller.duplicates(clickedNode));
 
 
         p.add(miNewFolder); p.add(miNewFile); p.addSeparator();
-        p.add(miRename); p.add(miDelete); p.add(miStats);
+        p.add(miRename); p.add(miDelete); p.addSeparator();
+        p.add(miUndo); p.add(miRedo); p.addSeparator();
+        p.add(miStats); p.add(miLargest); p.add(miDuplicates);
+        if (lazy) {
+            // ar parcurge (si citi din fisier) tot subarborele; Stats afiseaza doar totalurile
+            String why = "Not available while the structure is loaded on demand";
+            miLargest.setEnabled(false);
+            miLargest.setToolTipText(why);
+            miDuplicates.setEnabled(false);
+            miDuplicates.setToolTipText(why);
+        }
+        p.addPopupMenuListener(new PopupMenuListener() {
+            @Override public void popupMenuWillBecomeVisible(PopupMenuEvent e){
+                miUndo.setEnabled(service.canUndo());
+                miRedo.setEnabled(service.canRedo());
+            }
+            @Override public void popupMenuWillBecomeInvisible(PopupMenuEvent e){ }
+            @Override public void popupMenuCanceled(PopupMenuEvent e){ }
+        });
         return p;
     }
 
+    /**
+     * Leaga scurtaturile Ctrl+Z (undo) si Ctrl+Y (redo) de arbore.
+     */
+    private void bindUndoKeys(){
+        int mask = Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx();
+        tree.getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_Z, mask), "undo");
+        tree.getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_Y, mask), "redo");
+        tree.getActionMap().put("undo", new AbstractAction() {
+            @Override public void actionPerformed(ActionEvent e){ controller.undo(); }
+        });
+        tree.getActionMap().put("redo", new AbstractAction() {
+            @Override public void actionPerformed(ActionEvent e){ controller.redo(); }
+        });
+    }
+
     /**
      * Metoda apelata cand utilizatorul inchide fereastra.
      * Afiseaza un dialog de confirmare:
      * <ul>
      *     <li>Daca se apasa Cancel, aplicatia ramane deschisa.</li>
-     *     <li>Daca se apasa Yes, se incearca salvarea structurii in {@code structura.txt}.</li>
+     *     <li>Daca se apasa Yes, se incearca salvarea structurii in {@code structura.txt}
+     *         si a indexului de cautare in {@code structura.trigrams}. Salvarea este
+     *         incrementala: se rescriu doar subarborii modificati, iar fara modificari
+     *         fisierul nu este atins.</li>
+     *     <li>Dupa salvare jurnalul si snapshot-ul compactarii sunt sterse; la No sunt sterse
+     *         fara salvare, deci editarile din sesiune (si cele recuperate dupa o oprire brusca)
+     *         sunt abandonate, iar {@code structura.txt} ramane neschimbat.</li>
      *     <li>Daca salvarea reuseste sau se apasa No, aplicatia se inchide.</li>
      * </ul>
      */
@@ -174,14 +350,35 @@ public class FileTreeFrame extends JFrame {
         if (choice == JOptionPane.CANCEL_OPTION) return;
 
         if (choice == JOptionPane.YES_OPTION) {
+            // salvarea face compactarea inutila
+            journal.stopCompactor();
             try {
-                // dacă ai deja o metodă în service, folosește-o; altfel salvează din repository:
-                new FileTreeRepository().saveToText(rootModel, new File("structura.txt"));
+                File structure = new File("structura.txt");
+                // arborele incarcat din snapshot nu este modificat fata de el, dar de text da
+                if (service.isDirty() || !journal.getBase().equals(structure.getAbsoluteFile())) {
+                    repository.saveIncremental(rootModel, structure);
+                }
+                journal.reset();
+                if (!lazy) service.saveTrigramIndex(new File("structura.trigrams"), structure);
             } catch (Exception ex) {
                 JOptionPane.showMessageDialog(this, "Eroare la salvare: " + ex.getMessage(),
                         "Eroare", JOptionPane.ERROR_MESSAGE);
+                if (!lazy) journal.startCompactor(service, repository::writeSnapshot, COMPACT_PERIOD_MILLIS, COMPACT_MIN_BYTES);
                 return; // nu închide dacă a eșuat salvarea
             }
+        } else {
+            try {
+                journal.reset();
+            } catch (IOException ex) {
+                JOptionPane.showMessageDialog(this, "Eroare la golirea jurnalului: " + ex.getMessage(),
+                        "Eroare", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+        }
+        try {
+            journal.close();
+        } catch (IOException ignored) {
+            // jurnalul a fost deja golit
         }
         dispose();
         System.exit(0);
@@ -5,15 +5,14 @@ import service.FileTreeService;
 
 import javax.swing.*;
 import javax.swing.tree.DefaultMutableTreeNode;
-import javax.swing.tree.DefaultTreeModel;
 import javax.swing.tree.TreePath;
 import java.awt.datatransfer.*;
 
 /**
  * TransferHandler pentru JTree-ul de fisiere.
  * Gestioneaza operatia de drag and drop intre nodurile arborelui:
- * muta atat nodurile din modelul logic ({@link FsNode}), cat si nodurile
- * corespondente din arborele Swing ({@link DefaultMutableTreeNode}).
+ * muta nodurile din modelul logic ({@link FsNode}); nodurile corespondente din
+ * arborele Swing ({@link DefaultMutableTreeNode}) sunt mutate de {@link SwingTreeSync}.
  */
 public class FileTreeTransferHandler extends TransferHandler {
 
@@ -128,8 +127,6 @@ public class FileTreeTransferHandler extends TransferHandler {
      * Executa efectiv operatia de mutare atunci cand drop-ul este acceptat.
      * <ol>
      *     <li>Muta nodul in modelul FsNode prin {@link FileTreeService#moveNode}.</li>
-     *     <li>Actualizeaza arborele Swing (scoate nodul din vechiul parinte si
-     *     il insereaza sub noul parinte).</li>
      *     <li>Selecteaza si deruleaza la noua locatie a nodului mutat.</li>
      * </ol>
      *
@@ -150,18 +147,9 @@ public class FileTreeTransferHandler extends TransferHandler {
         if (!(uo instanceof FsNode destFsNode)) return false;
 
         try {
-            // 1. actualizam modelul de business
+            // arborele Swing este actualizat din evenimentul serviciului (acelasi nod Swing)
             service.moveNode(draggedFsNode, destFsNode);
 
-            // 2. actualizam si arborele Swing
-            DefaultTreeModel dtm = (DefaultTreeModel) tree.getModel();
-            DefaultMutableTreeNode oldParent =
-                    (DefaultMutableTreeNode) draggedSwingNode.getParent();
-            if (oldParent != null) {
-                dtm.removeNodeFromParent(draggedSwingNode);
-            }
-            dtm.insertNodeInto(draggedSwingNode, destSwingNode, destSwingNode.getChildCount());
-
             // expandam destinatia ca sa vezi rezultatul
             TreePath newPath = new TreePath(draggedSwingNode.getPath());
             tree.scrollPathToVisible(newPath);
@@ -1,29 +1,43 @@
 package ui.swing;
 
 import model.*;
+import service.DuplicateGroup;
 import service.FileTreeService;
+import service.SearchHit;
 
 import javax.swing.*;
 import javax.swing.tree.*;
+import java.util.List;
 
 /**
  * Controller pentru meniul contextual (popup) al arborelui JTree.
  * <p>
- * Clasa leaga actiunile din meniu (create folder, create file, rename, delete, stats)
- * de modelul logic ({@link FsNode}) prin intermediul {@link FileTreeService}
- * si actualizeaza in acelasi timp si arborele Swing ({@link DefaultTreeModel}).
+ * Clasa leaga actiunile din meniu (create folder, create file, rename, delete, undo, redo, stats, largest items, duplicates)
+ * de modelul logic ({@link FsNode}) prin intermediul {@link FileTreeService}.
+ * Arborele Swing ({@link DefaultTreeModel}) nu este modificat aici: il actualizeaza
+ * {@link SwingTreeSync} din evenimentele serviciului.
  */
 public class PopupController {
 
     /**
-     * Arborele Swing pe care se afiseaza structura de fisiere.
+     * Numarul maxim de niveluri afisate in dialogul de statistici.
      */
-    private final JTree tree;
+    private static final int MAX_DEPTH_ROWS = 50;
+
+    /**
+     * Numarul de fisiere si de foldere afisate de actiunea "Largest items".
+     */
+    private static final int LARGEST_ITEMS = 20;
 
     /**
-     * Modelul de date asociat arborelui Swing.
+     * Numarul maxim de grupuri afisate de actiunea "Find duplicates".
+     */
+    private static final int MAX_DUPLICATE_GROUPS = 1000;
+
+    /**
+     * Arborele Swing pe care se afiseaza structura de fisiere.
      */
-    private final DefaultTreeModel model;
+    private final JTree tree;
 
     /**
      * Serviciul care opereaza pe arborele logic de fisiere.
@@ -34,11 +48,10 @@ public class PopupController {
      * Creeaza un controller pentru meniul popup asociat unui JTree.
      *
      * @param tree    arborele care afiseaza structura
-     * @param model   modelul de date al arborelui Swing
      * @param service serviciul care lucreaza cu FsNode
      */
-    public PopupController(JTree tree, DefaultTreeModel model, FileTreeService service){
-        this.tree=tree; this.model=model; this.service=service;
+    public PopupController(JTree tree, FileTreeService service){
+        this.tree=tree; this.service=service;
     }
 
     /**
@@ -70,7 +83,7 @@ public class PopupController {
      *     <li>Nu permite creare de folder sub un fisier.</li>
      *     <li>Cere utilizatorului numele folderului.</li>
      *     <li>Apeleaza {@link FileTreeService#createFolder} pentru model.</li>
-     *     <li>Insereaza nodul nou si in arborele Swing.</li>
+     *     <li>Expandeaza parintele, ca nodul nou sa fie vizibil.</li>
      * </ul>
      *
      * @param clicked nodul Swing de la care s-a deschis meniul (parintele noului folder)
@@ -81,9 +94,6 @@ public class PopupController {
         String name = JOptionPane.showInputDialog("Folder name:");
         if(name==null || name.isBlank()) return;
         service.createFolder(pathOf(clicked), name.trim());
-        // UI: inserează copilul nou
-        DefaultMutableTreeNode child = new DefaultMutableTreeNode(new FsNode(name.trim(), NodeType.FOLDER));
-        model.insertNodeInto(child, clicked, clicked.getChildCount());
         tree.expandPath(new TreePath(clicked.getPath()));
     }
 
@@ -93,7 +103,7 @@ public class PopupController {
      *     <li>Nu permite creare sub un nod de tip FILE.</li>
      *     <li>Cere numele fisierului si dimensiunea in bytes.</li>
      *     <li>Apeleaza {@link FileTreeService#createFile} pentru model.</li>
-     *     <li>Insereaza nodul nou in arborele Swing.</li>
+     *     <li>Expandeaza parintele, ca nodul nou sa fie vizibil.</li>
      * </ul>
      *
      * @param clicked nodul Swing de la care s-a deschis meniul (parintele noului fisier)
@@ -128,10 +138,7 @@ public class PopupController {
             }
         }
 
-        // model + service
-        FsNode created = service.createFile(pathOf(clicked), name, size);
-        DefaultMutableTreeNode child = new DefaultMutableTreeNode(created);
-        model.insertNodeInto(child, clicked, clicked.getChildCount());
+        service.createFile(pathOf(clicked), name, size);
         tree.expandPath(new TreePath(clicked.getPath()));
     }
 
@@ -140,7 +147,6 @@ public class PopupController {
      * <ul>
      *     <li>Cere utilizatorului un nume nou.</li>
      *     <li>Apeleaza {@link FileTreeService#rename} pentru a actualiza modelul.</li>
-     *     <li>Actualizeaza si nodul Swing si notifica modelul de schimbare.</li>
      * </ul>
      *
      * @param clicked nodul selectat care va fi redenumit
@@ -150,7 +156,6 @@ public class PopupController {
         String nn = JOptionPane.showInputDialog("New name:", d.getName());
         if(nn==null || nn.isBlank()) return;
         service.rename(pathOf(clicked), nn.trim());
-        d.rename(nn.trim()); model.nodeChanged(clicked);
     }
 
     /**
@@ -159,7 +164,7 @@ public class PopupController {
      *     <li>Nu permite stergerea unui drive sau a unui nod fara parinte.</li>
      *     <li>Cere confirmare utilizatorului.</li>
      *     <li>Apeleaza {@link FileTreeService#delete} pentru model.</li>
-     *     <li>Elimina nodul si din arborele Swing si selecteaza parintele.</li>
+     *     <li>Selecteaza parintele nodului sters.</li>
      * </ul>
      *
      * @param clicked nodul care urmeaza sa fie sters
@@ -171,18 +176,38 @@ public class PopupController {
         }
         int ok = JOptionPane.showConfirmDialog(null,"Delete \""+d.getName()+"\"?","Confirm",JOptionPane.YES_NO_OPTION);
         if(ok!=JOptionPane.YES_OPTION) return;
-        service.delete(pathOf(clicked));
         DefaultMutableTreeNode parent = (DefaultMutableTreeNode) clicked.getParent();
-        model.removeNodeFromParent(clicked);
+        service.delete(pathOf(clicked));
         tree.setSelectionPath(new TreePath(parent.getPath()));
     }
 
+    /**
+     * Gestioneaza actiunea Undo: anuleaza ultima editare (inclusiv o mutare prin drag and drop).
+     * Arborele Swing este actualizat din evenimentul serviciului.
+     */
+    public void undo(){
+        if(!service.undo()) JOptionPane.showMessageDialog(null, "Nothing to undo.");
+    }
+
+    /**
+     * Gestioneaza actiunea Redo: reface ultima editare anulata.
+     */
+    public void redo(){
+        if(!service.redo()) JOptionPane.showMessageDialog(null, "Nothing to redo.");
+    }
+
     /**
      * Gestioneaza actiunea de afisare statistici din meniul contextual.
      * <ul>
      *     <li>Daca nodul este FILE: afiseaza nume, extensie si dimensiune.</li>
-     *     <li>Daca nodul este FOLDER sau DRIVE: apeleaza {@link FileTreeService#stats(String[])}
-     *         si afiseaza dimensiunea totala, numarul de foldere, fisiere, noduri si adancimea maxima.</li>
+     *     <li>Daca nodul este FOLDER sau DRIVE: deschide o fereastra nemodala cu totalurile
+     *         mentinute in noduri ({@link FileTreeService#stats(String[])}, O(1)): dimensiunea
+     *         totala, numarul de foldere, fisiere, noduri si adancimea maxima. Numarul de noduri
+     *         pe fiecare nivel si histograma dimensiunilor cer o parcurgere completa
+     *         ({@link FileTreeService#detailedStats(String[])}), care ruleaza intr-un
+     *         {@link SwingWorker}; fereastra este completata cand parcurgerea se termina.</li>
+     *     <li>Pentru un arbore incarcat la cerere sunt afisate doar totalurile; histogramele
+     *         ar citi tot fisierul.</li>
      * </ul>
      *
      * @param clicked nodul pentru care se afiseaza statisticile
@@ -192,14 +217,8 @@ public class PopupController {
 
         if (d.getType() == NodeType.FILE) {
             String name = d.getName();
-            String ext;
-
-            int dot = name.lastIndexOf('.');
-            if (dot != -1 && dot < name.length() - 1) {
-                ext = name.substring(dot + 1);
-            } else {
-                ext = "(no extension)";
-            }
+            String ext = d.getExtension();
+            if (ext == null) ext = "(no extension)";
 
             JOptionPane.showMessageDialog(
                     null,
@@ -210,18 +229,175 @@ public class PopupController {
             return;
         }
 
-        // pentru FOLDER / DRIVE: agregam prin service.stats
-        Stats s = service.stats(pathOf(clicked));
-
-        JOptionPane.showMessageDialog(
-                null,
-                "Name: " + d.getName() +
-                        "\nType: " + d.getType() +
-                        "\nTotal size: " + s.totalSizeBytes + " bytes" +
-                        "\nFolders: " + s.folders +
-                        "\nFiles: " + s.files +
-                        "\nTotal nodes: " + s.totalNodes +
-                        "\nMax depth: " + s.maxDepth
-        );
+        // pentru FOLDER / DRIVE: totalurile sunt imediate, histogramele cer o parcurgere
+        String[] path = pathOf(clicked);
+        String totals = appendTotals(new StringBuilder(), d, service.stats(path)).toString();
+
+        JTextArea text = new JTextArea(20, 40);
+        text.setEditable(false);
+        JDialog dialog = new JDialog(SwingUtilities.getWindowAncestor(tree), "Stats: " + d.getName());
+        dialog.add(new JScrollPane(text));
+        dialog.pack();
+        dialog.setLocationRelativeTo(tree);
+
+        if (service.isLazy()) {
+            text.setText(totals + "\n\n(histograms are not computed for a tree loaded on demand)");
+            dialog.setVisible(true);
+            return;
+        }
+        text.setText(totals + "\n\nComputing per-depth counts and size histogram...");
+        dialog.setVisible(true);
+
+        new SwingWorker<Stats, Void>() {
+            @Override
+            protected Stats doInBackground() {
+                return service.detailedStats(path);
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    // un singur text, din aceeasi parcurgere, chiar daca arborele s-a schimbat intre timp
+                    Stats full = get();
+                    StringBuilder sb = appendTotals(new StringBuilder(), d, full);
+                    appendHistograms(sb, full);
+                    text.setText(sb.toString());
+                } catch (Exception ex) {
+                    text.setText(totals + "\n\nEroare: " + ex.getMessage());
+                }
+                text.setCaretPosition(0);
+            }
+        }.execute();
+    }
+
+    private static StringBuilder appendTotals(StringBuilder sb, FsNode d, Stats s){
+        return sb.append("Name: ").append(d.getName())
+                .append("\nType: ").append(d.getType())
+                .append("\nTotal size: ").append(s.totalSizeBytes).append(" bytes")
+                .append("\nFolders: ").append(s.folders)
+                .append("\nFiles: ").append(s.files)
+                .append("\nTotal nodes: ").append(s.totalNodes)
+                .append("\nMax depth: ").append(s.maxDepth);
+    }
+
+    private static void appendHistograms(StringBuilder sb, Stats s){
+        sb.append("\n\nNodes per depth (folders / files):");
+        int shown = Math.min(s.nodesPerDepth.length, MAX_DEPTH_ROWS);
+        for (int depth = 0; depth < shown; depth++) {
+            int[] byType = s.countByTypePerDepth[depth];
+            sb.append("\n  ").append(depth).append(": ").append(s.nodesPerDepth[depth])
+                    .append(" (").append(byType[NodeType.FOLDER.ordinal()])
+                    .append(" / ").append(byType[NodeType.FILE.ordinal()]).append(")");
+        }
+        if (shown < s.nodesPerDepth.length) {
+            sb.append("\n  ... ").append(s.nodesPerDepth.length - shown).append(" more levels");
+        }
+
+        sb.append("\n\nFile sizes:");
+        for (int b = 0; b < s.sizeHistogram.length; b++) {
+            if (s.sizeHistogram[b] == 0) continue;
+            sb.append("\n  ");
+            if (b == 0) sb.append("empty");
+            else sb.append(">= ").append(Stats.bucketLowerBound(b)).append(" bytes");
+            sb.append(": ").append(s.sizeHistogram[b]);
+        }
+    }
+
+    /**
+     * Afiseaza cele mai mari fisiere si foldere din subarborele nodului selectat.
+     * Foloseste {@link FileTreeService#topFiles(String[], int)} si
+     * {@link FileTreeService#topFolders(String[], int)}, fiecare intr-o singura parcurgere.
+     *
+     * @param clicked folderul sau drive-ul analizat
+     */
+    public void largestItems(DefaultMutableTreeNode clicked){
+        FsNode d = (FsNode) clicked.getUserObject();
+        if (d.getType() == NodeType.FILE) {
+            JOptionPane.showMessageDialog(null, "Alege un folder sau un drive.");
+            return;
+        }
+
+        String[] path = pathOf(clicked);
+        StringBuilder sb = new StringBuilder();
+        sb.append("Largest files in ").append(d.getName()).append(":");
+        appendItems(sb, service.topFiles(path, LARGEST_ITEMS));
+        sb.append("\n\nLargest folders in ").append(d.getName()).append(":");
+        appendItems(sb, service.topFolders(path, LARGEST_ITEMS));
+
+        JTextArea text = new JTextArea(sb.toString(), 20, 60);
+        text.setEditable(false);
+        JOptionPane.showMessageDialog(null, new JScrollPane(text), "Largest items", JOptionPane.INFORMATION_MESSAGE);
+    }
+
+    private static void appendItems(StringBuilder sb, List<SearchHit> items){
+        if (items.isEmpty()) sb.append("\n  (none)");
+        for (SearchHit h : items) {
+            sb.append("\n  ").append(h.sizeBytes()).append(" bytes  ").append(h.pathString());
+        }
+    }
+
+    /**
+     * Afiseaza grupurile de fisiere candidate la duplicat din subarborele nodului selectat.
+     * <p>
+     * Cautarea ruleaza intr-un {@link SwingWorker}, iar grupurile sunt adaugate intr-o fereastra
+     * nemodala pe masura ce {@link FileTreeService#findDuplicates(String[], java.util.function.Consumer)}
+     * le raporteaza, fara a bloca interfata. Sunt afisate cel mult {@link #MAX_DUPLICATE_GROUPS} grupuri.
+     *
+     * @param clicked folderul sau drive-ul analizat
+     */
+    public void duplicates(DefaultMutableTreeNode clicked){
+        FsNode d = (FsNode) clicked.getUserObject();
+        if (d.getType() == NodeType.FILE) {
+            JOptionPane.showMessageDialog(null, "Alege un folder sau un drive.");
+            return;
+        }
+
+        JTextArea text = new JTextArea(25, 70);
+        text.setEditable(false);
+        JDialog dialog = new JDialog(SwingUtilities.getWindowAncestor(tree), "Duplicates in " + d.getName());
+        dialog.add(new JScrollPane(text));
+        dialog.pack();
+        dialog.setLocationRelativeTo(tree);
+        dialog.setVisible(true);
+
+        String[] path = pathOf(clicked);
+        new SwingWorker<Integer, DuplicateGroup>() {
+            private int shown;
+
+            @Override
+            protected Integer doInBackground() {
+                int[] total = new int[1];
+                service.findDuplicates(path, g -> {
+                    total[0]++;
+                    if (total[0] <= MAX_DUPLICATE_GROUPS) publish(g);
+                });
+                return total[0];
+            }
+
+            @Override
+            protected void process(List<DuplicateGroup> groups) {
+                StringBuilder sb = new StringBuilder();
+                for (DuplicateGroup g : groups) {
+                    shown++;
+                    sb.append(g.kind() == DuplicateGroup.Kind.NAME_AND_SIZE ? "Same name and size: " + g.name() : "Same size")
+                            .append(" (").append(g.sizeBytes()).append(" bytes, ")
+                            .append(g.files().size()).append(" files, ")
+                            .append(g.wastedBytes()).append(" bytes wasted)\n");
+                    for (SearchHit h : g.files()) sb.append("    ").append(h.pathString()).append('\n');
+                }
+                text.append(sb.toString());
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    int total = get();
+                    text.append(total == 0 ? "No duplicates found.\n"
+                            : "\n" + total + " groups" + (total > shown ? ", first " + shown + " shown" : "") + ".\n");
+                } catch (Exception ex) {
+                    text.append("\nEroare: " + ex.getMessage() + "\n");
+                }
+            }
+        }.execute();
     }
 }
@@ -0,0 +1,192 @@
+package ui.swing;
+
+import model.FsNode;
+import service.NodeChange;
+import service.TreeChangeEvent;
+import service.TreeChangeListener;
+
+import javax.swing.*;
+import javax.swing.event.TreeExpansionEvent;
+import javax.swing.event.TreeExpansionListener;
+import javax.swing.event.TreeWillExpandListener;
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.DefaultTreeModel;
+import javax.swing.tree.ExpandVetoException;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Ascultator care tine arborele Swing sincronizat cu modelul logic, pe baza modificarilor
+ * nete din fiecare {@link TreeChangeEvent}.
+ * <p>
+ * Nodurile Swing sunt gasite dupa nodul {@link FsNode} pe care il afiseaza, printr-o tabela
+ * de identitate, deci fiecare modificare costa O(1) plus notificarea modelului Swing.
+ * Arborele nu este niciodata reconstruit si nu apar copii duplicate ale nodurilor: nodul
+ * afisat este chiar cel creat de serviciu.
+ * <p>
+ * Evenimentele venite pe firul Swing sunt aplicate imediat (deci dupa un apel al serviciului
+ * din UI, nodul nou este deja in arbore); cele venite din alte fire sunt trimise pe firul Swing.
+ * <p>
+ * Pentru arborii incarcati la cerere, nodurile Swing ale folderelor necitite sunt create fara
+ * copii si populate la expandare (inregistrat ca {@link TreeWillExpandListener} si
+ * {@link TreeExpansionListener} pe {@link JTree}); la restrangere, copiii Swing ai folderelor
+ * care pot fi recitite sunt scosi, ca nodurile logice sa poata fi eliberate
+ * ({@link #isShowingChildren(FsNode)}).
+ */
+public class SwingTreeSync implements TreeChangeListener, TreeWillExpandListener, TreeExpansionListener {
+
+    /**
+     * Modelul arborelui Swing actualizat.
+     */
+    private final DefaultTreeModel model;
+
+    /**
+     * Nodul Swing care afiseaza fiecare nod logic.
+     */
+    private final Map<FsNode, DefaultMutableTreeNode> swingNodes = new IdentityHashMap<>();
+
+    /**
+     * Nodurile Swing ale folderelor ai caror copii nu au fost inca adaugati in arborele Swing.
+     */
+    private final Set<DefaultMutableTreeNode> unpopulated = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * Creeaza sincronizatorul pentru un arbore Swing construit cu {@link TreeBuilder}.
+     *
+     * @param model modelul arborelui Swing
+     */
+    public SwingTreeSync(DefaultTreeModel model) {
+        this.model = model;
+        register((DefaultMutableTreeNode) model.getRoot());
+    }
+
+    /**
+     * Intoarce nodul Swing care afiseaza un nod logic.
+     *
+     * @param n nodul logic
+     * @return nodul Swing sau null daca nodul nu este afisat
+     */
+    public DefaultMutableTreeNode swingNodeOf(FsNode n) {
+        return swingNodes.get(n);
+    }
+
+    /**
+     * Indica daca copiii unui nod logic sunt afisati (sau gata de afisare) in arborele Swing.
+     *
+     * @param n nodul logic
+     * @return true daca nodul Swing al lui {@code n} exista si are copiii adaugati
+     */
+    public boolean isShowingChildren(FsNode n) {
+        DefaultMutableTreeNode sn = swingNodes.get(n);
+        return sn != null && !unpopulated.contains(sn);
+    }
+
+    /**
+     * Adauga copiii unui folder necitit inainte de expandare; citirea lor din fisier are loc aici.
+     */
+    @Override
+    public void treeWillExpand(TreeExpansionEvent event) throws ExpandVetoException {
+        DefaultMutableTreeNode sn = (DefaultMutableTreeNode) event.getPath().getLastPathComponent();
+        if (!unpopulated.contains(sn)) return;
+        FsNode n = (FsNode) sn.getUserObject();
+        try {
+            for (FsNode ch : n.getChildren()) sn.add(TreeBuilder.buildSwingTree(ch));
+        } catch (RuntimeException ex) {
+            sn.removeAllChildren();
+            JOptionPane.showMessageDialog(null, "Eroare la citire: " + ex.getMessage(),
+                    "Eroare", JOptionPane.ERROR_MESSAGE);
+            throw new ExpandVetoException(event, ex.getMessage());
+        }
+        unpopulated.remove(sn);
+        for (int i = 0; i < sn.getChildCount(); i++) register((DefaultMutableTreeNode) sn.getChildAt(i));
+        model.nodeStructureChanged(sn);
+    }
+
+    @Override
+    public void treeWillCollapse(TreeExpansionEvent event) {
+    }
+
+    @Override
+    public void treeExpanded(TreeExpansionEvent event) {
+    }
+
+    /**
+     * Scoate copiii Swing ai unui folder restrans daca acesta poate fi recitit din fisier.
+     */
+    @Override
+    public void treeCollapsed(TreeExpansionEvent event) {
+        DefaultMutableTreeNode sn = (DefaultMutableTreeNode) event.getPath().getLastPathComponent();
+        FsNode n = (FsNode) sn.getUserObject();
+        if (n.getChildLoader() == null || n.getParent() == null || sn.getChildCount() == 0) return;
+        for (int i = 0; i < sn.getChildCount(); i++) unregister((DefaultMutableTreeNode) sn.getChildAt(i));
+        sn.removeAllChildren();
+        unpopulated.add(sn);
+        model.nodeStructureChanged(sn);
+    }
+
+    @Override
+    public void treeChanged(TreeChangeEvent e) {
+        if (SwingUtilities.isEventDispatchThread()) apply(e);
+        else SwingUtilities.invokeLater(() -> apply(e));
+    }
+
+    /**
+     * Aplica modificarile unui eveniment, in ordinea din {@link TreeChangeEvent#getChanges()}.
+     *
+     * @param e evenimentul
+     */
+    private void apply(TreeChangeEvent e) {
+        // 1. detasari: noduri sterse si noduri mutate
+        for (NodeChange c : e.getChanges()) {
+            if (c.kind() != NodeChange.Kind.REMOVED && c.kind() != NodeChange.Kind.MOVED) continue;
+            DefaultMutableTreeNode sn = swingNodes.get(c.node());
+            if (sn == null || sn.getParent() == null) continue;
+            model.removeNodeFromParent(sn);
+            if (c.kind() == NodeChange.Kind.REMOVED) unregister(sn);
+        }
+        // 2. atasari, crescator dupa pozitia finala
+        for (NodeChange c : e.getChanges()) {
+            if (c.kind() != NodeChange.Kind.ADDED && c.kind() != NodeChange.Kind.MOVED) continue;
+            // un parinte neafisat primeste copiii cand este construit el insusi
+            DefaultMutableTreeNode parent = swingNodes.get(c.parent());
+            if (parent == null || unpopulated.contains(parent)) continue;
+            DefaultMutableTreeNode sn = swingNodes.get(c.node());
+            if (sn != null && sn.getParent() == parent) continue;
+            if (sn == null) {
+                sn = TreeBuilder.buildSwingTree(c.node());
+                register(sn);
+            }
+            model.insertNodeInto(sn, parent, Math.min(c.index(), parent.getChildCount()));
+        }
+        // 3. redenumiri si redimensionari
+        for (NodeChange c : e.getChanges()) {
+            if (c.kind() != NodeChange.Kind.RENAMED && c.kind() != NodeChange.Kind.RESIZED) continue;
+            DefaultMutableTreeNode sn = swingNodes.get(c.node());
+            if (sn != null && sn.getParent() != null) model.nodeChanged(sn);
+        }
+    }
+
+    private void register(DefaultMutableTreeNode top) {
+        Enumeration<?> all = top.breadthFirstEnumeration();
+        while (all.hasMoreElements()) {
+            DefaultMutableTreeNode sn = (DefaultMutableTreeNode) all.nextElement();
+            FsNode n = (FsNode) sn.getUserObject();
+            swingNodes.put(n, sn);
+            if (!n.isChildrenLoaded()) unpopulated.add(sn);
+        }
+    }
+
+    private void unregister(DefaultMutableTreeNode top) {
+        Enumeration<?> all = top.breadthFirstEnumeration();
+        while (all.hasMoreElements()) {
+            DefaultMutableTreeNode sn = (DefaultMutableTreeNode) all.nextElement();
+            FsNode n = (FsNode) sn.getUserObject();
+            // nodul poate fi deja afisat de un alt nod Swing, construit la reatasare
+            if (swingNodes.get(n) == sn) swingNodes.remove(n);
+            unpopulated.remove(sn);
+        }
+    }
+}
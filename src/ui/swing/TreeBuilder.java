@@ -10,6 +10,9 @@ import javax.swing.tree.DefaultMutableTreeNode;
  * Conversia este necesara deoarece modelul Swing foloseste noduri diferite
  * fata de modelul logic al aplicatiei, iar arborele UI trebuie sincronizat
  * cu structura FsNode incarcata din fisier sau modificata in runtime.
+ * <p>
+ * Sunt convertite doar nodurile aflate deja in memorie: copiii folderelor incarcate la cerere
+ * ({@link FsNode#isChildrenLoaded()}) sunt adaugati de {@link SwingTreeSync} la expandare.
  */
 public class TreeBuilder {
 
@@ -26,21 +29,22 @@ public class TreeBuilder {
      * @return radacina arborelui Swing corespunzatoare
      */
     public static DefaultMutableTreeNode buildSwingTree(FsNode root){
-        DefaultMutableTreeNode swingRoot = new DefaultMutableTreeNode(root);
-        for(FsNode ch: root.getChildren()) swingRoot.add(buildRec(ch));
+        DefaultMutableTreeNode swingRoot = new DefaultMutableTreeNode(root, root.canHaveChildren());
+        for(FsNode ch: root.getLoadedChildren()) swingRoot.add(buildRec(ch));
         return swingRoot;
     }
 
     /**
      * Metoda recursiva care converteste un nod FsNode intr-un nod Swing
-     * si adauga recursiv toti descendentii lui.
+     * si adauga recursiv descendentii lui incarcati. Folderele pot avea copii chiar daca
+     * nu sunt inca cititi ({@code allowsChildren}).
      *
      * @param n nodul FsNode care trebuie convertit
      * @return nodul Swing construit, impreuna cu subarborele sau
      */
     private static DefaultMutableTreeNode buildRec(FsNode n){
-        DefaultMutableTreeNode dn = new DefaultMutableTreeNode(n);
-        for(FsNode ch: n.getChildren()) dn.add(buildRec(ch));
+        DefaultMutableTreeNode dn = new DefaultMutableTreeNode(n, n.canHaveChildren());
+        for(FsNode ch: n.getLoadedChildren()) dn.add(buildRec(ch));
         return dn;
     }
 }
@@ -0,0 +1,170 @@
+package io;
+
+import model.FsNode;
+import model.NodeType;
+import service.FileTreeService;
+import service.TreeSnapshot;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Verifica faptul ca {@link FileTreeRepository#saveIncremental(FsNode, File)} scrie exact
+ * aceiasi bytes ca o salvare completa a aceluiasi arbore.
+ * <p>
+ * Pentru fiecare fisier de pornire (cu si fara separator dupa ultima linie) se aplica runde
+ * de editari aleatoare prin {@link FileTreeService} (creare, redenumire, stergere, mutare,
+ * redimensionare). Dupa fiecare runda arborele este salvat incremental peste fisierul din care
+ * a fost incarcat si, separat, complet (din snapshot) intr-un fisier de referinta; cele doua
+ * trebuie sa fie identice, iar fisierul salvat trebuie sa se reincarce cu acelasi numar de noduri.
+ * <p>
+ * Rulare (iesire cu cod 1 la orice abatere):
+ * <pre>
+ * java -cp out io.IncrementalSaveCheck [runde] [seed]
+ * </pre>
+ */
+public final class IncrementalSaveCheck {
+
+    private IncrementalSaveCheck() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 42;
+        Path dir = Files.createTempDirectory("incremental-save");
+        List<String> failures = new ArrayList<>();
+
+        String small = "C:\n   A\n      x.txt//5\n   B\n      y.txt//7";
+        failures.addAll(appendAfterLastLine(dir, small));
+        failures.addAll(run(dir, "small-unterminated", small, rounds, seed));
+        failures.addAll(run(dir, "small", small + "\n", rounds, seed));
+        String generated = generate(new Random(seed));
+        failures.addAll(run(dir, "generated", generated, rounds, seed));
+        failures.addAll(run(dir, "generated-unterminated", generated.substring(0, generated.length() - 1), rounds, seed));
+
+        if (failures.isEmpty()) {
+            System.out.println("OK");
+        } else {
+            failures.forEach(System.out::println);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Cazul minim: un fisier nou adaugat dupa ultima linie a unui fisier fara separator final
+     * nu trebuie lipit de ea.
+     */
+    private static List<String> appendAfterLastLine(Path dir, String text) throws IOException {
+        File file = dir.resolve("append.txt").toFile();
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+        FileTreeRepository repo = new FileTreeRepository();
+        FsNode root = repo.loadFromText(file);
+        new FileTreeService(root).createFile(new String[]{"C:", "B"}, "z.txt", 9);
+        repo.saveIncremental(root, file);
+        FsNode reloaded = new FileTreeRepository().loadFromText(file);
+        FsNode y = reloaded.childByName("C:").childByName("B").childByName("y.txt");
+        if (reloaded.getSubtreeNodes() != root.getSubtreeNodes() || y == null || y.getSizeBytes() != 7) {
+            return List.of("append: reloaded " + reloaded.getSubtreeNodes() + " nodes, expected "
+                    + root.getSubtreeNodes() + " with y.txt//7");
+        }
+        return List.of();
+    }
+
+    /**
+     * Incarca textul dat si compara, dupa fiecare runda de editari, salvarea incrementala
+     * cu cea completa. Se opreste la prima diferenta.
+     */
+    private static List<String> run(Path dir, String label, String text, int rounds, long seed) throws IOException {
+        File file = dir.resolve(label + ".txt").toFile();
+        File reference = dir.resolve(label + ".full.txt").toFile();
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+        FileTreeRepository repo = new FileTreeRepository();
+        FsNode root = repo.loadFromText(file);
+        FileTreeService service = new FileTreeService(root);
+        Random rnd = new Random(seed);
+        int incremental = 0;
+        for (int r = 0; r < rounds; r++) {
+            int edits = 1 + rnd.nextInt(4);
+            for (int e = 0; e < edits; e++) edit(service, rnd, "r" + r + "e" + e);
+            if (repo.saveIncremental(root, file)) incremental++;
+            try (TreeSnapshot s = service.snapshot()) {
+                repo.writeSnapshot(s.getRoot(), reference);
+            }
+            byte[] saved = Files.readAllBytes(file.toPath());
+            byte[] full = Files.readAllBytes(reference.toPath());
+            if (!Arrays.equals(saved, full)) {
+                return List.of(label + ": round " + r + ": incremental save differs from full save (" + saved.length
+                        + " vs " + full.length + " bytes)");
+            }
+            int reloaded = new FileTreeRepository().loadFromText(file).getSubtreeNodes();
+            if (reloaded != root.getSubtreeNodes()) {
+                return List.of(label + ": round " + r + ": reloaded " + reloaded + " nodes, expected " + root.getSubtreeNodes());
+            }
+        }
+        System.out.printf("%s: %d rounds, %d incremental saves, %d nodes%n", label, rounds, incremental, root.getSubtreeNodes());
+        return List.of();
+    }
+
+    /**
+     * O editare aleatoare asupra unui nod ales din arbore; editarile respinse (nume duplicat,
+     * mutare intr-un descendent) sunt ignorate.
+     */
+    private static void edit(FileTreeService service, Random rnd, String name) {
+        List<FsNode> folders = new ArrayList<>();
+        List<FsNode> files = new ArrayList<>();
+        ArrayDeque<FsNode> stack = new ArrayDeque<>(service.getRoot().getChildren());
+        while (!stack.isEmpty()) {
+            FsNode n = stack.pop();
+            (n.getType() == NodeType.FILE ? files : folders).add(n);
+            stack.addAll(n.getChildren());
+        }
+        FsNode folder = folders.get(rnd.nextInt(folders.size()));
+        FsNode any = !files.isEmpty() && rnd.nextBoolean() ? files.get(rnd.nextInt(files.size())) : folder;
+        try {
+            switch (rnd.nextInt(6)) {
+                case 0 -> service.createFile(folder.getId(), name + ".dat", rnd.nextInt(1000));
+                case 1 -> service.createFolder(folder.getId(), name);
+                case 2 -> service.rename(any.getId(), any.getType() == NodeType.FILE ? name + ".txt" : name);
+                case 3 -> {
+                    if (any.getType() != NodeType.DRIVE && any.getParent().getChildren().size() > 1) service.delete(any.getId());
+                }
+                case 4 -> {
+                    if (any.getType() != NodeType.DRIVE) service.moveNode(any.getId(), folder.getId());
+                }
+                default -> {
+                    if (!files.isEmpty()) service.setFileSize(files.get(rnd.nextInt(files.size())).getId(), rnd.nextInt(1 << 20));
+                }
+            }
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            // editare respinsa de serviciu
+        }
+    }
+
+    /**
+     * Un arbore de doua drive-uri cu cateva niveluri de foldere, terminat cu separator.
+     */
+    private static String generate(Random rnd) {
+        StringBuilder sb = new StringBuilder();
+        for (String drive : new String[]{"C:", "D:"}) {
+            sb.append(drive).append('\n');
+            for (int i = 0; i < 8; i++) {
+                sb.append("   dir").append(i).append('\n');
+                for (int j = 0; j < 5; j++) {
+                    sb.append("      sub").append(j).append('\n');
+                    for (int k = 0; k < 6; k++) {
+                        sb.append("         file").append(k).append(".txt//").append(rnd.nextInt(10_000)).append('\n');
+                    }
+                }
+            }
+        }
+        return sb.toString();
+    }
+}
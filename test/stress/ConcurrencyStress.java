@@ -0,0 +1,249 @@
+package stress;
+
+import model.FsNode;
+import model.NodeType;
+import model.SnapshotNode;
+import model.Stats;
+import service.FileTreeService;
+import service.Op;
+import service.SearchOptions;
+import service.TreeSnapshot;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Test de stres pentru modul concurent al {@link FileTreeService}: mai multe fire amesteca
+ * cititori ({@code find}, {@code stats}, cautare, top, snapshot) si scriitori (creare,
+ * redenumire, stergere, mutare, redimensionare, loturi, undo si redo) pe acelasi arbore.
+ * <p>
+ * Pe durata rularii {@link FileTreeService#setVerifyStats(boolean)} este activ, deci fiecare
+ * {@code stats} compara totalurile mentinute cu o parcurgere completa. La final se verifica:
+ * <ul>
+ *     <li>ca toate firele s-au terminat in timpul dat (fara blocaj intre lock-uri);</li>
+ *     <li>ca nu a aparut nicio exceptie in afara respingerilor asteptate: orice
+ *         {@link IllegalArgumentException} sau {@link IllegalStateException} la modificari,
+ *         doar {@link IllegalArgumentException} (nod disparut) la citiri;</li>
+ *     <li>legaturile parinte-copil, totalurile fiecarui subarbore si indexul de id-uri.</li>
+ * </ul>
+ * Rulare (iesire cu cod 1 la orice abatere):
+ * <pre>
+ * java -cp out stress.ConcurrencyStress [fire] [operatii pe fir]
+ * </pre>
+ */
+public final class ConcurrencyStress {
+
+    private final FileTreeService service;
+    private final AtomicLong applied = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong reads = new AtomicLong();
+
+    private ConcurrencyStress(FileTreeService service) {
+        this.service = service;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int opsPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+
+        FileTreeService service = new FileTreeService(initialTree());
+        service.setVerifyStats(true);
+        ConcurrencyStress test = new ConcurrencyStress(service);
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            futures.add(pool.submit(() -> {
+                test.run(id, opsPerThread);
+                return null;
+            }));
+        }
+        pool.shutdown();
+        List<String> failures = new ArrayList<>();
+        if (!pool.awaitTermination(5, TimeUnit.MINUTES)) {
+            failures.add("threads still running after 5 minutes (deadlock?)");
+        }
+        for (Future<?> f : futures) {
+            try {
+                f.get(1, TimeUnit.SECONDS);
+            } catch (TimeoutException e) {
+                // raportat mai sus
+            } catch (Exception e) {
+                failures.add("worker failed: " + e.getCause());
+                e.getCause().printStackTrace();
+            }
+        }
+        long ms = (System.nanoTime() - start) / 1_000_000;
+        failures.addAll(checkTree(service));
+
+        System.out.printf("%d threads x %d ops in %d ms: %d applied, %d rejected, %d reads, %d nodes%n",
+                threads, opsPerThread, ms, test.applied.get(), test.rejected.get(), test.reads.get(),
+                service.getRoot().getSubtreeNodes());
+        if (failures.isEmpty()) {
+            System.out.println("OK");
+        } else {
+            failures.forEach(System.out::println);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Doua drive-uri cu cate 20 de foldere si cate 10 fisiere in fiecare folder.
+     */
+    private static FsNode initialTree() {
+        FsNode root = new FsNode("(root)", NodeType.FOLDER);
+        for (String d : new String[]{"C:", "D:"}) {
+            FsNode drive = new FsNode(d, NodeType.DRIVE);
+            root.addChild(drive);
+            for (int i = 0; i < 20; i++) {
+                FsNode folder = new FsNode("dir" + i, NodeType.FOLDER);
+                drive.addChild(folder);
+                for (int j = 0; j < 10; j++) folder.addChild(new FsNode("file" + j + ".txt", NodeType.FILE, j * 100L));
+            }
+        }
+        return root;
+    }
+
+    /**
+     * Bucla unui fir: la fiecare pas alege la intamplare o citire sau o modificare asupra unui
+     * nod luat dintr-un snapshot recent. Nodurile pot fi intre timp sterse sau mutate de alte
+     * fire; respingerile care rezulta sunt numarate, nu raportate.
+     */
+    private void run(int id, int ops) {
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        List<String[]> folders = new ArrayList<>();
+        List<String[]> files = new ArrayList<>();
+        for (int i = 0; i < ops; i++) {
+            if (i % 200 == 0) collect(folders, files);
+            String[] folder = folders.get(rnd.nextInt(folders.size()));
+            String[] file = files.isEmpty() ? folder : files.get(rnd.nextInt(files.size()));
+            String name = "t" + id + "_" + i;
+            int kind = rnd.nextInt(16);
+            if (kind >= 9) {
+                // o citire poate gasi nodul sters (IllegalArgumentException), dar o diferenta
+                // gasita de verificarea statisticilor (IllegalStateException) este o eroare
+                try {
+                    read(kind - 9, folder);
+                    reads.incrementAndGet();
+                } catch (IllegalArgumentException e) {
+                    rejected.incrementAndGet();
+                }
+                continue;
+            }
+            try {
+                switch (kind) {
+                    case 0 -> service.createFolder(folder, name);
+                    case 1 -> service.createFile(folder, name + ".dat", rnd.nextLong(1 << 20));
+                    case 2 -> service.rename(folder.length > 1 ? folder : file, name);
+                    case 3 -> service.delete(rnd.nextInt(4) > 0 || folder.length < 3 ? file : folder);
+                    case 4 -> service.moveNode(service.find(rnd.nextBoolean() ? file : folder),
+                            service.find(folders.get(rnd.nextInt(folders.size()))));
+                    case 5 -> service.setFileSize(file, rnd.nextLong(1 << 20));
+                    case 6 -> service.applyBatch(List.of(Op.createFolder(folder, name),
+                            Op.createFile(append(folder, name), name + ".bin", 1),
+                            Op.rename(file, name + ".txt")));
+                    case 7 -> service.undo();
+                    default -> service.redo();
+                }
+                applied.incrementAndGet();
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                rejected.incrementAndGet();
+            }
+        }
+    }
+
+    private void read(int kind, String[] folder) {
+        switch (kind) {
+            case 0 -> service.find(folder);
+            case 1 -> service.stats(folder);
+            case 2 -> service.stats(new String[]{folder[0]});
+            case 3 -> service.search("t*", SearchOptions.glob().withLimit(50));
+            case 4 -> service.topFiles(new String[]{folder[0]}, 5);
+            case 5 -> service.detailedStats(folder);
+            default -> {
+                try (TreeSnapshot s = service.snapshot()) {
+                    count(s.getRoot());
+                }
+            }
+        }
+    }
+
+    /**
+     * Retine caile folderelor (inclusiv drive-urile) si ale fisierelor dintr-un snapshot.
+     */
+    private void collect(List<String[]> folders, List<String[]> files) {
+        folders.clear();
+        files.clear();
+        try (TreeSnapshot s = service.snapshot()) {
+            ArrayDeque<Object[]> stack = new ArrayDeque<>();
+            for (SnapshotNode c : s.getRoot().getChildren()) stack.push(new Object[]{c, new String[]{c.getName()}});
+            while (!stack.isEmpty()) {
+                Object[] e = stack.pop();
+                SnapshotNode n = (SnapshotNode) e[0];
+                String[] path = (String[]) e[1];
+                (n.getType() == NodeType.FILE ? files : folders).add(path);
+                for (SnapshotNode c : n.getChildren()) stack.push(new Object[]{c, append(path, c.getName())});
+            }
+        }
+    }
+
+    private static int count(SnapshotNode n) {
+        int total = 0;
+        ArrayDeque<SnapshotNode> stack = new ArrayDeque<>();
+        stack.push(n);
+        while (!stack.isEmpty()) {
+            total++;
+            stack.pop().getChildren().forEach(stack::push);
+        }
+        return total;
+    }
+
+    private static String[] append(String[] path, String name) {
+        String[] p = Arrays.copyOf(path, path.length + 1);
+        p[path.length] = name;
+        return p;
+    }
+
+    /**
+     * Verifica, dupa oprirea firelor, legaturile, totalurile si indexul de id-uri.
+     */
+    private static List<String> checkTree(FileTreeService service) {
+        List<String> failures = new ArrayList<>();
+        FsNode root = service.getRoot();
+        Stats whole = service.detailedStats(new String[0]);
+        if (whole.totalNodes != root.getSubtreeNodes()) {
+            failures.add("root: " + root.getSubtreeNodes() + " cached nodes, " + whole.totalNodes + " counted");
+        }
+        ArrayDeque<FsNode> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            FsNode n = stack.pop();
+            long size = n.getType() == NodeType.FILE ? n.getSizeBytes() : 0;
+            int nodes = 1, files = n.getType() == NodeType.FILE ? 1 : 0;
+            for (FsNode c : n.getChildren()) {
+                if (c.getParent() != n) failures.add("wrong parent: " + c.getName());
+                size += c.getSubtreeSizeBytes();
+                nodes += c.getSubtreeNodes();
+                files += c.getSubtreeFiles();
+                stack.push(c);
+            }
+            if (size != n.getSubtreeSizeBytes() || nodes != n.getSubtreeNodes() || files != n.getSubtreeFiles()) {
+                failures.add("stale totals on " + n.getName());
+            }
+            if (n != root && service.findById(n.getId()) != n) failures.add("id index misses " + n.getName());
+            if (failures.size() > 20) break;
+        }
+        return failures;
+    }
+}